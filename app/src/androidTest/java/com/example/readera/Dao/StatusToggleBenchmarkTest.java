@@ -0,0 +1,114 @@
+package com.example.readera.Dao;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.readera.Enum.CoverDataType;
+import com.example.readera.database.BookDatabaseHelper;
+import com.example.readera.database.DatabaseExecutor;
+import com.example.readera.model.BookInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 书架状态切换的往返延迟：从主线程以外提交异步更新，到完成回调在主线程上执行为止。
+ * 对同一本测试书籍交替切换“已读”，分别使用：
+ * <ul>
+ *     <li>BookDao.updateBookReadStatusAsync（缓存的预编译语句，按 _id 更新）；</li>
+ *     <li>同样在 DatabaseExecutor 上执行、但每次用 ContentValues 调用 SQLiteDatabase.update（每次重新编译 SQL）。</li>
+ * </ul>
+ * 中位数和 P90 输出到 logcat（标签 StatusToggleBenchmark）和 instrumentation 结果中。
+ */
+@RunWith(AndroidJUnit4.class)
+public class StatusToggleBenchmarkTest {
+    private static final String TAG = "StatusToggleBenchmark";
+
+    private static final int WARM_UP_TOGGLES = 50;
+    private static final int TOGGLES = 500;
+
+    private BookDao bookDao;
+    private long bookId;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        bookDao = new BookDao(context);
+        Uri uri = Uri.parse("content://com.example.readera.test/status-toggle-" + SystemClock.elapsedRealtimeNanos());
+        bookId = bookDao.addBook(new BookInfo("StatusToggleBenchmark", uri, "", CoverDataType.TEXT));
+        assertTrue(bookId > 0);
+    }
+
+    @After
+    public void tearDown() {
+        bookDao.deleteBook(bookId);
+    }
+
+    @Test
+    public void comparePreparedAndUncompiledStatusToggles() throws InterruptedException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        BookDatabaseHelper dbHelper = BookDatabaseHelper.getInstance(context);
+
+        StatusUpdate prepared = (id, value, onComplete) -> bookDao.updateBookReadStatusAsync(id, value, onComplete);
+        StatusUpdate uncompiled = (id, value, onComplete) -> DatabaseExecutor.execute(() -> {
+            ContentValues values = new ContentValues();
+            values.put(BookDatabaseHelper.COLUMN_IS_READ, value ? 1 : 0);
+            dbHelper.getWritableDatabase().update(BookDatabaseHelper.TABLE_BOOKS, values,
+                    BookDatabaseHelper.COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+        }, onComplete);
+
+        measure(prepared, WARM_UP_TOGGLES);
+        measure(uncompiled, WARM_UP_TOGGLES);
+        long[] preparedMicros = measure(prepared, TOGGLES);
+        long[] uncompiledMicros = measure(uncompiled, TOGGLES);
+
+        Log.i(TAG, "状态切换往返延迟（μs）：预编译语句 中位数 " + percentile(preparedMicros, 50)
+                + "，P90 " + percentile(preparedMicros, 90)
+                + "；ContentValues update 中位数 " + percentile(uncompiledMicros, 50)
+                + "，P90 " + percentile(uncompiledMicros, 90));
+        Bundle results = new Bundle();
+        results.putLong("prepared_median_us", percentile(preparedMicros, 50));
+        results.putLong("prepared_p90_us", percentile(preparedMicros, 90));
+        results.putLong("uncompiled_median_us", percentile(uncompiledMicros, 50));
+        results.putLong("uncompiled_p90_us", percentile(uncompiledMicros, 90));
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+    }
+
+    // 逐次提交并等待完成回调，返回每次往返的耗时（微秒）
+    private long[] measure(StatusUpdate update, int toggles) throws InterruptedException {
+        long[] micros = new long[toggles];
+        for (int i = 0; i < toggles; i++) {
+            CountDownLatch done = new CountDownLatch(1);
+            long start = SystemClock.elapsedRealtimeNanos();
+            update.run(bookId, i % 2 == 0, done::countDown);
+            assertTrue("状态更新超时", done.await(5, TimeUnit.SECONDS));
+            micros[i] = (SystemClock.elapsedRealtimeNanos() - start) / 1000;
+        }
+        return micros;
+    }
+
+    private static long percentile(long[] values, int percent) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+
+    private interface StatusUpdate {
+        void run(long bookId, boolean value, Runnable onComplete);
+    }
+}
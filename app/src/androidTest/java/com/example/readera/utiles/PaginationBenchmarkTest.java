@@ -0,0 +1,183 @@
+package com.example.readera.utiles;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 分页耗时对比，对同一段文本、同样的排版参数各跑几轮取中位数：
+ * <ul>
+ *     <li>原来的整本单个 StaticLayout 分页（TextPager.paginate）；</li>
+ *     <li>单线程增量分页；</li>
+ *     <li>按章节并行分页，线程池大小依次为 1、2、4 和全部核心数（不受应用里 min(核心数 - 1, 4) 的限制）。</li>
+ * </ul>
+ * 增量和按章节分页同时记录首批页面交给 sink 的时间。结果输出到 logcat（标签 PaginationBenchmark）
+ * 和 instrumentation 结果中，每一项都带上所用的线程数。同时检查每种方式的页面都首尾相接地覆盖全文。
+ */
+@RunWith(AndroidJUnit4.class)
+public class PaginationBenchmarkTest {
+    private static final String TAG = "PaginationBenchmark";
+
+    private static final int CHAPTERS = 200;
+    private static final int PARAGRAPHS_PER_CHAPTER = 30;
+    private static final int WIDTH_PX = 1000;
+    private static final int HEIGHT_PX = 1800;
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void comparePaginationStrategies() throws InterruptedException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        String text = buildBook();
+        assertEquals(CHAPTERS, TableOfContentsGenerator.findChapterStarts(text).length);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        Bundle results = new Bundle();
+        results.putInt("cores", cores);
+        StringBuilder report = new StringBuilder("文本长度 " + text.length() + "，章节数 " + CHAPTERS
+                + "，核心数 " + cores + "：");
+
+        // 先各跑一轮预热（字形缓存、JIT），不计入结果
+        runSingleLayout(context, text);
+        runIncremental(context, text);
+
+        long[] singleLayout = new long[ROUNDS];
+        long[][] incremental = new long[2][ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            singleLayout[i] = runSingleLayout(context, text);
+            long[] timing = runIncremental(context, text);
+            incremental[0][i] = timing[0];
+            incremental[1][i] = timing[1];
+        }
+        results.putLong("single_layout_ms", median(singleLayout));
+        results.putLong("incremental_ms", median(incremental[0]));
+        results.putLong("incremental_first_page_ms", median(incremental[1]));
+        report.append("单个 StaticLayout ").append(median(singleLayout)).append(" ms")
+                .append("；单线程增量分页 ").append(median(incremental[0]))
+                .append(" ms（首批 ").append(median(incremental[1])).append(" ms）");
+
+        TreeSet<Integer> threadCounts = new TreeSet<>(Arrays.asList(1, 2, 4, cores));
+        for (int threads : threadCounts) {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            long[][] byChapters = new long[2][ROUNDS];
+            try {
+                runByChapters(context, text, pool);
+                for (int i = 0; i < ROUNDS; i++) {
+                    long[] timing = runByChapters(context, text, pool);
+                    byChapters[0][i] = timing[0];
+                    byChapters[1][i] = timing[1];
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+            results.putLong("by_chapters_" + threads + "_threads_ms", median(byChapters[0]));
+            results.putLong("by_chapters_" + threads + "_threads_first_page_ms", median(byChapters[1]));
+            report.append("；按章节并行分页（").append(threads).append(" 线程）").append(median(byChapters[0]))
+                    .append(" ms（首批 ").append(median(byChapters[1])).append(" ms）");
+        }
+
+        Log.i(TAG, report.toString());
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+    }
+
+    private long runSingleLayout(Context context, String text) throws InterruptedException {
+        TextPager pager = createPager(context, text);
+        long start = SystemClock.elapsedRealtime();
+        pager.paginate();
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        assertCoversText(pager.getPages(), text.length());
+        return elapsed;
+    }
+
+    // 返回 {总耗时, 首批页面耗时}
+    private long[] runIncremental(Context context, String text) throws InterruptedException {
+        TextPager pager = createPager(context, text);
+        FirstBatchSink sink = new FirstBatchSink();
+        long start = SystemClock.elapsedRealtime();
+        pager.paginateIncrementally(0, sink);
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        assertCoversText(pager.getPages(), text.length());
+        return new long[]{elapsed, sink.firstBatchTime - start};
+    }
+
+    // 返回 {总耗时, 首批页面耗时}
+    private long[] runByChapters(Context context, String text, ExecutorService pool) throws InterruptedException {
+        TextPager pager = createPager(context, text);
+        FirstBatchSink sink = new FirstBatchSink();
+        long start = SystemClock.elapsedRealtime();
+        pager.paginateByChapters(0, pool, sink);
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        assertCoversText(pager.getPages(), text.length());
+        return new long[]{elapsed, sink.firstBatchTime - start};
+    }
+
+    private static TextPager createPager(Context context, String text) {
+        TextPager pager = new TextPager(context, text);
+        pager.setTextSize(18f);
+        pager.setLineSpacingExtra(4f);
+        pager.setVisibleArea(WIDTH_PX, HEIGHT_PX);
+        pager.setTypeface(Typeface.DEFAULT);
+        return pager;
+    }
+
+    private static void assertCoversText(PageTable pages, int textLength) {
+        assertTrue(pages.size() > 0);
+        assertEquals(0, pages.getPageStart(0));
+        for (int i = 1; i < pages.size(); i++) {
+            assertEquals(pages.getPageEnd(i - 1), pages.getPageStart(i));
+        }
+        assertEquals(textLength, pages.getPageEnd(pages.size() - 1));
+    }
+
+    // 生成带章节标题的正文，每章约 3 千字符
+    private static String buildBook() {
+        String paragraph = "　　夜色渐深，城外的河水在月光下缓缓流淌，远处传来几声犬吠。"
+                + "他站在桥头，望着对岸零星的灯火，想起了许多年前离家时的情景。"
+                + "那时他还年轻，以为外面的世界总会给出答案，如今却只剩下满身风尘。\n";
+        StringBuilder text = new StringBuilder();
+        for (int chapter = 1; chapter <= CHAPTERS; chapter++) {
+            text.append("第").append(chapter).append("章 归途\n");
+            for (int i = 0; i < PARAGRAPHS_PER_CHAPTER; i++) {
+                text.append(paragraph);
+            }
+        }
+        return text.toString();
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    // 记录第一批页面到达的时间
+    private static final class FirstBatchSink implements TextPager.PageSink {
+        long firstBatchTime = -1;
+
+        @Override
+        public void onPagesAppended(PageTable newPages) {
+            if (firstBatchTime < 0) {
+                firstBatchTime = SystemClock.elapsedRealtime();
+            }
+        }
+
+        @Override
+        public void onPagesPrepended(PageTable newPages) {
+        }
+    }
+}
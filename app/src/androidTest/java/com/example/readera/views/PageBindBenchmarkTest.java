@@ -0,0 +1,120 @@
+package com.example.readera.views;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.View;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.readera.utiles.PageTable;
+import com.example.readera.utiles.ReadingSettings;
+import com.example.readera.utiles.ReadingSettingsManager;
+import com.example.readera.utiles.TextPager;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 页面绑定耗时对比，在主线程上对同一个 NovelPageView 反复绑定页面，两种方式只有应用阅读设置的做法不同：
+ * <ul>
+ *     <li>旧方式：每次绑定都从 ReadingSettingsManager 读取字体、字号、行间距、内边距和颜色再逐项设置；</li>
+ *     <li>新方式：应用一次性解析好的 ReadingSettings 快照，版本不变时直接返回。</li>
+ * </ul>
+ * 平均耗时输出到 logcat（标签 PageBindBenchmark）和 instrumentation 结果中。
+ */
+@RunWith(AndroidJUnit4.class)
+public class PageBindBenchmarkTest {
+    private static final String TAG = "PageBindBenchmark";
+
+    private static final int WIDTH_PX = 1080;
+    private static final int HEIGHT_PX = 1920;
+    private static final int WARM_UP_BINDS = 200;
+    private static final int BINDS = 2000;
+
+    @Test
+    public void compareSettingsLookupAndSnapshotBinding() throws InterruptedException {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        Context context = instrumentation.getTargetContext();
+        ReadingSettingsManager manager = ReadingSettingsManager.getInstance(context);
+        ReadingSettings snapshot = manager.getSnapshot();
+        PageTable pages = paginate(context, snapshot);
+        assertTrue(pages.size() > 1);
+
+        long[] results = new long[2];
+        instrumentation.runOnMainSync(() -> {
+            NovelPageView view = new NovelPageView(context);
+            view.measure(View.MeasureSpec.makeMeasureSpec(WIDTH_PX, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(HEIGHT_PX, View.MeasureSpec.EXACTLY));
+            view.layout(0, 0, WIDTH_PX, HEIGHT_PX);
+
+            bindWithSettingsLookup(view, manager, pages, WARM_UP_BINDS);
+            results[0] = bindWithSettingsLookup(view, manager, pages, BINDS);
+            bindWithSnapshot(view, snapshot, pages, WARM_UP_BINDS);
+            results[1] = bindWithSnapshot(view, snapshot, pages, BINDS);
+        });
+
+        float lookupMicros = results[0] / 1000f / BINDS;
+        float snapshotMicros = results[1] / 1000f / BINDS;
+        Log.i(TAG, String.format("平均每次绑定：逐项读取设置 %.1f μs，应用设置快照 %.1f μs", lookupMicros, snapshotMicros));
+        Bundle status = new Bundle();
+        status.putFloat("settings_lookup_bind_us", lookupMicros);
+        status.putFloat("snapshot_bind_us", snapshotMicros);
+        instrumentation.sendStatus(0, status);
+    }
+
+    // 旧的设置方式（改用快照之前 NovelPageAdapter.applyNovelPageViewSettings 的做法），页面设置与新方式相同，只比较设置的开销
+    private static long bindWithSettingsLookup(NovelPageView view, ReadingSettingsManager manager,
+                                               PageTable pages, int binds) {
+        long start = System.nanoTime();
+        for (int i = 0; i < binds; i++) {
+            view.setTypeface(manager.getTypeface());
+            view.setTextSize(manager.getTextSizeSp());
+            view.setLineSpacingExtra(manager.getLineSpacingExtraDp());
+            int[] padding = manager.getPagePaddingPx();
+            view.setPagePadding(padding[0], padding[1], padding[2], padding[3]);
+            view.setTextColor(manager.getTextColor());
+            view.setSystemBarPadding(0);
+            view.setPage(pages, i % pages.size());
+        }
+        return System.nanoTime() - start;
+    }
+
+    // 现在 NovelPageAdapter.onBindViewHolder 的做法（不使用后台预排的版面）
+    private static long bindWithSnapshot(NovelPageView view, ReadingSettings snapshot, PageTable pages, int binds) {
+        long start = System.nanoTime();
+        for (int i = 0; i < binds; i++) {
+            view.applySettings(snapshot);
+            view.setSystemBarPadding(0);
+            view.setPage(pages, i % pages.size());
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static PageTable paginate(Context context, ReadingSettings settings) throws InterruptedException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 400; i++) {
+            text.append("　　夜色渐深，城外的河水在月光下缓缓流淌，远处传来几声犬吠。他站在桥头，望着对岸零星的灯火。\n");
+        }
+        TextPager pager = new TextPager(context, text.toString());
+        pager.setTextSize(settings.getTextSizeSp());
+        pager.setLineSpacingExtra(settings.getLineSpacingExtraDp());
+        pager.setTypeface(settings.getTypeface());
+        pager.setVisibleArea(WIDTH_PX - settings.getPaddingLeft() - settings.getPaddingRight(),
+                HEIGHT_PX - settings.getPaddingTop() - settings.getPaddingBottom());
+        pager.paginateIncrementally(0, new TextPager.PageSink() {
+            @Override
+            public void onPagesAppended(PageTable newPages) {
+            }
+
+            @Override
+            public void onPagesPrepended(PageTable newPages) {
+            }
+        });
+        return pager.getPages();
+    }
+}
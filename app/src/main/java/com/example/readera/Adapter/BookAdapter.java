@@ -3,14 +3,16 @@ package com.example.readera.Adapter;
 import static com.example.readera.Enum.CoverDataType.TEXT;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 
 import com.example.readera.fragments.BookShelfFragment;
-import com.example.readera.utiles.CoverUtils;
+import com.example.readera.utiles.CoverCache;
 import android.net.Uri;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.ImageView;
@@ -25,19 +27,26 @@ import com.example.readera.Enum.CoverDataType;
 import com.example.readera.R;
 import android.widget.Toast;
 import java.util.List;
+import java.util.concurrent.Future;
 
-public class BookAdapter extends ArrayAdapter<BookInfo> {
+/**
+ * 书籍列表的适配器。文字封面通过 CoverCache 异步加载，所在的 ListView 需要把适配器设为
+ * RecyclerListener，列表项滑出屏幕时取消还没完成的封面请求。
+ */
+public class BookAdapter extends ArrayAdapter<BookInfo> implements AbsListView.RecyclerListener {
 
     private static final int COVER_WIDTH = 80;
     private static final int COVER_HEIGHT = 120;
 
     private final LayoutInflater inflater;
+    private final CoverCache coverCache;
     private final BookDao bookDao; // 添加 BookDao 实例
     private final BookShelfFragment.OnBookStatusChangeListener listener; // 添加接口引用
 
     public BookAdapter(@NonNull Context context, List<BookInfo> books, BookShelfFragment.OnBookStatusChangeListener listener) {
         super(context, R.layout.item_book,books);
         inflater = LayoutInflater.from(context);
+        coverCache = CoverCache.getInstance(context);
         bookDao = new BookDao(context); // 初始化 BookDao
         this.listener = listener; // 保存监听器实例
     }
@@ -62,63 +71,82 @@ public class BookAdapter extends ArrayAdapter<BookInfo> {
 
     private void setupBookItemView(ViewHolder holder, BookInfo currentBook) {
         holder.bookTitleTextView.setText(currentBook.getTitle());
-        loadCover(holder.bookImageView, currentBook);
+        loadCover(holder, currentBook);
 
         holder.unreadButton.setSelected(currentBook.isUnread());
         holder.readButton.setSelected(currentBook.isRead());
         holder.favoriteButton.setSelected(currentBook.isFavorite());
 
-        final String bookTitle = currentBook.getTitle();
+        final long bookId = currentBook.getId();
+        // 写入完成后触发回调，通知 Fragment 刷新列表
+        final Runnable notifyChanged = () -> {
+            if (listener != null) {
+                listener.onBookStatusChanged();
+            }
+        };
 
+        // 按钮状态立即更新，数据库写入在后台线程进行
         holder.unreadButton.setOnClickListener(v -> {
             boolean isUnread = !currentBook.isUnread();
-            bookDao.updateBookUnreadStatus(bookTitle, isUnread);
             currentBook.setUnread(isUnread);
-            if (isUnread && currentBook.isRead()) {
-                bookDao.updateBookReadStatus(bookTitle, false);
-                currentBook.setRead(false);
-            }
-            // 触发回调，通知 Fragment 刷新列表
-            if (listener != null) {
-                listener.onBookStatusChanged();
+            if (isUnread) {
+                currentBook.setRead(false); // 待读和已读互斥，数据库中在同一条语句里清除
             }
+            holder.unreadButton.setSelected(isUnread);
+            holder.readButton.setSelected(currentBook.isRead());
+            bookDao.updateBookUnreadStatusAsync(bookId, isUnread, notifyChanged);
             Toast.makeText(getContext(), isUnread ? R.string.mark_unread_toast : R.string.unmark_unread_toast, Toast.LENGTH_SHORT).show();
         });
 
         holder.readButton.setOnClickListener(v -> {
             boolean isRead = !currentBook.isRead();
-            bookDao.updateBookReadStatus(bookTitle, isRead);
             currentBook.setRead(isRead);
-            if (isRead && currentBook.isUnread()) {
-                bookDao.updateBookUnreadStatus(bookTitle, false);
+            if (isRead) {
                 currentBook.setUnread(false);
             }
-            // 触发回调，通知 Fragment 刷新列表
-            if (listener != null) {
-                listener.onBookStatusChanged();
-            }
+            holder.readButton.setSelected(isRead);
+            holder.unreadButton.setSelected(currentBook.isUnread());
+            bookDao.updateBookReadStatusAsync(bookId, isRead, notifyChanged);
             Toast.makeText(getContext(), isRead ? R.string.mark_read_toast : R.string.unmark_read_toast, Toast.LENGTH_SHORT).show();
         });
 
         holder.favoriteButton.setOnClickListener(v -> {
             boolean isFavorite = !currentBook.isFavorite();
-            bookDao.updateBookFavoriteStatus(bookTitle, isFavorite);
             currentBook.setFavorite(isFavorite);
             holder.favoriteButton.setSelected(isFavorite);
-            // 触发回调，通知 Fragment 刷新列表
-            if (listener != null) {
-                listener.onBookStatusChanged();
-            }
+            bookDao.updateBookFavoriteStatusAsync(bookId, isFavorite, notifyChanged);
             Toast.makeText(getContext(), isFavorite ? R.string.mark_favorite_toast : R.string.mark_unFavorite_toast, Toast.LENGTH_SHORT).show();
         });
     }
 
     //加载封面
-    private void loadCover(ImageView imageView, BookInfo bookInfo) {
+    private void loadCover(ViewHolder holder, BookInfo bookInfo) {
+        ImageView imageView = holder.bookImageView;
+        if (bookInfo != null && bookInfo.coverDataType() == TEXT) {
+            String key = CoverCache.buildKey(bookInfo.getTitle(), COVER_WIDTH, COVER_HEIGHT);
+            if (key.equals(holder.coverKey) && holder.coverTask == null) {
+                return; // 同一个封面已经显示
+            }
+            cancelCoverLoad(holder);
+            holder.coverKey = key;
+            Bitmap cached = coverCache.getCached(key);
+            if (cached != null) {
+                imageView.setImageBitmap(cached);
+                return;
+            }
+            imageView.setImageResource(R.drawable.ic_book_placeholder);
+            holder.coverTask = coverCache.load(key, bookInfo.getTitle(), COVER_WIDTH, COVER_HEIGHT, (loadedKey, cover) -> {
+                // 回调前列表项可能已经绑定了别的书
+                if (loadedKey.equals(holder.coverKey)) {
+                    holder.coverTask = null;
+                    imageView.setImageBitmap(cover);
+                }
+            });
+            return;
+        }
+        cancelCoverLoad(holder);
         if (bookInfo != null ) {
-            if (bookInfo.coverDataType() == TEXT) {
-                imageView.setImageBitmap(CoverUtils.generateCoverBitmap(bookInfo.getTitle(), COVER_WIDTH, COVER_HEIGHT));
-            } else if (bookInfo.coverDataType() == CoverDataType.RESOURCE_ID) {
+            if (bookInfo.coverDataType() == CoverDataType.RESOURCE_ID) {
                 try {
                     int resourceId = Integer.parseInt(bookInfo.coverData());
                     imageView.setImageResource(resourceId);
@@ -139,7 +167,22 @@ public class BookAdapter extends ArrayAdapter<BookInfo> {
         }
     }
 
+    private void cancelCoverLoad(ViewHolder holder) {
+        if (holder.coverTask != null) {
+            holder.coverTask.cancel(true);
+            holder.coverTask = null;
+        }
+        holder.coverKey = null;
+    }
 
+    // 列表项滑出屏幕被回收，取消还没完成的封面请求
+    @Override
+    public void onMovedToScrapHeap(View view) {
+        Object tag = view.getTag();
+        if (tag instanceof ViewHolder) {
+            cancelCoverLoad((ViewHolder) tag);
+        }
+    }
 
     static class ViewHolder {
         ImageView bookImageView;
@@ -148,6 +191,8 @@ public class BookAdapter extends ArrayAdapter<BookInfo> {
         Button unreadButton;
         Button readButton;
         Button favoriteButton;
+        Future<?> coverTask; // 还没完成的封面请求
+        String coverKey; // 当前显示或正在加载的封面
         ViewHolder(View view) {
             bookImageView = view.findViewById(R.id.bookImageView);
             bookTitleTextView = view.findViewById(R.id.bookTitleTextView);
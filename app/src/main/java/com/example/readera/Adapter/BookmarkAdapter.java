@@ -63,6 +63,21 @@ public class BookmarkAdapter extends RecyclerView.Adapter<BookmarkAdapter.Bookma
         notifyDataSetChanged();
     }
 
+    // 分页加载书签时把新读取的一页追加到末尾
+    public void appendBookmarks(List<Bookmark> moreBookmarks) {
+        int start = bookmarkList.size();
+        bookmarkList.addAll(moreBookmarks);
+        notifyItemRangeInserted(start, moreBookmarks.size());
+    }
+
+    public void removeBookmark(Bookmark bookmark) {
+        int position = bookmarkList.indexOf(bookmark);
+        if (position >= 0) {
+            bookmarkList.remove(position);
+            notifyItemRemoved(position);
+        }
+    }
+
     static class BookmarkViewHolder extends RecyclerView.ViewHolder {
         TextView tvBookmarkTitle;
         TextView tvBookmarkPage;
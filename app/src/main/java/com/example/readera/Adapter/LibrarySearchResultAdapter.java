@@ -0,0 +1,98 @@
+package com.example.readera.Adapter;
+
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.readera.R;
+import com.example.readera.model.LibrarySearchResult;
+import com.example.readera.utiles.LibrarySearchText;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LibrarySearchResultAdapter extends RecyclerView.Adapter<LibrarySearchResultAdapter.LibraryResultViewHolder> {
+
+    private List<LibrarySearchResult> results = new ArrayList<>();
+    private final OnLibraryResultClickListener listener;
+
+    public interface OnLibraryResultClickListener {
+        void onLibraryResultClick(LibrarySearchResult result);
+    }
+
+    public LibrarySearchResultAdapter(OnLibraryResultClickListener listener) {
+        this.listener = listener;
+    }
+
+    @NonNull
+    @Override
+    public LibraryResultViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_library_search_result, parent, false);
+        return new LibraryResultViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull LibraryResultViewHolder holder, int position) {
+        LibrarySearchResult result = results.get(position);
+        holder.tvTitle.setText(result.title);
+        holder.tvSnippet.setText(highlight(LibrarySearchText.decodeSnippet(result.snippet)));
+        holder.tvHits.setText("命中 " + result.hitCount + " 处");
+        holder.itemView.setOnClickListener(v -> {
+            if (listener != null) {
+                listener.onLibraryResultClick(result);
+            }
+        });
+    }
+
+    @Override
+    public int getItemCount() {
+        return results.size();
+    }
+
+    public void updateData(List<LibrarySearchResult> newResults) {
+        this.results = newResults;
+        notifyDataSetChanged();
+    }
+
+    // 把摘要中标记出的搜索词加粗，并去掉标记字符
+    private static CharSequence highlight(String snippet) {
+        SpannableStringBuilder builder = new SpannableStringBuilder();
+        int markStart = -1;
+        for (int i = 0; i < snippet.length(); i++) {
+            char c = snippet.charAt(i);
+            if (c == LibrarySearchResult.MARK_START) {
+                markStart = builder.length();
+            } else if (c == LibrarySearchResult.MARK_END) {
+                if (markStart >= 0 && markStart < builder.length()) {
+                    builder.setSpan(new StyleSpan(Typeface.BOLD), markStart, builder.length(),
+                            Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                }
+                markStart = -1;
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder;
+    }
+
+    static class LibraryResultViewHolder extends RecyclerView.ViewHolder {
+        TextView tvTitle;
+        TextView tvSnippet;
+        TextView tvHits;
+
+        public LibraryResultViewHolder(@NonNull View itemView) {
+            super(itemView);
+            tvTitle = itemView.findViewById(R.id.tv_library_result_title);
+            tvSnippet = itemView.findViewById(R.id.tv_library_result_snippet);
+            tvHits = itemView.findViewById(R.id.tv_library_result_hits);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.example.readera.Adapter;
 
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -9,45 +8,58 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.readera.R;
-import com.example.readera.utiles.ReadingSettingsManager;
+import com.example.readera.utiles.PageLayoutPrefetcher;
+import com.example.readera.utiles.PageRasterCache;
+import com.example.readera.utiles.PageTable;
+import com.example.readera.utiles.ReadingSettings;
 import com.example.readera.views.NovelPageView;
 
-import java.util.List;
-
 public class NovelPageAdapter extends RecyclerView.Adapter<NovelPageAdapter.NovelPageViewHolder> {
 
-    private final List<String> pages;
+    private final PageTable pages;
     private int statusBarHeight;
-    private ReadingSettingsManager readingSettingsManager; // 添加此成员变量
+    private ReadingSettings readingSettings; // 当前阅读设置快照，由 ReadingActivity 推送
+    private final PageLayoutPrefetcher layoutPrefetcher; // 后台预排版的页面，可以为 null
 
-    public NovelPageAdapter(List<String> pages,int statusBarHeight) {
+    public NovelPageAdapter(PageTable pages, int statusBarHeight, ReadingSettings readingSettings,
+                            PageLayoutPrefetcher layoutPrefetcher) {
         this.pages = pages;
         this.statusBarHeight = statusBarHeight;
-
+        this.readingSettings = readingSettings;
+        this.layoutPrefetcher = layoutPrefetcher;
     }
 
 
     @NonNull
     @Override
     public NovelPageViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        // 在 ViewHolder 创建时初始化 ReadingSettingsManager
-        if (readingSettingsManager == null) {
-            readingSettingsManager = new ReadingSettingsManager(parent.getContext());
-        }
         View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_novel_page, parent, false);
         return new NovelPageViewHolder(view);
     }
 
     @Override
     public void onBindViewHolder(@NonNull NovelPageViewHolder holder, int position) {
-        String pageContent = pages.get(position);
-        holder.novelPageView.setPageText(pageContent);
-        Log.d("NovelPageAdapter", "绑定页面 " + position);
-
-        // 关键：在这里应用阅读设置
-        applyNovelPageViewSettings(holder.novelPageView);
+        // 先应用设置再设置页面，页面的行数据要和内边距算出的宽度一致才会直接使用
+        holder.novelPageView.applySettings(readingSettings);
         // 关键：在这里设置系统栏内边距给 NovelPageView
         holder.novelPageView.setSystemBarPadding(statusBarHeight);
+        PageLayoutPrefetcher.PreparedPage prepared = null;
+        if (layoutPrefetcher != null && readingSettings != null) {
+            prepared = layoutPrefetcher.get(pages, position, readingSettings.getVersion());
+        }
+        PageRasterCache rasterCache = layoutPrefetcher != null ? layoutPrefetcher.getRasterCache() : null;
+        PageRasterCache.PageRaster raster = rasterCache != null ? rasterCache.acquire(prepared) : null;
+        holder.novelPageView.setPage(pages, position, prepared, raster);
+        // 视图已经换成新的位图，之前的引用这时才释放，旧位图不会在还显示着的时候被重画
+        holder.releasePageRaster();
+        holder.pageRaster = raster;
+        holder.pageRasterCache = rasterCache;
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull NovelPageViewHolder holder) {
+        holder.novelPageView.clearPageRaster();
+        holder.releasePageRaster();
     }
 
     @Override
@@ -55,34 +67,55 @@ public class NovelPageAdapter extends RecyclerView.Adapter<NovelPageAdapter.Nove
         return pages.size();
     }
 
-    public List<String > getPages() {
+    public PageTable getPages() {
         return this.pages;
     }
 
+    /**
+     * 更新阅读设置快照。版本变化时重新绑定所有页面，只有可见页面会真正重绘。
+     */
+    public void setReadingSettings(ReadingSettings settings) {
+        if (settings == null || (readingSettings != null && readingSettings.getVersion() == settings.getVersion())) {
+            return;
+        }
+        readingSettings = settings;
+        notifyItemRangeChanged(0, pages.size());
+    }
+
+    /**
+     * 增量分页时在末尾追加一批页面。
+     */
+    public void appendPages(PageTable newPages) {
+        int start = pages.size();
+        pages.append(newPages);
+        notifyItemRangeInserted(start, newPages.size());
+    }
+
+    /**
+     * 增量分页时在开头插入一批页面，ViewPager2 会保持当前显示的页面不变。
+     */
+    public void prependPages(PageTable newPages) {
+        pages.prepend(newPages);
+        notifyItemRangeInserted(0, newPages.size());
+    }
+
     public static class NovelPageViewHolder extends RecyclerView.ViewHolder {
         public NovelPageView novelPageView; // 对您的自定义视图的引用
+        // 绑定时从位图缓存取得的引用，重新绑定或回收时释放
+        private PageRasterCache.PageRaster pageRaster;
+        private PageRasterCache pageRasterCache;
 
         public NovelPageViewHolder(@NonNull View itemView) {
             super(itemView);
             novelPageView = itemView.findViewById(R.id.novel_page_view);
         }
-    }
 
-    /**
-            * 将当前的阅读设置（字体、大小、行间距、内边距、颜色）应用到指定的 NovelPageView。
-     *
-            * @param pageView 需要应用设置的 NovelPageView
-     */
-    private void applyNovelPageViewSettings(NovelPageView pageView) {
-        if (pageView != null && readingSettingsManager != null) {
-            pageView.setTypeface(readingSettingsManager.getTypeface());
-            pageView.setTextSize(readingSettingsManager.getTextSizeSp());
-            pageView.setLineSpacingExtra(readingSettingsManager.getLineSpacingExtraDp());
-            int[] padding = readingSettingsManager.getPagePaddingPx();
-            pageView.setPagePadding(padding[0], padding[1], padding[2], padding[3]);
-            pageView.setTextColor(readingSettingsManager.getTextColor());
-            pageView.invalidate(); // 请求重绘以应用所有改变
-            Log.d("NovelPageAdapter", "应用设置到 NovelPageView: " + pageView.hashCode());
+        private void releasePageRaster() {
+            if (pageRaster != null) {
+                pageRasterCache.release(pageRaster);
+                pageRaster = null;
+                pageRasterCache = null;
+            }
         }
     }
-}
\ No newline at end of file
+}
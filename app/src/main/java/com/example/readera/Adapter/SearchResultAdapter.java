@@ -0,0 +1,102 @@
+package com.example.readera.Adapter;
+
+import android.graphics.Typeface;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.readera.R;
+import com.example.readera.model.SearchResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class SearchResultAdapter extends RecyclerView.Adapter<SearchResultAdapter.SearchResultViewHolder> {
+
+    private final List<SearchResult> results = new ArrayList<>();
+    private final OnSearchResultClickListener listener;
+    private String query = ""; // 当前的搜索词，用于在摘要中加粗命中的部分
+
+    public interface OnSearchResultClickListener {
+        void onSearchResultClick(SearchResult result);
+    }
+
+    public SearchResultAdapter(OnSearchResultClickListener listener) {
+        this.listener = listener;
+    }
+
+    @NonNull
+    @Override
+    public SearchResultViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_search_result, parent, false);
+        return new SearchResultViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull SearchResultViewHolder holder, int position) {
+        SearchResult result = results.get(position);
+        holder.tvSnippet.setText(highlight(result.snippet));
+        if (result.pageIndex >= 0) {
+            holder.tvPage.setText("页码: " + (result.pageIndex + 1));
+        } else {
+            holder.tvPage.setText("位置: " + result.charOffset);
+        }
+        holder.itemView.setOnClickListener(v -> {
+            if (listener != null) {
+                listener.onSearchResultClick(result);
+            }
+        });
+    }
+
+    @Override
+    public int getItemCount() {
+        return results.size();
+    }
+
+    // 开始新的搜索时清空结果
+    public void clear(String newQuery) {
+        query = newQuery;
+        results.clear();
+        notifyDataSetChanged();
+    }
+
+    // 搜索结果分批到达，追加到末尾
+    public void appendResults(List<SearchResult> moreResults) {
+        int start = results.size();
+        results.addAll(moreResults);
+        notifyItemRangeInserted(start, moreResults.size());
+    }
+
+    // 加粗摘要中第一次出现的搜索词（忽略英文大小写）
+    private CharSequence highlight(String snippet) {
+        if (query.isEmpty()) {
+            return snippet;
+        }
+        int index = snippet.toLowerCase(Locale.ROOT).indexOf(query.toLowerCase(Locale.ROOT));
+        if (index < 0) {
+            return snippet;
+        }
+        SpannableString spannable = new SpannableString(snippet);
+        spannable.setSpan(new StyleSpan(Typeface.BOLD), index, index + query.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        return spannable;
+    }
+
+    static class SearchResultViewHolder extends RecyclerView.ViewHolder {
+        TextView tvSnippet;
+        TextView tvPage;
+
+        public SearchResultViewHolder(@NonNull View itemView) {
+            super(itemView);
+            tvSnippet = itemView.findViewById(R.id.tv_search_snippet);
+            tvPage = itemView.findViewById(R.id.tv_search_page);
+        }
+    }
+}
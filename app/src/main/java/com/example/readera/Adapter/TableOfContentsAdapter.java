@@ -61,6 +61,13 @@ public class TableOfContentsAdapter extends RecyclerView.Adapter<TableOfContents
         notifyDataSetChanged();
     }
 
+    // 分页加载目录时把新读取的一页追加到末尾
+    public void appendData(List<TableOfContents> moreEntries) {
+        int start = tocEntries.size();
+        tocEntries.addAll(moreEntries);
+        notifyItemRangeInserted(start, moreEntries.size());
+    }
+
     static class TocViewHolder extends RecyclerView.ViewHolder {
         TextView tvTitle;
 
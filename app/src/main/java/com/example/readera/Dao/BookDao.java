@@ -4,26 +4,86 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.util.Log;
 
 import com.example.readera.model.BookInfo;
 import com.example.readera.Enum.CoverDataType;
 import com.example.readera.database.BookDatabaseHelper;
+import com.example.readera.database.DatabaseExecutor;
 
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * 书籍表的读写。所有实例共用 BookDatabaseHelper 中一直打开的连接，方法本身是同步的；
+ * 在主线程上请使用带 Async 后缀的版本，它们在 DatabaseExecutor 上执行并把结果交回主线程。
+ */
 public class BookDao {
     private static final String TAG = "BookDao"; // 定义TAG常量
     private final BookDatabaseHelper dbHelper;
 
+    // 书架上频繁切换的三个状态使用预编译语句（缓存在 BookDatabaseHelper 中，只编译一次），
+    // “已读”和“待读”互斥，在同一条语句中清除另一个
+    private static final String SQL_UPDATE_READ =
+            "UPDATE " + BookDatabaseHelper.TABLE_BOOKS + " SET "
+                    + BookDatabaseHelper.COLUMN_IS_READ + " = ?1, "
+                    + BookDatabaseHelper.COLUMN_IS_UNREAD + " = CASE WHEN ?1 = 1 THEN 0 ELSE "
+                    + BookDatabaseHelper.COLUMN_IS_UNREAD + " END WHERE "
+                    + BookDatabaseHelper.COLUMN_ID + " = ?2";
+    private static final String SQL_UPDATE_UNREAD =
+            "UPDATE " + BookDatabaseHelper.TABLE_BOOKS + " SET "
+                    + BookDatabaseHelper.COLUMN_IS_UNREAD + " = ?1, "
+                    + BookDatabaseHelper.COLUMN_IS_READ + " = CASE WHEN ?1 = 1 THEN 0 ELSE "
+                    + BookDatabaseHelper.COLUMN_IS_READ + " END WHERE "
+                    + BookDatabaseHelper.COLUMN_ID + " = ?2";
+    private static final String SQL_UPDATE_FAVORITE =
+            "UPDATE " + BookDatabaseHelper.TABLE_BOOKS + " SET "
+                    + BookDatabaseHelper.COLUMN_IS_FAVORITE + " = ?1 WHERE "
+                    + BookDatabaseHelper.COLUMN_ID + " = ?2";
+
     public BookDao(Context context){
-        dbHelper = new BookDatabaseHelper(context);
+        dbHelper = BookDatabaseHelper.getInstance(context);
     }
 
     public long addBook(BookInfo bookInfo){
         SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues values = toContentValues(bookInfo);
+        long id = db.insert(BookDatabaseHelper.TABLE_BOOKS, null, values);
+        if (id > 0) {
+            bookInfo.setId(id);
+        }
+        Log.d(TAG, "Added book: " + bookInfo.getTitle() + " with ID: " + id);
+        return id;
+    }
+
+    /**
+     * 批量添加书籍，在一个事务中完成。URI 已存在的书会被跳过。
+     * @return 实际添加的书籍（已填入主键）
+     */
+    public List<BookInfo> addBooks(List<BookInfo> books) {
+        List<BookInfo> added = new ArrayList<>(books.size());
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (BookInfo bookInfo : books) {
+                long id = db.insertWithOnConflict(BookDatabaseHelper.TABLE_BOOKS, null,
+                        toContentValues(bookInfo), SQLiteDatabase.CONFLICT_IGNORE);
+                if (id > 0) {
+                    bookInfo.setId(id);
+                    added.add(bookInfo);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "Added " + added.size() + " of " + books.size() + " books in one transaction");
+        return added;
+    }
+
+    private static ContentValues toContentValues(BookInfo bookInfo) {
         ContentValues values = new ContentValues();
         values.put(BookDatabaseHelper.COLUMN_TITLE, bookInfo.getTitle());
         values.put(BookDatabaseHelper.COLUMN_URI, bookInfo.getUri().toString());
@@ -35,18 +95,15 @@ public class BookDao {
         values.put(BookDatabaseHelper.COLUMN_FILE_SIZE, bookInfo.getFileSize());
         values.put(BookDatabaseHelper.COLUMN_LAST_MODIFIED, bookInfo.getLastModified());
         values.put(BookDatabaseHelper.COLUMN_FILE_HASH, bookInfo.getFileHash()); // 存储文件哈希值
-
-
-        long id = db.insert(BookDatabaseHelper.TABLE_BOOKS, null, values);
-        db.close();
-        Log.d(TAG, "Added book: " + bookInfo.getTitle() + " with ID: " + id);
-        return id;
+        values.put(BookDatabaseHelper.COLUMN_QUICK_HASH, bookInfo.getQuickHash());
+        return values;
     }
 
     /**
      * 从 Cursor 中提取 BookInfo 对象，这是共享的辅助方法。
      */
     private BookInfo extractBookInfoFromCursor(Cursor cursor) {
+        long id = cursor.getLong(cursor.getColumnIndexOrThrow(BookDatabaseHelper.COLUMN_ID));
         String title = cursor.getString(cursor.getColumnIndexOrThrow(BookDatabaseHelper.COLUMN_TITLE));
         String uriString = cursor.getString(cursor.getColumnIndexOrThrow(BookDatabaseHelper.COLUMN_URI));
         Uri uri = Uri.parse(uriString);
@@ -69,12 +126,15 @@ public class BookDao {
         long lastModified = cursor.getLong(cursor.getColumnIndexOrThrow(BookDatabaseHelper.COLUMN_LAST_MODIFIED));
         String fileHash = cursor.getString(cursor.getColumnIndexOrThrow(BookDatabaseHelper.COLUMN_FILE_HASH));
 
-        return new BookInfo(title, uri, coverData, coverDataType, isRead, isUnread, isFavorite, fileSize, lastModified, fileHash);
+        BookInfo bookInfo = new BookInfo(title, uri, coverData, coverDataType, isRead, isUnread, isFavorite, fileSize, lastModified, fileHash);
+        bookInfo.setId(id);
+        bookInfo.setQuickHash(cursor.getString(cursor.getColumnIndexOrThrow(BookDatabaseHelper.COLUMN_QUICK_HASH)));
+        return bookInfo;
     }
 
     /**
      * 通用的查询书籍列表的方法
-     * @param selection 查询条件，例如 "COLUMN_IS_READ = ?"
+     * @param selection 查询条件，例如 "COLUMN_URI = ?"
      * @param selectionArgs 查询条件的参数
      * @return 符合条件的 BookInfo 列表
      */
@@ -84,6 +144,7 @@ public class BookDao {
         Cursor cursor = null; // 初始化为 null，确保 finally 块中能安全关闭
 
         String[] projection = { // 定义所有需要查询的列
+                BookDatabaseHelper.COLUMN_ID,
                 BookDatabaseHelper.COLUMN_TITLE,
                 BookDatabaseHelper.COLUMN_URI,
                 BookDatabaseHelper.COLUMN_COVER_DATA,
@@ -93,7 +154,8 @@ public class BookDao {
                 BookDatabaseHelper.COLUMN_IS_FAVORITE,
                 BookDatabaseHelper.COLUMN_FILE_SIZE,
                 BookDatabaseHelper.COLUMN_LAST_MODIFIED,
-                BookDatabaseHelper.COLUMN_FILE_HASH
+                BookDatabaseHelper.COLUMN_FILE_HASH,
+                BookDatabaseHelper.COLUMN_QUICK_HASH
         };
 
         try {
@@ -118,7 +180,6 @@ public class BookDao {
             if (cursor != null) {
                 cursor.close();
             }
-            db.close();
         }
         return bookList;
     }
@@ -128,128 +189,219 @@ public class BookDao {
     }
 
     public List<BookInfo> getAllUnreadBooks() {
-       return getBooksBySelection(BookDatabaseHelper.COLUMN_IS_UNREAD + " = ?", new String[]{"1"});
+       return getBooksBySelection(BookDatabaseHelper.COLUMN_IS_UNREAD + " = 1", null);
     }
     public List<BookInfo> getAllFavoriteBooks() {
-        return getBooksBySelection(BookDatabaseHelper.COLUMN_IS_FAVORITE + " = ?", new String[]{"1"});
+        return getBooksBySelection(BookDatabaseHelper.COLUMN_IS_FAVORITE + " = 1", null);
     }
     public List<BookInfo> getAllReadBooks() {
-        return getBooksBySelection(BookDatabaseHelper.COLUMN_IS_READ + " = ?", new String[]{"1"});
+        return getBooksBySelection(BookDatabaseHelper.COLUMN_IS_READ + " = 1", null);
     }
 
-    public void updateBookReadStatus(String title, boolean isRead) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(BookDatabaseHelper.COLUMN_IS_READ, isRead ? 1 : 0);
-        int rowsAffected = db.update(BookDatabaseHelper.TABLE_BOOKS, values,
-                BookDatabaseHelper.COLUMN_TITLE + " = ?",
-                new String[]{title});
-        db.close();
-        Log.d(TAG, "Updated read status for " + title + ", rows affected: " + rowsAffected);
+    public void getAllBooksAsync(DatabaseExecutor.ResultCallback<List<BookInfo>> callback) {
+        DatabaseExecutor.submit(this::getAllBooks, callback);
     }
 
-    public void updateBookUnreadStatus(String title, boolean isUnread) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(BookDatabaseHelper.COLUMN_IS_UNREAD, isUnread ? 1 : 0);
-        int rowsAffected = db.update(BookDatabaseHelper.TABLE_BOOKS, values,
-                BookDatabaseHelper.COLUMN_TITLE + " = ?",
-                new String[]{title});
-        db.close();
-        Log.d(TAG, "Updated unread status for " + title + ", rows affected: " + rowsAffected);
+    public void getAllUnreadBooksAsync(DatabaseExecutor.ResultCallback<List<BookInfo>> callback) {
+        DatabaseExecutor.submit(this::getAllUnreadBooks, callback);
     }
 
-    public void updateBookFavoriteStatus(String title, boolean isFavorite) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(BookDatabaseHelper.COLUMN_IS_FAVORITE, isFavorite ? 1 : 0);
-        int rowsAffected = db.update(BookDatabaseHelper.TABLE_BOOKS, values,
-                BookDatabaseHelper.COLUMN_TITLE + " = ?",
-                new String[]{title});
-        db.close();
-        Log.d(TAG, "Updated favorite status for " + title + ", rows affected: " + rowsAffected);
+    public void getAllFavoriteBooksAsync(DatabaseExecutor.ResultCallback<List<BookInfo>> callback) {
+        DatabaseExecutor.submit(this::getAllFavoriteBooks, callback);
+    }
+
+    public void getAllReadBooksAsync(DatabaseExecutor.ResultCallback<List<BookInfo>> callback) {
+        DatabaseExecutor.submit(this::getAllReadBooks, callback);
+    }
+
+    /**
+     * 根据 URI 查询书籍。
+     * @return 书籍信息，不存在时返回 null
+     */
+    public BookInfo getBookByUri(Uri uri) {
+        List<BookInfo> books = getBooksBySelection(BookDatabaseHelper.COLUMN_URI + " = ?", new String[]{uri.toString()});
+        return books.isEmpty() ? null : books.get(0);
+    }
+
+    // 标记已读时同时取消“待读”
+    public void updateBookReadStatus(long bookId, boolean isRead) {
+        int rowsAffected = executeStatusUpdate(SQL_UPDATE_READ, bookId, isRead);
+        Log.d(TAG, "Updated read status for book " + bookId + ", rows affected: " + rowsAffected);
+    }
+
+    // 标记待读时同时取消“已读”
+    public void updateBookUnreadStatus(long bookId, boolean isUnread) {
+        int rowsAffected = executeStatusUpdate(SQL_UPDATE_UNREAD, bookId, isUnread);
+        Log.d(TAG, "Updated unread status for book " + bookId + ", rows affected: " + rowsAffected);
+    }
+
+    public void updateBookFavoriteStatus(long bookId, boolean isFavorite) {
+        int rowsAffected = executeStatusUpdate(SQL_UPDATE_FAVORITE, bookId, isFavorite);
+        Log.d(TAG, "Updated favorite status for book " + bookId + ", rows affected: " + rowsAffected);
+    }
+
+    // 按主键更新，书架上的书再多也只是一次索引查找
+    private int executeStatusUpdate(String sql, long bookId, boolean value) {
+        SQLiteStatement statement = dbHelper.getCachedStatement(sql);
+        synchronized (statement) {
+            statement.bindLong(1, value ? 1 : 0);
+            statement.bindLong(2, bookId);
+            try {
+                return statement.executeUpdateDelete();
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    public void updateBookReadStatusAsync(long bookId, boolean isRead, Runnable onComplete) {
+        DatabaseExecutor.execute(() -> updateBookReadStatus(bookId, isRead), onComplete);
+    }
+
+    public void updateBookUnreadStatusAsync(long bookId, boolean isUnread, Runnable onComplete) {
+        DatabaseExecutor.execute(() -> updateBookUnreadStatus(bookId, isUnread), onComplete);
+    }
+
+    public void updateBookFavoriteStatusAsync(long bookId, boolean isFavorite, Runnable onComplete) {
+        DatabaseExecutor.execute(() -> updateBookFavoriteStatus(bookId, isFavorite), onComplete);
     }
 
-    // 根据书籍标题删除书籍
-    public int deleteBook(String title) {
+    // 根据书籍主键删除书籍
+    public int deleteBook(long bookId) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         int rowsAffected = db.delete(BookDatabaseHelper.TABLE_BOOKS,
-                BookDatabaseHelper.COLUMN_TITLE + " = ?",
-                new String[]{title});
-        db.close();
-        Log.d(TAG, "Deleted book: " + title + ", rows affected: " + rowsAffected);
+                BookDatabaseHelper.COLUMN_ID + " = ?",
+                new String[]{String.valueOf(bookId)});
+        Log.d(TAG, "Deleted book: " + bookId + ", rows affected: " + rowsAffected);
         return rowsAffected;
     }
 
+    public void deleteBookAsync(long bookId, DatabaseExecutor.ResultCallback<Integer> callback) {
+        DatabaseExecutor.submit(() -> deleteBook(bookId), callback);
+    }
+
     // 根据书籍 URI 删除书籍
     public int deleteBook(Uri uri) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         int rowsAffected = db.delete(BookDatabaseHelper.TABLE_BOOKS,
                 BookDatabaseHelper.COLUMN_URI + " = ?",
                 new String[]{uri.toString()});
-        db.close();
         Log.d(TAG, "Deleted book with URI: " + uri.toString() + ", rows affected: " + rowsAffected);
         return rowsAffected;
     }
 
-    public boolean isBookExists(BookInfo  bookInfo) {
+    /**
+     * 补上书籍的完整哈希。导入时快速指纹冲突，需要比较完整内容时调用。
+     */
+    public void updateFileHash(long bookId, String fileHash) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(BookDatabaseHelper.COLUMN_FILE_HASH, fileHash);
+        int rowsAffected = db.update(BookDatabaseHelper.TABLE_BOOKS, values,
+                BookDatabaseHelper.COLUMN_ID + " = ?",
+                new String[]{String.valueOf(bookId)});
+        Log.d(TAG, "Updated file hash for book " + bookId + ", rows affected: " + rowsAffected);
+    }
+
+    /**
+     * 书库文件夹重新扫描时发现文件已变化：更新大小、修改时间和指纹。
+     * 文件内容变了，缓存的编码也一并清除，下次打开时重新探测。
+     */
+    public void updateBookFile(long bookId, long fileSize, long lastModified, String quickHash, String fileHash) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(BookDatabaseHelper.COLUMN_FILE_SIZE, fileSize);
+        values.put(BookDatabaseHelper.COLUMN_LAST_MODIFIED, lastModified);
+        values.put(BookDatabaseHelper.COLUMN_QUICK_HASH, quickHash);
+        values.put(BookDatabaseHelper.COLUMN_FILE_HASH, fileHash);
+        values.putNull(BookDatabaseHelper.COLUMN_CHARSET);
+        int rowsAffected = db.update(BookDatabaseHelper.TABLE_BOOKS, values,
+                BookDatabaseHelper.COLUMN_ID + " = ?",
+                new String[]{String.valueOf(bookId)});
+        Log.d(TAG, "Updated file info for book " + bookId + ", rows affected: " + rowsAffected);
+    }
+
+    /**
+     * 获取书籍缓存的文本编码名称。
+     * @param uri 书籍 URI
+     * @return 编码名称，未缓存时返回 null
+     */
+    public String getCachedCharset(Uri uri) {
         SQLiteDatabase db = dbHelper.getReadableDatabase();
-        // 优先根据文件哈希值判断是否存在
-        if (bookInfo.getFileHash() != null && !bookInfo.getFileHash().isEmpty()) {
-            Cursor cursor = null;
-            try {
-                cursor = db.query(
-                        BookDatabaseHelper.TABLE_BOOKS,
-                        new String[]{BookDatabaseHelper.COLUMN_FILE_HASH},
-                        BookDatabaseHelper.COLUMN_FILE_HASH + " = ?",
-                        new String[]{bookInfo.getFileHash()},
-                        null, null, null
-                );
-                if (cursor != null && cursor.getCount() > 0) {
-                    return true;
-                }
-            } finally {
-                if (cursor != null) {
-                    cursor.close();
-                }
-            }
-        }
-        // 如果哈希值为空或者不匹配，则比较文件大小和最后修改时间
-        Cursor uriCursor = null;
+        Cursor cursor = null;
         try {
-            uriCursor = db.query(
+            cursor = db.query(
                     BookDatabaseHelper.TABLE_BOOKS,
-                    new String[]{BookDatabaseHelper.COLUMN_URI},
-                    BookDatabaseHelper.COLUMN_URI + "=?",
-                    new String[]{bookInfo.getUri().toString()},
+                    new String[]{BookDatabaseHelper.COLUMN_CHARSET},
+                    BookDatabaseHelper.COLUMN_URI + " = ?",
+                    new String[]{uri.toString()},
                     null, null, null
             );
-            if (uriCursor != null && uriCursor.getCount() > 0) {
-                return true;
+            if (cursor != null && cursor.moveToFirst()) {
+                return cursor.getString(0);
             }
+            return null;
         } finally {
-            if (uriCursor != null) {
-                uriCursor.close();
+            if (cursor != null) {
+                cursor.close();
             }
         }
-        // 如果URI也不匹配，最后根据文件大小和修改时间判断（作为辅助，冲突风险较高）
-        Cursor metadataCursor = null;
+    }
+
+    /**
+     * 缓存探测到的文本编码。
+     * 按文件哈希更新，内容相同的书籍共享同一个探测结果；没有哈希时按 URI 更新。
+     */
+    public void saveCharset(Uri uri, String charsetName) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(BookDatabaseHelper.COLUMN_CHARSET, charsetName);
+        int rowsAffected = db.update(BookDatabaseHelper.TABLE_BOOKS, values,
+                BookDatabaseHelper.COLUMN_FILE_HASH + " = (SELECT " + BookDatabaseHelper.COLUMN_FILE_HASH +
+                        " FROM " + BookDatabaseHelper.TABLE_BOOKS + " WHERE " + BookDatabaseHelper.COLUMN_URI + " = ?)" +
+                        " OR " + BookDatabaseHelper.COLUMN_URI + " = ?",
+                new String[]{uri.toString(), uri.toString()});
+        Log.d(TAG, "Saved charset " + charsetName + " for " + uri + ", rows affected: " + rowsAffected);
+    }
+
+    /**
+     * 记录书籍最后一次被打开的时间。
+     */
+    public void markBookOpened(Uri uri, long openedAt) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(BookDatabaseHelper.COLUMN_LAST_OPENED_TIME, openedAt);
+        db.update(BookDatabaseHelper.TABLE_BOOKS, values,
+                BookDatabaseHelper.COLUMN_URI + " = ?", new String[]{uri.toString()});
+        db.close();
+    }
+
+    /**
+     * 按最后打开时间从新到旧，返回打开过的书籍 URI。
+     * @param limit 最多返回的数量
+     */
+    public List<Uri> getRecentlyOpenedBookUris(int limit) {
+        List<Uri> uris = new ArrayList<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = null;
         try {
-            // 最后比较 URI
-            metadataCursor = db.query(
+            cursor = db.query(
                     BookDatabaseHelper.TABLE_BOOKS,
-                    new String[]{BookDatabaseHelper.COLUMN_URI, BookDatabaseHelper.COLUMN_FILE_SIZE, BookDatabaseHelper.COLUMN_LAST_MODIFIED},
-                    BookDatabaseHelper.COLUMN_FILE_SIZE + " = ? AND " + BookDatabaseHelper.COLUMN_LAST_MODIFIED + " = ?",
-                    new String[]{String.valueOf(bookInfo.getFileSize()), String.valueOf(bookInfo.getLastModified())},
-                    null, null, null
+                    new String[]{BookDatabaseHelper.COLUMN_URI},
+                    BookDatabaseHelper.COLUMN_LAST_OPENED_TIME + " > 0",
+                    null, null, null,
+                    BookDatabaseHelper.COLUMN_LAST_OPENED_TIME + " DESC",
+                    String.valueOf(limit)
             );
-
-            return metadataCursor != null && metadataCursor.getCount() > 0;
+            while (cursor != null && cursor.moveToNext()) {
+                uris.add(Uri.parse(cursor.getString(0)));
+            }
         } finally {
-            if (metadataCursor != null) {
-                metadataCursor.close();
+            if (cursor != null) {
+                cursor.close();
             }
-            db.close(); // 确保在所有判断路径结束后关闭数据库
+            db.close();
         }
+        return uris;
     }
 }
@@ -0,0 +1,113 @@
+package com.example.readera.Dao;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.readera.database.BookDatabaseHelper;
+import com.example.readera.model.Bookmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 书签表的读写。添加和删除只涉及一行（按 (书, 字符偏移量) 唯一索引或主键查找），
+ * 读取按书分页，书签再多也只读取当前显示的那一页。
+ * 方法本身是同步的，请在 DatabaseExecutor 上调用。
+ */
+public class BookmarkDao {
+    private static final String TAG = "BookmarkDao";
+    private final BookDatabaseHelper dbHelper;
+
+    public BookmarkDao(Context context) {
+        dbHelper = BookDatabaseHelper.getInstance(context);
+    }
+
+    /**
+     * 添加书签，同一本书的同一位置已有书签时不重复添加。
+     * @return 新书签的 _id；已存在时返回 -1
+     */
+    public long addBookmark(Bookmark bookmark) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long id = db.insertWithOnConflict(BookDatabaseHelper.TABLE_BOOKMARKS, null,
+                toContentValues(bookmark, System.currentTimeMillis()), SQLiteDatabase.CONFLICT_IGNORE);
+        if (id > 0) {
+            bookmark.setId(id);
+        }
+        return id;
+    }
+
+    /**
+     * 批量添加书签（从旧的存储迁移时使用），在一个事务中完成。
+     * 列表按从新到旧排列，倒序写入，越新的书签 _id 越大。
+     */
+    public void addBookmarks(List<Bookmark> bookmarks) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long now = System.currentTimeMillis();
+        db.beginTransaction();
+        try {
+            for (int i = bookmarks.size() - 1; i >= 0; i--) {
+                Bookmark bookmark = bookmarks.get(i);
+                if (bookmark == null || bookmark.getFileUri() == null) {
+                    continue;
+                }
+                db.insertWithOnConflict(BookDatabaseHelper.TABLE_BOOKMARKS, null,
+                        toContentValues(bookmark, now), SQLiteDatabase.CONFLICT_IGNORE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "Added " + bookmarks.size() + " bookmarks in one transaction");
+    }
+
+    // 按 _id 删除书签，返回删除的行数。页码会随排版变化，不能用来定位书签
+    public int removeBookmark(long id) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        return db.delete(BookDatabaseHelper.TABLE_BOOKMARKS,
+                BookDatabaseHelper.COLUMN_ID + " = ?",
+                new String[]{String.valueOf(id)});
+    }
+
+    /**
+     * 按从新到旧的顺序分页读取某本书的书签。
+     * @param beforeId 只读取 _id 小于它的书签（上一页最后一条的 _id）；读取第一页时传 Long.MAX_VALUE
+     * @param limit    最多读取的条数
+     */
+    public List<Bookmark> getBookmarks(Uri bookUri, long beforeId, int limit) {
+        List<Bookmark> bookmarks = new ArrayList<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try (Cursor cursor = db.query(
+                BookDatabaseHelper.TABLE_BOOKMARKS,
+                new String[]{BookDatabaseHelper.COLUMN_ID,
+                        BookDatabaseHelper.COLUMN_BOOKMARK_PAGE,
+                        BookDatabaseHelper.COLUMN_BOOKMARK_CHAR_OFFSET,
+                        BookDatabaseHelper.COLUMN_BOOKMARK_TITLE},
+                BookDatabaseHelper.COLUMN_BOOKMARK_BOOK_URI + " = ? AND "
+                        + BookDatabaseHelper.COLUMN_ID + " < ?",
+                new String[]{bookUri.toString(), String.valueOf(beforeId)},
+                null, null,
+                BookDatabaseHelper.COLUMN_ID + " DESC",
+                String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                Bookmark bookmark = new Bookmark(bookUri, cursor.getInt(1), cursor.getInt(2), cursor.getString(3));
+                bookmark.setId(cursor.getLong(0));
+                bookmarks.add(bookmark);
+            }
+        }
+        return bookmarks;
+    }
+
+    private static ContentValues toContentValues(Bookmark bookmark, long createdAt) {
+        ContentValues values = new ContentValues();
+        values.put(BookDatabaseHelper.COLUMN_BOOKMARK_BOOK_URI, bookmark.getFileUri().toString());
+        values.put(BookDatabaseHelper.COLUMN_BOOKMARK_PAGE, bookmark.getPageNumber());
+        values.put(BookDatabaseHelper.COLUMN_BOOKMARK_CHAR_OFFSET, bookmark.getCharOffset());
+        values.put(BookDatabaseHelper.COLUMN_BOOKMARK_TITLE, bookmark.getDisplayTitle());
+        values.put(BookDatabaseHelper.COLUMN_BOOKMARK_CREATED_AT, createdAt);
+        return values;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.readera.Dao;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.example.readera.database.BookDatabaseHelper;
+import com.example.readera.model.TableOfContents;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 目录表的读写。章节按书籍键（文件哈希，没有哈希时为 URI）保存，只记录字符偏移量，
+ * 页码由调用方按当前的分页结果换算，所以重新分页后目录不需要重建。
+ */
+public class ChapterDao {
+    private static final String TAG = "ChapterDao";
+    private final BookDatabaseHelper dbHelper;
+
+    public ChapterDao(Context context) {
+        dbHelper = BookDatabaseHelper.getInstance(context);
+    }
+
+    /**
+     * 某本书已保存的章节数，没有保存过时返回 0。
+     */
+    public int getChapterCount(String bookKey) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        return (int) DatabaseUtils.queryNumEntries(db, BookDatabaseHelper.TABLE_CHAPTERS,
+                BookDatabaseHelper.COLUMN_CHAPTER_BOOK_KEY + " = ?", new String[]{bookKey});
+    }
+
+    /**
+     * 按目录顺序分页读取章节。
+     * @param offset 从第几个章节开始
+     * @param limit  最多读取的章节数
+     * @return 章节列表，pageIndex 为 -1
+     */
+    public List<TableOfContents> getChapters(String bookKey, int offset, int limit) {
+        List<TableOfContents> chapters = new ArrayList<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = null;
+        try {
+            // 按 position 范围查询，走 (book_key, position) 索引，不需要 OFFSET 跳过前面的行
+            cursor = db.query(
+                    BookDatabaseHelper.TABLE_CHAPTERS,
+                    new String[]{BookDatabaseHelper.COLUMN_CHAPTER_TITLE,
+                            BookDatabaseHelper.COLUMN_CHAPTER_OFFSET,
+                            BookDatabaseHelper.COLUMN_CHAPTER_LEVEL},
+                    BookDatabaseHelper.COLUMN_CHAPTER_BOOK_KEY + " = ? AND "
+                            + BookDatabaseHelper.COLUMN_CHAPTER_POSITION + " >= ?",
+                    new String[]{bookKey, String.valueOf(offset)},
+                    null, null,
+                    BookDatabaseHelper.COLUMN_CHAPTER_POSITION + " ASC",
+                    String.valueOf(limit)
+            );
+            while (cursor.moveToNext()) {
+                chapters.add(new TableOfContents(cursor.getString(0), -1, cursor.getInt(2), cursor.getInt(1)));
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return chapters;
+    }
+
+    /**
+     * 用新的章节列表替换某本书已保存的目录，在一个事务中完成。
+     */
+    public void replaceChapters(String bookKey, List<TableOfContents> chapters) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(BookDatabaseHelper.TABLE_CHAPTERS,
+                    BookDatabaseHelper.COLUMN_CHAPTER_BOOK_KEY + " = ?", new String[]{bookKey});
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < chapters.size(); i++) {
+                TableOfContents chapter = chapters.get(i);
+                values.clear();
+                values.put(BookDatabaseHelper.COLUMN_CHAPTER_BOOK_KEY, bookKey);
+                values.put(BookDatabaseHelper.COLUMN_CHAPTER_POSITION, i);
+                values.put(BookDatabaseHelper.COLUMN_CHAPTER_TITLE, chapter.title);
+                values.put(BookDatabaseHelper.COLUMN_CHAPTER_OFFSET, chapter.charOffset);
+                values.put(BookDatabaseHelper.COLUMN_CHAPTER_LEVEL, chapter.depth);
+                db.insert(BookDatabaseHelper.TABLE_CHAPTERS, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "Saved " + chapters.size() + " chapters for " + bookKey);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.readera.Dao;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.readera.database.BookDatabaseHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 书库文件夹表的读写。记录用户导入过的目录（树 URI），重新扫描书库时逐个遍历。
+ */
+public class LibraryFolderDao {
+    private static final String TAG = "LibraryFolderDao";
+    private final BookDatabaseHelper dbHelper;
+
+    public LibraryFolderDao(Context context) {
+        dbHelper = BookDatabaseHelper.getInstance(context);
+    }
+
+    /**
+     * 记录一个书库文件夹，已经记录过时不做任何事。
+     */
+    public void addFolder(Uri treeUri) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(BookDatabaseHelper.COLUMN_FOLDER_TREE_URI, treeUri.toString());
+        values.put(BookDatabaseHelper.COLUMN_FOLDER_ADDED_AT, System.currentTimeMillis());
+        long id = db.insertWithOnConflict(BookDatabaseHelper.TABLE_LIBRARY_FOLDERS, null, values,
+                SQLiteDatabase.CONFLICT_IGNORE);
+        if (id > 0) {
+            Log.d(TAG, "Added library folder: " + treeUri);
+        }
+    }
+
+    // 所有书库文件夹，按加入顺序排列
+    public List<Uri> getFolders() {
+        List<Uri> folders = new ArrayList<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try (Cursor cursor = db.query(BookDatabaseHelper.TABLE_LIBRARY_FOLDERS,
+                new String[]{BookDatabaseHelper.COLUMN_FOLDER_TREE_URI},
+                null, null, null, null,
+                BookDatabaseHelper.COLUMN_ID + " ASC")) {
+            while (cursor.moveToNext()) {
+                folders.add(Uri.parse(cursor.getString(0)));
+            }
+        }
+        return folders;
+    }
+
+    public void removeFolder(Uri treeUri) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        int rowsAffected = db.delete(BookDatabaseHelper.TABLE_LIBRARY_FOLDERS,
+                BookDatabaseHelper.COLUMN_FOLDER_TREE_URI + " = ?",
+                new String[]{treeUri.toString()});
+        Log.d(TAG, "Removed library folder: " + treeUri + ", rows affected: " + rowsAffected);
+    }
+}
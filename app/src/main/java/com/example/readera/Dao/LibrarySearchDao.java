@@ -0,0 +1,254 @@
+package com.example.readera.Dao;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.readera.database.BookDatabaseHelper;
+import com.example.readera.model.LibrarySearchResult;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 全书库搜索索引的读写。每本书的正文按文本块写入 FTS4 虚表，块的书籍键和起始偏移量记录在 library_chunks 中，
+ * 两张表通过 docid = _id 对应。索引按书籍键（文件哈希，没有哈希时为 URI）整本替换。
+ * 一本书的文本块分多个小事务写入，最后才写 library_indexed；查询只返回 library_indexed 中的书，
+ * 写了一半的书不会出现在结果里。
+ */
+public class LibrarySearchDao {
+    private static final String TAG = "LibrarySearchDao";
+    // 每个写事务最多写入的文本块数。事务之间释放写锁，书架状态、阅读进度等写入不必等整本书写完
+    private static final int CHUNKS_PER_TRANSACTION = 64;
+    private final BookDatabaseHelper dbHelper;
+
+    public LibrarySearchDao(Context context) {
+        dbHelper = BookDatabaseHelper.getInstance(context);
+    }
+
+    /**
+     * 已经建立索引的所有书籍键。
+     */
+    public Set<String> getIndexedBookKeys() {
+        Set<String> keys = new HashSet<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = null;
+        try {
+            cursor = db.query(BookDatabaseHelper.TABLE_LIBRARY_INDEXED,
+                    new String[]{BookDatabaseHelper.COLUMN_LIBRARY_BOOK_KEY},
+                    null, null, null, null, null);
+            while (cursor.moveToNext()) {
+                keys.add(cursor.getString(0));
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 有文本块但没有写完的书籍键（索引过程中被中断或进程被杀），同步时和已删除的书一起清理。
+     */
+    public Set<String> getPartiallyIndexedBookKeys() {
+        Set<String> keys = new HashSet<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery("SELECT DISTINCT " + BookDatabaseHelper.COLUMN_LIBRARY_BOOK_KEY
+                + " FROM " + BookDatabaseHelper.TABLE_LIBRARY_CHUNKS
+                + " WHERE " + BookDatabaseHelper.COLUMN_LIBRARY_BOOK_KEY + " NOT IN (SELECT "
+                + BookDatabaseHelper.COLUMN_LIBRARY_BOOK_KEY + " FROM " + BookDatabaseHelper.TABLE_LIBRARY_INDEXED + ")",
+                null)) {
+            while (cursor.moveToNext()) {
+                keys.add(cursor.getString(0));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 提供一本书的文本块，由调用方负责切块和转换。
+     */
+    public interface ChunkSource {
+        /**
+         * 写入下一个文本块。
+         * @return 是否还有文本块
+         */
+        boolean next(ChunkWriter writer) throws InterruptedException;
+    }
+
+    public interface ChunkWriter {
+        void write(int charOffset, String body);
+    }
+
+    /**
+     * 删除一本书已有的索引并写入新的文本块。文本块每 CHUNKS_PER_TRANSACTION 个提交一次，
+     * 全部写完后才写入 library_indexed，这本书从这时起才能被搜到。
+     * 被中断或出错时删除已经写入的文本块，不留下写了一半的索引。
+     * @return 写入的文本块数
+     */
+    public int replaceBook(String bookKey, ChunkSource source) throws InterruptedException {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement insertChunk = null;
+        SQLiteStatement insertBody = null;
+        boolean success = false;
+        try {
+            deleteBookInTransaction(db, bookKey);
+            insertChunk = db.compileStatement("INSERT INTO " + BookDatabaseHelper.TABLE_LIBRARY_CHUNKS
+                    + " (" + BookDatabaseHelper.COLUMN_LIBRARY_BOOK_KEY + ", "
+                    + BookDatabaseHelper.COLUMN_LIBRARY_CHUNK_OFFSET + ") VALUES (?, ?)");
+            insertBody = db.compileStatement("INSERT INTO " + BookDatabaseHelper.TABLE_LIBRARY_FTS
+                    + " (docid, " + BookDatabaseHelper.COLUMN_LIBRARY_FTS_BODY + ") VALUES (?, ?)");
+            final SQLiteStatement chunkStatement = insertChunk;
+            final SQLiteStatement bodyStatement = insertBody;
+            final int[] count = new int[1];
+            ChunkWriter writer = (charOffset, body) -> {
+                chunkStatement.bindString(1, bookKey);
+                chunkStatement.bindLong(2, charOffset);
+                long docId = chunkStatement.executeInsert();
+                bodyStatement.bindLong(1, docId);
+                bodyStatement.bindString(2, body);
+                bodyStatement.executeInsert();
+                count[0]++;
+            };
+            boolean hasMore = true;
+            while (hasMore) {
+                db.beginTransaction();
+                try {
+                    int batchEnd = count[0] + CHUNKS_PER_TRANSACTION;
+                    while (count[0] < batchEnd && (hasMore = source.next(writer))) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedException("Library indexing interrupted.");
+                        }
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
+            ContentValues values = new ContentValues();
+            values.put(BookDatabaseHelper.COLUMN_LIBRARY_BOOK_KEY, bookKey);
+            values.put(BookDatabaseHelper.COLUMN_LIBRARY_CHUNK_COUNT, count[0]);
+            values.put(BookDatabaseHelper.COLUMN_LIBRARY_INDEXED_AT, System.currentTimeMillis());
+            db.insertWithOnConflict(BookDatabaseHelper.TABLE_LIBRARY_INDEXED, null, values,
+                    SQLiteDatabase.CONFLICT_REPLACE);
+            success = true;
+            return count[0];
+        } finally {
+            if (insertChunk != null) {
+                insertChunk.close();
+            }
+            if (insertBody != null) {
+                insertBody.close();
+            }
+            if (!success) {
+                deleteBookInTransaction(db, bookKey);
+            }
+        }
+    }
+
+    /**
+     * 删除一批书籍的索引（书已从书架删除，或者文件内容变化后哈希变了）。
+     */
+    public void removeBooks(Collection<String> bookKeys) {
+        if (bookKeys.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String bookKey : bookKeys) {
+                deleteBook(db, bookKey);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "Removed library index for " + bookKeys.size() + " books");
+    }
+
+    private void deleteBookInTransaction(SQLiteDatabase db, String bookKey) {
+        db.beginTransaction();
+        try {
+            deleteBook(db, bookKey);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void deleteBook(SQLiteDatabase db, String bookKey) {
+        String[] args = {bookKey};
+        db.execSQL("DELETE FROM " + BookDatabaseHelper.TABLE_LIBRARY_FTS + " WHERE docid IN (SELECT "
+                + BookDatabaseHelper.COLUMN_ID + " FROM " + BookDatabaseHelper.TABLE_LIBRARY_CHUNKS
+                + " WHERE " + BookDatabaseHelper.COLUMN_LIBRARY_BOOK_KEY + " = ?)", args);
+        db.delete(BookDatabaseHelper.TABLE_LIBRARY_CHUNKS,
+                BookDatabaseHelper.COLUMN_LIBRARY_BOOK_KEY + " = ?", args);
+        db.delete(BookDatabaseHelper.TABLE_LIBRARY_INDEXED,
+                BookDatabaseHelper.COLUMN_LIBRARY_BOOK_KEY + " = ?", args);
+    }
+
+    /**
+     * 在所有已建立索引的书中搜索（正在写入的书不包括在内），每本书返回一条结果，按命中的文本块数从多到少排列。
+     * @param matchQuery   FTS 的 MATCH 表达式
+     * @param maxBooks     最多返回的书籍数
+     * @param snippetWords 摘要包含的词数（每个汉字是一个词）
+     */
+    public List<LibrarySearchResult> search(String matchQuery, int maxBooks, int snippetWords) {
+        List<LibrarySearchResult> results = new ArrayList<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = null;
+        try {
+            // 先按书汇总命中的块数，每本书只取第一个命中的块生成摘要
+            cursor = db.rawQuery("SELECT c." + BookDatabaseHelper.COLUMN_LIBRARY_BOOK_KEY
+                    + ", COUNT(*) AS hits, MIN(c." + BookDatabaseHelper.COLUMN_ID + ")"
+                    + " FROM " + BookDatabaseHelper.TABLE_LIBRARY_FTS
+                    + " JOIN " + BookDatabaseHelper.TABLE_LIBRARY_CHUNKS + " c ON c." + BookDatabaseHelper.COLUMN_ID
+                    + " = " + BookDatabaseHelper.TABLE_LIBRARY_FTS + ".docid"
+                    + " WHERE " + BookDatabaseHelper.TABLE_LIBRARY_FTS + " MATCH ?"
+                    + " AND c." + BookDatabaseHelper.COLUMN_LIBRARY_BOOK_KEY + " IN (SELECT "
+                    + BookDatabaseHelper.COLUMN_LIBRARY_BOOK_KEY + " FROM " + BookDatabaseHelper.TABLE_LIBRARY_INDEXED + ")"
+                    + " GROUP BY c." + BookDatabaseHelper.COLUMN_LIBRARY_BOOK_KEY
+                    + " ORDER BY hits DESC LIMIT " + maxBooks,
+                    new String[]{matchQuery});
+            List<String> keys = new ArrayList<>();
+            List<int[]> stats = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                keys.add(cursor.getString(0));
+                stats.add(new int[]{cursor.getInt(1), (int) cursor.getLong(2)});
+            }
+            cursor.close();
+            cursor = null;
+
+            String snippetSql = "SELECT snippet(" + BookDatabaseHelper.TABLE_LIBRARY_FTS
+                    + ", char(" + (int) LibrarySearchResult.MARK_START + "), char(" + (int) LibrarySearchResult.MARK_END
+                    + "), '…', -1, " + snippetWords + "), c." + BookDatabaseHelper.COLUMN_LIBRARY_CHUNK_OFFSET
+                    + " FROM " + BookDatabaseHelper.TABLE_LIBRARY_FTS
+                    + " JOIN " + BookDatabaseHelper.TABLE_LIBRARY_CHUNKS + " c ON c." + BookDatabaseHelper.COLUMN_ID
+                    + " = " + BookDatabaseHelper.TABLE_LIBRARY_FTS + ".docid"
+                    + " WHERE " + BookDatabaseHelper.TABLE_LIBRARY_FTS + " MATCH ? AND "
+                    + BookDatabaseHelper.TABLE_LIBRARY_FTS + ".docid = ?";
+            for (int i = 0; i < keys.size(); i++) {
+                int[] stat = stats.get(i);
+                cursor = db.rawQuery(snippetSql, new String[]{matchQuery, String.valueOf(stat[1])});
+                if (cursor.moveToFirst()) {
+                    results.add(new LibrarySearchResult(keys.get(i), stat[0], cursor.getInt(1), cursor.getString(0)));
+                }
+                cursor.close();
+                cursor = null;
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return results;
+    }
+}
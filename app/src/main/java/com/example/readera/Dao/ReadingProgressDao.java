@@ -0,0 +1,66 @@
+package com.example.readera.Dao;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.readera.database.BookDatabaseHelper;
+import com.example.readera.model.ReadingProgress;
+
+import java.util.Collection;
+
+/**
+ * 阅读进度表的读写，每本书一行，按书的 URI 查找。
+ * 方法本身是同步的，请在数据库线程上调用；界面上通过 ReadingProgressStore 合并写入。
+ */
+public class ReadingProgressDao {
+    private static final String TAG = "ReadingProgressDao";
+    private final BookDatabaseHelper dbHelper;
+
+    public ReadingProgressDao(Context context) {
+        dbHelper = BookDatabaseHelper.getInstance(context);
+    }
+
+    /**
+     * 在一个事务中写入多本书的进度，已有的行被覆盖。
+     */
+    public void saveProgress(Collection<ReadingProgress> progressList) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (ReadingProgress progress : progressList) {
+                ContentValues values = new ContentValues();
+                values.put(BookDatabaseHelper.COLUMN_PROGRESS_BOOK_URI, progress.bookUri.toString());
+                values.put(BookDatabaseHelper.COLUMN_PROGRESS_PAGE, progress.pageIndex);
+                values.put(BookDatabaseHelper.COLUMN_PROGRESS_CHAR_OFFSET, progress.charOffset);
+                values.put(BookDatabaseHelper.COLUMN_PROGRESS_UPDATED_AT, progress.updatedAt);
+                db.insertWithOnConflict(BookDatabaseHelper.TABLE_READING_PROGRESS, null, values,
+                        SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "Saved progress of " + progressList.size() + " books in one transaction");
+    }
+
+    // 某本书的阅读进度，没有保存过时返回 null
+    public ReadingProgress getProgress(Uri bookUri) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try (Cursor cursor = db.query(BookDatabaseHelper.TABLE_READING_PROGRESS,
+                new String[]{BookDatabaseHelper.COLUMN_PROGRESS_PAGE,
+                        BookDatabaseHelper.COLUMN_PROGRESS_CHAR_OFFSET,
+                        BookDatabaseHelper.COLUMN_PROGRESS_UPDATED_AT},
+                BookDatabaseHelper.COLUMN_PROGRESS_BOOK_URI + " = ?",
+                new String[]{bookUri.toString()},
+                null, null, null)) {
+            if (cursor.moveToFirst()) {
+                return new ReadingProgress(bookUri, cursor.getInt(0), cursor.getInt(1), cursor.getLong(2));
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.readera;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputMethodManager;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+import android.view.View;
+
+import androidx.activity.EdgeToEdge;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.graphics.Insets;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.WindowInsetsCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.readera.Adapter.LibrarySearchResultAdapter;
+import com.example.readera.model.LibrarySearchResult;
+import com.example.readera.utiles.NovelReaderManager;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * 在书架上的所有书中搜索。索引由书架在后台同步，这里只查询，不会等待索引建立。
+ */
+public class LibrarySearchActivity extends AppCompatActivity implements LibrarySearchResultAdapter.OnLibraryResultClickListener {
+    private EditText queryInput;
+    private TextView statusText;
+    private LibrarySearchResultAdapter resultAdapter;
+    private Future<?> searchTask; // 正在进行的搜索，开始新的搜索或退出时取消
+    private int searchGeneration; // 用于丢弃已取消的搜索仍在路上的回调
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_library_search);
+        EdgeToEdge.enable(this);
+
+        LinearLayout topBar = findViewById(R.id.library_search_top_bar);
+        ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.library_search_main), (v, insets) -> {
+            Insets systemBars = insets.getInsets(WindowInsetsCompat.Type.systemBars());
+            topBar.setPadding(topBar.getPaddingLeft(), systemBars.top, topBar.getPaddingRight(), topBar.getPaddingBottom());
+            return insets;
+        });
+
+        queryInput = findViewById(R.id.et_library_search_query);
+        statusText = findViewById(R.id.tv_library_search_status);
+        ImageView backButton = findViewById(R.id.iv_library_search_back);
+        Button searchButton = findViewById(R.id.btn_library_search);
+        RecyclerView recyclerView = findViewById(R.id.rv_library_search_results);
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        resultAdapter = new LibrarySearchResultAdapter(this);
+        recyclerView.setAdapter(resultAdapter);
+
+        backButton.setOnClickListener(v -> finish());
+        searchButton.setOnClickListener(v -> startSearch());
+        queryInput.setOnEditorActionListener((v, actionId, event) -> {
+            if (actionId == EditorInfo.IME_ACTION_SEARCH) {
+                startSearch();
+                return true;
+            }
+            return false;
+        });
+
+        // 进入搜索页时检查一次索引，已有同步在进行时不会重复执行
+        NovelReaderManager.getInstance().syncLibrarySearchIndexAsync(this);
+    }
+
+    private void startSearch() {
+        String query = queryInput.getText().toString().trim();
+        if (query.isEmpty()) {
+            return;
+        }
+        InputMethodManager imm = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
+        if (imm != null) {
+            imm.hideSoftInputFromWindow(queryInput.getWindowToken(), 0);
+        }
+        cancelSearch();
+        showStatus("正在搜索…");
+
+        final int generation = ++searchGeneration;
+        searchTask = NovelReaderManager.getInstance().searchLibraryAsync(this, query,
+                new NovelReaderManager.LibrarySearchListener() {
+                    @Override
+                    public void onLibrarySearchComplete(List<LibrarySearchResult> results, int unindexedBooks) {
+                        if (generation != searchGeneration || isFinishing()) {
+                            return;
+                        }
+                        searchTask = null;
+                        resultAdapter.updateData(results);
+                        String message = results.isEmpty()
+                                ? "没有找到“" + query + "”"
+                                : "在 " + results.size() + " 本书中找到";
+                        if (unindexedBooks > 0) {
+                            message += "（还有 " + unindexedBooks + " 本书正在建立索引）";
+                        }
+                        showStatus(message);
+                    }
+
+                    @Override
+                    public void onLibrarySearchFailed(String errorMessage) {
+                        if (generation == searchGeneration && !isFinishing()) {
+                            searchTask = null;
+                            showStatus(errorMessage);
+                        }
+                    }
+                });
+    }
+
+    private void cancelSearch() {
+        searchGeneration++;
+        if (searchTask != null) {
+            searchTask.cancel(true);
+            searchTask = null;
+        }
+    }
+
+    private void showStatus(String message) {
+        statusText.setText(message);
+        statusText.setVisibility(View.VISIBLE);
+    }
+
+    @Override
+    protected void onDestroy() {
+        cancelSearch();
+        super.onDestroy();
+    }
+
+    @Override
+    public void onLibraryResultClick(LibrarySearchResult result) {
+        // 打开这本书并跳到第一处命中所在的文本块，由阅读界面换算成页码
+        Intent intent = new Intent(this, ReadingActivity.class);
+        intent.putExtra("FILE_URI", result.uri);
+        intent.putExtra("INITIAL_CHAR_OFFSET", result.charOffset);
+        startActivity(intent);
+    }
+}
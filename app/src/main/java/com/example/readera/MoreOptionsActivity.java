@@ -19,16 +19,13 @@ import androidx.viewpager2.adapter.FragmentStateAdapter;
 import androidx.viewpager2.widget.ViewPager2;
 
 import com.example.readera.fragments.BookmarksFragment;
+import com.example.readera.fragments.SearchFragment;
 import com.example.readera.fragments.TableOfContentsFragment;
-import com.example.readera.model.TableOfContents;
 import com.google.android.material.tabs.TabLayout;
 import com.google.android.material.tabs.TabLayoutMediator;
 
-import java.util.List;
-
 public class MoreOptionsActivity extends AppCompatActivity {
     private Uri fileUri; // 存储从 ReadingActivity 接收到的文件 URI
-    private List<TableOfContents> tableOfContentsList; // 接收并存储目录数据
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -41,9 +38,6 @@ public class MoreOptionsActivity extends AppCompatActivity {
         if (intent != null && intent.hasExtra("FILE_URI")) {
             fileUri = intent.getParcelableExtra("FILE_URI");
         }
-        if (intent != null && intent.hasExtra("TABLE_OF_CONTENTS")) {
-            tableOfContentsList = (List<TableOfContents>) intent.getSerializableExtra("TABLE_OF_CONTENTS");
-        }
 
 
         // 获取顶部工具栏的引用
@@ -65,8 +59,8 @@ public class MoreOptionsActivity extends AppCompatActivity {
         TabLayout tabLayout = findViewById(R.id.tab_layout_more_options);
         ImageView backButton = findViewById(R.id.iv_more_back);
         // 设置 ViewPager2 的适配器
-        // 传递目录数据给适配器
-        MoreOptionsPagerAdapter pagerAdapter = new MoreOptionsPagerAdapter(this, fileUri, tableOfContentsList);
+        // 目录由 TableOfContentsFragment 从数据库分页读取
+        MoreOptionsPagerAdapter pagerAdapter = new MoreOptionsPagerAdapter(this, fileUri);
         viewPager.setAdapter(pagerAdapter);
 
         // 使用 TabLayoutMediator 将 TabLayout 和 ViewPager2 关联起来
@@ -81,6 +75,9 @@ public class MoreOptionsActivity extends AppCompatActivity {
                         case 1:
                             tab.setText("书签");  // 第二个标签是“书签”
                             break;
+                        case 2:
+                            tab.setText("搜索");
+                            break;
                         default:
                             tab.setText("未知"); // 默认文本，以防万一
                     }
@@ -104,26 +101,26 @@ public class MoreOptionsActivity extends AppCompatActivity {
     private class MoreOptionsPagerAdapter extends FragmentStateAdapter {
 
         private Uri adapterFileUri; // 适配器内部存储的 fileUri
-        private List<TableOfContents> adapterTableOfContentsList; // 接收并存储目录数据
 
-        public MoreOptionsPagerAdapter(FragmentActivity fragmentActivity, Uri fileUri, List<TableOfContents> tableOfContentsList) {
+        public MoreOptionsPagerAdapter(FragmentActivity fragmentActivity, Uri fileUri) {
             super(fragmentActivity);
             this.adapterFileUri = fileUri;
-            this.adapterTableOfContentsList = tableOfContentsList; // 存储目录数据
         }
 
         @Override
         public int getItemCount() {
-            return 2; // 我们有两个标签页：目录和书签
+            return 3; // 三个标签页：目录、书签和搜索
         }
 
         @Override
         public Fragment createFragment(int position) {
             switch (position) {
                 case 0:
-                    return TableOfContentsFragment.newInstance(adapterFileUri, adapterTableOfContentsList);// 返回目录 Fragment 实例
+                    return TableOfContentsFragment.newInstance(adapterFileUri);// 返回目录 Fragment 实例
                 case 1:
-                    return new BookmarksFragment();       // 返回书签 Fragment 实例
+                    return BookmarksFragment.newInstance(adapterFileUri); // 返回当前这本书的书签 Fragment 实例
+                case 2:
+                    return SearchFragment.newInstance(adapterFileUri); // 书内搜索
                 default:
                     throw new IllegalStateException("Unexpected position: " + position);
             }
@@ -1,6 +1,10 @@
 package com.example.readera; // 替换为你的应用包名
 
 import android.app.Application;
+import android.content.pm.ApplicationInfo;
+import android.os.StrictMode;
+
+import com.example.readera.utiles.CoverCache;
 import com.example.readera.utiles.NovelReaderManager;
 
 public class NovelApplication extends Application {
@@ -8,10 +12,31 @@ public class NovelApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            // 调试版本检查主线程上的磁盘读写和未关闭的数据库对象，违规只记录日志
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .build());
+            StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                    .detectLeakedSqlLiteObjects()
+                    .detectLeakedClosableObjects()
+                    .penaltyLog()
+                    .build());
+        }
         // 在应用启动时初始化 NovelReaderManager (尽管是单例，显式调用一次 getInstance 确保初始化)
         NovelReaderManager.getInstance();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // 内存紧张时释放最近打开的书籍缓存和封面缓存
+        NovelReaderManager.getInstance().onTrimMemory(level);
+        CoverCache.getInstance(this).onTrimMemory(level);
+    }
+
     @Override
     public void onTerminate() {
         super.onTerminate();
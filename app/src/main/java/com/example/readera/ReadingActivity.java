@@ -1,13 +1,10 @@
 package com.example.readera;
 
-import static com.example.readera.Adapter.NovelPageAdapter.NovelPageViewHolder;
-
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
 import android.animation.ObjectAnimator;
 import android.annotation.SuppressLint;
 import android.content.Intent;
-import android.graphics.Typeface;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
@@ -28,7 +25,6 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
-import androidx.recyclerview.widget.RecyclerView;
 import androidx.viewpager2.widget.ViewPager2;
 
 import com.example.readera.Adapter.NovelPageAdapter;
@@ -37,21 +33,25 @@ import com.example.readera.databinding.ActivityReadingBinding;
 import com.example.readera.fragments.SettingsBottomSheetFragment;
 import com.example.readera.fragments.TableOfContentsFragment;
 import com.example.readera.model.Bookmark;
-import com.example.readera.model.TableOfContents;
+import com.example.readera.model.ReadingProgress;
 import com.example.readera.utiles.NovelReaderManager;
+import com.example.readera.utiles.PageLayoutPrefetcher;
+import com.example.readera.utiles.PageRasterCache;
+import com.example.readera.utiles.PageTable;
+import com.example.readera.utiles.ReadingProgressStore;
+import com.example.readera.utiles.ReadingSettings;
 import com.example.readera.utiles.ReadingSettingsManager;
 import com.example.readera.utiles.SystemUiController;
-import com.example.readera.utiles.TableOfContentsGenerator;
 import com.example.readera.utiles.TextPager;
-import com.example.readera.views.NovelPageView;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
 
 public class ReadingActivity extends AppCompatActivity implements SettingsBottomSheetFragment.OnSettingsChangeListener{
     private static final String TAG = "ReadingActivity";
-    private List<TableOfContents> currentTableOfContents; // 新增：缓存目录数据
+    // 保存 Activity 状态时记录当前页第一个字符的偏移量，重建（例如旋转屏幕）后按新尺寸分页并回到这里
+    private static final String STATE_READING_OFFSET = "reading_char_offset";
+    // 是否把当前页前后的页面预先画成位图（翻页动画直接贴图）；内存不足时 PageRasterCache 会自动停用
+    private static final boolean ENABLE_PAGE_RASTER_CACHE = true;
     private ActivityReadingBinding binding;
     private LinearLayout topBar; // 顶部工具栏
     private LinearLayout bottomBar; // 底部工具栏
@@ -71,24 +71,29 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
     private Uri fileUri; // 当前阅读的小说文件URI
 
     private NovelPageAdapter pageAdapter; // ViewPager2 的适配器
+    private PageLayoutPrefetcher layoutPrefetcher; // 在后台为当前页前后的页面预排版
 
     private ReadingSettingsManager readingSettings; // 阅读设置管理器
+    private ReadingProgressStore progressStore; // 阅读进度，翻页时只更新内存，定时合并写入数据库
 
     private boolean isPaginationTriggered = false; // 标志，指示是否已经触发过当前视图尺寸的分页
 
     private int fixedStatusBarHeight = 0; // 状态栏高度
 
-    // 用于跟踪阅读设置变化的参数，以便在设置改变时重新分页
-    private float currentTextSizeSp; // 当前字体大小（SP）
-    private float currentLineSpacingExtraDp; // 当前行间距（DP）
-    private Typeface currentTypeface; // 当前字体
-    private int[] currentPagePaddingPx; // 当前页面内边距（像素）
-
-    private int currentBackgroundColor;
-    private int currentTextColor;
+    // 当前使用的阅读设置快照，设置改变时与新快照比较，决定重新分页还是只重绘
+    private ReadingSettings currentSettings;
+    private final ReadingSettingsManager.OnReadingSettingsChangeListener settingsSnapshotListener =
+            settings -> checkForReadingSettingsChangesAndRepaginate();
 
     private boolean ignoreViewPagerTouch = false;
 
+    // 增量分页状态
+    private int paginationGeneration = 0; // 每次开始分页时递增，用于丢弃过期的回调
+    private int adapterGeneration = -1; // 当前 pageAdapter 对应的分页批次
+    private int pendingTargetPage = -1; // 需要跳转但尚未排好的目标页，-1 表示没有
+    private int pendingTargetOffset = -1; // 需要跳转的字符偏移量（例如目录项），所在页排好后换算成页码，-1 表示没有
+    private int repaginationAnchorOffset = -1; // 重新分页前正在阅读的字符偏移量，新的分页完成后回到这里，-1 表示没有
+
 
     @SuppressLint("ClickableViewAccessibility")
     @Override
@@ -105,6 +110,16 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
 
         // 初始化阅读设置管理器
         readingSettings = new ReadingSettingsManager(this);
+        currentSettings = readingSettings.getSnapshot();
+        progressStore = ReadingProgressStore.getInstance(this);
+        layoutPrefetcher = new PageLayoutPrefetcher(this);
+        if (ENABLE_PAGE_RASTER_CACHE) {
+            layoutPrefetcher.setRasterCache(new PageRasterCache());
+        }
+        if (savedInstanceState != null) {
+            repaginationAnchorOffset = savedInstanceState.getInt(STATE_READING_OFFSET, -1);
+        }
+        ReadingSettingsManager.addOnReadingSettingsChangeListener(settingsSnapshotListener);
 
         // 初始化 UI 控件
         topBar = binding.topBar;
@@ -119,9 +134,7 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
         View centerTapArea = binding.centerTapArea; // 中间点击区域
         View rightTapArea = binding.rightTapArea; // 右侧点击区域
 
-        currentBackgroundColor = readingSettings.getBackgroundColor(); // 初始化背景色
-        currentTextColor = readingSettings.getTextColor(); // 初始化文本颜色
-        applyReadingTheme(currentBackgroundColor, currentTextColor); // 首次应用背景色和文本颜色
+        applyReadingTheme(currentSettings.getBackgroundColor(), currentSettings.getTextColor()); // 首次应用背景色和文本颜色
 
 
         // 初始化手势检测器，用于处理点击事件
@@ -140,12 +153,7 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
             if (fileUri != null) { // 确保 fileUri 不为空
                 intent.putExtra("FILE_URI", fileUri); // 将当前阅读的文件URI传递给 MoreOptionsActivity
             }
-            if (currentTableOfContents != null && !currentTableOfContents.isEmpty()) {
-                intent.putExtra("TABLE_OF_CONTENTS", new ArrayList<>(currentTableOfContents)); // 传递目录数据
-                Log.d(TAG, "ReadingActivity: 传递目录数据，条目数: " + currentTableOfContents.size());
-            }else {
-                Log.d(TAG, "ReadingActivity: currentTableOfContents 为空或 null，不传递目录数据。");
-            }
+            // 目录保存在数据库中，由目录页自行分页查询，不再通过 Intent 传递
             startActivity(intent);
         });
         binding.ivSettings.setOnClickListener(v -> {
@@ -172,12 +180,7 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
                 fixedStatusBarHeight = systemBarsInsets.top;
             }
             // 在这里初始化并缓存当前的阅读设置，以供后续比较
-            currentTextSizeSp = readingSettings.getTextSizeSp();
-            currentLineSpacingExtraDp = readingSettings.getLineSpacingExtraDp();
-            currentTypeface = readingSettings.getTypeface();
-            currentPagePaddingPx = readingSettings.getPagePaddingPx();
-            currentBackgroundColor = readingSettings.getBackgroundColor();
-            currentTextColor = readingSettings.getTextColor();
+            currentSettings = readingSettings.getSnapshot();
 
             topBar.setPadding(
                     topBar.getPaddingLeft(),
@@ -205,23 +208,11 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
                             isPaginationTriggered = true;
                             Log.d(TAG, "获取到有效的 ViewPager2 尺寸。触发加载并分页文本。");
 
-                            // 计算 NovelPageView 实际可用于绘制文本的区域
-                            int[] pagePaddingPx = readingSettings.getPagePaddingPx();
-                            int novelPageInternalPaddingLeft = pagePaddingPx[0];
-                            int novelPageInternalPaddingTop = pagePaddingPx[1];
-                            int novelPageInternalPaddingRight = pagePaddingPx[2];
-                            int novelPageInternalPaddingBottom = pagePaddingPx[3];
-
-                            // NovelPageView 内部的文本内容需要避开状态栏和导航栏
-                            // 因此，实际可用于绘制文本的宽度是 ViewPager2 宽度减去左右内边距
-                            int actualContentWidthPx = vp2Width - novelPageInternalPaddingLeft - novelPageInternalPaddingRight;
-                            // 实际可用于绘制文本的高度是 ViewPager2 高度减去上下内边距，并且减去状态栏和导航栏高度
-                            int actualContentHeightPx = vp2Height - novelPageInternalPaddingTop - novelPageInternalPaddingBottom - fixedStatusBarHeight;
-
-                            Log.d(TAG, "为 TextPager 计算的内容区域: " + actualContentWidthPx + "x" + actualContentHeightPx +
+                            int[] contentSize = getPageContentSize(currentSettings);
+                            Log.d(TAG, "为 TextPager 计算的内容区域: " + contentSize[0] + "x" + contentSize[1] +
                                     " (状态栏: " + fixedStatusBarHeight + "px)");
 
-                            loadAndPaginateText(fileUri, actualContentWidthPx, actualContentHeightPx);
+                            loadAndPaginateText(fileUri, contentSize[0], contentSize[1]);
                         }
                     }
                 });
@@ -295,21 +286,14 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
             public void onPageSelected(int position) {
                 super.onPageSelected(position);
                 updateProgressUI(position); // 更新进度 UI
-                // 自动保存当前阅读进度
-                readingSettings.saveLastReadPage(fileUri, position);
-                Log.d(TAG, "自动保存书签到页面: " + position);
-
-                //在页面切换时也确保应用正确的阅读设置和系统内边距
-                RecyclerView recyclerView= (RecyclerView) vp2NovelPages.getChildAt(0);
-                if(recyclerView !=null){
-                    NovelPageViewHolder holder = (NovelPageViewHolder) recyclerView.findViewHolderForAdapterPosition(position);
-                    if (holder != null && holder.novelPageView != null) {
-                        applyNovelPageViewSettings(holder.novelPageView); // 应用普通阅读设置
-                        // 设置 NovelPageView 的系统栏内边距
-                        holder.novelPageView.setSystemBarPadding(fixedStatusBarHeight);
-                        holder.novelPageView.invalidate(); // 请求重绘
-                    }
+                prefetchPageLayouts(position); // 在后台排好前后几页，翻页时不在主线程测量文字
+                // 自动保存当前阅读进度；目标页尚未排好时不保存，避免把进度覆盖成第一页
+                if (pendingTargetPage < 0 && pendingTargetOffset < 0 && pageAdapter != null) {
+                    int charOffset = pageAdapter.getPages().getPageStart(position);
+                    progressStore.update(fileUri, position, charOffset); // 只更新内存，没有 I/O
+                    Log.d(TAG, "更新阅读进度到页面: " + position + "，偏移: " + charOffset);
                 }
+                // 阅读设置和系统栏内边距已在绑定页面时应用，这里不需要再次设置
             }
         });
 
@@ -337,17 +321,65 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
      */
     private void loadAndPaginateText(Uri uri, int contentWidthPx, int contentHeightPx) {
         showLoadingIndicator(); // 显示加载指示器
+        // 记录文本区域尺寸，书架据此在后台预加载最近阅读的书
+        readingSettings.saveLastViewportSize(contentWidthPx, contentHeightPx);
+        final int generation = ++paginationGeneration;
+        // 先确定要显示的位置，分页从它所在的段落开始，首批页面里就有目标页
+        if (resolveRequestedPosition()) {
+            startPagination(generation, uri, contentWidthPx, contentHeightPx);
+            return;
+        }
+        // 没有指定位置时使用保存的阅读进度，读到后再开始分页；读取期间先按第一页处理，旧页面翻动不会保存进度
+        pendingTargetPage = 0;
+        progressStore.loadProgress(uri, progress -> {
+            if (generation != paginationGeneration) {
+                return; // 已经开始了新的分页
+            }
+            applySavedProgress(progress);
+            startPagination(generation, uri, contentWidthPx, contentHeightPx);
+        });
+    }
 
-        // 调用 NovelReaderManager 进行异步加载和分页
+    /**
+     * 按 pendingTargetOffset 确定的位置开始分页，分页结果通过回调增量显示。
+     */
+    private void startPagination(int generation, Uri uri, int contentWidthPx, int contentHeightPx) {
+        final ReadingSettings settings = currentSettings;
+        final int anchorOffset = Math.max(pendingTargetOffset, 0);
+
+        // 调用 NovelReaderManager 进行异步加载和增量分页
         NovelReaderManager.getInstance().loadAndPaginateTextAsync(
                 getApplicationContext(), uri, contentWidthPx, contentHeightPx,
-                readingSettings.getTextSizeSp(), // 从设置中获取字体大小
-                readingSettings.getLineSpacingExtraDp(), // 从设置中获取行间距
-                readingSettings.getTypeface(), // 将字体传递给管理器
+                settings.getTextSizeSp(), // 从设置中获取字体大小
+                settings.getLineSpacingExtraDp(), // 从设置中获取行间距
+                settings.getTypeface(), // 将字体传递给管理器
+                settings.getFontIdentifier(), // 字体标识，用于分页缓存的键
+                anchorOffset, // 从目标位置开始排版
                 new NovelReaderManager.PaginationListener() {
                     @Override
-                    public void onPaginationComplete(List<String> pages) {
+                    public void onPagesAppended(PageTable newPages) {
+                        handler.post(() -> {
+                            if (generation == paginationGeneration) {
+                                showStreamedPages(generation, newPages, false);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onPagesPrepended(PageTable newPages) {
+                        handler.post(() -> {
+                            if (generation == paginationGeneration) {
+                                showStreamedPages(generation, newPages, true);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onPaginationComplete(PageTable pages) {
                         handler.post(() -> { // 确保在主线程更新 UI
+                            if (generation != paginationGeneration) {
+                                return; // 已经开始了新的分页，忽略过期结果
+                            }
                             if (pages.isEmpty()) {
                                 Toast.makeText(ReadingActivity.this, "小说内容为空或无法分页！", Toast.LENGTH_LONG).show();
                                 finish();
@@ -355,51 +387,35 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
                                 return;
                             }
 
-                            // 传入状态栏和导航栏高度给适配器，让每个 NovelPageView 知道如何处理其内容内边距
-                            pageAdapter = new NovelPageAdapter(pages, fixedStatusBarHeight);
-                            vp2NovelPages.setAdapter(pageAdapter);
-                            // --- 新增：在分页完成后生成并缓存目录 ---
-                            // 需要 TextPager 实例来生成目录。
-                            // 由于 NovelReaderManager.loadAndPaginateTextAsync 现在直接返回 List<String> pages，
-                            // 而 TableOfContentsGenerator.generateSimpleToc 需要 TextPager。
-                            // 这里需要获取 TextPager 实例或者改造 TableOfContentsGenerator.generateSimpleToc
-                            // 我假设 NovelReaderManager 内部会维护一个 TextPager 实例，或者可以在 NovelReaderManager 中添加一个方法来获取它。
-                            // 如果 NovelReaderManager.getInstance().getTextPager(uri) 可以获取到，那就这样：
-                            // --- 关键修改：获取当前 TextPager 并生成目录 ---
-                            // 确保当前 TextPager 已经完成分页并设置好
+                            if (adapterGeneration != generation) {
+                                // 没有经过增量回调（例如直接命中内存中的分页结果），一次性设置全部页面
+                                // 传入状态栏和导航栏高度给适配器，让每个 NovelPageView 知道如何处理其内容内边距
+                                pageAdapter = new NovelPageAdapter(pages.copy(), fixedStatusBarHeight, currentSettings, layoutPrefetcher);
+                                adapterGeneration = generation;
+                                vp2NovelPages.setAdapter(pageAdapter);
+                                jumpToPendingTargetPage();
+                            }
+                            if (pendingTargetPage >= 0 || pendingTargetOffset >= 0) {
+                                // 全部分页完成后目标页仍不存在，说明保存的页码已失效，停留在当前页
+                                Log.d(TAG, "目标页 " + pendingTargetPage + "（偏移 " + pendingTargetOffset + "）超出总页数，停留在当前页。");
+                                pendingTargetPage = -1;
+                                pendingTargetOffset = -1;
+                            }
+
+                            // --- 在分页完成后于后台生成目录并保存到数据库（已保存过时跳过） ---
                             TextPager textPager = NovelReaderManager.getInstance().getCurrentTextPager();
                             // 检查文件URI是否匹配，以防万一
                             Uri managerUri = NovelReaderManager.getInstance().getCurrentFileUri();
                             if (textPager != null && uri.equals(managerUri)) {
-                                currentTableOfContents = TableOfContentsGenerator.generateSimpleToc(textPager);
-                                Log.d(TAG, "目录已生成并缓存，条目数：" + currentTableOfContents.size());
+                                NovelReaderManager.getInstance().prepareTableOfContentsAsync(ReadingActivity.this, uri, textPager,
+                                        chapterCount -> Log.d(TAG, "目录已就绪，条目数：" + chapterCount));
+                                // 顺便为书内搜索建立索引，已有索引时直接跳过
+                                NovelReaderManager.getInstance().buildSearchIndexAsync(ReadingActivity.this, uri, textPager);
                             } else {
                                 Log.e(TAG, "无法获取当前 TextPager 实例或文件URI不匹配，目录未能生成。");
-                                currentTableOfContents = new ArrayList<>(); // 确保不为 null
                             }
 
-
-                            // --- 关键修改：加载文件后跳转到保存的书签页或上次阅读进度 ---
-                            int initialPageFromIntent = getIntent().getIntExtra("INITIAL_PAGE", -1); // 从 Intent 获取传入的初始页码
-                            int targetPageIndex;
-
-                            if (initialPageFromIntent != -1 && initialPageFromIntent < pageAdapter.getItemCount()) {
-                                targetPageIndex = initialPageFromIntent; // 如果有从书签列表传来的有效页码，则使用
-                                Log.d(TAG, "从书签列表跳转到页面: " + targetPageIndex);
-                            } else {
-                                // 否则，使用上次自动保存的页码（即阅读进度）
-                                int lastReadPageIndex = readingSettings.getLastReadPage(fileUri);
-                                if (lastReadPageIndex >= 0 && lastReadPageIndex < pageAdapter.getItemCount()) {
-                                    targetPageIndex = lastReadPageIndex;
-                                    Log.d(TAG, "跳转到自动保存的阅读进度页: " + targetPageIndex);
-                                } else {
-                                    targetPageIndex = 0; // 否则跳转到第一页
-                                    Log.d(TAG, "没有找到阅读进度或进度无效，跳转到第一页。");
-                                }
-                            }
-                            vp2NovelPages.setCurrentItem(targetPageIndex, false); // 跳转到目标页，不带动画
                             updateProgressUI(vp2NovelPages.getCurrentItem()); // 更新 UI 显示
-
                             hideLoadingIndicator(); // 隐藏加载指示器
                         });
                     }
@@ -407,6 +423,9 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
                     @Override
                     public void onPaginationFailed(String errorMessage) {
                         handler.post(() -> { // 确保在主线程更新 UI
+                            if (generation != paginationGeneration) {
+                                return;
+                            }
                             Toast.makeText(ReadingActivity.this, errorMessage, Toast.LENGTH_LONG).show();
                             finish(); // 分页失败则关闭 Activity
                             hideLoadingIndicator();
@@ -417,6 +436,113 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
 
     }
 
+    /**
+     * 显示增量分页推送过来的一批页面。第一批到达时就创建适配器并隐藏加载指示器，
+     * 之后的批次追加（或插入）到现有适配器中。
+     */
+    private void showStreamedPages(int generation, PageTable newPages, boolean prepend) {
+        if (adapterGeneration != generation) {
+            pageAdapter = new NovelPageAdapter(newPages.copy(), fixedStatusBarHeight, currentSettings, layoutPrefetcher);
+            adapterGeneration = generation;
+            vp2NovelPages.setAdapter(pageAdapter);
+            hideLoadingIndicator(); // 第一批页面已经可以阅读
+            Log.d(TAG, "首批页面已显示，页数: " + newPages.size());
+        } else if (prepend) {
+            pageAdapter.prependPages(newPages);
+        } else {
+            pageAdapter.appendPages(newPages);
+        }
+        jumpToPendingTargetPage();
+        updateProgressUI(vp2NovelPages.getCurrentItem());
+    }
+
+    /**
+     * 确定分页后要显示的位置，结果存入 pendingTargetOffset（或旧数据只有页码时存入 pendingTargetPage）。
+     * 优先级：重新分页前正在阅读的位置 > 书签列表/目录传入的位置 > 保存的阅读进度（见 applySavedProgress）。
+     * 位置用字符偏移量表示，排版变化后仍指向同一段文字，页码由分页结果二分查找得到。
+     *
+     * @return 是否已经确定了位置；返回 false 时需要读取保存的阅读进度
+     */
+    private boolean resolveRequestedPosition() {
+        pendingTargetPage = -1;
+        pendingTargetOffset = -1;
+        if (repaginationAnchorOffset >= 0) {
+            Log.d(TAG, "重新分页后回到字符偏移: " + repaginationAnchorOffset);
+            pendingTargetOffset = repaginationAnchorOffset;
+            repaginationAnchorOffset = -1;
+            return true;
+        }
+        Intent intent = getIntent();
+        int initialOffsetFromIntent = intent.getIntExtra("INITIAL_CHAR_OFFSET", -1);
+        int initialPageFromIntent = intent.getIntExtra("INITIAL_PAGE", -1); // 从 Intent 获取传入的初始页码
+        // 跳转目标只使用一次，之后重新分页时回到当时正在阅读的位置
+        intent.removeExtra("INITIAL_CHAR_OFFSET");
+        intent.removeExtra("INITIAL_PAGE");
+        if (initialOffsetFromIntent != -1) {
+            Log.d(TAG, "从书签列表/目录跳转到字符偏移: " + initialOffsetFromIntent);
+            pendingTargetOffset = initialOffsetFromIntent;
+            return true;
+        }
+        if (initialPageFromIntent != -1) {
+            Log.d(TAG, "从书签列表跳转到页面: " + initialPageFromIntent);
+            pendingTargetPage = initialPageFromIntent;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 跳转到保存的阅读进度；没有保存过或读取失败（progress 为 null）时从开头开始。
+     */
+    private void applySavedProgress(ReadingProgress progress) {
+        pendingTargetPage = -1;
+        pendingTargetOffset = -1;
+        if (progress == null) {
+            pendingTargetOffset = 0;
+        } else if (progress.charOffset >= 0) {
+            Log.d(TAG, "跳转到保存的阅读进度，偏移: " + progress.charOffset);
+            pendingTargetOffset = progress.charOffset;
+        } else {
+            // 旧版本只保存了页码
+            Log.d(TAG, "跳转到保存的阅读进度页: " + progress.pageIndex);
+            pendingTargetPage = Math.max(progress.pageIndex, 0);
+        }
+    }
+
+    /**
+     * 当前正在阅读的位置：当前页第一个字符的偏移量。目标位置还在等待分页时返回目标位置。
+     * @return 偏移量；还没有页面时返回 -1
+     */
+    private int getCurrentReadingOffset() {
+        if (pendingTargetOffset >= 0) {
+            return pendingTargetOffset;
+        }
+        if (pageAdapter == null || pageAdapter.getItemCount() == 0 || pendingTargetPage >= 0) {
+            return -1;
+        }
+        return pageAdapter.getPages().getPageStart(vp2NovelPages.getCurrentItem());
+    }
+
+    /**
+     * 目标页已经排好时跳转过去（不带动画）；否则等待后续批次。
+     * 目标是字符偏移量时，先在已排好的页面中二分查找它所在的页。
+     */
+    private void jumpToPendingTargetPage() {
+        if (pageAdapter != null && pendingTargetOffset >= 0) {
+            PageTable pages = pageAdapter.getPages();
+            if (!pages.isEmpty() && pendingTargetOffset >= pages.getPageStart(0)
+                    && pendingTargetOffset < pages.getPageEnd(pages.size() - 1)) {
+                pendingTargetPage = pages.findPageIndex(pendingTargetOffset);
+                pendingTargetOffset = -1;
+            }
+        }
+        if (pageAdapter != null && pendingTargetPage >= 0 && pendingTargetPage < pageAdapter.getItemCount()) {
+            int target = pendingTargetPage;
+            pendingTargetPage = -1;
+            vp2NovelPages.setCurrentItem(target, false);
+        }
+    }
+
     /**
      * 切换菜单栏的可见性。
      */
@@ -535,32 +661,15 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
         }
     }
 
-    /**
-     * 将当前的阅读设置（字体、大小、行间距、内边距、颜色）应用到指定的 NovelPageView。
-     * 这个方法确保视图以正确的样式显示内容。
-     *
-     * @param pageView 需要应用设置的 NovelPageView
-     */
-    private void applyNovelPageViewSettings(NovelPageView pageView) {
-        if (pageView != null) {
-            pageView.setTypeface(readingSettings.getTypeface());
-            pageView.setTextSize(readingSettings.getTextSizeSp());
-            pageView.setLineSpacingExtra(readingSettings.getLineSpacingExtraDp());
-            int[] padding = readingSettings.getPagePaddingPx();
-            pageView.setPagePadding(padding[0], padding[1], padding[2], padding[3]);
-            pageView.setTextColor(readingSettings.getTextColor());
-            pageView.invalidate(); // 请求重绘以应用所有改变
-        }
-    }
-
     /**
      * 添加书签功能。
      */
     private void addBookmark() {
         if (fileUri != null && pageAdapter != null) {
             int currentPage = vp2NovelPages.getCurrentItem(); // 获取当前页码
+            int charOffset = pageAdapter.getPages().getPageStart(currentPage); // 书签按字符偏移量定位，页码只用于显示
             String displayTitle = getBookmarkDisplayTitle(fileUri, currentPage); // 获取书签显示标题
-            readingSettings.addBookmark(new Bookmark(fileUri, currentPage, displayTitle)); // 保存书签
+            readingSettings.addBookmark(new Bookmark(fileUri, currentPage, charOffset, displayTitle)); // 保存书签
             Toast.makeText(this, "书签已添加：第 " + (currentPage + 1) + " 页", Toast.LENGTH_SHORT).show();
             Log.d(TAG, "手动添加书签到页面: " + currentPage);
         } else {
@@ -608,11 +717,10 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
     //获取第一行
     @NonNull
     private String getFirstLine(int pageIndex) {
-        // 从 NovelReaderManager 获取当前的 TextPager 实例，再获取页面内容
-        TextPager currentTextPager = NovelReaderManager.getInstance().getCurrentTextPager();
+        // 从适配器获取页面内容（增量分页期间 TextPager 的页面列表仍在后台线程上增长）
         String pageContent = "";
-        if (currentTextPager != null && pageIndex >= 0 && pageIndex < currentTextPager.getPages().size()) {
-            pageContent = currentTextPager.getPages().get(pageIndex);
+        if (pageAdapter != null && pageIndex >= 0 && pageIndex < pageAdapter.getItemCount()) {
+            pageContent = pageAdapter.getPages().getPage(pageIndex).toString();
         }
 
         // 尝试获取第一行作为标题的一部分
@@ -640,6 +748,13 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
         return firstLine;
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // 离开阅读界面时立即写入阅读进度，不等定时器
+        progressStore.flush();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -650,90 +765,43 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
 
     /**
      * 检查阅读设置（字体大小、行间距、字体、页面边距）是否已更改。
-     * 如果有任何更改，则触发重新分页。
+     * 如果有任何更改，则触发重新分页；只有颜色变化时只重绘页面。
      */
     private void checkForReadingSettingsChangesAndRepaginate() {
-        float newTextSizeSp = readingSettings.getTextSizeSp();
-        float newLineSpacingExtraDp = readingSettings.getLineSpacingExtraDp();
-        Typeface newTypeface = readingSettings.getTypeface();
-        int[] newPagePaddingPx = readingSettings.getPagePaddingPx();
-
-        int newBackgroundColor = readingSettings.getBackgroundColor(); // 获取新的背景色
-        int newTextColor = readingSettings.getTextColor(); // 获取新的文本颜色
-        int vp2PaddingTop = vp2NovelPages.getPaddingTop();
-
-        // 比较各项设置是否发生变化
-        boolean textSizeChanged = (newTextSizeSp != currentTextSizeSp);
-        boolean lineSpacingChanged = (newLineSpacingExtraDp != currentLineSpacingExtraDp);
-        boolean backgroundColorChanged = (newBackgroundColor != currentBackgroundColor); // 检查背景色是否变化
-        boolean textColorChanged = (newTextColor != currentTextColor); // 检查文本颜色是否变化
-
-        // 使用 Objects.equals() 来安全地比较可能为 null 的对象
-        boolean typefaceChanged = !Objects.equals(newTypeface, currentTypeface);
-        boolean paddingChanged = false;
-        if (newPagePaddingPx != null && currentPagePaddingPx != null) {
-            if (newPagePaddingPx.length != currentPagePaddingPx.length) {
-                paddingChanged = true;
-            } else {
-                for (int i = 0; i < newPagePaddingPx.length; i++) {
-                    if (newPagePaddingPx[i] != currentPagePaddingPx[i]) {
-                        paddingChanged = true;
-                        break;
-                    }
-                }
-            }
-        } else if (newPagePaddingPx != currentPagePaddingPx) { // 其中一个为 null，另一个不为 null
-            paddingChanged = true;
+        ReadingSettings newSettings = readingSettings.getSnapshot();
+        if (newSettings.getVersion() == currentSettings.getVersion()) {
+            Log.d(TAG, "阅读设置未改变。");
+            return;
         }
+        ReadingSettings oldSettings = currentSettings;
+        currentSettings = newSettings;
+        Log.d(TAG, "阅读设置已更改: " + oldSettings + " -> " + newSettings);
 
-        // 如果任何设置发生变化
-        if (textSizeChanged || lineSpacingChanged || typefaceChanged || paddingChanged) {
-            Log.d(TAG, "阅读设置已更改。重新分页中...");
-            Log.d(TAG, String.format("字体大小变化: %b (旧: %.1f, 新: %.1f)", textSizeChanged, currentTextSizeSp, newTextSizeSp));
-            Log.d(TAG, String.format("行间距变化: %b (旧: %.1f, 新: %.1f)", lineSpacingChanged, currentLineSpacingExtraDp, newLineSpacingExtraDp));
-            Log.d(TAG, String.format("字体变化: %b (旧: %s, 新: %s)", typefaceChanged, currentTypeface, newTypeface));
-            Log.d(TAG, String.format("内边距变化: %b (旧: %s, 新: %s)", paddingChanged, arrayToString(currentPagePaddingPx), arrayToString(newPagePaddingPx)));
-
-            // 更新缓存的设置，以便下次比较
-            currentTextSizeSp = newTextSizeSp;
-            currentLineSpacingExtraDp = newLineSpacingExtraDp;
-            currentTypeface = newTypeface;
-            currentPagePaddingPx = newPagePaddingPx;
-
-            // 获取当前 ViewPager2 的尺寸，用于重新分页
-            int vp2Width = vp2NovelPages.getWidth();
-            int vp2Height = vp2NovelPages.getHeight();
+        // 如果排版相关的设置发生变化
+        if (!newSettings.hasSameLayoutAs(oldSettings)) {
+            Log.d(TAG, "排版设置已更改。重新分页中...");
 
             // 确保尺寸有效且文件 URI 存在，然后触发重新分页
-            if (vp2Width > 0 && vp2Height > 0 && fileUri != null) {
-                int[] pagePaddingPx = readingSettings.getPagePaddingPx();
-                int novelPageInternalPaddingPxHorizontal = pagePaddingPx[0] + pagePaddingPx[2];
-                int novelPageInternalPaddingPxVertical = vp2PaddingTop+ pagePaddingPx[3];
+            if (vp2NovelPages.getWidth() > 0 && vp2NovelPages.getHeight() > 0 && fileUri != null) {
+                int[] contentSize = getPageContentSize(newSettings);
 
-                int actualContentWidthPx = vp2Width - novelPageInternalPaddingPxHorizontal;
-                int actualContentHeightPx = vp2Height - novelPageInternalPaddingPxVertical;
+                // 记下当前页第一个字符的偏移量，新的分页从这里开始排版，排好后直接二分查找它所在的页
+                repaginationAnchorOffset = getCurrentReadingOffset();
 
                 // 触发重新加载和分页
                 isPaginationTriggered = false; // 重置此标志，允许 loadAndPaginateText 重新执行
-                loadAndPaginateText(fileUri, actualContentWidthPx, actualContentHeightPx);
+                loadAndPaginateText(fileUri, contentSize[0], contentSize[1]);
             } else {
                 Log.w(TAG, "无法重新分页：ViewPager2 尺寸无效或 fileUri 为 null。");
             }
         }
         // 如果背景色或文本颜色发生变化，则应用主题
-        if (backgroundColorChanged || textColorChanged) {
+        if (!newSettings.hasSameColorsAs(oldSettings)) {
             Log.d(TAG, "阅读主题颜色已更改。应用新主题中...");
-            Log.d(TAG, String.format("背景色变化: %b (旧: #%06X, 新: #%06X)", backgroundColorChanged, currentBackgroundColor, newBackgroundColor));
-            Log.d(TAG, String.format("文本颜色变化: %b (旧: #%06X, 新: #%06X)", textColorChanged, currentTextColor, newTextColor));
-
-            // 更新缓存的颜色设置
-            currentBackgroundColor = newBackgroundColor;
-            currentTextColor = newTextColor;
-
-            // 应用新的主题（背景色和文本颜色）
-            applyReadingTheme(newBackgroundColor, newTextColor);
-        } else {
-            Log.d(TAG, "阅读设置未改变。");
+            applyReadingTheme(newSettings.getBackgroundColor(), newSettings.getTextColor());
+        } else if (pageAdapter != null) {
+            pageAdapter.setReadingSettings(newSettings);
+            prefetchPageLayouts(vp2NovelPages.getCurrentItem());
         }
     }
 
@@ -749,36 +817,47 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
         applyCurrentReadingSettingsToVisiblePages();
     }
     /**
-     * 遍历当前 ViewPager2 中所有可见的 NovelPageView 并应用最新的阅读设置。
+     * 把当前的阅读设置快照推送给适配器，适配器会重新绑定页面。
      * 这个方法在主题（背景色/文本颜色）变化时尤其重要。
      */
     private void applyCurrentReadingSettingsToVisiblePages() {
-        // 获取 ViewPager2 内部的 RecyclerView
-        RecyclerView recyclerView = (RecyclerView) vp2NovelPages.getChildAt(0);
-        if (recyclerView != null) {
-            // 遍历所有可见的 ViewHolder
-            for (int i = 0; i < recyclerView.getChildCount(); i++) {
-                View child = recyclerView.getChildAt(i);
-                NovelPageViewHolder holder = (NovelPageViewHolder) recyclerView.getChildViewHolder(child);
-                if (holder != null && holder.novelPageView != null) {
-                    applyNovelPageViewSettings(holder.novelPageView);
-                }
-            }
+        if (pageAdapter != null) {
+            pageAdapter.setReadingSettings(currentSettings);
+            prefetchPageLayouts(vp2NovelPages.getCurrentItem());
         }
     }
 
-    // 辅助方法：将 int 数组转换为字符串，用于日志输出
-    private String arrayToString(int[] array) {
-        if (array == null) return "null";
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < array.length; i++) {
-            sb.append(array[i]);
-            if (i < array.length - 1) {
-                sb.append(", ");
-            }
+    /**
+     * 按当前设置为 position 前后的页面预排版（启用位图缓存时再画成位图），已完成的页面会被跳过。
+     */
+    private void prefetchPageLayouts(int position) {
+        if (pageAdapter == null || vp2NovelPages.getWidth() <= 0) {
+            return;
+        }
+        PageRasterCache rasterCache = layoutPrefetcher.getRasterCache();
+        if (rasterCache != null) {
+            // 页面视图占满 ViewPager2 除内边距以外的区域
+            rasterCache.setPageGeometry(
+                    vp2NovelPages.getWidth() - vp2NovelPages.getPaddingLeft() - vp2NovelPages.getPaddingRight(),
+                    vp2NovelPages.getHeight() - vp2NovelPages.getPaddingTop() - vp2NovelPages.getPaddingBottom(),
+                    fixedStatusBarHeight);
         }
-        sb.append("]");
-        return sb.toString();
+        int contentWidth = getPageContentSize(currentSettings)[0];
+        layoutPrefetcher.prefetchAround(pageAdapter.getPages(), position, currentSettings, contentWidth);
+    }
+
+    /**
+     * 按给定设置计算 NovelPageView 中实际用于绘制文本的区域 {宽, 高}，与 NovelPageView 绘制时的计算一致：
+     * 页面视图占满 ViewPager2 除内边距以外的区域，再减去阅读设置的页边距，高度还要减去状态栏高度。
+     * 首次分页、排版设置变化后的重新分页和打开另一本书都用它，保证分页和绘制的区域相同。
+     */
+    private int[] getPageContentSize(ReadingSettings settings) {
+        int pageWidth = vp2NovelPages.getWidth() - vp2NovelPages.getPaddingLeft() - vp2NovelPages.getPaddingRight();
+        int pageHeight = vp2NovelPages.getHeight() - vp2NovelPages.getPaddingTop() - vp2NovelPages.getPaddingBottom();
+        return new int[]{
+                pageWidth - settings.getPaddingLeft() - settings.getPaddingRight(),
+                pageHeight - settings.getPaddingTop() - settings.getPaddingBottom() - fixedStatusBarHeight
+        };
     }
 
     @Override
@@ -790,6 +869,15 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
         }
     }
 
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        int charOffset = getCurrentReadingOffset();
+        if (charOffset >= 0) {
+            outState.putInt(STATE_READING_OFFSET, charOffset);
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
@@ -797,6 +885,8 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
         // 线程池的生命周期应该与 Application 绑定
         NovelReaderManager.getInstance().cancelCurrentPaginationTask();
         handler.removeCallbacksAndMessages(null);
+        ReadingSettingsManager.removeOnReadingSettingsChangeListener(settingsSnapshotListener);
+        layoutPrefetcher.release();
 
         Log.d("ReadingActivity", "onDestroy() called.");
     }
@@ -809,30 +899,31 @@ public class ReadingActivity extends AppCompatActivity implements SettingsBottom
         // 从新的 Intent 中获取数据，并重新加载内容
         Uri newFileUri = intent.getParcelableExtra("FILE_URI");
         int newInitialPage = intent.getIntExtra("INITIAL_PAGE", -1);
+        int newInitialOffset = intent.getIntExtra("INITIAL_CHAR_OFFSET", -1);
 
         if (!Objects.equals(newFileUri, fileUri)) { // 如果文件 URI 发生变化，则重新加载和分页
             fileUri = newFileUri;
             // 你可能需要重新触发分页逻辑，例如调用 loadAndPaginateText
             // 注意：这里需要获取当前的 ViewPager2 尺寸
-            int vp2Width = vp2NovelPages.getWidth();
-            int vp2Height = vp2NovelPages.getHeight();
-            int vp2PaddingTop = vp2NovelPages.getPaddingTop();
-            if (vp2Width > 0 && vp2Height > 0) {
-                int[] pagePaddingPx = readingSettings.getPagePaddingPx();
-                int novelPageInternalPaddingPxHorizontal = pagePaddingPx[0] + pagePaddingPx[2];
-                int novelPageInternalPaddingPxVertical = vp2PaddingTop + pagePaddingPx[3];
-
-                int actualContentWidthPx = vp2Width - novelPageInternalPaddingPxHorizontal;
-                int actualContentHeightPx = vp2Height - novelPageInternalPaddingPxVertical;
+            if (vp2NovelPages.getWidth() > 0 && vp2NovelPages.getHeight() > 0) {
+                int[] contentSize = getPageContentSize(currentSettings);
 
                 // 触发重新加载和分页
                 isPaginationTriggered = false; // 重置此标志
-                loadAndPaginateText(fileUri, actualContentWidthPx, actualContentHeightPx);
+                loadAndPaginateText(fileUri, contentSize[0], contentSize[1]);
             }
         } else { // 如果文件 URI 相同，只是页码变化，则直接跳转到页码
-            if (newInitialPage != -1 && newInitialPage != vp2NovelPages.getCurrentItem() && newInitialPage < pageAdapter.getItemCount()) {
-                vp2NovelPages.setCurrentItem(newInitialPage, false);
-                updateProgressUI(newInitialPage);
+            if (newInitialOffset != -1 && pageAdapter != null) {
+                // 从目录跳转：按字符偏移量定位，所在页可能还在增量分页中
+                pendingTargetPage = -1;
+                pendingTargetOffset = newInitialOffset;
+                jumpToPendingTargetPage();
+                updateProgressUI(vp2NovelPages.getCurrentItem());
+            } else if (newInitialPage != -1 && pageAdapter != null && newInitialPage != vp2NovelPages.getCurrentItem()) {
+                // 目标页可能还在增量分页中，排好后再跳转
+                pendingTargetPage = newInitialPage;
+                jumpToPendingTargetPage();
+                updateProgressUI(vp2NovelPages.getCurrentItem());
             }
         }
     }
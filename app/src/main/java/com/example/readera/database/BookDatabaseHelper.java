@@ -1,11 +1,24 @@
 package com.example.readera.database;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+/**
+ * 整个应用共用一个实例，数据库只打开一次并在进程存活期间保持打开，调用方不要 close()。
+ * 启用 WAL：后台线程写入（例如建立搜索索引）时，其他线程的读取不会被阻塞。
+ */
 public class BookDatabaseHelper extends SQLiteOpenHelper {
+    private static BookDatabaseHelper instance;
+
     private static final String DATABASE_NAME = "books.db"; // 数据库文件名
-    private static final int DATABASE_VERSION = 4; // 数据库版本号
+    private static final int DATABASE_VERSION = 14; // 数据库版本号
 
     public static final String TABLE_BOOKS = "books"; // 书籍信息表名
     public static final String COLUMN_ID = "_id"; // 表的主键ID，通常为自增长
@@ -19,6 +32,49 @@ public class BookDatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_FILE_SIZE = "file_size"; // 书籍文件的大小，单位通常为字节
     public static final String COLUMN_LAST_MODIFIED = "last_modified"; // 书籍文件最后修改的时间戳
     public static final String COLUMN_FILE_HASH = "file_hash"; // 书籍文件的哈希值，用于文件完整性校验或去重
+    public static final String COLUMN_QUICK_HASH = "quick_hash"; // 快速指纹，导入去重的第一层，相同时才比较 file_hash
+    public static final String COLUMN_CHARSET = "charset"; // 探测到的文本编码，按文件哈希缓存，避免每次打开都重新探测
+    public static final String COLUMN_LAST_OPENED_TIME = "last_opened_time"; // 最后一次打开的时间戳，0 表示从未打开
+
+    // 目录表：每本书识别出的章节，按文件哈希（没有哈希时为 URI）关联，内容相同的书共享同一份目录
+    public static final String TABLE_CHAPTERS = "chapters";
+    public static final String COLUMN_CHAPTER_BOOK_KEY = "book_key"; // 文件哈希或 URI
+    public static final String COLUMN_CHAPTER_POSITION = "position"; // 章节在目录中的序号（从 0 开始）
+    public static final String COLUMN_CHAPTER_TITLE = "title"; // 章节标题
+    public static final String COLUMN_CHAPTER_OFFSET = "char_offset"; // 标题在全文中的字符偏移量
+    public static final String COLUMN_CHAPTER_LEVEL = "level"; // 目录层级，0 为卷，1 为章
+
+    // 全书库搜索：正文按段落切块后写入 FTS4 虚表，docid 与 library_chunks 的 _id 一一对应
+    public static final String TABLE_LIBRARY_FTS = "library_fts";
+    public static final String COLUMN_LIBRARY_FTS_BODY = "body"; // 切块后的正文，中日韩字符之间插入了空格
+    public static final String TABLE_LIBRARY_CHUNKS = "library_chunks";
+    public static final String COLUMN_LIBRARY_BOOK_KEY = "book_key"; // 文件哈希或 URI
+    public static final String COLUMN_LIBRARY_CHUNK_OFFSET = "char_offset"; // 块在全文中的起始字符偏移量
+    // 已建立索引的书籍，文件哈希变化后旧的键不再出现在书架上，对应的索引会被删除
+    public static final String TABLE_LIBRARY_INDEXED = "library_indexed";
+    public static final String COLUMN_LIBRARY_CHUNK_COUNT = "chunk_count";
+    public static final String COLUMN_LIBRARY_INDEXED_AT = "indexed_at";
+
+    // 书库文件夹：导入过的目录（SAF 树 URI），重新扫描时递归遍历，只处理新增或变化的文件
+    public static final String TABLE_LIBRARY_FOLDERS = "library_folders";
+    public static final String COLUMN_FOLDER_TREE_URI = "tree_uri";
+    public static final String COLUMN_FOLDER_ADDED_AT = "added_at";
+
+    // 书签：每行一个，按书的 URI 分组；_id 递增，越大越新，按 _id 倒序分页
+    public static final String TABLE_BOOKMARKS = "bookmarks";
+    public static final String COLUMN_BOOKMARK_BOOK_URI = "book_uri";
+    public static final String COLUMN_BOOKMARK_PAGE = "page_number";
+    // 书签位置的字符偏移量，排版变化后据此重新换算页码；旧版本迁移来的书签为 -1，只有页码
+    public static final String COLUMN_BOOKMARK_CHAR_OFFSET = "char_offset";
+    public static final String COLUMN_BOOKMARK_TITLE = "display_title";
+    public static final String COLUMN_BOOKMARK_CREATED_AT = "created_at";
+
+    // 阅读进度：每本书一行，按书的 URI 查找；翻页时只更新内存，由 ReadingProgressStore 定时合并写入
+    public static final String TABLE_READING_PROGRESS = "reading_progress";
+    public static final String COLUMN_PROGRESS_BOOK_URI = "book_uri";
+    public static final String COLUMN_PROGRESS_PAGE = "page_index"; // 保存时的页码，没有字符偏移量时才使用
+    public static final String COLUMN_PROGRESS_CHAR_OFFSET = "char_offset"; // 当前页第一个字符的偏移量
+    public static final String COLUMN_PROGRESS_UPDATED_AT = "updated_at";
 
     private static final String SQL_CREATE_BOOKS =
             "CREATE TABLE " + TABLE_BOOKS + " (" +
@@ -32,24 +88,268 @@ public class BookDatabaseHelper extends SQLiteOpenHelper {
                     COLUMN_IS_FAVORITE + " INTEGER DEFAULT 0,"+ // 默认未收藏
                     COLUMN_FILE_SIZE + " INTEGER DEFAULT -1," +
                     COLUMN_LAST_MODIFIED + " INTEGER DEFAULT -1," +
-                    COLUMN_FILE_HASH + " TEXT);";
+                    COLUMN_FILE_HASH + " TEXT," +
+                    COLUMN_QUICK_HASH + " TEXT," +
+                    COLUMN_CHARSET + " TEXT," +
+                    COLUMN_LAST_OPENED_TIME + " INTEGER DEFAULT 0);";
             ;
 
+    // 导入时按指纹、哈希、大小和修改时间判断书籍是否已存在；URI 已有 UNIQUE 约束自带的索引
+    // 快速指纹列在版本 10 才加入，它的索引单独创建，升级到版本 9 时还没有这一列
+    private static final String SQL_CREATE_BOOKS_HASH_INDEX =
+            "CREATE INDEX IF NOT EXISTS idx_books_file_hash ON " + TABLE_BOOKS + " (" + COLUMN_FILE_HASH + ");";
+    private static final String SQL_CREATE_BOOKS_QUICK_HASH_INDEX =
+            "CREATE INDEX IF NOT EXISTS idx_books_quick_hash ON " + TABLE_BOOKS + " (" + COLUMN_QUICK_HASH + ");";
+    private static final String SQL_CREATE_BOOKS_METADATA_INDEX =
+            "CREATE INDEX IF NOT EXISTS idx_books_size_modified ON " + TABLE_BOOKS +
+                    " (" + COLUMN_FILE_SIZE + ", " + COLUMN_LAST_MODIFIED + ");";
+    // 已读、待读、收藏列表只查询标记为 1 的书，用部分索引只收录这些行；查询条件要写成字面量 = 1 才能用上
+    private static final String SQL_CREATE_BOOKS_READ_INDEX =
+            "CREATE INDEX IF NOT EXISTS idx_books_read ON " + TABLE_BOOKS +
+                    " (" + COLUMN_IS_READ + ") WHERE " + COLUMN_IS_READ + " = 1;";
+    private static final String SQL_CREATE_BOOKS_UNREAD_INDEX =
+            "CREATE INDEX IF NOT EXISTS idx_books_unread ON " + TABLE_BOOKS +
+                    " (" + COLUMN_IS_UNREAD + ") WHERE " + COLUMN_IS_UNREAD + " = 1;";
+    private static final String SQL_CREATE_BOOKS_FAVORITE_INDEX =
+            "CREATE INDEX IF NOT EXISTS idx_books_favorite ON " + TABLE_BOOKS +
+                    " (" + COLUMN_IS_FAVORITE + ") WHERE " + COLUMN_IS_FAVORITE + " = 1;";
+
+    private static final String SQL_CREATE_CHAPTERS =
+            "CREATE TABLE " + TABLE_CHAPTERS + " (" +
+                    COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    COLUMN_CHAPTER_BOOK_KEY + " TEXT NOT NULL," +
+                    COLUMN_CHAPTER_POSITION + " INTEGER NOT NULL," +
+                    COLUMN_CHAPTER_TITLE + " TEXT NOT NULL," +
+                    COLUMN_CHAPTER_OFFSET + " INTEGER NOT NULL," +
+                    COLUMN_CHAPTER_LEVEL + " INTEGER DEFAULT 0);";
+
+    // 按书分页查询目录时使用
+    private static final String SQL_CREATE_CHAPTERS_INDEX =
+            "CREATE UNIQUE INDEX idx_chapters_book_position ON " + TABLE_CHAPTERS +
+                    " (" + COLUMN_CHAPTER_BOOK_KEY + ", " + COLUMN_CHAPTER_POSITION + ");";
+
+    // 使用 FTS4 的 simple 分词器：ASCII 按单词切分，中日韩字符在写入前已用空格隔开，每个字是一个词
+    private static final String SQL_CREATE_LIBRARY_FTS =
+            "CREATE VIRTUAL TABLE " + TABLE_LIBRARY_FTS + " USING fts4(" + COLUMN_LIBRARY_FTS_BODY + ");";
+
+    private static final String SQL_CREATE_LIBRARY_CHUNKS =
+            "CREATE TABLE " + TABLE_LIBRARY_CHUNKS + " (" +
+                    COLUMN_ID + " INTEGER PRIMARY KEY," +
+                    COLUMN_LIBRARY_BOOK_KEY + " TEXT NOT NULL," +
+                    COLUMN_LIBRARY_CHUNK_OFFSET + " INTEGER NOT NULL);";
+
+    // 删除某本书的索引时按书籍键查找它的块
+    private static final String SQL_CREATE_LIBRARY_CHUNKS_INDEX =
+            "CREATE INDEX idx_library_chunks_book ON " + TABLE_LIBRARY_CHUNKS +
+                    " (" + COLUMN_LIBRARY_BOOK_KEY + ");";
+
+    private static final String SQL_CREATE_LIBRARY_INDEXED =
+            "CREATE TABLE " + TABLE_LIBRARY_INDEXED + " (" +
+                    COLUMN_LIBRARY_BOOK_KEY + " TEXT PRIMARY KEY," +
+                    COLUMN_LIBRARY_CHUNK_COUNT + " INTEGER NOT NULL," +
+                    COLUMN_LIBRARY_INDEXED_AT + " INTEGER NOT NULL);";
+
+    private static final String SQL_CREATE_LIBRARY_FOLDERS =
+            "CREATE TABLE " + TABLE_LIBRARY_FOLDERS + " (" +
+                    COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    COLUMN_FOLDER_TREE_URI + " TEXT NOT NULL UNIQUE," +
+                    COLUMN_FOLDER_ADDED_AT + " INTEGER NOT NULL);";
+
+    private static final String SQL_CREATE_BOOKMARKS =
+            "CREATE TABLE " + TABLE_BOOKMARKS + " (" +
+                    COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    COLUMN_BOOKMARK_BOOK_URI + " TEXT NOT NULL," +
+                    COLUMN_BOOKMARK_PAGE + " INTEGER NOT NULL," +
+                    COLUMN_BOOKMARK_CHAR_OFFSET + " INTEGER NOT NULL DEFAULT -1," +
+                    COLUMN_BOOKMARK_TITLE + " TEXT," +
+                    COLUMN_BOOKMARK_CREATED_AT + " INTEGER NOT NULL);";
+
+    // 同一本书的同一位置只有一个书签：有字符偏移量的按 (book_uri, char_offset) 去重，
+    // 页码会随排版变化，不能作为唯一键；只有旧书签（偏移量为 -1）仍按页码去重。
+    // 按书分页用单列索引：它的条目按 (book_uri, rowid) 排列，“book_uri = ? AND _id < ? ORDER BY _id DESC”不需要排序
+    private static final String SQL_CREATE_BOOKMARKS_OFFSET_INDEX =
+            "CREATE UNIQUE INDEX idx_bookmarks_book_offset ON " + TABLE_BOOKMARKS +
+                    " (" + COLUMN_BOOKMARK_BOOK_URI + ", " + COLUMN_BOOKMARK_CHAR_OFFSET + ")" +
+                    " WHERE " + COLUMN_BOOKMARK_CHAR_OFFSET + " >= 0;";
+    private static final String SQL_CREATE_BOOKMARKS_LEGACY_PAGE_INDEX =
+            "CREATE UNIQUE INDEX idx_bookmarks_book_page ON " + TABLE_BOOKMARKS +
+                    " (" + COLUMN_BOOKMARK_BOOK_URI + ", " + COLUMN_BOOKMARK_PAGE + ")" +
+                    " WHERE " + COLUMN_BOOKMARK_CHAR_OFFSET + " < 0;";
+    private static final String SQL_CREATE_BOOKMARKS_BOOK_INDEX =
+            "CREATE INDEX idx_bookmarks_book ON " + TABLE_BOOKMARKS + " (" + COLUMN_BOOKMARK_BOOK_URI + ");";
 
-    public BookDatabaseHelper( Context context) {
+    private static final String SQL_CREATE_READING_PROGRESS =
+            "CREATE TABLE " + TABLE_READING_PROGRESS + " (" +
+                    COLUMN_PROGRESS_BOOK_URI + " TEXT PRIMARY KEY," +
+                    COLUMN_PROGRESS_PAGE + " INTEGER NOT NULL DEFAULT 0," +
+                    COLUMN_PROGRESS_CHAR_OFFSET + " INTEGER NOT NULL DEFAULT -1," +
+                    COLUMN_PROGRESS_UPDATED_AT + " INTEGER NOT NULL);";
+
+    public static synchronized BookDatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new BookDatabaseHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private BookDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    // 按 SQL 缓存的预编译写语句，所有 DAO 实例共用，数据库关闭时一起关闭
+    private final Map<String, SQLiteStatement> cachedStatements = new HashMap<>();
+
+    /**
+     * 取出预编译的写语句，第一次使用时编译。语句在所有线程间共用，绑定和执行期间请对返回的语句加锁。
+     */
+    public synchronized SQLiteStatement getCachedStatement(String sql) {
+        SQLiteStatement statement = cachedStatements.get(sql);
+        if (statement == null) {
+            statement = getWritableDatabase().compileStatement(sql);
+            cachedStatements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (SQLiteStatement statement : cachedStatements.values()) {
+            statement.close();
+        }
+        cachedStatements.clear();
+        super.close();
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(SQL_CREATE_BOOKS);
+        createBookIndexes(db);
+        db.execSQL(SQL_CREATE_BOOKS_QUICK_HASH_INDEX);
+        db.execSQL(SQL_CREATE_CHAPTERS);
+        db.execSQL(SQL_CREATE_CHAPTERS_INDEX);
+        createLibrarySearchTables(db);
+        db.execSQL(SQL_CREATE_LIBRARY_FOLDERS);
+        createBookmarksTable(db);
+        db.execSQL(SQL_CREATE_READING_PROGRESS);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // 当数据库版本升级时，你需要执行相应的更新操作
-        // 这里简单地删除旧表并创建新表，实际应用中需要更谨慎地处理用户数据
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_BOOKS);
-        onCreate(db);
+        if (oldVersion < 4) {
+            // 版本 4 之前的表结构差异较大：按新结构重建书籍表，两边都有的列原样复制，其余列使用默认值
+            rebuildBooksTable(db);
+            db.execSQL(SQL_CREATE_CHAPTERS);
+            db.execSQL(SQL_CREATE_CHAPTERS_INDEX);
+            createLibrarySearchTables(db);
+            createBookIndexes(db);
+            db.execSQL(SQL_CREATE_BOOKS_QUICK_HASH_INDEX);
+            db.execSQL(SQL_CREATE_LIBRARY_FOLDERS);
+            createBookmarksTable(db);
+            db.execSQL(SQL_CREATE_READING_PROGRESS);
+            return;
+        }
+        if (oldVersion < 5) {
+            // 版本 5：新增编码缓存列，保留已有书籍数据
+            db.execSQL("ALTER TABLE " + TABLE_BOOKS + " ADD COLUMN " + COLUMN_CHARSET + " TEXT");
+        }
+        if (oldVersion < 6) {
+            // 版本 6：新增最后打开时间列，书架预加载据此挑选最近阅读的书
+            db.execSQL("ALTER TABLE " + TABLE_BOOKS + " ADD COLUMN " + COLUMN_LAST_OPENED_TIME + " INTEGER DEFAULT 0");
+        }
+        if (oldVersion < 7) {
+            // 版本 7：新增目录表
+            db.execSQL(SQL_CREATE_CHAPTERS);
+            db.execSQL(SQL_CREATE_CHAPTERS_INDEX);
+        }
+        if (oldVersion < 8) {
+            // 版本 8：新增全书库搜索的索引表，已有书籍在后台逐本建立索引
+            createLibrarySearchTables(db);
+        }
+        if (oldVersion < 9) {
+            // 版本 9：书籍表的查询索引
+            createBookIndexes(db);
+        }
+        if (oldVersion < 10) {
+            // 版本 10：新增快速指纹列。已有的书没有指纹，导入时遇到大小相同的文件再比较完整哈希
+            db.execSQL("ALTER TABLE " + TABLE_BOOKS + " ADD COLUMN " + COLUMN_QUICK_HASH + " TEXT");
+            db.execSQL(SQL_CREATE_BOOKS_QUICK_HASH_INDEX);
+        }
+        if (oldVersion < 11) {
+            // 版本 11：书库文件夹表。之前导入的目录在第一次重新扫描时从已持久化的目录权限中补上
+            db.execSQL(SQL_CREATE_LIBRARY_FOLDERS);
+        }
+        if (oldVersion < 12) {
+            // 版本 12：书签表。SharedPreferences 中的旧书签在第一次读写书签时迁移
+            createBookmarksTable(db);
+        } else if (oldVersion < 13) {
+            // 版本 13：书签改为按字符偏移量定位。已有书签没有偏移量，保留页码；
+            // 原来 (book_uri, page_number) 上的唯一索引换成只约束旧书签的部分索引
+            // 从版本 12 之前升级时上面已经按新结构建表，不需要这一步
+            db.execSQL("ALTER TABLE " + TABLE_BOOKMARKS + " ADD COLUMN " + COLUMN_BOOKMARK_CHAR_OFFSET
+                    + " INTEGER NOT NULL DEFAULT -1");
+            db.execSQL("DROP INDEX IF EXISTS idx_bookmarks_book_page");
+            db.execSQL(SQL_CREATE_BOOKMARKS_OFFSET_INDEX);
+            db.execSQL(SQL_CREATE_BOOKMARKS_LEGACY_PAGE_INDEX);
+        }
+        if (oldVersion < 14) {
+            // 版本 14：阅读进度表。SharedPreferences 中的旧进度在第一次读取进度时迁移
+            db.execSQL(SQL_CREATE_READING_PROGRESS);
+        }
+    }
+
+    private void createBookIndexes(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_BOOKS_HASH_INDEX);
+        db.execSQL(SQL_CREATE_BOOKS_METADATA_INDEX);
+        db.execSQL(SQL_CREATE_BOOKS_READ_INDEX);
+        db.execSQL(SQL_CREATE_BOOKS_UNREAD_INDEX);
+        db.execSQL(SQL_CREATE_BOOKS_FAVORITE_INDEX);
+    }
+
+    // 把旧的书籍表改名后按当前结构新建，再复制两边共有的列；重复的 URI 或缺少标题的旧行被跳过
+    private void rebuildBooksTable(SQLiteDatabase db) {
+        String oldTable = TABLE_BOOKS + "_old";
+        db.execSQL("DROP TABLE IF EXISTS " + oldTable);
+        db.execSQL("ALTER TABLE " + TABLE_BOOKS + " RENAME TO " + oldTable);
+        db.execSQL(SQL_CREATE_BOOKS);
+
+        StringBuilder columns = new StringBuilder();
+        try (Cursor oldColumns = db.rawQuery("PRAGMA table_info(" + oldTable + ")", null);
+             Cursor newColumns = db.rawQuery("PRAGMA table_info(" + TABLE_BOOKS + ")", null)) {
+            Set<String> existing = new HashSet<>();
+            int nameIndex = oldColumns.getColumnIndexOrThrow("name");
+            while (oldColumns.moveToNext()) {
+                existing.add(oldColumns.getString(nameIndex));
+            }
+            nameIndex = newColumns.getColumnIndexOrThrow("name");
+            while (newColumns.moveToNext()) {
+                String name = newColumns.getString(nameIndex);
+                if (existing.contains(name)) {
+                    if (columns.length() > 0) {
+                        columns.append(", ");
+                    }
+                    columns.append(name);
+                }
+            }
+        }
+        if (columns.length() > 0) {
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE_BOOKS + " (" + columns + ") SELECT " + columns
+                    + " FROM " + oldTable);
+        }
+        db.execSQL("DROP TABLE " + oldTable);
+    }
+
+    private void createBookmarksTable(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_BOOKMARKS);
+        db.execSQL(SQL_CREATE_BOOKMARKS_OFFSET_INDEX);
+        db.execSQL(SQL_CREATE_BOOKMARKS_LEGACY_PAGE_INDEX);
+        db.execSQL(SQL_CREATE_BOOKMARKS_BOOK_INDEX);
+    }
+
+    private void createLibrarySearchTables(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_LIBRARY_FTS);
+        db.execSQL(SQL_CREATE_LIBRARY_CHUNKS);
+        db.execSQL(SQL_CREATE_LIBRARY_CHUNKS_INDEX);
+        db.execSQL(SQL_CREATE_LIBRARY_INDEXED);
     }
 }
@@ -0,0 +1,66 @@
+package com.example.readera.database;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 数据库专用的后台线程。界面发起的查询和写入都交给这里执行，结果回到主线程，
+ * 主线程上不再直接读写数据库。只有一个线程，写入按提交顺序执行，不会互相等待数据库锁。
+ */
+public final class DatabaseExecutor {
+    private static final String TAG = "DatabaseExecutor";
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "BookDatabase");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    /**
+     * 查询结果的回调，在主线程执行。
+     */
+    public interface ResultCallback<T> {
+        void onResult(T result);
+    }
+
+    private DatabaseExecutor() {
+    }
+
+    /**
+     * 在数据库线程上执行 task，完成后在主线程回调 callback（可以为 null）。
+     * task 抛出异常时记录日志，并以 null 作为结果回调，调用方不会一直等不到结果。
+     */
+    public static <T> void submit(Callable<T> task, ResultCallback<T> callback) {
+        EXECUTOR.execute(() -> {
+            T result = callQuietly(task);
+            if (callback != null) {
+                MAIN_HANDLER.post(() -> callback.onResult(result));
+            }
+        });
+    }
+
+    /**
+     * 在数据库线程上执行 task，完成后在主线程执行 onComplete（可以为 null），task 失败时也会执行。
+     */
+    public static void execute(Runnable task, Runnable onComplete) {
+        submit(() -> {
+            task.run();
+            return null;
+        }, onComplete != null ? result -> onComplete.run() : null);
+    }
+
+    private static <T> T callQuietly(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (Exception e) {
+            Log.e(TAG, "数据库操作失败", e);
+            return null;
+        }
+    }
+}
@@ -6,9 +6,7 @@ import android.app.AlertDialog;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
-import android.provider.DocumentsContract;
 import android.util.Log;
-import android.util.Pair;
 import android.view.ContextMenu;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -16,8 +14,10 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.ListView;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -29,17 +29,18 @@ import androidx.fragment.app.Fragment;
 
 import com.example.readera.Adapter.BookAdapter;
 import com.example.readera.Dao.BookDao;
-import com.example.readera.Enum.CoverDataType;
+import com.example.readera.LibrarySearchActivity;
 import com.example.readera.R;
 import com.example.readera.model.BookInfo;
+import com.example.readera.utiles.BookImporter;
+import com.example.readera.utiles.BookPrefetcher;
+import com.example.readera.utiles.NovelReaderManager;
 import com.example.readera.utiles.ReadingUtils;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class BookShelfFragment  extends Fragment {
     private static final String TAG = "BookShelfFragment";
@@ -50,6 +51,12 @@ public class BookShelfFragment  extends Fragment {
     private TextView emptyBookTextView;// 当书籍列表为空时显示的 TextView
     private ActivityResultLauncher<Intent> filePickerLauncher;// 用于启动文件选择器的 ActivityResultLauncher
     private ActivityResultLauncher<Intent> directoryPickerLauncher;// 用于启动目录选择器的 ActivityResultLauncher
+    private BookPrefetcher bookPrefetcher;// 在后台预加载最近阅读的书籍
+    private BookImporter bookImporter;// 在后台导入书籍
+    private AlertDialog importProgressDialog;// 导入进度对话框
+    private ProgressBar importProgressBar;
+    private ShelfImportListener activeImport;// 当前的导入任务，被新任务取代后旧任务的回调不再更新界面
+    private boolean libraryRescanned;// 本次显示书架时是否已经自动扫描过书库文件夹
 
     // --- 定义回调接口 ---
     public interface OnBookStatusChangeListener {
@@ -66,7 +73,7 @@ public class BookShelfFragment  extends Fragment {
         emptyBookTextView = view.findViewById(R.id.emptyBookTextView);
 
         bookDao = new BookDao(requireContext());
-        bookList = bookDao.getAllBooks();
+        bookList = new ArrayList<>(); // 在 onResume 中异步加载
         adapter = new BookAdapter(requireContext(), bookList,new OnBookStatusChangeListener(){
             // 当书籍状态改变时，重新加载数据并刷新界面
             @Override
@@ -76,6 +83,25 @@ public class BookShelfFragment  extends Fragment {
         });
 
         bookListView.setAdapter(adapter);
+        bookListView.setRecyclerListener(adapter); // 列表项回收时取消封面加载
+
+        // 预加载最近阅读的书籍；列表滚动时暂停，避免影响滑动流畅度
+        bookPrefetcher = new BookPrefetcher(requireContext());
+        bookImporter = new BookImporter(requireContext());
+        bookListView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+                if (scrollState == SCROLL_STATE_IDLE) {
+                    bookPrefetcher.resume();
+                } else {
+                    bookPrefetcher.pause();
+                }
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+            }
+        });
 
         registerForContextMenu(bookListView);
         // 设置 ListView 的点击监听器，点击书籍条目打开阅读 Activity
@@ -111,8 +137,7 @@ public class BookShelfFragment  extends Fragment {
                         if (data != null && data.getData() != null) {
                             Uri directoryUri = data.getData();
                             if (directoryUri != null) {
-                                // 目录权限持久化在 listTextFilesInDirectory 中执行
-                                // 但这里可以再次确认一下，确保在传递给 importTextFilesFromDirectory 之前目录本身被持久化
+                                // 持久化目录权限，之后可以再次访问目录中的文件
                                 final int takeFlags = data.getFlags() & Intent.FLAG_GRANT_READ_URI_PERMISSION;
                                 try {
                                     requireContext().getContentResolver().takePersistableUriPermission(directoryUri, takeFlags);
@@ -147,204 +172,168 @@ public class BookShelfFragment  extends Fragment {
     public void onResume() {
         super.onResume();
         loadBooks();
+        bookPrefetcher.schedule();
+        // 为新导入或内容变化的书建立全书库搜索索引，在后台线程进行
+        NovelReaderManager.getInstance().syncLibrarySearchIndexAsync(requireContext());
+        // 打开书架时在后台静默扫描一次书库文件夹，没有变化时只需要列目录
+        if (!libraryRescanned && !bookImporter.isRunning()) {
+            libraryRescanned = true;
+            startImport(new ShelfImportListener(false, true));
+            bookImporter.rescanLibrary(activeImport);
+        }
     }
-    private void loadBooks() {
-        bookList.clear();
-        bookList.addAll(bookDao.getAllBooks());
-        adapter.notifyDataSetChanged();
-        emptyBookTextView.setVisibility(bookList.isEmpty() ? View.VISIBLE : View.GONE);
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        // 离开书架后不再需要预加载（已经完成的书仍保留在缓存中）
+        bookPrefetcher.cancel();
     }
 
-    //计算hash
-    private String calculateFileHash(Uri uri) {
-        try (InputStream inputStream = requireContext().getContentResolver().openInputStream(uri)) {
-            if (inputStream == null) {
-                return null;
-            }
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                md.update(buffer, 0, bytesRead);
-            }
-            byte[] digest = md.digest();
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : digest) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        bookPrefetcher.release();
+        // 视图销毁时停止导入，已经写入的书下次加载书架时显示
+        bookImporter.release();
+        dismissImportProgressDialog();
+    }
+    private void loadBooks() {
+        bookDao.getAllBooksAsync(books -> { // 在数据库线程查询，结果回到主线程
+            if (getView() == null || books == null) {
+                return; // 查询返回前视图已销毁，或者查询失败（保留当前列表）
             }
-            return hexString.toString();
-        } catch (IOException | NoSuchAlgorithmException e) {
-            Log.e(TAG, "Error calculating file hash: " + e.getMessage());
-            return null;
-        }
+            bookList.clear();
+            bookList.addAll(books);
+            adapter.notifyDataSetChanged();
+            emptyBookTextView.setVisibility(bookList.isEmpty() ? View.VISIBLE : View.GONE);
+        });
     }
 
-    // 获取文件大小和最后修改时间
-    private Pair<Long, Long> getFileMetadata(Uri uri) {
-        long size = -1;
-        long lastModified = -1;
-        try (android.database.Cursor cursor = requireContext().getContentResolver().query(uri, null, null, null, null)) {
-            if (cursor != null && cursor.moveToFirst()) {
-                int sizeIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_SIZE);
-                if (sizeIndex != -1) {
-                    size = cursor.getLong(sizeIndex);
-                }
-                int modifiedIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
-                if (modifiedIndex != -1) {
-                    lastModified = cursor.getLong(modifiedIndex);
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error getting file metadata: " + e.getMessage());
-        }
-        return new Pair<>(size, lastModified);
+    // 导入单个文件
+    private void processImportedTextFile(Uri fileUri) {
+        List<Uri> fileUris = new ArrayList<>(1);
+        fileUris.add(fileUri);
+        startImport(new ShelfImportListener(true, false));
+        bookImporter.importFiles(fileUris, activeImport);
     }
 
-    // 将书籍信息添加到数据库并更新 UI
-    private void addBookToDatabase(BookInfo bookInfo) {
-        Log.d(TAG, "Checking if book exists: URI=" + bookInfo.getUri() +
-                ", Size=" + bookInfo.getFileSize() + ", Modified="
-                + bookInfo.getLastModified() + ", Hash=" + bookInfo.getFileHash());
-        boolean exists = bookDao.isBookExists(bookInfo);
-        Log.d(TAG, "Book exists: " + exists);
-        if(!exists){
-            long id = bookDao.addBook(bookInfo);
-            if (id > 0) {
-                bookList.add(bookInfo);
-                adapter.notifyDataSetChanged();
-                emptyBookTextView.setVisibility(bookList.isEmpty() ? View.VISIBLE : View.GONE);
-                Toast.makeText(requireContext(), getString(R.string.book_added, bookInfo.getTitle()), Toast.LENGTH_SHORT).show();
-            } else {
-                Toast.makeText(requireContext(), R.string.add_failed, Toast.LENGTH_SHORT).show();
-            }
-        } else {
-            Toast.makeText(requireContext(), getString(R.string.book_already_exists, bookInfo.getTitle()), Toast.LENGTH_SHORT).show();
-        }
+    // 从目录中导入文本文件（包括子目录），枚举、哈希和写入数据库都在后台进行
+    private void importTextFilesFromDirectory(Uri directoryUri) {
+        startImport(new ShelfImportListener(false, false));
+        bookImporter.importDirectory(directoryUri, activeImport);
     }
 
-    // 处理导入的文本文件
-    private void processImportedTextFile(Uri fileUri) {
-        String fileName = getFileNameFromUri(fileUri);// 获取文件名
-        if (fileName != null) {
-            String fileNameWithoutExtension = removeFileExtension(fileName);
-            Pair<Long, Long> metadata = getFileMetadata(fileUri);
-            String fileHash = calculateFileHash(fileUri);
-            BookInfo newBook = new BookInfo(fileNameWithoutExtension, fileUri, null, CoverDataType.TEXT,
-                    false, false, false, metadata.first, metadata.second, fileHash);
-            addBookToDatabase(newBook);
+    // 重新扫描所有导入过的目录，只处理新增或变化的文件
+    private void rescanLibraryFolders() {
+        startImport(new ShelfImportListener(false, false));
+        bookImporter.rescanLibrary(activeImport);
+    }
+
+    private void startImport(ShelfImportListener listener) {
+        activeImport = listener;
+        dismissImportProgressDialog();
+        if (!listener.quiet) {
+            showImportProgressDialog();
         }
     }
 
+    // 显示导入进度，可以中途取消
+    private void showImportProgressDialog() {
+        dismissImportProgressDialog();
+        importProgressBar = new ProgressBar(requireContext(), null, android.R.attr.progressBarStyleHorizontal);
+        importProgressBar.setIndeterminate(true);
+        int padding = (int) (24 * getResources().getDisplayMetrics().density);
+        importProgressBar.setPadding(padding, padding / 2, padding, 0);
+        importProgressDialog = new AlertDialog.Builder(requireContext())
+                .setTitle(R.string.importing_books)
+                .setView(importProgressBar)
+                .setMessage(" ")
+                .setCancelable(false)
+                .setNegativeButton(R.string.cancel, (dialog, which) -> bookImporter.cancel())
+                .show();
+    }
 
-    // 从目录中导入文本文件
-    private void importTextFilesFromDirectory(Uri directoryUri) {
-        if (directoryUri != null) {
-            try {
-                List<Uri> fileUris = listTextFilesInDirectory(directoryUri);
-                int importedCount = 0;
-                for (Uri fileUri : fileUris) {
-                    String fileName = getFileNameFromUri(fileUri);
-                    if (fileName != null) {
-                        String fileNameWithoutExtension = removeFileExtension(fileName);
-                        Pair<Long, Long> metadata = getFileMetadata(fileUri);
-                        String fileHash = calculateFileHash(fileUri);
-
-                        BookInfo newBook = new BookInfo(fileNameWithoutExtension, fileUri, null,
-                                CoverDataType.TEXT, false, false, false,
-                                metadata.first, metadata.second, fileHash);
-                        // 在这里使用标准的 addBookToDatabase 方法
-                        addBookToDatabase(newBook);
-                        if (!bookDao.isBookExists(newBook)) {
-                            importedCount++;
-                        }else {
-                            Log.d(TAG, "Book already exists: " + newBook.getTitle());
-                        }
-                    }
-                }
-                if (importedCount > 0) {
-                    Toast.makeText(requireContext(), getString(R.string.books_imported, importedCount), Toast.LENGTH_SHORT).show();
-                } else {
-                    Toast.makeText(requireContext(), R.string.no_new_books_imported, Toast.LENGTH_SHORT).show();
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error importing from directory: " + e.getMessage());
-                Toast.makeText(requireContext(), R.string.import_failed, Toast.LENGTH_SHORT).show();
-            }
+    private void dismissImportProgressDialog() {
+        if (importProgressDialog != null) {
+            importProgressDialog.dismiss();
+            importProgressDialog = null;
+            importProgressBar = null;
         }
     }
 
-    // 列出指定目录下的所有文本文件 URI
-    private List<Uri> listTextFilesInDirectory(Uri uri) throws Exception {
-        List<Uri> textFiles = new ArrayList<>();
-        if (uri != null) {
-            try {
-                // 请求持久的 URI 权限，以便后续可以访问
-                requireContext().getContentResolver().takePersistableUriPermission(uri,
-                        Intent.FLAG_GRANT_READ_URI_PERMISSION);
-                // 查询目录下的子文档
-                android.database.Cursor cursor = requireContext().getContentResolver().query(
-                        DocumentsContract.buildChildDocumentsUriUsingTree(uri,
-                                DocumentsContract.getTreeDocumentId(uri)),
-                        new String[]{DocumentsContract.Document.COLUMN_DOCUMENT_ID,
-                                DocumentsContract.Document.COLUMN_DISPLAY_NAME,
-                                DocumentsContract.Document.COLUMN_MIME_TYPE},
-                        null, null, null);
-                if (cursor != null) {
-                    while (cursor.moveToNext()) {
-                        String documentId = cursor.getString(cursor.getColumnIndexOrThrow(DocumentsContract.Document.COLUMN_DOCUMENT_ID));
-                        String displayName = cursor.getString(cursor.getColumnIndexOrThrow(DocumentsContract.Document.COLUMN_DISPLAY_NAME));
-                        String mimeType = cursor.getString(cursor.getColumnIndexOrThrow(DocumentsContract.Document.COLUMN_MIME_TYPE));
-                        // 判断是否为文本文件或以 .txt 结尾的文件名
-                        if ("text/plain".equals(mimeType) || displayName.toLowerCase().endsWith(".txt")) {
-                            Uri fileUri = DocumentsContract.buildDocumentUriUsingTree(uri, documentId);
-                            textFiles.add(fileUri);
-                        }
-                    }
-                    cursor.close();
-                }
-            } catch (SecurityException securityException) {
-                Log.e(TAG, "Permission denied to access directory: " + uri, securityException);
-                Toast.makeText(requireContext(), R.string.permission_denied, Toast.LENGTH_SHORT).show();
-                throw securityException;
-            } catch (Exception e) {
-                Log.e(TAG, "Error listing files in directory: " + uri, e);
-                throw e;
+    // 导入回调（主线程），每写入一批就显示在书架上
+    private class ShelfImportListener implements BookImporter.ImportListener {
+        private final boolean singleFile;
+        private final boolean quiet; // 自动扫描：不显示进度，只在有新书时提示
+
+        ShelfImportListener(boolean singleFile, boolean quiet) {
+            this.singleFile = singleFile;
+            this.quiet = quiet;
+        }
+
+        @Override
+        public void onImportProgress(int processed, int total) {
+            if (activeImport != this || importProgressDialog == null) {
+                return;
             }
+            importProgressBar.setIndeterminate(false);
+            importProgressBar.setMax(Math.max(total, 1));
+            importProgressBar.setProgress(processed);
+            importProgressDialog.setMessage(getString(R.string.import_progress, processed, total));
         }
-        return textFiles;
-    }
 
-    // 从 URI 中获取文件名
-    private String getFileNameFromUri(Uri uri) {
-        String fileName = null;
-        if (uri != null && "content".equals(uri.getScheme())) {
-            try (android.database.Cursor cursor = requireContext().getContentResolver().query(uri, null, null, null, null)) {
-                if (cursor != null && cursor.moveToFirst()) {
-                    int displayNameIndex = cursor.getColumnIndex(android.provider.OpenableColumns.DISPLAY_NAME);
-                    if (displayNameIndex != -1) {
-                        fileName = cursor.getString(displayNameIndex);
-                    }
+        @Override
+        public void onBooksImported(List<BookInfo> books) {
+            if (getView() == null) {
+                return;
+            }
+            // 导入期间书架可能重新加载过，已经在列表中的书不再重复添加
+            Set<Long> shownIds = new HashSet<>();
+            for (BookInfo book : bookList) {
+                shownIds.add(book.getId());
+            }
+            for (BookInfo book : books) {
+                if (!shownIds.contains(book.getId())) {
+                    bookList.add(book);
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Error getting file name: " + e.getMessage());
+            }
+            adapter.notifyDataSetChanged();
+            emptyBookTextView.setVisibility(bookList.isEmpty() ? View.VISIBLE : View.GONE);
+            if (singleFile) {
+                Toast.makeText(requireContext(), getString(R.string.book_added, books.get(0).getTitle()), Toast.LENGTH_SHORT).show();
             }
         }
-        if (fileName == null) {
-            fileName = uri.getLastPathSegment();
-        }
-        return fileName;
-    }
 
-    // 移除文件名中的扩展名
-    private String removeFileExtension(String fileName) {
-        if (fileName.toLowerCase().endsWith(".txt")) {
-            return fileName.substring(0, fileName.length() - 4);
+        @Override
+        public void onImportFinished(int imported, int skipped, int failed, boolean cancelled) {
+            if (activeImport == this) {
+                activeImport = null;
+                dismissImportProgressDialog();
+            }
+            if (getView() == null) {
+                return;
+            }
+            if (quiet) {
+                if (imported > 0) {
+                    Toast.makeText(requireContext(), getString(R.string.books_imported, imported), Toast.LENGTH_SHORT).show();
+                }
+            } else if (cancelled) {
+                Toast.makeText(requireContext(), getString(R.string.import_cancelled, imported), Toast.LENGTH_SHORT).show();
+            } else if (imported > 0) {
+                if (!singleFile) {
+                    Toast.makeText(requireContext(), getString(R.string.books_imported, imported), Toast.LENGTH_SHORT).show();
+                }
+            } else if (failed > 0) {
+                Toast.makeText(requireContext(), R.string.import_failed, Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(requireContext(), R.string.no_new_books_imported, Toast.LENGTH_SHORT).show();
+            }
+            if (imported > 0) {
+                // 新书需要建立全书库搜索索引
+                NovelReaderManager.getInstance().syncLibrarySearchIndexAsync(requireContext());
+            }
         }
-        return fileName;
     }
 
     // 创建上下文菜单
@@ -381,15 +370,19 @@ public class BookShelfFragment  extends Fragment {
 
     // 从数据库删除书籍并更新 UI
     private void deleteBookFromDatabase(BookInfo bookToDelete) {
-        int deletedRows = bookDao.deleteBook(bookToDelete.getTitle());
-        if (deletedRows > 0) {
-            Toast.makeText(requireContext(), getString(R.string.book_deleted, bookToDelete.getTitle()), Toast.LENGTH_SHORT).show();
-            bookList.remove(bookToDelete);
-            adapter.notifyDataSetChanged();
-            emptyBookTextView.setVisibility(bookList.isEmpty() ? View.VISIBLE : View.GONE);
-        } else {
-            Toast.makeText(requireContext(), R.string.delete_failed, Toast.LENGTH_SHORT).show();
-        }
+        bookDao.deleteBookAsync(bookToDelete.getId(), deletedRows -> {
+            if (getView() == null) {
+                return;
+            }
+            if (deletedRows != null && deletedRows > 0) {
+                Toast.makeText(requireContext(), getString(R.string.book_deleted, bookToDelete.getTitle()), Toast.LENGTH_SHORT).show();
+                bookList.remove(bookToDelete);
+                adapter.notifyDataSetChanged();
+                emptyBookTextView.setVisibility(bookList.isEmpty() ? View.VISIBLE : View.GONE);
+            } else {
+                Toast.makeText(requireContext(), R.string.delete_failed, Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     @Override
@@ -408,6 +401,12 @@ public class BookShelfFragment  extends Fragment {
         } else if (id == R.id.action_import) {
             openDirectoryPicker();
             return true;
+        } else if (id == R.id.action_rescan_library) {
+            rescanLibraryFolders();
+            return true;
+        } else if (id == R.id.action_library_search) {
+            startActivity(new Intent(requireContext(), LibrarySearchActivity.class));
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
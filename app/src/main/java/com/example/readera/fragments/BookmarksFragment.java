@@ -2,6 +2,7 @@ package com.example.readera.fragments;
 
 import android.app.AlertDialog;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 import android.view.ContextMenu;
 import android.view.LayoutInflater;
@@ -25,17 +26,42 @@ import com.example.readera.model.Bookmark;
 import com.example.readera.utiles.ReadingSettingsManager;
 
 import java.util.ArrayList;
-import java.util.List;
 
 public class BookmarksFragment extends Fragment implements BookmarkAdapter.OnBookmarkClickListener  {
 
+    private static final String ARG_FILE_URI = "file_uri";
+    // 每次从数据库读取的书签数
+    private static final int PAGE_SIZE = 50;
+    // 距离已加载的末尾还有这么多条时开始读取下一页
+    private static final int PREFETCH_DISTANCE = 10;
     private RecyclerView recyclerView;
     private TextView tvEmptyBookmarks;
     private BookmarkAdapter bookmarkAdapter;
     private ReadingSettingsManager readingSettingsManager;
-    private List<Bookmark> bookmarks; // 用于存储书签数据
+    private Uri fileUri; // 只显示这本书的书签
+    private long lastLoadedId; // 已加载的最后一个（最旧的）书签的 id，下一页从它之前开始
+    private boolean hasMore;
+    private boolean isLoadingPage;
+    private int loadGeneration; // 重新加载时递增，丢弃旧的分页结果
     private Bookmark currentLongPressedBookmark = null;
 
+    // 工厂方法，书签由 Fragment 自行从数据库分页读取
+    public static BookmarksFragment newInstance(Uri fileUri) {
+        BookmarksFragment fragment = new BookmarksFragment();
+        Bundle args = new Bundle();
+        args.putParcelable(ARG_FILE_URI, fileUri);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (getArguments() != null) {
+            fileUri = getArguments().getParcelable(ARG_FILE_URI);
+        }
+    }
+
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
@@ -47,8 +73,7 @@ public class BookmarksFragment extends Fragment implements BookmarkAdapter.OnBoo
 
         readingSettingsManager = new ReadingSettingsManager(getContext()); // 初始化 ReadingSettingsManager
 
-        setupRecyclerView(); // 设置 RecyclerView
-        loadBookmarks();     // 加载书签数据并更新UI
+        setupRecyclerView(); // 设置 RecyclerView，书签在 onResume 中加载
 
         registerForContextMenu(recyclerView); // 注册 RecyclerView 以便显示上下文菜单
 
@@ -56,25 +81,67 @@ public class BookmarksFragment extends Fragment implements BookmarkAdapter.OnBoo
     }
 
     private void setupRecyclerView() {
-        recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+        recyclerView.setLayoutManager(layoutManager);
         // 初始化 Adapter，并传入一个空的列表以及当前 Fragment 作为监听器
-        // 实际数据将在 loadBookmarks() 中填充
+        // 实际数据在 loadBookmarks() 中分页填充
         bookmarkAdapter = new BookmarkAdapter(new ArrayList<>(), this);
         recyclerView.setAdapter(bookmarkAdapter);
+        // 滚动到已加载部分的末尾附近时读取下一页
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+                if (layoutManager.findLastVisibleItemPosition() >= bookmarkAdapter.getItemCount() - PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
     }
 
     /**
-     * 从 ReadingSettingsManager 加载书签数据，并更新 UI。
+     * 从第一页开始重新加载这本书的书签。
      */
     private void loadBookmarks() {
-        bookmarks = readingSettingsManager.getAllBookmarks(); // 获取所有书签
-        if (bookmarks.isEmpty()) {
+        loadGeneration++;
+        lastLoadedId = Long.MAX_VALUE;
+        hasMore = fileUri != null;
+        isLoadingPage = false;
+        bookmarkAdapter.updateBookmarks(new ArrayList<>());
+        if (hasMore) {
+            loadNextPage();
+        } else {
+            updateUI();
+        }
+    }
+
+    // 从数据库读取下一页书签，追加到列表末尾
+    private void loadNextPage() {
+        if (isLoadingPage || !hasMore) {
+            return;
+        }
+        isLoadingPage = true;
+        final int generation = loadGeneration;
+        readingSettingsManager.loadBookmarksAsync(fileUri, lastLoadedId, PAGE_SIZE, page -> {
+            if (!isAdded() || getView() == null || generation != loadGeneration) {
+                return;
+            }
+            isLoadingPage = false;
+            hasMore = page.size() == PAGE_SIZE;
+            if (!page.isEmpty()) {
+                lastLoadedId = page.get(page.size() - 1).getId();
+                bookmarkAdapter.appendBookmarks(page);
+            }
+            updateUI();
+        });
+    }
+
+    private void updateUI() {
+        if (bookmarkAdapter.getItemCount() == 0) {
             recyclerView.setVisibility(View.GONE);
             tvEmptyBookmarks.setVisibility(View.VISIBLE);
         } else {
             recyclerView.setVisibility(View.VISIBLE);
             tvEmptyBookmarks.setVisibility(View.GONE);
-            bookmarkAdapter.updateBookmarks(bookmarks); // 更新适配器数据
         }
     }
 
@@ -84,8 +151,12 @@ public class BookmarksFragment extends Fragment implements BookmarkAdapter.OnBoo
         if (getActivity() != null) {
             Intent intent = new Intent(getActivity(), ReadingActivity.class);
             intent.putExtra("FILE_URI", bookmark.getFileUri());
-            // 传递书签页码，以便 ReadingActivity 可以直接跳转
-            intent.putExtra("INITIAL_PAGE", bookmark.getPageNumber());
+            // 传递书签位置：有字符偏移量时按偏移量定位，排版变化后仍能找到原来的文字；旧书签只有页码
+            if (bookmark.getCharOffset() >= 0) {
+                intent.putExtra("INITIAL_CHAR_OFFSET", bookmark.getCharOffset());
+            } else {
+                intent.putExtra("INITIAL_PAGE", bookmark.getPageNumber());
+            }
 
             intent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
             startActivity(intent);
@@ -139,8 +210,9 @@ public class BookmarksFragment extends Fragment implements BookmarkAdapter.OnBoo
                     .setMessage("确定要删除此书签吗？")
                     .setPositiveButton("删除", (dialog, which) -> {
                         // 第二次确认 (Toast 和实际删除)
-                        readingSettingsManager.removeBookmark(bookmarkToDelete);
-                        loadBookmarks();
+                        readingSettingsManager.removeBookmark(bookmarkToDelete, null);
+                        bookmarkAdapter.removeBookmark(bookmarkToDelete);
+                        updateUI();
                         Toast.makeText(getContext(), "书签已删除", Toast.LENGTH_SHORT).show();
                         currentLongPressedBookmark = null;
                     })
@@ -45,6 +45,7 @@ public class FavoriteFragment extends Fragment {
             loadFavoriteBooks();
         });
         favoriteBookListView.setAdapter(adapter);
+        favoriteBookListView.setRecyclerListener(adapter); // 列表项回收时取消封面加载
         // 设置 ListView 的点击监听器，点击书籍条目打开阅读 Activity
         favoriteBookListView.setOnItemClickListener((parent, v, position, id) -> {
             BookInfo selectedBook = favoriteBookList.get(position);
@@ -60,9 +61,14 @@ public class FavoriteFragment extends Fragment {
     }
 
     private void loadFavoriteBooks() {
-        favoriteBookList.clear();
-        favoriteBookList.addAll(bookDao.getAllFavoriteBooks()); // 调用 DAO 的未读方法
-        adapter.notifyDataSetChanged();
-        emptyFavoriteBookTextView.setVisibility(favoriteBookList.isEmpty() ? View.VISIBLE : View.GONE);
+        bookDao.getAllFavoriteBooksAsync(books -> { // 在数据库线程查询，结果回到主线程
+            if (getView() == null || books == null) {
+                return; // 查询返回前视图已销毁，或者查询失败（保留当前列表）
+            }
+            favoriteBookList.clear();
+            favoriteBookList.addAll(books);
+            adapter.notifyDataSetChanged();
+            emptyFavoriteBookTextView.setVisibility(favoriteBookList.isEmpty() ? View.VISIBLE : View.GONE);
+        });
     }
 }
\ No newline at end of file
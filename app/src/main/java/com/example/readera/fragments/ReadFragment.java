@@ -47,6 +47,7 @@ public class ReadFragment extends Fragment {
         });
 
         readBookListView.setAdapter(adapter);
+        readBookListView.setRecyclerListener(adapter); // 列表项回收时取消封面加载
         return view;
     }
 
@@ -57,9 +58,14 @@ public class ReadFragment extends Fragment {
     }
 
     private void loadReadBooks() {
-        readBookList.clear();
-        readBookList.addAll(bookDao.getAllReadBooks());
-        adapter.notifyDataSetChanged();
-        emptyReadBookTextView.setVisibility(readBookList.isEmpty()?View.VISIBLE:View.GONE);
+        bookDao.getAllReadBooksAsync(books -> {
+            if (getView() == null || books == null) {
+                return; // 查询返回前视图已销毁，或者查询失败（保留当前列表）
+            }
+            readBookList.clear();
+            readBookList.addAll(books);
+            adapter.notifyDataSetChanged();
+            emptyReadBookTextView.setVisibility(readBookList.isEmpty()?View.VISIBLE:View.GONE);
+        });
     }
 }
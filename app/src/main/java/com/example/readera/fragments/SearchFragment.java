@@ -0,0 +1,180 @@
+package com.example.readera.fragments;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputMethodManager;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.readera.Adapter.SearchResultAdapter;
+import com.example.readera.MoreOptionsActivity;
+import com.example.readera.R;
+import com.example.readera.ReadingActivity;
+import com.example.readera.model.SearchResult;
+import com.example.readera.utiles.NovelReaderManager;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * 书内全文搜索。结果边搜边显示，点击后按字符偏移量跳回阅读界面。
+ */
+public class SearchFragment extends Fragment implements SearchResultAdapter.OnSearchResultClickListener {
+
+    private static final String ARG_FILE_URI = "file_uri";
+    private static final String TAG = "SearchFragment";
+
+    private EditText queryInput;
+    private TextView statusText;
+    private SearchResultAdapter resultAdapter;
+    private Uri fileUri; // 当前阅读的文件 URI
+    private Future<?> searchTask; // 正在进行的搜索，开始新的搜索或离开页面时取消
+    private int searchGeneration; // 用于丢弃已取消的搜索仍在路上的回调
+
+    public static SearchFragment newInstance(Uri fileUri) {
+        SearchFragment fragment = new SearchFragment();
+        Bundle args = new Bundle();
+        args.putParcelable(ARG_FILE_URI, fileUri);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (getArguments() != null) {
+            fileUri = getArguments().getParcelable(ARG_FILE_URI);
+        }
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                             Bundle savedInstanceState) {
+        View view = inflater.inflate(R.layout.fragment_search, container, false);
+
+        queryInput = view.findViewById(R.id.et_search_query);
+        statusText = view.findViewById(R.id.tv_search_status);
+        Button searchButton = view.findViewById(R.id.btn_search);
+        RecyclerView recyclerView = view.findViewById(R.id.rv_search_results);
+        recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+        resultAdapter = new SearchResultAdapter(this);
+        recyclerView.setAdapter(resultAdapter);
+
+        searchButton.setOnClickListener(v -> startSearch());
+        queryInput.setOnEditorActionListener((v, actionId, event) -> {
+            if (actionId == EditorInfo.IME_ACTION_SEARCH) {
+                startSearch();
+                return true;
+            }
+            return false;
+        });
+        return view;
+    }
+
+    private void startSearch() {
+        String query = queryInput.getText().toString().trim();
+        if (query.isEmpty()) {
+            return;
+        }
+        if (fileUri == null) {
+            Log.e(TAG, "File URI is null, cannot search.");
+            showStatus("文件路径无效");
+            return;
+        }
+        hideKeyboard();
+        cancelSearch();
+        resultAdapter.clear(query);
+        showStatus("正在搜索…");
+
+        final int generation = ++searchGeneration;
+        searchTask = NovelReaderManager.getInstance().searchInBookAsync(requireContext(), fileUri, query,
+                new NovelReaderManager.SearchListener() {
+                    @Override
+                    public void onSearchResults(List<SearchResult> results) {
+                        if (isCurrent(generation)) {
+                            resultAdapter.appendResults(results);
+                            showStatus("已找到 " + resultAdapter.getItemCount() + " 处…");
+                        }
+                    }
+
+                    @Override
+                    public void onSearchComplete(int totalResults, boolean truncated) {
+                        if (!isCurrent(generation)) {
+                            return;
+                        }
+                        searchTask = null;
+                        if (totalResults == 0) {
+                            showStatus("没有找到“" + query + "”");
+                        } else if (truncated) {
+                            showStatus("结果太多，只显示前 " + totalResults + " 处");
+                        } else {
+                            showStatus("共找到 " + totalResults + " 处");
+                        }
+                    }
+
+                    @Override
+                    public void onSearchFailed(String errorMessage) {
+                        if (isCurrent(generation)) {
+                            searchTask = null;
+                            showStatus(errorMessage);
+                        }
+                    }
+                });
+    }
+
+    private boolean isCurrent(int generation) {
+        return generation == searchGeneration && isAdded() && getView() != null;
+    }
+
+    private void cancelSearch() {
+        searchGeneration++;
+        if (searchTask != null) {
+            searchTask.cancel(true);
+            searchTask = null;
+        }
+    }
+
+    private void showStatus(String message) {
+        statusText.setText(message);
+        statusText.setVisibility(View.VISIBLE);
+    }
+
+    private void hideKeyboard() {
+        InputMethodManager imm = (InputMethodManager) requireContext().getSystemService(Context.INPUT_METHOD_SERVICE);
+        if (imm != null) {
+            imm.hideSoftInputFromWindow(queryInput.getWindowToken(), 0);
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        cancelSearch();
+        super.onDestroyView();
+    }
+
+    @Override
+    public void onSearchResultClick(SearchResult result) {
+        // 和目录一样带上字符偏移量返回阅读界面，由阅读界面换算成当前分页下的页码
+        Intent intent = new Intent(getActivity(), ReadingActivity.class);
+        intent.putExtra("FILE_URI", fileUri);
+        intent.putExtra("INITIAL_CHAR_OFFSET", result.charOffset);
+        intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        startActivity(intent);
+        if (getActivity() instanceof MoreOptionsActivity) {
+            getActivity().finish();
+        }
+    }
+}
@@ -9,6 +9,7 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -20,31 +21,31 @@ import com.example.readera.R;
 import com.example.readera.ReadingActivity;
 import com.example.readera.model.TableOfContents;
 import com.example.readera.utiles.NovelReaderManager;
-import com.example.readera.utiles.TableOfContentsGenerator;
 import com.example.readera.utiles.TextPager;
 
 import java.util.ArrayList;
-import java.util.List;
 
 public class TableOfContentsFragment extends Fragment implements TableOfContentsAdapter.OnTocEntryClickListener {
 
     private static final String ARG_FILE_URI = "file_uri";
     private static final String TAG = "TableOfContentsFragment";
-    private static final String ARG_TABLE_OF_CONTENTS = "table_of_contents"; // 修改为专门的目录数据 key
+    // 每次从数据库读取的目录条目数
+    private static final int PAGE_SIZE = 200;
+    // 距离已加载的末尾还有这么多条时开始读取下一页
+    private static final int PREFETCH_DISTANCE = 50;
     private RecyclerView recyclerView;
     private TextView emptyTocText;
     private TableOfContentsAdapter chapterAdapter;
     private Uri fileUri; // 当前阅读的文件 URI
-    private List<TableOfContents> cachedTocEntries; // 新增：用于存储从Bundle传入的目录数据
+    private int totalChapterCount; // 数据库中这本书的目录条目总数
+    private int loadedChapterCount; // 已经加载到列表中的条目数
+    private boolean isLoadingPage;
 
-    // 工厂方法，用于创建 Fragment 实例并传递参数
-    public static TableOfContentsFragment newInstance(Uri fileUri,List<TableOfContents> tocEntries) {
+    // 工厂方法，用于创建 Fragment 实例并传递参数。目录由 Fragment 自行从数据库分页读取
+    public static TableOfContentsFragment newInstance(Uri fileUri) {
         TableOfContentsFragment fragment = new TableOfContentsFragment();
         Bundle args = new Bundle();
         args.putParcelable(ARG_FILE_URI, fileUri);
-        if (tocEntries != null) {
-            args.putSerializable(ARG_TABLE_OF_CONTENTS, new ArrayList<>(tocEntries)); // 传递目录数据
-        }
         fragment.setArguments(args);
         return fragment;
     }
@@ -53,13 +54,6 @@ public class TableOfContentsFragment extends Fragment implements TableOfContents
         super.onCreate(savedInstanceState);
         if (getArguments() != null) {
             fileUri = getArguments().getParcelable(ARG_FILE_URI);
-            // 从 Bundle 中获取缓存的目录数据
-            cachedTocEntries = (List<TableOfContents>) getArguments().getSerializable(ARG_TABLE_OF_CONTENTS);
-            if (cachedTocEntries == null) {
-                cachedTocEntries = new ArrayList<>(); // 确保不为null
-            }
-        } else {
-            cachedTocEntries = new ArrayList<>(); // 确保不为null
         }
     }
 
@@ -71,19 +65,24 @@ public class TableOfContentsFragment extends Fragment implements TableOfContents
 
         recyclerView = view.findViewById(R.id.rv_contents);
         emptyTocText = view.findViewById(R.id.tv_empty_toc);
-        recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+        recyclerView.setLayoutManager(layoutManager);
         // 初始化适配器，传入一个空的列表和点击监听器
         chapterAdapter = new TableOfContentsAdapter(new ArrayList<>(), this);
         recyclerView.setAdapter(chapterAdapter);
-        // 只有当没有缓存数据时才尝试加载目录
-        if (cachedTocEntries.isEmpty()) {
-            Log.d(TAG, "Bundle中没有缓存目录数据，尝试从NovelReaderManager加载。");
-            loadTableOfContents();
-        } else {
-            Log.d(TAG, "Bundle中存在缓存目录数据，直接显示。条目数: " + cachedTocEntries.size());
-            // 如果有缓存数据，直接更新UI
-            updateUI(cachedTocEntries);
-        }
+        // 滚动到已加载部分的末尾附近时读取下一页
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+                if (layoutManager.findLastVisibleItemPosition() >= loadedChapterCount - PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
+        loadedChapterCount = 0;
+        totalChapterCount = 0;
+        isLoadingPage = false;
+        loadTableOfContents();
 
         return view;
     }
@@ -95,30 +94,47 @@ public class TableOfContentsFragment extends Fragment implements TableOfContents
             return;
         }
 
-        // 获取当前 ReadingActivity 中正在使用的 TextPager 实例
-        // 这是一个同步调用，因为 TextPager 应该已经在 ReadingActivity 中被创建并分页完成
-        TextPager currentTextPager = NovelReaderManager.getInstance().getCurrentTextPager();
-
-        if (currentTextPager != null && !currentTextPager.getPages().isEmpty()) {
-            // 使用 TableOfContentsGenerator 来生成目录
-            // 这里的 20 表示每隔 20 页生成一个目录条目（如果未识别到章节标题）
-            List<TableOfContents> tocEntries = TableOfContentsGenerator.generateSimpleToc(currentTextPager);
-
-            if (!tocEntries.isEmpty()) {
-                chapterAdapter.updateData(tocEntries);
-                emptyTocText.setVisibility(View.GONE);
-                recyclerView.setVisibility(View.VISIBLE);
+        // 数据库中还没有目录时，用当前正在阅读的这本书的全文生成
+        NovelReaderManager manager = NovelReaderManager.getInstance();
+        TextPager currentTextPager = fileUri.equals(manager.getCurrentFileUri()) ? manager.getCurrentTextPager() : null;
+        manager.prepareTableOfContentsAsync(requireContext(), fileUri, currentTextPager, chapterCount -> {
+            if (!isAdded() || getView() == null) {
+                return;
+            }
+            Log.d(TAG, "目录条目数: " + chapterCount);
+            totalChapterCount = chapterCount;
+            if (chapterCount == 0) {
+                showEmptyTocMessage("小说内容未加载或未分页");
             } else {
-                showEmptyTocMessage("未找到目录内容");
+                loadNextPage();
             }
-        } else {
-            showEmptyTocMessage("小说内容未加载或未分页");
+        });
+    }
+
+    // 从数据库读取下一页目录，追加到列表末尾
+    private void loadNextPage() {
+        if (isLoadingPage || loadedChapterCount >= totalChapterCount) {
+            return;
         }
+        isLoadingPage = true;
+        NovelReaderManager.getInstance().loadChaptersAsync(requireContext(), fileUri, loadedChapterCount, PAGE_SIZE,
+                (offset, chapters) -> {
+                    if (!isAdded() || getView() == null || offset != loadedChapterCount) {
+                        return;
+                    }
+                    isLoadingPage = false;
+                    if (chapters.isEmpty()) {
+                        totalChapterCount = loadedChapterCount; // 数据库中的目录比预期少，停止继续加载
+                    } else {
+                        loadedChapterCount += chapters.size();
+                        chapterAdapter.appendData(chapters);
+                    }
+                    updateUI();
+                });
     }
 
-    private void updateUI(List<TableOfContents> tocEntries) {
-        if (tocEntries != null && !tocEntries.isEmpty()) {
-            chapterAdapter.updateData(tocEntries);
+    private void updateUI() {
+        if (chapterAdapter.getItemCount() > 0) {
             emptyTocText.setVisibility(View.GONE);
             recyclerView.setVisibility(View.VISIBLE);
         } else {
@@ -138,14 +154,14 @@ public class TableOfContentsFragment extends Fragment implements TableOfContents
 
         // 当用户点击目录项时，跳转到 ReadingActivity 的对应页面
         if (getActivity() instanceof ReadingActivity|| getActivity() instanceof MoreOptionsActivity) {
-            // 创建 Intent 返回给 ReadingActivity，并带上目标页码
+            // 创建 Intent 返回给 ReadingActivity，并带上章节的字符偏移量，由阅读界面换算成当前分页下的页码
             Intent intent = new Intent(getActivity(), ReadingActivity.class);
             intent.putExtra("FILE_URI", fileUri); // 确保文件 URI 也传回去
-            intent.putExtra("INITIAL_PAGE", entry.pageIndex);
+            intent.putExtra("INITIAL_CHAR_OFFSET", entry.charOffset);
             intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP); // 确保回到已有的 ReadingActivity 实例
             startActivity(intent);
             // 也可以选择直接通过 Activity 内部方法跳转，如果 TableOfContentsFragment 是 ReadingActivity 的内部 Fragment
-            // ((ReadingActivity) getActivity()).jumpToPage(entry.pageIndex);
+            // ((ReadingActivity) getActivity()).jumpToPage(entry.charOffset);
             // 关键：在启动 ReadingActivity 后，关闭当前的 MoreOptionsActivity
             // 因为 TableOfContentsFragment 是在 MoreOptionsActivity 中，所以要关闭它的父 Activity
             if (getActivity() instanceof MoreOptionsActivity) {
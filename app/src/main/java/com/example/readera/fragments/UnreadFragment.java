@@ -43,6 +43,7 @@ public class UnreadFragment extends Fragment {
             loadUnreadBooks();
         });
         unreadBookListView.setAdapter(adapter);
+        unreadBookListView.setRecyclerListener(adapter); // 列表项回收时取消封面加载
         emptyUnreadBookTextView.setVisibility(unreadBookList.isEmpty() ? View.VISIBLE : View.GONE);
         // 设置点击监听器等，与 BookShelfFragment 类似
         unreadBookListView.setOnItemClickListener((parent, v, position, id)->{
@@ -60,9 +61,14 @@ public class UnreadFragment extends Fragment {
     }
 
     private void loadUnreadBooks() {
-        unreadBookList.clear();
-        unreadBookList.addAll(bookDao.getAllUnreadBooks()); // 调用 DAO 的未读方法
-        adapter.notifyDataSetChanged();
-        emptyUnreadBookTextView.setVisibility(unreadBookList.isEmpty() ? View.VISIBLE : View.GONE);
+        bookDao.getAllUnreadBooksAsync(books -> { // 在数据库线程查询，结果回到主线程
+            if (getView() == null || books == null) {
+                return; // 查询返回前视图已销毁，或者查询失败（保留当前列表）
+            }
+            unreadBookList.clear();
+            unreadBookList.addAll(books);
+            adapter.notifyDataSetChanged();
+            emptyUnreadBookTextView.setVisibility(unreadBookList.isEmpty() ? View.VISIBLE : View.GONE);
+        });
     }
 }
\ No newline at end of file
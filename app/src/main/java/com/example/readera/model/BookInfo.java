@@ -7,6 +7,7 @@ import androidx.annotation.NonNull;
 import com.example.readera.Enum.CoverDataType;
 
 public class BookInfo {
+    private long id = -1; // 数据库主键，尚未写入数据库时为 -1
     private String title;
     private Uri uri;
     private String coverData;
@@ -17,7 +18,8 @@ public class BookInfo {
     private long fileSize;//文件大小
     private long lastModified;//最后修改
 
-    private String fileHash; // 文件hash
+    private String fileHash; // 文件hash（完整内容的 SHA-256，导入时只在指纹冲突时才计算）
+    private String quickHash; // 快速指纹：文件大小 + 首、中、尾采样块的 xxHash64
 
     public BookInfo(String title, Uri uri, String coverData, CoverDataType coverDataType) {
         this(title, uri, coverData, coverDataType, false, false, false, -1, -1, null); // 默认状态：未读
@@ -44,6 +46,14 @@ public class BookInfo {
         this.fileHash = fileHash;
     }
 
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
     public String getTitle() {
         return title;
     }
@@ -104,6 +114,14 @@ public class BookInfo {
     public void setFileHash(String fileHash) {
         this.fileHash = fileHash;
     }
+
+    public String getQuickHash() {
+        return quickHash;
+    }
+
+    public void setQuickHash(String quickHash) {
+        this.quickHash = quickHash;
+    }
     @NonNull
     @Override
     public String toString() {
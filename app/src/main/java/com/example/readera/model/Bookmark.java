@@ -3,8 +3,10 @@ package com.example.readera.model;
 import android.net.Uri;
 
 public class Bookmark {
+    private long id = -1; // 书签表的主键，尚未写入数据库时为 -1
     private Uri fileUri;
-    private int pageNumber;
+    private int pageNumber; // 添加书签时的页码，只用于显示；排版变化后以 charOffset 为准
+    private int charOffset = -1; // 书签所在页第一个字符的偏移量，旧版本的书签没有，为 -1
     private String displayTitle;
     public Bookmark(Uri fileUri, int pageNumber, String displayTitle) {
         this.fileUri = fileUri;
@@ -12,6 +14,19 @@ public class Bookmark {
         this.displayTitle = displayTitle;
     }
 
+    public Bookmark(Uri fileUri, int pageNumber, int charOffset, String displayTitle) {
+        this(fileUri, pageNumber, displayTitle);
+        this.charOffset = charOffset;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
     public Uri getFileUri() {
         return fileUri;
     }
@@ -20,6 +35,14 @@ public class Bookmark {
         return pageNumber;
     }
 
+    public int getCharOffset() {
+        return charOffset;
+    }
+
+    public void setCharOffset(int charOffset) {
+        this.charOffset = charOffset;
+    }
+
     public String getDisplayTitle() {
         return displayTitle;
     }
@@ -29,14 +52,16 @@ public class Bookmark {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Bookmark bookmark = (Bookmark) o;
-        return pageNumber == bookmark.pageNumber &&
+        // 有字符偏移量的书签按偏移量比较，旧书签只能按页码比较
+        return charOffset == bookmark.charOffset &&
+                (charOffset >= 0 || pageNumber == bookmark.pageNumber) &&
                 fileUri.equals(bookmark.fileUri);
     }
 
     @Override
     public int hashCode() {
         int result = fileUri.hashCode();
-        result = 31 * result + pageNumber;
+        result = 31 * result + (charOffset >= 0 ? charOffset : pageNumber);
         return result;
     }
 }
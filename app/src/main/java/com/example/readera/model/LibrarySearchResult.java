@@ -0,0 +1,34 @@
+package com.example.readera.model;
+
+import android.net.Uri;
+
+/**
+ * 全书库搜索的一条结果：一本书，附带第一处命中的位置和摘要。
+ */
+public class LibrarySearchResult {
+    public final String bookKey; // 文件哈希或 URI
+    public final int hitCount; // 包含搜索词的文本块数，用于排序
+    public final int charOffset; // 第一处命中所在文本块的起始字符偏移量
+    public final String snippet; // 命中位置附近的文字，搜索词用 MARK_START / MARK_END 包围
+    public String title; // 由书架上的书籍信息补全
+    public Uri uri;
+
+    public static final char MARK_START = '\u0002';
+    public static final char MARK_END = '\u0003';
+
+    public LibrarySearchResult(String bookKey, int hitCount, int charOffset, String snippet) {
+        this.bookKey = bookKey;
+        this.hitCount = hitCount;
+        this.charOffset = charOffset;
+        this.snippet = snippet;
+    }
+
+    @Override
+    public String toString() {
+        return "LibrarySearchResult{" +
+               "title='" + title + '\'' +
+               ", hitCount=" + hitCount +
+               ", charOffset=" + charOffset +
+               '}';
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.readera.model;
+
+import android.net.Uri;
+
+/**
+ * 一本书的阅读进度。位置以字符偏移量为准，页码是按保存时的排版换算出的结果，只在没有偏移量时使用。
+ */
+public class ReadingProgress {
+    public final Uri bookUri;
+    public final int pageIndex; // 保存时的页码 (0-based)
+    public final int charOffset; // 当前页第一个字符的偏移量，旧版本只保存了页码时为 -1
+    public final long updatedAt; // 最后一次更新的时间（毫秒）
+
+    public ReadingProgress(Uri bookUri, int pageIndex, int charOffset, long updatedAt) {
+        this.bookUri = bookUri;
+        this.pageIndex = pageIndex;
+        this.charOffset = charOffset;
+        this.updatedAt = updatedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "ReadingProgress{" +
+               "bookUri=" + bookUri +
+               ", pageIndex=" + pageIndex +
+               ", charOffset=" + charOffset +
+               '}';
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.readera.model;
+
+/**
+ * 书内搜索的一条结果。
+ */
+public class SearchResult {
+    public final int charOffset; // 命中位置在全文中的字符偏移量
+    public final int pageIndex; // 按当前分页换算出的页码 (0-based)，分页结果不可用时为 -1
+    public final String snippet; // 命中位置附近的一小段文字
+
+    public SearchResult(int charOffset, int pageIndex, String snippet) {
+        this.charOffset = charOffset;
+        this.pageIndex = pageIndex;
+        this.snippet = snippet;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchResult{" +
+               "charOffset=" + charOffset +
+               ", pageIndex=" + pageIndex +
+               ", snippet='" + snippet + '\'' +
+               '}';
+    }
+}
@@ -6,15 +6,21 @@ public class TableOfContents implements Serializable {
     public String title; // 目录项的标题（例如“第1章”）
     public int pageIndex; // 对应的页码 (0-based)
     public int depth; // 目录层级（如果适用，例如EPUB）
+    public int charOffset; // 标题在全文中的字符偏移量，重新分页后据此重新计算页码
 
     public TableOfContents(String title, int pageIndex) {
         this(title, pageIndex, 0); // 默认深度为0
     }
 
     public TableOfContents(String title, int pageIndex, int depth) {
+        this(title, pageIndex, depth, 0);
+    }
+
+    public TableOfContents(String title, int pageIndex, int depth, int charOffset) {
         this.title = title;
         this.pageIndex = pageIndex;
         this.depth = depth;
+        this.charOffset = charOffset;
     }
 
     @Override
@@ -23,6 +29,7 @@ public class TableOfContents implements Serializable {
                "title='" + title + '\'' +
                ", pageIndex=" + pageIndex +
                ", depth=" + depth +
+               ", charOffset=" + charOffset +
                '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+package com.example.readera.utiles;
+
+import android.os.Process;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 后台线程池共用的线程工厂。
+ */
+public final class BackgroundThreads {
+
+    private BackgroundThreads() {
+    }
+
+    /**
+     * 创建后台优先级（THREAD_PRIORITY_BACKGROUND）的线程，避免和界面线程争抢 CPU。
+     * @param name 线程名，便于在 systrace 和 ANR 日志中辨认
+     */
+    public static ThreadFactory factory(String name) {
+        return r -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, name);
+    }
+}
@@ -0,0 +1,554 @@
+package com.example.readera.utiles;
+
+import android.content.Context;
+import android.content.UriPermission;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import com.example.readera.Dao.BookDao;
+import com.example.readera.Dao.LibraryFolderDao;
+import com.example.readera.Enum.CoverDataType;
+import com.example.readera.model.BookInfo;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 后台导入书籍。分为几个阶段：
+ * <ol>
+ *     <li>枚举：递归遍历目录（同一层的子目录并行查询），文件大小和修改时间在列目录的同一次查询中取得；</li>
+ *     <li>预去重：URI 已在书架上且大小、修改时间都没变的文件直接跳过；URI 相同但有变化的文件更新原来的记录；
+ *     其他（大小, 修改时间）与书架上某本书相同的文件也跳过，不再计算指纹；</li>
+ *     <li>指纹：在一个小线程池中并行计算快速指纹（见 {@link FileFingerprint}），每个文件只读取开头、中间和结尾；</li>
+ *     <li>去重：按指纹完成的顺序逐个检查。快速指纹与已有的书（或本次导入的书）相同时，
+ *     才计算双方的完整哈希确认内容是否一样；旧版本导入的书没有快速指纹，遇到大小相同的文件也比较完整哈希；</li>
+ *     <li>写入：每攒够一批在一个事务中写入数据库，写入时哈希线程继续工作。</li>
+ * </ol>
+ * 进度和结果在主线程回调，导入可以随时取消，已经写入的书会保留。
+ * 导入过的目录会记为书库文件夹，{@link #rescanLibrary} 重新扫描所有书库文件夹，没有变化时只需要列目录。
+ */
+public class BookImporter {
+    private static final String TAG = "BookImporter";
+
+    // 哈希主要受存储读取速度限制，线程多了反而互相抢占
+    private static final int HASH_THREADS = 2;
+    // 同时查询的目录数，列目录主要耗在与文档提供方的跨进程调用上
+    private static final int WALK_THREADS = 4;
+    // 每个写入事务包含的书籍数
+    private static final int INSERT_BATCH_SIZE = 50;
+    // 进度回调的最小间隔
+    private static final long PROGRESS_INTERVAL_MS = 100;
+
+    private final Context appContext;
+    private final BookDao bookDao;
+    private final LibraryFolderDao folderDao;
+    private final ExecutorService coordinator; // 枚举、去重和写入
+    private final ExecutorService hashPool;
+    private final ExecutorService walkPool;
+    private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger fullHashCount = new AtomicInteger(); // 本次导入读取全文的次数
+    private Future<?> importTask;
+    // 当前这次导入的取消标记。每次导入各有一个，旧任务退出时不会影响排在后面的导入
+    private AtomicBoolean importCancelled;
+
+    /**
+     * 导入过程的回调，都在主线程执行。
+     */
+    public interface ImportListener {
+        // processed 为已经处理完（导入、跳过或失败）的文件数
+        void onImportProgress(int processed, int total);
+
+        // 一批书写入数据库后回调，可以直接加入列表显示
+        void onBooksImported(List<BookInfo> books);
+
+        void onImportFinished(int imported, int skipped, int failed, boolean cancelled);
+    }
+
+    // 枚举阶段找到的文件
+    private static final class Candidate {
+        final Uri uri;
+        final String title;
+        final long fileSize;
+        final long lastModified;
+        String quickHash;
+        String fileHash; // 只在需要时计算
+        BookInfo existing; // URI 已在书架上但文件有变化时，对应的原记录
+
+        Candidate(Uri uri, String title, long fileSize, long lastModified) {
+            this.uri = uri;
+            this.title = title;
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private interface Enumerator {
+        List<Candidate> enumerate(AtomicBoolean cancelled) throws Exception;
+    }
+
+    public BookImporter(Context context) {
+        this.appContext = context.getApplicationContext();
+        this.bookDao = new BookDao(appContext);
+        this.folderDao = new LibraryFolderDao(appContext);
+        this.coordinator = Executors.newSingleThreadExecutor(BackgroundThreads.factory("BookImport"));
+        this.hashPool = Executors.newFixedThreadPool(HASH_THREADS, BackgroundThreads.factory("BookImportHash"));
+        this.walkPool = Executors.newFixedThreadPool(WALK_THREADS, BackgroundThreads.factory("BookImportWalk"));
+    }
+
+    public boolean isRunning() {
+        return importTask != null && !importTask.isDone();
+    }
+
+    /**
+     * 导入目录（通过 ACTION_OPEN_DOCUMENT_TREE 选择，调用方已持久化权限）及其子目录中的所有文本文件，
+     * 并把目录记为书库文件夹。
+     */
+    public void importDirectory(Uri treeUri, ImportListener listener) {
+        start(cancelled -> {
+            folderDao.addFolder(treeUri);
+            return enumerateTree(treeUri, cancelled);
+        }, listener);
+    }
+
+    /**
+     * 重新扫描所有书库文件夹，只处理新增或变化的文件。
+     * 失去访问权限的文件夹会被移除；之前导入过、但还没有记录的目录从已持久化的权限中补上。
+     */
+    public void rescanLibrary(ImportListener listener) {
+        start(cancelled -> {
+            List<Candidate> candidates = new ArrayList<>();
+            for (Uri treeUri : getLibraryFolders()) {
+                candidates.addAll(enumerateTree(treeUri, cancelled));
+            }
+            return candidates;
+        }, listener);
+    }
+
+    /**
+     * 导入单独选择的文件。
+     */
+    public void importFiles(List<Uri> fileUris, ImportListener listener) {
+        start(cancelled -> enumerateFiles(fileUris), listener);
+    }
+
+    /**
+     * 取消正在进行的导入，已经写入数据库的书会保留。
+     */
+    public void cancel() {
+        if (importCancelled != null) {
+            importCancelled.set(true);
+        }
+        if (importTask != null) {
+            importTask.cancel(true);
+        }
+    }
+
+    // 不再使用时调用，取消导入并结束线程
+    public void release() {
+        cancel();
+        coordinator.shutdownNow();
+        hashPool.shutdownNow();
+        walkPool.shutdownNow();
+    }
+
+    private void start(Enumerator enumerator, ImportListener listener) {
+        cancel();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        importCancelled = cancelled;
+        importTask = coordinator.submit(() -> runImport(enumerator, listener, cancelled));
+    }
+
+    private void runImport(Enumerator enumerator, ImportListener listener, AtomicBoolean cancelled) {
+        long startTime = SystemClock.elapsedRealtime();
+        int imported = 0;
+        int skipped = 0;
+        int failed = 0;
+        int updated = 0;
+        fullHashCount.set(0);
+        List<Future<Candidate>> pendingHashes = new ArrayList<>();
+        List<BookInfo> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        try {
+            // 书架上已有的书只查询一次，之后在内存中去重
+            Map<String, BookInfo> knownBooks = new HashMap<>();
+            Set<String> knownMetadata = new HashSet<>();
+            Fingerprints fingerprints = new Fingerprints();
+            for (BookInfo book : bookDao.getAllBooks()) {
+                knownBooks.put(book.getUri().toString(), book);
+                fingerprints.add(book);
+                String metadataKey = metadataKey(book.getFileSize(), book.getLastModified());
+                if (metadataKey != null) {
+                    knownMetadata.add(metadataKey);
+                }
+            }
+
+            List<Candidate> candidates = enumerator.enumerate(cancelled);
+            int total = candidates.size();
+            ProgressReporter progress = new ProgressReporter(listener, total);
+            progress.report(0, true);
+            Log.d(TAG, "枚举到 " + total + " 个文件，耗时 " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+
+            CompletionService<Candidate> hashes = new ExecutorCompletionService<>(hashPool);
+            int processed = 0;
+            Set<String> seenUris = new HashSet<>();
+            for (Candidate candidate : candidates) {
+                checkCancelled(cancelled);
+                String uriString = candidate.uri.toString();
+                BookInfo existing = knownBooks.get(uriString);
+                String metadataKey = metadataKey(candidate.fileSize, candidate.lastModified);
+                if (!seenUris.add(uriString)
+                        || (existing != null && existing.getFileSize() == candidate.fileSize
+                                && existing.getLastModified() == candidate.lastModified)
+                        || (existing == null && metadataKey != null && !knownMetadata.add(metadataKey))) {
+                    skipped++;
+                    progress.report(++processed, false);
+                    continue;
+                }
+                candidate.existing = existing;
+                pendingHashes.add(hashes.submit(() -> {
+                    computeFingerprint(candidate);
+                    return candidate;
+                }));
+            }
+
+            // 按哈希完成的顺序去重并分批写入
+            for (int i = 0; i < pendingHashes.size(); i++) {
+                checkCancelled(cancelled);
+                Candidate candidate;
+                try {
+                    candidate = hashes.take().get();
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "计算文件指纹失败", e.getCause());
+                    failed++;
+                    progress.report(++processed, false);
+                    continue;
+                }
+                if (candidate.existing != null) {
+                    // 书架上已有的文件内容变了：原地更新，阅读进度和标记都保留
+                    bookDao.updateBookFile(candidate.existing.getId(), candidate.fileSize, candidate.lastModified,
+                            candidate.quickHash, candidate.fileHash);
+                    updated++;
+                } else if (fingerprints.isDuplicate(candidate)) {
+                    Log.d(TAG, "Book already exists: " + candidate.title);
+                    skipped++;
+                } else {
+                    BookInfo book = new BookInfo(candidate.title, candidate.uri, null, CoverDataType.TEXT,
+                            false, false, false, candidate.fileSize, candidate.lastModified, candidate.fileHash);
+                    book.setQuickHash(candidate.quickHash);
+                    fingerprints.add(book);
+                    batch.add(book);
+                    if (batch.size() >= INSERT_BATCH_SIZE) {
+                        imported += flush(batch, listener);
+                    }
+                }
+                progress.report(++processed, false);
+            }
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+        } catch (Exception e) {
+            Log.e(TAG, "导入失败", e);
+            failed++;
+        } finally {
+            for (Future<Candidate> future : pendingHashes) {
+                future.cancel(true);
+            }
+            // 已经计算好哈希的书仍然写入，取消只是不再处理剩下的文件
+            if (!batch.isEmpty()) {
+                imported += flush(batch, listener);
+            }
+        }
+        final boolean wasCancelled = cancelled.get();
+        Log.d(TAG, "导入" + (wasCancelled ? "已取消" : "完成") + "：导入 " + imported + "，更新 " + updated + "，跳过 " + skipped
+                + "，失败 " + failed + "，计算完整哈希 " + fullHashCount + " 次，耗时 " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+        final int importedCount = imported;
+        final int skippedCount = skipped;
+        final int failedCount = failed;
+        mainThreadHandler.post(() -> listener.onImportFinished(importedCount, skippedCount, failedCount, wasCancelled));
+    }
+
+    private int flush(List<BookInfo> batch, ImportListener listener) {
+        List<BookInfo> added = bookDao.addBooks(new ArrayList<>(batch));
+        batch.clear();
+        if (!added.isEmpty()) {
+            mainThreadHandler.post(() -> listener.onBooksImported(added));
+        }
+        return added.size();
+    }
+
+    private static void checkCancelled(AtomicBoolean cancelled) throws InterruptedException {
+        if (cancelled.get() || Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("Import cancelled.");
+        }
+    }
+
+    // 大小和修改时间都已知时才用于去重，否则不同的文件会因为都是 -1 被当成同一本
+    private static String metadataKey(long fileSize, long lastModified) {
+        return fileSize >= 0 && lastModified > 0 ? fileSize + ":" + lastModified : null;
+    }
+
+    // 书库文件夹：已记录的加上已持久化读取权限的其他目录，失去权限的移除
+    private List<Uri> getLibraryFolders() {
+        Set<Uri> permitted = new HashSet<>();
+        for (UriPermission permission : appContext.getContentResolver().getPersistedUriPermissions()) {
+            if (permission.isReadPermission() && DocumentsContract.isTreeUri(permission.getUri())) {
+                permitted.add(permission.getUri());
+            }
+        }
+        List<Uri> folders = new ArrayList<>();
+        for (Uri folder : folderDao.getFolders()) {
+            if (permitted.remove(folder)) {
+                folders.add(folder);
+            } else {
+                Log.w(TAG, "书库文件夹已没有访问权限，移除: " + folder);
+                folderDao.removeFolder(folder);
+            }
+        }
+        for (Uri folder : permitted) {
+            folderDao.addFolder(folder);
+            folders.add(folder);
+        }
+        return folders;
+    }
+
+    /**
+     * 递归列出目录树中的文本文件。按层遍历，同一层的目录在 walkPool 中并行查询；
+     * 名称、大小和修改时间在列目录的同一次查询中取得。
+     */
+    private List<Candidate> enumerateTree(Uri treeUri, AtomicBoolean cancelled) throws Exception {
+        List<Candidate> candidates = new ArrayList<>();
+        List<String> level = new ArrayList<>();
+        level.add(DocumentsContract.getTreeDocumentId(treeUri));
+        int directories = 0;
+        while (!level.isEmpty()) {
+            checkCancelled(cancelled);
+            List<Callable<List<String>>> tasks = new ArrayList<>(level.size());
+            List<List<Candidate>> found = new ArrayList<>(level.size());
+            for (String documentId : level) {
+                List<Candidate> files = new ArrayList<>();
+                found.add(files);
+                tasks.add(() -> listDirectory(treeUri, documentId, files));
+            }
+            directories += level.size();
+            List<String> nextLevel = new ArrayList<>();
+            List<Future<List<String>>> results = walkPool.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    nextLevel.addAll(results.get(i).get());
+                    candidates.addAll(found.get(i));
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "无法列出目录: " + level.get(i), e.getCause());
+                }
+            }
+            level = nextLevel;
+        }
+        Log.d(TAG, "遍历 " + treeUri + "：" + directories + " 个目录，" + candidates.size() + " 个文本文件");
+        return candidates;
+    }
+
+    // 列出一个目录的直接子项：文本文件加入 files，返回子目录的文档 ID
+    private List<String> listDirectory(Uri treeUri, String documentId, List<Candidate> files) {
+        List<String> subdirectories = new ArrayList<>();
+        Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, documentId);
+        try (Cursor cursor = appContext.getContentResolver().query(childrenUri,
+                new String[]{DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+                        DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+                        DocumentsContract.Document.COLUMN_MIME_TYPE,
+                        DocumentsContract.Document.COLUMN_SIZE,
+                        DocumentsContract.Document.COLUMN_LAST_MODIFIED},
+                null, null, null)) {
+            if (cursor == null) {
+                return subdirectories;
+            }
+            while (cursor.moveToNext()) {
+                String childId = cursor.getString(0);
+                String displayName = cursor.getString(1);
+                String mimeType = cursor.getString(2);
+                if (DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType)) {
+                    subdirectories.add(childId);
+                } else if (displayName != null && ("text/plain".equals(mimeType)
+                        || displayName.toLowerCase(Locale.ROOT).endsWith(".txt"))) {
+                    // 判断是否为文本文件或以 .txt 结尾的文件名
+                    Uri fileUri = DocumentsContract.buildDocumentUriUsingTree(treeUri, childId);
+                    files.add(new Candidate(fileUri, removeFileExtension(displayName),
+                            cursor.isNull(3) ? -1 : cursor.getLong(3),
+                            cursor.isNull(4) ? -1 : cursor.getLong(4)));
+                }
+            }
+        }
+        return subdirectories;
+    }
+
+    private List<Candidate> enumerateFiles(List<Uri> fileUris) {
+        List<Candidate> candidates = new ArrayList<>(fileUris.size());
+        for (Uri uri : fileUris) {
+            String displayName = null;
+            long size = -1;
+            long lastModified = -1;
+            try (Cursor cursor = appContext.getContentResolver().query(uri, null, null, null, null)) {
+                if (cursor != null && cursor.moveToFirst()) {
+                    int nameIndex = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
+                    int sizeIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_SIZE);
+                    int modifiedIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+                    if (nameIndex != -1) {
+                        displayName = cursor.getString(nameIndex);
+                    }
+                    if (sizeIndex != -1 && !cursor.isNull(sizeIndex)) {
+                        size = cursor.getLong(sizeIndex);
+                    }
+                    if (modifiedIndex != -1 && !cursor.isNull(modifiedIndex)) {
+                        lastModified = cursor.getLong(modifiedIndex);
+                    }
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error getting file metadata: " + e.getMessage());
+            }
+            if (displayName == null) {
+                displayName = uri.getLastPathSegment();
+            }
+            if (displayName != null) {
+                candidates.add(new Candidate(uri, removeFileExtension(displayName), size, lastModified));
+            }
+        }
+        return candidates;
+    }
+
+    // 在哈希线程上计算快速指纹；无法按位置读取的文件（例如管道）直接计算完整哈希
+    private void computeFingerprint(Candidate candidate) throws IOException {
+        try {
+            candidate.quickHash = FileFingerprint.quickHash(appContext.getContentResolver(),
+                    candidate.uri, candidate.fileSize);
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            Log.w(TAG, "无法采样计算快速指纹: " + candidate.uri + ", " + e.getMessage());
+        }
+        if (candidate.quickHash == null) {
+            candidate.fileHash = fullHash(candidate.uri);
+        }
+    }
+
+    private String fullHash(Uri uri) throws IOException {
+        fullHashCount.incrementAndGet();
+        return FileFingerprint.fullHash(appContext.getContentResolver(), uri);
+    }
+
+    /**
+     * 书架上（包括本次已接受的）书籍的指纹，只在导入线程上使用。
+     * 完整哈希按需补算，已经写入数据库的书会同时更新数据库。
+     */
+    private final class Fingerprints {
+        private final Set<String> fullHashes = new HashSet<>();
+        // 每个快速指纹对应的第一本书
+        private final Map<String, BookInfo> quickHashOwners = new HashMap<>();
+        // 没有快速指纹的旧书的文件大小，大小相同的新文件需要比较完整哈希
+        private final Set<Long> legacySizes = new HashSet<>();
+
+        void add(BookInfo book) {
+            if (book.getFileHash() != null) {
+                fullHashes.add(book.getFileHash());
+            }
+            if (book.getQuickHash() != null) {
+                if (!quickHashOwners.containsKey(book.getQuickHash())) {
+                    quickHashOwners.put(book.getQuickHash(), book);
+                }
+            } else if (book.getFileSize() >= 0) {
+                legacySizes.add(book.getFileSize());
+            }
+        }
+
+        boolean isDuplicate(Candidate candidate) throws InterruptedException {
+            BookInfo owner = candidate.quickHash != null ? quickHashOwners.get(candidate.quickHash) : null;
+            boolean needFullHash = owner != null || legacySizes.contains(candidate.fileSize);
+            try {
+                if (owner != null) {
+                    ensureFullHash(owner);
+                }
+                if (needFullHash && candidate.fileHash == null) {
+                    candidate.fileHash = fullHash(candidate.uri);
+                }
+            } catch (InterruptedIOException e) {
+                throw new InterruptedException(e.getMessage());
+            } catch (IOException e) {
+                Log.e(TAG, "计算完整哈希失败: " + candidate.uri, e);
+            }
+            if (candidate.fileHash != null) {
+                return fullHashes.contains(candidate.fileHash);
+            }
+            // 快速指纹相同但无法读取全文比较时，按重复处理
+            return owner != null;
+        }
+
+        private void ensureFullHash(BookInfo owner) throws IOException {
+            if (owner.getFileHash() != null) {
+                return;
+            }
+            String fileHash;
+            try {
+                fileHash = fullHash(owner.getUri());
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException | SecurityException e) {
+                Log.w(TAG, "无法读取已有书籍计算完整哈希: " + owner.getUri() + ", " + e.getMessage());
+                return;
+            }
+            if (fileHash == null) {
+                return;
+            }
+            owner.setFileHash(fileHash);
+            fullHashes.add(fileHash);
+            if (owner.getId() > 0) {
+                bookDao.updateFileHash(owner.getId(), fileHash); // 还在批次中的书写入时会带上哈希
+            }
+        }
+    }
+
+    // 移除文件名中的扩展名
+    private static String removeFileExtension(String fileName) {
+        if (fileName.toLowerCase(Locale.ROOT).endsWith(".txt")) {
+            return fileName.substring(0, fileName.length() - 4);
+        }
+        return fileName;
+    }
+
+    // 限制进度回调的频率，避免几百个文件时刷屏
+    private final class ProgressReporter {
+        private final ImportListener listener;
+        private final int total;
+        private long lastReportTime;
+
+        ProgressReporter(ImportListener listener, int total) {
+            this.listener = listener;
+            this.total = total;
+        }
+
+        void report(int processed, boolean force) {
+            long now = SystemClock.elapsedRealtime();
+            if (!force && processed < total && now - lastReportTime < PROGRESS_INTERVAL_MS) {
+                return;
+            }
+            lastReportTime = now;
+            mainThreadHandler.post(() -> listener.onImportProgress(processed, total));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.readera.utiles;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Typeface;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.readera.Dao.BookDao;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 书架上的后台预加载。
+ * 挑选最可能被打开的几本书（按数据库中记录的最后打开时间），按当前阅读设置和上次的文本区域尺寸
+ * 提前解码并分页，结果放入 NovelReaderManager 的书籍缓存，点击后可以立即显示。
+ * 所有工作都在低优先级线程上进行；列表滚动时暂停，系统内存紧张时取消。
+ */
+public class BookPrefetcher implements ComponentCallbacks2 {
+    private static final String TAG = "BookPrefetcher";
+
+    // 最多预加载的书籍数量
+    private static final int MAX_CANDIDATES = 2;
+
+    private final Context appContext;
+    private final PauseGate gate = new PauseGate();
+    private final ExecutorService scheduler; // 依次处理候选书籍
+    private final ExecutorService layoutPool; // 章节排版，开始每个任务前检查暂停状态
+    private Future<?> prefetchTask;
+
+    public BookPrefetcher(Context context) {
+        this.appContext = context.getApplicationContext();
+        this.scheduler = Executors.newSingleThreadExecutor(BackgroundThreads.factory("BookPrefetch"));
+        this.layoutPool = new PausableExecutor(gate, BackgroundThreads.factory("BookPrefetchLayout"));
+        appContext.registerComponentCallbacks(this);
+    }
+
+    /**
+     * 挑选最近打开过的书并开始预加载，会取消上一次还没完成的预加载。
+     * 在主线程调用；候选书籍在后台线程上从数据库查询。
+     */
+    public void schedule() {
+        cancel();
+        ReadingSettingsManager settings = ReadingSettingsManager.getInstance(appContext);
+        int width = settings.getLastViewportWidth();
+        int height = settings.getLastViewportHeight();
+        if (width <= 0 || height <= 0) {
+            Log.d(TAG, "还没有打开过阅读界面，不知道文本区域尺寸，跳过预加载。");
+            return;
+        }
+        ReadingSettings snapshot = settings.getSnapshot();
+        float textSizeSp = snapshot.getTextSizeSp();
+        float lineSpacingExtraDp = snapshot.getLineSpacingExtraDp();
+        Typeface typeface = snapshot.getTypeface();
+        String fontIdentifier = snapshot.getFontIdentifier();
+
+        prefetchTask = scheduler.submit(() -> {
+            TextPager.PageSink sink = new TextPager.PageSink() {
+                @Override
+                public void onPagesAppended(PageTable newPages) {
+                    awaitResumed();
+                }
+
+                @Override
+                public void onPagesPrepended(PageTable newPages) {
+                    awaitResumed();
+                }
+            };
+            List<Uri> candidates = new BookDao(appContext).getRecentlyOpenedBookUris(MAX_CANDIDATES);
+            Log.d(TAG, "开始预加载，候选书籍数: " + candidates.size());
+            for (Uri uri : candidates) {
+                try {
+                    gate.await();
+                    NovelReaderManager.getInstance().prefetchBook(appContext, uri, width, height,
+                            textSizeSp, lineSpacingExtraDp, typeface, fontIdentifier, layoutPool, sink);
+                } catch (InterruptedException e) {
+                    Log.d(TAG, "预加载被取消。");
+                    return;
+                } catch (Exception e) {
+                    Log.e(TAG, "预加载失败: " + uri, e);
+                }
+            }
+        });
+    }
+
+    // 暂停时阻塞当前线程；被中断时保留中断标记，由分页循环负责退出
+    private void awaitResumed() {
+        try {
+            gate.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 列表开始滚动时暂停，把 CPU 让给界面
+    public void pause() {
+        gate.pause();
+    }
+
+    public void resume() {
+        gate.resume();
+    }
+
+    // 取消正在进行的预加载，已经完成的书籍仍保留在缓存中
+    public void cancel() {
+        if (prefetchTask != null && !prefetchTask.isDone()) {
+            prefetchTask.cancel(true);
+            Log.d(TAG, "已取消预加载。");
+        }
+        prefetchTask = null;
+    }
+
+    // 不再使用时调用，释放线程并注销内存回调
+    public void release() {
+        cancel();
+        gate.resume(); // 唤醒可能阻塞在暂停状态的线程，让它们退出
+        scheduler.shutdownNow();
+        layoutPool.shutdownNow();
+        appContext.unregisterComponentCallbacks(this);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            Log.d(TAG, "内存紧张（level " + level + "），取消预加载。");
+            cancel();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        cancel();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+
+    /**
+     * 暂停开关。暂停期间调用 await 的线程会阻塞，直到恢复或被中断。
+     */
+    private static class PauseGate {
+        private boolean paused = false;
+
+        synchronized void pause() {
+            paused = true;
+        }
+
+        synchronized void resume() {
+            paused = false;
+            notifyAll();
+        }
+
+        synchronized void await() throws InterruptedException {
+            while (paused) {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * 单线程、可暂停的线程池：每个任务开始前检查暂停状态。
+     */
+    private static class PausableExecutor extends ThreadPoolExecutor {
+        private final PauseGate gate;
+
+        PausableExecutor(PauseGate gate, ThreadFactory threadFactory) {
+            super(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+            this.gate = gate;
+        }
+
+        @Override
+        protected void beforeExecute(Thread t, Runnable r) {
+            super.beforeExecute(t, r);
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                t.interrupt(); // 任务会在第一次检查中断时退出
+            }
+        }
+    }
+}
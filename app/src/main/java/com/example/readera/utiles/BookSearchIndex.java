@@ -0,0 +1,440 @@
+package com.example.readera.utiles;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.UUID;
+
+/**
+ * 书内全文搜索的二元组（bigram）倒排索引，保存在磁盘上。
+ * 中文没有空格分词，这里把相邻的两个字符作为一个词项，记录它在全文中出现的所有字符偏移量。
+ * 全文按 SEGMENT_CHARS 切成若干段，每段单独排序、单独写入：建索引时内存占用与段大小成正比，
+ * 查询时按段从前到后读取，命中结果可以边找边返回。
+ *
+ * 文件格式：
+ * <pre>
+ * MAGIC, FORMAT_VERSION, 文本长度, 段数, 每段在文件中的位置（long）
+ * 每段：段起点, 段终点, 词项数, 词项[], 倒排表起始字节[], 倒排表长度[], 倒排表数据
+ * </pre>
+ * 倒排表是严格递增的偏移量，保存相邻差值的变长整数编码（第一个值相对段起点）。
+ * 查询时把索引文件映射到内存，在映射区上二分查找词项，不需要把整个索引读入堆。
+ */
+public class BookSearchIndex {
+    private static final String TAG = "BookSearchIndex";
+
+    private static final String INDEX_DIR_NAME = "search_index";
+    private static final String FILE_SUFFIX = ".bgx";
+    private static final int MAGIC = 0x42475849; // "BGXI"
+    private static final int FORMAT_VERSION = 1;
+    private static final long MAX_INDEX_BYTES = 64L * 1024 * 1024; // 索引文件总大小上限
+    static final int SEGMENT_CHARS = 1 << 20; // 每段的字符数
+
+    /**
+     * 接收一批命中结果（严格递增的字符偏移量）。
+     * @return false 表示不再需要更多结果，搜索提前结束
+     */
+    public interface HitCallback {
+        boolean onHits(int[] offsets, int count);
+    }
+
+    private final File indexDir;
+
+    // 最近一次查询映射的索引文件，连续搜索同一本书时不必重新映射
+    private String mappedKey;
+    private ByteBuffer mappedIndex;
+
+    public BookSearchIndex(Context context) {
+        this(new File(context.getApplicationContext().getCacheDir(), INDEX_DIR_NAME));
+    }
+
+    // 指定索引目录，单元测试使用
+    BookSearchIndex(File indexDir) {
+        this.indexDir = indexDir;
+    }
+
+    /**
+     * 由书籍键（文件哈希或 URI）得到可以用作文件名的索引键。
+     */
+    public static String buildKey(String bookKey) {
+        return UUID.nameUUIDFromBytes(bookKey.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * 这本书是否已经有可用的索引。
+     * @param fileKey    buildKey 得到的索引键
+     * @param textLength 当前文本长度，不一致说明内容已变化
+     */
+    public synchronized boolean hasIndex(String fileKey, int textLength) {
+        return map(fileKey, textLength) != null;
+    }
+
+    /**
+     * 为全文建立索引并写入磁盘，写入完成后再重命名，避免留下写了一半的文件。
+     * 耗时与文本长度成正比，必须在后台线程调用；线程被中断时放弃并删除临时文件。
+     */
+    public synchronized void build(String fileKey, CharSequence text) throws IOException, InterruptedException {
+        if (!indexDir.isDirectory() && !indexDir.mkdirs()) {
+            throw new IOException("无法创建索引目录: " + indexDir);
+        }
+        long startTime = System.currentTimeMillis();
+        int length = text.length();
+        int segmentCount = Math.max(1, (length + SEGMENT_CHARS - 1) / SEGMENT_CHARS);
+        File target = new File(indexDir, fileKey + FILE_SUFFIX);
+        File temp = new File(indexDir, fileKey + ".tmp");
+        boolean success = false;
+        try (RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+            out.setLength(0);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(length);
+            out.writeInt(segmentCount);
+            long tableOffset = out.getFilePointer();
+            long[] segmentOffsets = new long[segmentCount];
+            out.write(new byte[segmentCount * 8]); // 段位置表，最后回填
+
+            long[] entries = new long[Math.min(SEGMENT_CHARS, Math.max(length, 1))];
+            for (int s = 0; s < segmentCount; s++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Index build interrupted.");
+                }
+                int segStart = s * SEGMENT_CHARS;
+                int segEnd = Math.min(length, segStart + SEGMENT_CHARS);
+                segmentOffsets[s] = out.getFilePointer();
+                out.write(buildSegment(text, segStart, segEnd, entries));
+            }
+            out.seek(tableOffset);
+            for (long offset : segmentOffsets) {
+                out.writeLong(offset);
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                temp.delete();
+            }
+        }
+        if (fileKey.equals(mappedKey)) {
+            mappedKey = null;
+            mappedIndex = null;
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("重命名索引文件失败: " + target.getName());
+        }
+        Log.d(TAG, "索引已建立，文本长度: " + length + "，段数: " + segmentCount + "，文件大小: "
+                + target.length() + " 字节，耗时 " + (System.currentTimeMillis() - startTime) + " ms");
+        trimToSize();
+    }
+
+    /**
+     * 在全文中查找 query 的所有出现位置，按偏移量从小到大分批回调。
+     * 英文字母不区分大小写。有可用的二元组时通过索引查找，否则（单个字符或全是空白）直接扫描全文。
+     *
+     * @return false 表示没有可用的索引，调用方需要先建立索引
+     */
+    public synchronized boolean search(String fileKey, CharSequence text, String query, HitCallback callback)
+            throws InterruptedException {
+        int m = query.length();
+        if (m == 0) {
+            return true;
+        }
+        char[] pattern = new char[m];
+        for (int i = 0; i < m; i++) {
+            pattern[i] = fold(query.charAt(i));
+        }
+        // 查询中可以用索引的二元组（两个字符都不是空白）
+        int[] gramIndexes = new int[m];
+        int gramCount = 0;
+        for (int i = 0; i + 1 < m; i++) {
+            if (isIndexable(pattern[i]) && isIndexable(pattern[i + 1])) {
+                gramIndexes[gramCount++] = i;
+            }
+        }
+        if (gramCount == 0) {
+            scanText(text, pattern, callback);
+            return true;
+        }
+        ByteBuffer index = map(fileKey, text.length());
+        if (index == null) {
+            return false;
+        }
+        int segmentCount = index.getInt(12);
+
+        // 选出全书出现次数最少的二元组作为驱动：只解码它的倒排表，其余字符逐个比对原文
+        int driver = -1;
+        long driverTotal = Long.MAX_VALUE;
+        for (int g = 0; g < gramCount; g++) {
+            int key = bigram(pattern[gramIndexes[g]], pattern[gramIndexes[g] + 1]);
+            long total = 0;
+            for (int s = 0; s < segmentCount; s++) {
+                int slot = findKey(index, segmentOffset(index, s), key);
+                if (slot >= 0) {
+                    total += postingCount(index, segmentOffset(index, s), slot);
+                }
+            }
+            if (total < driverTotal) {
+                driverTotal = total;
+                driver = gramIndexes[g];
+            }
+        }
+        if (driverTotal == 0) {
+            return true; // 某个二元组在全书中不存在，不可能命中
+        }
+
+        int driverKey = bigram(pattern[driver], pattern[driver + 1]);
+        int textLength = text.length();
+        int[] hits = new int[256];
+        for (int s = 0; s < segmentCount; s++) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Search interrupted.");
+            }
+            int segOffset = segmentOffset(index, s);
+            int slot = findKey(index, segOffset, driverKey);
+            if (slot < 0) {
+                continue;
+            }
+            int count = postingCount(index, segOffset, slot);
+            int keyCount = index.getInt(segOffset + 8);
+            int blobStart = segOffset + 12 + keyCount * 12;
+            int position = blobStart + index.getInt(segOffset + 12 + keyCount * 4 + slot * 4);
+            int offset = index.getInt(segOffset); // 段起点
+            int hitCount = 0;
+            for (int i = 0; i < count; i++) {
+                // 读取一个变长整数
+                int delta = 0;
+                int shift = 0;
+                int b;
+                do {
+                    b = index.get(position++) & 0xFF;
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                offset += delta;
+                int start = offset - driver;
+                if (start >= 0 && start + m <= textLength && matchesAt(text, start, pattern)) {
+                    if (hitCount == hits.length) {
+                        hits = Arrays.copyOf(hits, hitCount * 2);
+                    }
+                    hits[hitCount++] = start;
+                }
+            }
+            if (hitCount > 0 && !callback.onHits(hits, hitCount)) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    // 构建一段的索引数据：把 (词项, 偏移量) 打包成 long 排序后按词项分组
+    private static byte[] buildSegment(CharSequence text, int segStart, int segEnd, long[] entries) throws IOException {
+        int length = text.length();
+        int n = 0;
+        char previous = segStart < length ? fold(text.charAt(segStart)) : 0;
+        for (int p = segStart; p < segEnd && p + 1 < length; p++) {
+            char next = fold(text.charAt(p + 1));
+            if (isIndexable(previous) && isIndexable(next)) {
+                entries[n++] = ((long) bigram(previous, next) << 32) | p;
+            }
+            previous = next;
+        }
+        Arrays.sort(entries, 0, n);
+
+        // 统计词项数
+        int keyCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || (int) (entries[i] >> 32) != (int) (entries[i - 1] >> 32)) {
+                keyCount++;
+            }
+        }
+        int[] keys = new int[keyCount];
+        int[] postingStarts = new int[keyCount];
+        int[] postingCounts = new int[keyCount];
+        ByteArrayOutputStream blob = new ByteArrayOutputStream(n * 2);
+        int k = -1;
+        int last = segStart;
+        for (int i = 0; i < n; i++) {
+            int key = (int) (entries[i] >> 32);
+            int offset = (int) entries[i];
+            if (k < 0 || key != keys[k]) {
+                k++;
+                keys[k] = key;
+                postingStarts[k] = blob.size();
+                last = segStart;
+            }
+            writeVarInt(blob, offset - last); // 同一词项相邻出现位置的差值通常很小
+            last = offset;
+            postingCounts[k]++;
+        }
+
+        ByteArrayOutputStream segment = new ByteArrayOutputStream(12 + keyCount * 12 + blob.size());
+        DataOutputStream out = new DataOutputStream(segment);
+        out.writeInt(segStart);
+        out.writeInt(segEnd);
+        out.writeInt(keyCount);
+        for (int key : keys) {
+            out.writeInt(key);
+        }
+        for (int start : postingStarts) {
+            out.writeInt(start);
+        }
+        for (int count : postingCounts) {
+            out.writeInt(count);
+        }
+        blob.writeTo(out);
+        out.flush();
+        return segment.toByteArray();
+    }
+
+    // 没有可用二元组时直接扫描全文，仍按段分批回调
+    private static void scanText(CharSequence text, char[] pattern, HitCallback callback) throws InterruptedException {
+        int length = text.length();
+        int m = pattern.length;
+        int[] hits = new int[256];
+        for (int segStart = 0; segStart < length; segStart += SEGMENT_CHARS) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Search interrupted.");
+            }
+            int segEnd = Math.min(length - m + 1, segStart + SEGMENT_CHARS);
+            int hitCount = 0;
+            for (int p = segStart; p < segEnd; p++) {
+                if (fold(text.charAt(p)) == pattern[0] && matchesAt(text, p, pattern)) {
+                    if (hitCount == hits.length) {
+                        hits = Arrays.copyOf(hits, hitCount * 2);
+                    }
+                    hits[hitCount++] = p;
+                }
+            }
+            if (hitCount > 0 && !callback.onHits(hits, hitCount)) {
+                return;
+            }
+        }
+    }
+
+    private static boolean matchesAt(CharSequence text, int start, char[] pattern) {
+        for (int i = 0; i < pattern.length; i++) {
+            if (fold(text.charAt(start + i)) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 在段的词项表中二分查找，返回槽位，没有时返回 -1
+    private static int findKey(ByteBuffer index, int segOffset, int key) {
+        int low = 0;
+        int high = index.getInt(segOffset + 8) - 1;
+        int keysStart = segOffset + 12;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = index.getInt(keysStart + mid * 4);
+            if (value < key) {
+                low = mid + 1;
+            } else if (value > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static int postingCount(ByteBuffer index, int segOffset, int slot) {
+        int keyCount = index.getInt(segOffset + 8);
+        return index.getInt(segOffset + 12 + keyCount * 8 + slot * 4);
+    }
+
+    private static int segmentOffset(ByteBuffer index, int segment) {
+        return (int) index.getLong(16 + segment * 8);
+    }
+
+    // 映射索引文件并校验文件头，无效的文件会被删除
+    private ByteBuffer map(String fileKey, int textLength) {
+        if (fileKey.equals(mappedKey) && mappedIndex != null && mappedIndex.getInt(8) == textLength) {
+            return mappedIndex;
+        }
+        File file = new File(indexDir, fileKey + FILE_SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            FileChannel channel = in.getChannel();
+            if (channel.size() < 16 || channel.size() > Integer.MAX_VALUE) {
+                file.delete();
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION || buffer.getInt(8) != textLength) {
+                Log.w(TAG, "索引文件格式或文本长度不匹配，丢弃: " + file.getName());
+                file.delete();
+                return null;
+            }
+            // 更新最近使用时间，供 LRU 淘汰使用
+            file.setLastModified(System.currentTimeMillis());
+            mappedKey = fileKey;
+            mappedIndex = buffer;
+            return buffer;
+        } catch (IOException e) {
+            Log.e(TAG, "读取索引文件失败: " + e.getMessage());
+            file.delete();
+            return null;
+        }
+    }
+
+    // 按最近使用时间从旧到新删除，直到总大小不超过上限
+    private void trimToSize() {
+        File[] files = indexDir.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_INDEX_BYTES) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= MAX_INDEX_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                Log.d(TAG, "淘汰搜索索引: " + file.getName());
+            }
+        }
+    }
+
+    private static int bigram(char first, char second) {
+        return (first << 16) | second;
+    }
+
+    // 空白字符不参与索引
+    private static boolean isIndexable(char c) {
+        return !Character.isWhitespace(c) && c != '　';
+    }
+
+    // 英文字母统一为小写，其余字符不变
+    private static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
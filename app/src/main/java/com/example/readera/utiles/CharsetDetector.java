@@ -0,0 +1,206 @@
+package com.example.readera.utiles;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 文本编码探测。
+ * 只读取文件开头的一段字节（BOM、UTF-8 合法性、GB18030/Big5/Shift_JIS 统计），
+ * 一次性选定解码器，避免先按 UTF-8 整本读取失败后再按 GBK 重读。
+ */
+public class CharsetDetector {
+    private static final String TAG = "CharsetDetector";
+
+    // 用于探测的前缀长度
+    private static final int SAMPLE_BYTES = 64 * 1024;
+
+    public static final Charset GB18030 = Charset.forName("GB18030");
+    public static final Charset BIG5 = Charset.forName("Big5");
+    public static final Charset SHIFT_JIS = Charset.forName("Shift_JIS");
+
+    // 简体、繁体中文中出现频率最高的一批汉字，用于给候选编码打分
+    private static final String COMMON_SIMPLIFIED = "的一是不了在人有我他这个们中来上大为和国地到以说时要就出会可也你对生能而子那得于着下自之年过发后作里";
+    private static final String COMMON_TRADITIONAL = "的一是不了在人有我他這個們中來上大為和國地到以說時要就出會可也你對生能而子那得於著下自之年過發後作裡";
+
+    private CharsetDetector() {
+    }
+
+    /**
+     * 读取文件前缀并探测编码。读取失败时返回 UTF-8。
+     */
+    public static Charset detect(Context context, Uri uri) {
+        long start = SystemClock.elapsedRealtime();
+        Charset charset = StandardCharsets.UTF_8;
+        try (InputStream inputStream = context.getContentResolver().openInputStream(uri)) {
+            if (inputStream != null) {
+                byte[] sample = new byte[SAMPLE_BYTES];
+                int length = 0;
+                int read;
+                while (length < sample.length && (read = inputStream.read(sample, length, sample.length - length)) != -1) {
+                    length += read;
+                }
+                // 读满样本后文件还有内容时，样本末尾可能截断了一个多字节字符
+                boolean isPrefix = length == sample.length && inputStream.read() != -1;
+                charset = detect(sample, length, isPrefix);
+            }
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, "读取文件前缀失败，默认使用 UTF-8: " + e.getMessage());
+        }
+        Log.d(TAG, "编码检测完成: " + charset.name() + "，耗时 " + (SystemClock.elapsedRealtime() - start) + " ms, URI: " + uri);
+        return charset;
+    }
+
+    /**
+     * 根据字节样本探测编码。
+     * @param data     文件开头的字节
+     * @param length   有效字节数
+     * @param isPrefix data 是否只是文件的开头（后面还有内容）
+     */
+    public static Charset detect(byte[] data, int length, boolean isPrefix) {
+        // 步骤 1: BOM
+        if (length >= 3 && (data[0] & 0xFF) == 0xEF && (data[1] & 0xFF) == 0xBB && (data[2] & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (length >= 2 && (((data[0] & 0xFF) == 0xFF && (data[1] & 0xFF) == 0xFE)
+                || ((data[0] & 0xFF) == 0xFE && (data[1] & 0xFF) == 0xFF))) {
+            return StandardCharsets.UTF_16; // UTF-16 解码器会根据 BOM 判断字节序并跳过 BOM
+        }
+
+        // 步骤 2: 严格校验 UTF-8（纯 ASCII 也视为 UTF-8）
+        if (isValidUtf8(data, length, isPrefix)) {
+            return StandardCharsets.UTF_8;
+        }
+
+        // 步骤 3: 对双字节编码分别试解码并统计
+        Charset best = GB18030;
+        int bestScore = Integer.MIN_VALUE;
+        for (Charset candidate : new Charset[]{GB18030, BIG5, SHIFT_JIS}) {
+            int score = score(candidate, data, length);
+            Log.d(TAG, "候选编码 " + candidate.name() + " 得分: " + score);
+            if (score > bestScore) {
+                bestScore = score;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 按 RFC 3629 逐字节校验 UTF-8：过长编码（C0、C1，E0 后跟 80..9F，F0 后跟 80..8F）、
+     * UTF-16 代理项（ED A0..BF）和超出 U+10FFFF 的编码（F4 90..BF，F5..FF）都不合法。
+     * 末尾不完整的多字节字符只在 isPrefix 为 true（样本后面还有内容）时接受，已有的字节仍要合法。
+     */
+    static boolean isValidUtf8(byte[] data, int length, boolean isPrefix) {
+        int i = 0;
+        while (i < length) {
+            int b = data[i] & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            int continuation;
+            // 第二个字节的取值范围，其余后续字节都是 80..BF
+            int secondMin = 0x80;
+            int secondMax = 0xBF;
+            if (b >= 0xC2 && b <= 0xDF) {
+                continuation = 1;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                continuation = 2;
+                if (b == 0xE0) {
+                    secondMin = 0xA0; // 小于 U+0800 的过长编码
+                } else if (b == 0xED) {
+                    secondMax = 0x9F; // 代理项 U+D800..U+DFFF
+                }
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                continuation = 3;
+                if (b == 0xF0) {
+                    secondMin = 0x90; // 小于 U+10000 的过长编码
+                } else if (b == 0xF4) {
+                    secondMax = 0x8F; // 超出 U+10FFFF
+                }
+            } else {
+                return false;
+            }
+            int available = Math.min(continuation, length - i - 1);
+            for (int k = 1; k <= available; k++) {
+                int c = data[i + k] & 0xFF;
+                boolean valid = k == 1 ? c >= secondMin && c <= secondMax : (c & 0xC0) == 0x80;
+                if (!valid) {
+                    return false;
+                }
+            }
+            if (available < continuation) {
+                return isPrefix; // 字符被截断在样本末尾
+            }
+            i += continuation + 1;
+        }
+        return true;
+    }
+
+    /**
+     * 用候选编码严格解码样本，按非法字节数、常用字和假名数量打分。
+     */
+    private static int score(Charset charset, byte[] data, int length) {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer in = ByteBuffer.wrap(data, 0, length);
+        CharBuffer out = CharBuffer.allocate(length);
+        int errors = 0;
+        while (in.hasRemaining()) {
+            CoderResult result = decoder.decode(in, out, false);
+            if (result.isError()) {
+                errors++;
+                in.position(in.position() + result.length()); // 跳过非法字节继续统计
+            } else {
+                break; // 下溢：剩余的是样本末尾被截断的字符
+            }
+        }
+        out.flip();
+
+        int common = 0;
+        int kana = 0;
+        String commonChars = charset == BIG5 ? COMMON_TRADITIONAL : COMMON_SIMPLIFIED;
+        while (out.hasRemaining()) {
+            char c = out.get();
+            if (c >= '\u3040' && c <= '\u30FF') {
+                kana++;
+            } else if (c >= '\u4E00' && commonChars.indexOf(c) >= 0) {
+                common++;
+            }
+        }
+        // 日文文本以假名为主，中文文本几乎不出现假名
+        int languageHits = charset == SHIFT_JIS ? kana + common / 2 : common;
+        return languageHits - errors * 20;
+    }
+
+    /**
+     * 根据名称解析缓存的编码，名称无效时返回 null。
+     */
+    @Nullable
+    public static Charset forName(@Nullable String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "无效的编码名称: " + name);
+            return null;
+        }
+    }
+}
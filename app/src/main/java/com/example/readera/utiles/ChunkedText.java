@@ -0,0 +1,197 @@
+package com.example.readera.utiles;
+
+import android.text.GetChars;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 分块存储的只读文本。
+ * 解码后的内容按固定大小的 char[] 块保存，避免整本书拼成一个超大 String
+ * （StringBuilder 扩容 + toString 拷贝会让峰值内存达到文本大小的数倍）。
+ * 实现 GetChars 接口，StaticLayout 等系统组件可以按块批量拷贝字符。
+ */
+public final class ChunkedText implements CharSequence, GetChars {
+
+    private static final int CHUNK_SHIFT = 16; // 每块 64K 个字符
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final char[][] chunks;
+    private final int length;
+
+    private ChunkedText(char[][] chunks, int length) {
+        this.chunks = chunks;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+        }
+        return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    @Override
+    public void getChars(int start, int end, char[] dest, int destoff) {
+        checkRange(start, end, length);
+        int pos = start;
+        while (pos < end) {
+            char[] chunk = chunks[pos >>> CHUNK_SHIFT];
+            int offsetInChunk = pos & CHUNK_MASK;
+            int count = Math.min(CHUNK_SIZE - offsetInChunk, end - pos);
+            System.arraycopy(chunk, offsetInChunk, dest, destoff, count);
+            destoff += count;
+            pos += count;
+        }
+    }
+
+    /**
+     * 返回共享底层数据的子序列视图，不拷贝字符。
+     */
+    @NonNull
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        checkRange(start, end, length);
+        return new Slice(start, end);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        char[] buffer = new char[length];
+        getChars(0, length, buffer, 0);
+        return new String(buffer);
+    }
+
+    private static void checkRange(int start, int end, int length) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length);
+        }
+    }
+
+    /**
+     * ChunkedText 上的一段只读视图。
+     */
+    private final class Slice implements CharSequence, GetChars {
+        private final int start;
+        private final int end;
+
+        Slice(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("index: " + index + ", length: " + (end - start));
+            }
+            return ChunkedText.this.charAt(start + index);
+        }
+
+        @Override
+        public void getChars(int s, int e, char[] dest, int destoff) {
+            checkRange(s, e, end - start);
+            ChunkedText.this.getChars(start + s, start + e, dest, destoff);
+        }
+
+        @NonNull
+        @Override
+        public CharSequence subSequence(int s, int e) {
+            checkRange(s, e, end - start);
+            return new Slice(start + s, start + e);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            char[] buffer = new char[end - start];
+            ChunkedText.this.getChars(start, end, buffer, 0);
+            return new String(buffer);
+        }
+    }
+
+    /**
+     * 逐段追加字符，构建 ChunkedText。
+     * 每次只会额外分配一个块，不会像 StringBuilder 那样整体扩容拷贝。
+     */
+    public static final class Builder {
+        private final List<char[]> fullChunks = new ArrayList<>();
+        private char[] current = new char[CHUNK_SIZE];
+        private int currentLength = 0;
+        private int length = 0;
+
+        public int length() {
+            return length;
+        }
+
+        // 最后一个已追加的字符，没有内容时返回 0
+        public char lastChar() {
+            if (currentLength > 0) {
+                return current[currentLength - 1];
+            }
+            if (!fullChunks.isEmpty()) {
+                return fullChunks.get(fullChunks.size() - 1)[CHUNK_SIZE - 1];
+            }
+            return 0;
+        }
+
+        public Builder append(char c) {
+            if (currentLength == CHUNK_SIZE) {
+                nextChunk();
+            }
+            current[currentLength++] = c;
+            length++;
+            return this;
+        }
+
+        public Builder append(char[] src, int offset, int count) {
+            if (count < 0 || Integer.MAX_VALUE - length < count) {
+                throw new IllegalStateException("文本过大，无法追加 " + count + " 个字符");
+            }
+            while (count > 0) {
+                if (currentLength == CHUNK_SIZE) {
+                    nextChunk();
+                }
+                int n = Math.min(CHUNK_SIZE - currentLength, count);
+                System.arraycopy(src, offset, current, currentLength, n);
+                currentLength += n;
+                length += n;
+                offset += n;
+                count -= n;
+            }
+            return this;
+        }
+
+        private void nextChunk() {
+            fullChunks.add(current);
+            current = new char[CHUNK_SIZE];
+            currentLength = 0;
+        }
+
+        public ChunkedText build() {
+            char[][] chunks = new char[fullChunks.size() + 1][];
+            for (int i = 0; i < fullChunks.size(); i++) {
+                chunks[i] = fullChunks.get(i);
+            }
+            // 最后一块按实际长度裁剪，只拷贝不超过一个块的数据
+            chunks[chunks.length - 1] = Arrays.copyOf(current, currentLength);
+            return new ChunkedText(chunks, length);
+        }
+    }
+}
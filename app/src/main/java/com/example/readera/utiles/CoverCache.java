@@ -0,0 +1,184 @@
+package com.example.readera.utiles;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 书架封面的两级缓存：内存中的 LruCache（按位图字节数限制大小）和 cacheDir 下渲染好的 PNG。
+ * 缓存键由书名和尺寸组成（生成的封面与主题无关）；未命中时在后台线程先读磁盘，再生成新的封面，结果回到主线程。
+ * 列表项被复用时调用方取消对应的请求，滑过的行不会占用生成线程。
+ */
+public class CoverCache {
+    private static final String TAG = "CoverCache";
+    private static CoverCache instance;
+
+    // 内存缓存占应用堆上限的比例（1/16）
+    private static final int MEMORY_CACHE_HEAP_FRACTION = 16;
+    // 磁盘缓存上限，超过后启动时删除最早写入的文件
+    private static final long DISK_CACHE_BYTES = 16L * 1024 * 1024;
+    private static final String DISK_CACHE_DIR = "covers";
+    private static final int LOADER_THREADS = 2;
+
+    private final LruCache<String, Bitmap> memoryCache;
+    private final File diskCacheDir;
+    private final ExecutorService loader;
+    private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * 封面加载完成的回调，在主线程执行；请求被取消后不会回调。
+     */
+    public interface CoverCallback {
+        void onCoverLoaded(String key, Bitmap cover);
+    }
+
+    public static synchronized CoverCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new CoverCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CoverCache(Context context) {
+        int maxBytes = (int) (Runtime.getRuntime().maxMemory() / MEMORY_CACHE_HEAP_FRACTION);
+        memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+        diskCacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        loader = Executors.newFixedThreadPool(LOADER_THREADS, BackgroundThreads.factory("CoverLoader"));
+        loader.execute(this::trimDiskCache);
+    }
+
+    // 封面的缓存键
+    public static String buildKey(String title, int width, int height) {
+        return title + "|" + width + "x" + height;
+    }
+
+    // 内存缓存中的封面，没有时返回 null；可在主线程调用
+    public Bitmap getCached(String key) {
+        return memoryCache.get(key);
+    }
+
+    /**
+     * 在后台加载封面：先查磁盘缓存，没有时生成并写入磁盘。
+     * @return 请求，列表项被复用时调用 cancel(true) 取消
+     */
+    public Future<?> load(String key, String title, int width, int height, CoverCallback callback) {
+        return loader.submit(() -> {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            Bitmap cover = memoryCache.get(key); // 排队期间可能已被其他请求加载
+            if (cover == null) {
+                File file = new File(diskCacheDir, fileNameOf(key));
+                cover = BitmapFactory.decodeFile(file.getPath());
+                if (cover == null) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    cover = CoverUtils.generateCoverBitmap(title, width, height);
+                    writeToDisk(file, cover);
+                }
+                memoryCache.put(key, cover);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            Bitmap result = cover;
+            mainThreadHandler.post(() -> callback.onCoverLoaded(key, result));
+        });
+    }
+
+    /**
+     * 系统内存紧张时释放内存中的封面，由 Application.onTrimMemory 调用。磁盘缓存保留。
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            memoryCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            memoryCache.trimToSize(memoryCache.maxSize() / 2);
+        }
+    }
+
+    private void writeToDisk(File file, Bitmap cover) {
+        if (!diskCacheDir.isDirectory() && !diskCacheDir.mkdirs()) {
+            return;
+        }
+        // 先写临时文件再改名，另一个线程不会读到写了一半的文件
+        File tempFile = new File(diskCacheDir, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            cover.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException e) {
+            Log.e(TAG, "写入封面缓存失败: " + e.getMessage());
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+        }
+    }
+
+    // 磁盘缓存超过上限时删除最早写入的文件，直到降到上限的一半
+    private void trimDiskCache() {
+        File[] files = diskCacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= DISK_CACHE_BYTES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        int deleted = 0;
+        for (File file : files) {
+            if (total <= DISK_CACHE_BYTES / 2) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                deleted++;
+            }
+        }
+        Log.d(TAG, "封面磁盘缓存超过上限，删除 " + deleted + " 个文件");
+    }
+
+    private static String fileNameOf(String key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            byte[] digest = md.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2 + 4);
+            for (byte b : digest) {
+                name.append(String.format(Locale.ROOT, "%02x", b));
+            }
+            return name.append(".png").toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode()) + ".png";
+        }
+    }
+}
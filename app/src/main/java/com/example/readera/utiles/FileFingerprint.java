@@ -0,0 +1,111 @@
+package com.example.readera.utiles;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * 导入去重用的两层文件指纹。
+ * <ul>
+ *     <li>快速指纹：文件大小 + 开头、中间、结尾各一块（共最多 192KB）的 xxHash64，不论文件多大读取量都固定；</li>
+ *     <li>完整哈希：全文 SHA-256，只在两个文件的快速指纹相同、需要确认内容是否真的一样时才计算。</li>
+ * </ul>
+ * 快速指纹不同的文件内容一定不同；相同时才有可能是同一本书。
+ */
+public final class FileFingerprint {
+    // 每个采样块的大小；不超过三块的文件整个参与计算
+    private static final int SAMPLE_BYTES = 64 * 1024;
+    private static final int HASH_BUFFER_BYTES = 64 * 1024;
+
+    private FileFingerprint() {
+    }
+
+    /**
+     * 计算快速指纹。
+     * @param size 文件大小（字节），未知时传 -1，会尝试从文件描述符获取
+     * @return 形如 "大小-哈希" 的指纹；无法得到文件大小或无法打开文件时返回 null
+     */
+    public static String quickHash(ContentResolver resolver, Uri uri, long size) throws IOException {
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r")) {
+            if (pfd == null) {
+                return null;
+            }
+            if (size < 0) {
+                size = pfd.getStatSize();
+            }
+            if (size < 0) {
+                return null; // 管道之类的文件没有大小，只能比较完整哈希
+            }
+            byte[] sample = new byte[(int) Math.min(size, 3L * SAMPLE_BYTES)];
+            try (FileInputStream input = new FileInputStream(pfd.getFileDescriptor())) {
+                FileChannel channel = input.getChannel();
+                if (size <= 3L * SAMPLE_BYTES) {
+                    readFully(channel, sample, 0, sample.length, 0);
+                } else {
+                    readFully(channel, sample, 0, SAMPLE_BYTES, 0);
+                    readFully(channel, sample, SAMPLE_BYTES, SAMPLE_BYTES, size / 2 - SAMPLE_BYTES / 2);
+                    readFully(channel, sample, 2 * SAMPLE_BYTES, SAMPLE_BYTES, size - SAMPLE_BYTES);
+                }
+            }
+            // 文件大小作为种子，长度不同的文件即使采样内容相同指纹也不同
+            long hash = XxHash64.hash(sample, 0, sample.length, size);
+            return String.format(Locale.ROOT, "%d-%016x", size, hash);
+        }
+    }
+
+    /**
+     * 计算全文 SHA-256，被中断时抛出 InterruptedIOException。
+     * @return 十六进制字符串；无法打开文件时返回 null
+     */
+    public static String fullHash(ContentResolver resolver, Uri uri) throws IOException {
+        try (InputStream inputStream = resolver.openInputStream(uri)) {
+            if (inputStream == null) {
+                return null;
+            }
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[HASH_BUFFER_BYTES];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Hashing cancelled: " + uri);
+                }
+                md.update(buffer, 0, bytesRead);
+            }
+            byte[] digest = md.digest();
+            StringBuilder hexString = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                String hex = Integer.toHexString(0xff & b);
+                if (hex.length() == 1) {
+                    hexString.append('0');
+                }
+                hexString.append(hex);
+            }
+            return hexString.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+    }
+
+    // 从 position 开始读满 length 个字节；文件比预期短时剩余部分保持为 0
+    private static void readFully(FileChannel channel, byte[] target, int offset, int length, long position)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(target, offset, length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return;
+            }
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.readera.utiles;
+
+import com.example.readera.model.LibrarySearchResult;
+
+/**
+ * 全书库搜索的文本转换。SQLite 的 FTS4 simple 分词器把连续的非 ASCII 字符当成一个词，
+ * 中文没有空格，整段会变成一个词而无法检索。写入前在每个非 ASCII 字符两侧插入空格，
+ * 让每个汉字（以及全角标点）各自成为一个词，查询时用同样的方式转换成短语查询，
+ * 短语要求这些词相邻，效果等同于子串匹配。ASCII 文本保持原样，仍按单词匹配。
+ */
+public final class LibrarySearchText {
+    // 文本块的目标长度（字符数），块尽量在换行处结束
+    static final int CHUNK_CHARS = 1024;
+    // 超过目标长度后最多再找这么多字符的换行，找不到就在这里截断
+    private static final int CHUNK_SLACK_CHARS = 512;
+    // 相邻文本块重叠的字符数。FTS 的短语只能在一个块内匹配，重叠部分保证不超过
+    // MAX_PHRASE_CHARS 的短语跨过块边界时也完整地出现在后一个块里；更长的短语跨边界时仍会漏掉
+    static final int MAX_PHRASE_CHARS = 32;
+    private static final int CHUNK_OVERLAP_CHARS = MAX_PHRASE_CHARS - 1;
+
+    private LibrarySearchText() {
+    }
+
+    /**
+     * 上一个块在 previousEnd 结束时，下一个块写入索引的起始位置：向前重叠 CHUNK_OVERLAP_CHARS 个字符。
+     * 重叠部分里的匹配会同时算在两个块上。
+     */
+    static int findChunkStart(CharSequence text, int previousEnd) {
+        int start = Math.max(0, previousEnd - CHUNK_OVERLAP_CHARS);
+        // 不要把代理对拆开
+        return start > 0 && Character.isLowSurrogate(text.charAt(start)) ? start - 1 : start;
+    }
+
+    /**
+     * 从 start 开始的文本块的结束位置（不包含）。
+     */
+    static int findChunkEnd(CharSequence text, int start) {
+        int length = text.length();
+        int target = start + CHUNK_CHARS;
+        if (target >= length) {
+            return length;
+        }
+        int limit = Math.min(length, target + CHUNK_SLACK_CHARS);
+        for (int i = target; i < limit; i++) {
+            if (text.charAt(i) == '\n') {
+                return i + 1;
+            }
+        }
+        // 不要把代理对拆开
+        return Character.isHighSurrogate(text.charAt(limit - 1)) ? limit - 1 : limit;
+    }
+
+    /**
+     * 把 [start, end) 范围的原文转换成写入 FTS 表的形式。
+     */
+    static String encode(CharSequence text, int start, int end) {
+        StringBuilder out = new StringBuilder((end - start) * 2);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 128) {
+                out.append(c);
+            } else if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                appendSeparator(out);
+            } else {
+                appendSeparator(out);
+                out.append(c);
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    out.append(text.charAt(++i));
+                }
+                out.append(' ');
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * 把用户输入转换成 FTS 的 MATCH 表达式：空白分隔的每一部分各自作为一个短语，多个短语之间是“与”的关系。
+     * @return 表达式；输入中没有可检索的内容时返回 null
+     */
+    public static String toMatchQuery(String query) {
+        StringBuilder match = new StringBuilder();
+        for (String term : query.trim().split("\\s+")) {
+            String encoded = encode(term, 0, term.length()).replace('"', ' ').trim();
+            if (!hasTokenChar(encoded)) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append('"').append(encoded).append('"');
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    /**
+     * 把 FTS 返回的摘要还原成可读的文字：去掉写入时插入的空格，换行替换为空格。
+     */
+    public static String decodeSnippet(String snippet) {
+        StringBuilder out = new StringBuilder(snippet.length());
+        int length = snippet.length();
+        for (int i = 0; i < length; i++) {
+            char c = snippet.charAt(i);
+            if (c == ' ') {
+                if (isWideNeighbor(snippet, i, -1) || isWideNeighbor(snippet, i, 1)) {
+                    continue;
+                }
+            } else if (c == '\n' || c == '\r') {
+                c = ' ';
+            }
+            out.append(c);
+        }
+        return out.toString();
+    }
+
+    // 从 index 向 direction 方向跳过高亮标记后的第一个字符是否是非 ASCII 字符
+    private static boolean isWideNeighbor(String s, int index, int direction) {
+        for (int i = index + direction; i >= 0 && i < s.length(); i += direction) {
+            char c = s.charAt(i);
+            if (c == LibrarySearchResult.MARK_START || c == LibrarySearchResult.MARK_END) {
+                continue;
+            }
+            return c >= 128;
+        }
+        return false;
+    }
+
+    private static void appendSeparator(StringBuilder out) {
+        int last = out.length() - 1;
+        if (last >= 0 && out.charAt(last) != ' ') {
+            out.append(' ');
+        }
+    }
+
+    // simple 分词器只把 ASCII 字母数字和非 ASCII 字符当作词的一部分
+    private static boolean hasTokenChar(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 128 || Character.isLetterOrDigit(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
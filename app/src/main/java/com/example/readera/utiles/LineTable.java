@@ -0,0 +1,175 @@
+package com.example.readera.utiles;
+
+import android.graphics.Typeface;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 分页时排好的行：每行的起始偏移量、行高和基线位置。
+ * 行首尾相接，第 i 行的范围是 [starts[i], starts[i + 1])，最后一行到 end 为止。
+ * NovelPageView 直接按这些行绘制页面，不需要在主线程上重新断行。
+ * 行高和基线偏移（基线到行顶的距离）打包在一个 int 里，高 16 位是行高，低 16 位是基线偏移。
+ * 同时记录断行时的宽度、字号、字体和行间距，任何一项与绘制时不同，这些行都不能再用。
+ */
+public final class LineTable {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int layoutWidth; // 断行时使用的宽度（像素）
+    private final float textSizePx;
+    private final float lineSpacingExtraPx;
+    private final Typeface typeface;
+    private int[] starts;
+    private int[] metrics;
+    private int size;
+    private int end; // 最后一行的结束偏移量
+
+    // 不带排版参数的空行表（例如从磁盘缓存恢复的分页结果），不会被用来绘制
+    public LineTable(int layoutWidth) {
+        this(layoutWidth, 0f, 0f, null);
+    }
+
+    public LineTable(int layoutWidth, float textSizePx, float lineSpacingExtraPx, Typeface typeface) {
+        this.layoutWidth = layoutWidth;
+        this.textSizePx = textSizePx;
+        this.lineSpacingExtraPx = lineSpacingExtraPx;
+        this.typeface = typeface;
+        this.starts = new int[0];
+        this.metrics = new int[0];
+    }
+
+    public int getLayoutWidth() {
+        return layoutWidth;
+    }
+
+    /**
+     * 这些行是否是按给定的宽度、字号（像素）、额外行间距（像素）和字体排出来的。
+     */
+    public boolean isLaidOutWith(int width, float textSizePx, float lineSpacingExtraPx, Typeface typeface) {
+        return layoutWidth == width && this.textSizePx == textSizePx
+                && this.lineSpacingExtraPx == lineSpacingExtraPx && Objects.equals(this.typeface, typeface);
+    }
+
+    // 排版参数相同、内容为空的行表，用于接收下一批行
+    public LineTable emptyCopy() {
+        return new LineTable(layoutWidth, textSizePx, lineSpacingExtraPx, typeface);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getLineStart(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    public int getLineEnd(int index) {
+        checkIndex(index);
+        return index + 1 < size ? starts[index + 1] : end;
+    }
+
+    // 行高（包含额外行间距）
+    public int getLineHeight(int index) {
+        checkIndex(index);
+        return metrics[index] >>> 16;
+    }
+
+    // 基线到行顶的距离
+    public int getLineBaselineOffset(int index) {
+        checkIndex(index);
+        return metrics[index] & 0xFFFF;
+    }
+
+    /**
+     * 查找从 offset 开始的行。
+     * @return 行索引；offset 不是某一行的起点时返回 -1
+     */
+    public int findLineStartingAt(int offset) {
+        int index = Arrays.binarySearch(starts, 0, size, offset);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * 在末尾追加一行，起始位置必须紧接上一行的结尾。
+     */
+    public void addLine(int start, int lineEnd, int height, int baselineOffset) {
+        if (size > 0 && start != end) {
+            throw new IllegalArgumentException("行不连续: " + start + " != " + end);
+        }
+        ensureCapacity(size + 1);
+        starts[size] = start;
+        metrics[size] = pack(height, baselineOffset);
+        size++;
+        end = lineEnd;
+    }
+
+    /**
+     * 把另一批行接到末尾，两者必须首尾相接。
+     */
+    public void append(LineTable batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (size > 0 && batch.starts[0] != end) {
+            throw new IllegalArgumentException("行不连续: " + batch.starts[0] + " != " + end);
+        }
+        ensureCapacity(size + batch.size);
+        System.arraycopy(batch.starts, 0, starts, size, batch.size);
+        System.arraycopy(batch.metrics, 0, metrics, size, batch.size);
+        size += batch.size;
+        end = batch.end;
+    }
+
+    /**
+     * 把另一批行插入到开头，两者必须首尾相接。
+     */
+    public void prepend(LineTable batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (size > 0 && batch.end != starts[0]) {
+            throw new IllegalArgumentException("行不连续: " + batch.end + " != " + starts[0]);
+        }
+        ensureCapacity(size + batch.size);
+        System.arraycopy(starts, 0, starts, batch.size, size);
+        System.arraycopy(metrics, 0, metrics, batch.size, size);
+        System.arraycopy(batch.starts, 0, starts, 0, batch.size);
+        System.arraycopy(batch.metrics, 0, metrics, 0, batch.size);
+        if (size == 0) {
+            end = batch.end;
+        }
+        size += batch.size;
+    }
+
+    public LineTable copy() {
+        LineTable copy = emptyCopy();
+        copy.starts = Arrays.copyOf(starts, size);
+        copy.metrics = Arrays.copyOf(metrics, size);
+        copy.size = size;
+        copy.end = end;
+        return copy;
+    }
+
+    private static int pack(int height, int baselineOffset) {
+        return (Math.min(height, 0xFFFF) << 16) | Math.min(Math.max(baselineOffset, 0), 0xFFFF);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > starts.length) {
+            int newCapacity = Math.max(capacity, Math.max(INITIAL_CAPACITY, starts.length * 2));
+            starts = Arrays.copyOf(starts, newCapacity);
+            metrics = Arrays.copyOf(metrics, newCapacity);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+    }
+}
@@ -1,13 +1,34 @@
 package com.example.readera.utiles;
 
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Typeface; // 导入 Typeface
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.LruCache;
+import android.util.TypedValue;
 
+import com.example.readera.Dao.BookDao;
+import com.example.readera.Dao.ChapterDao;
+import com.example.readera.Dao.LibrarySearchDao;
+import com.example.readera.model.BookInfo;
+import com.example.readera.model.LibrarySearchResult;
+import com.example.readera.model.SearchResult;
+import com.example.readera.model.TableOfContents;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -17,16 +38,45 @@ public class NovelReaderManager {
     private static final String TAG = "NovelReaderManager";
     private static NovelReaderManager instance;
 
-    private TextPager currentTextPager;// 存储当前分页好的 TextPager 实例
-    private Uri currentFileUri;
+    private static final int MAX_LAYOUT_THREADS = 4;
+    // 书籍缓存最多占用应用堆上限的几分之一
+    private static final int BOOK_CACHE_HEAP_FRACTION = 4;
+    // 一次书内搜索最多返回的结果数
+    private static final int MAX_SEARCH_RESULTS = 1000;
+    // 搜索结果摘要中命中位置前后保留的字符数
+    private static final int SNIPPET_CONTEXT_CHARS = 16;
+    // 全书库搜索最多返回的书籍数
+    private static final int MAX_LIBRARY_RESULTS = 100;
+    // 全书库搜索摘要包含的词数（每个汉字是一个词）
+    private static final int LIBRARY_SNIPPET_WORDS = 24;
+
+    private volatile TextPager currentTextPager; // 当前分页好的 TextPager 实例，分页线程写入，搜索等线程也会读取
+    private volatile Uri currentFileUri; // 预加载线程也会读取
     private Future<?> paginationTask; // 用于管理异步分页任务
+    private PageIndexCache pageIndexCache; // 分页结果的磁盘缓存，首次使用时创建
+    private LruCache<Uri, TextPager> bookCache; // 最近打开的书籍（解码后的文本 + 分页结果），按字节数限制大小
+    private BookSearchIndex searchIndex; // 书内搜索的磁盘索引，首次使用时创建
+    private Future<?> libraryIndexTask; // 正在进行的全书库索引同步
 
     private final ExecutorService executorService; // 使用固定线程池
+    private final ExecutorService layoutExecutor; // 按章节并行排版的有界线程池
+    private final ExecutorService tocExecutor; // 目录的生成和查询，不排在分页任务后面
+    private final ExecutorService searchExecutor; // 搜索索引的建立和查询，后台优先级
+    private final ExecutorService libraryIndexExecutor; // 全书库索引的同步，耗时较长，不占用搜索线程
+    private final ExecutorService librarySearchExecutor; // 全书库搜索的查询，不排在书内索引的建立后面
+    private final int layoutThreadCount;
     private final Handler mainThreadHandler; // 用于在主线程回调
 
     private NovelReaderManager() {
         // 私有构造函数，确保单例
         executorService = Executors.newSingleThreadExecutor(); // 确保只有一个分页任务在进行
+        // 留一个核心给主线程，并限制上限，避免大小核设备上抢占过多资源
+        layoutThreadCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, MAX_LAYOUT_THREADS));
+        layoutExecutor = Executors.newFixedThreadPool(layoutThreadCount);
+        tocExecutor = Executors.newSingleThreadExecutor();
+        searchExecutor = Executors.newSingleThreadExecutor(BackgroundThreads.factory("BookSearch"));
+        libraryIndexExecutor = Executors.newSingleThreadExecutor(BackgroundThreads.factory("LibraryIndex"));
+        librarySearchExecutor = Executors.newSingleThreadExecutor(BackgroundThreads.factory("LibrarySearch"));
         mainThreadHandler = new Handler(Looper.getMainLooper()); // 用于在主线程回调
     }
 
@@ -38,7 +88,11 @@ public class NovelReaderManager {
     }
 
     /**
-     * 开始加载和分页文本。如果当前文件已分页且阅读设置未变，则直接返回现有结果。
+     * 开始加载和分页文本。如果这本书仍在内存缓存中且阅读设置未变，则直接返回现有结果；
+     * 设置变化时复用缓存中已解码的文本，只重新分页。
+     * 否则使用增量分页：页面一排好就通过 onPagesAppended/onPagesPrepended 推送，
+     * 全部完成后再回调 onPaginationComplete。
+     * 同一本书在相同排版参数下的分页结果会缓存到磁盘，再次打开时直接恢复，不再排版。
      *
      * @param context          Application context.
      * @param uri              The URI of the text file.
@@ -47,29 +101,33 @@ public class NovelReaderManager {
      * @param textSizeSp       Text size in SP.
      * @param lineSpacingExtraDp Line spacing in DP.
      * @param typeface         The Typeface to use for text measurement.
+     * @param fontIdentifier   Identifier of the typeface, part of the page cache key.
+     * @param anchorOffset     Char offset that should be laid out first.
      * @param listener         Callback for pagination completion.
      */
     public void loadAndPaginateTextAsync(Context context, Uri uri,
                                          int contentWidthPx, int contentHeightPx,
                                          float textSizeSp, float lineSpacingExtraDp,
                                          Typeface typeface, // 新增 Typeface 参数
+                                         String fontIdentifier,
+                                         int anchorOffset,
                                          PaginationListener listener) {
 
-        // 步骤 1: 检查是否已分页且设置未变
+        // 步骤 1: 检查缓存中的书籍是否已分页且设置未变（缓存中只有分页完成的结果）
         // 增加对 Typeface 的比较
-        if (currentTextPager != null && uri.equals(currentFileUri) &&
-                currentTextPager.getTextSize() == textSizeSp &&
-                currentTextPager.getLineSpacingExtra() == lineSpacingExtraDp &&
-                currentTextPager.getVisibleAreaWidth() == contentWidthPx &&
-                currentTextPager.getVisibleAreaHeight() == contentHeightPx &&
-                currentTextPager.getTypeface() == typeface&&
-                currentTextPager.getPages() != null &&
-                !currentTextPager.getPages().isEmpty()) {
-
-            Log.d(TAG, "文件已分页且所有设置未变，直接返回。");
-            listener.onPaginationComplete(currentTextPager.getPages());
+        TextPager cachedPager = getBookCache(context).get(uri);
+        if (isPaginatedWith(cachedPager, contentWidthPx, contentHeightPx, textSizeSp, lineSpacingExtraDp, typeface)) {
+
+            Log.d(TAG, "书籍已在缓存中分页且所有设置未变，直接返回。");
+            cancelCurrentPaginationTask();
+            currentFileUri = uri;
+            currentTextPager = cachedPager;
+            listener.onPaginationComplete(cachedPager.getPages());
+            recordBookOpened(context, uri);
             return;
         }
+        // 设置变化时，已解码的文本仍然可以复用
+        final CharSequence cachedText = cachedPager != null ? cachedPager.getFullText() : null;
 
         // 步骤 2: 取消前一个正在进行的分页任务（如果有）
 
@@ -80,9 +138,20 @@ public class NovelReaderManager {
         // 步骤 4: 启动新的分页任务
         paginationTask = executorService.submit(() -> {
             Log.d(TAG, "开始新的分页任务，URI: " + uri.getLastPathSegment());
-            TextFileReader fileReader = new TextFileReader();
-            String fullText = fileReader.readTextFromUri(context, uri);
-            Log.d(TAG, "readTextFromUri 返回的 fullText 是否为 null: " + (fullText == null));
+            CharSequence fullText;
+            if (cachedText != null) {
+                Log.d(TAG, "复用缓存中已解码的文本，只重新分页。");
+                fullText = cachedText;
+            } else {
+                TextFileReader fileReader = new TextFileReader();
+                Charset charset = resolveCharset(context, uri);
+                fullText = fileReader.loadTextFromUri(context, uri, charset);
+                Log.d(TAG, "loadTextFromUri 返回的 fullText 是否为 null: " + (fullText == null));
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                Log.d(TAG, "读取文件时任务被中断，取消回调。");
+                return;
+            }
             if (fullText == null) {
                 Log.e(TAG, "读取文件失败：" + uri);
                 listener.onPaginationFailed("读取文件失败！");
@@ -91,14 +160,33 @@ public class NovelReaderManager {
 
             try {
                 // 重新创建 TextPager 实例，因为文件或设置已更改
-                currentTextPager = new TextPager(context, fullText);
-                currentTextPager.setTextSize(textSizeSp);
-                currentTextPager.setLineSpacingExtra(lineSpacingExtraDp);
-                currentTextPager.setVisibleArea(contentWidthPx, contentHeightPx);
-                currentTextPager.setTypeface(typeface); // 设置字体
+                currentTextPager = createPager(context, fullText, contentWidthPx, contentHeightPx,
+                        textSizeSp, lineSpacingExtraDp, typeface);
 
-                Log.d(TAG, "TextPager 开始分页...");
-                currentTextPager.paginate(); // 这里可能抛出 InterruptedException
+                // 优先从磁盘缓存恢复分页结果，命中时完全跳过排版
+                String cacheKey = buildPageCacheKey(context, uri, textSizeSp, lineSpacingExtraDp,
+                        fontIdentifier, contentWidthPx, contentHeightPx);
+                int[] cachedOffsets = getPageIndexCache(context).get(cacheKey, fullText.length());
+                if (cachedOffsets != null && currentTextPager.restorePages(cachedOffsets)) {
+                    Log.d(TAG, "分页缓存命中，跳过排版。");
+                    getBookCache(context).put(uri, currentTextPager);
+                    listener.onPaginationComplete(currentTextPager.getPages());
+                    return;
+                }
+
+                TextPager.PageSink sink = new TextPager.PageSink() {
+                    @Override
+                    public void onPagesAppended(PageTable newPages) {
+                        listener.onPagesAppended(newPages);
+                    }
+
+                    @Override
+                    public void onPagesPrepended(PageTable newPages) {
+                        listener.onPagesPrepended(newPages);
+                    }
+                };
+                // 这里可能抛出 InterruptedException
+                paginate(currentTextPager, anchorOffset, layoutExecutor, layoutThreadCount, sink);
 
                 // 检查任务是否在分页完成后被取消 (在 paginate() 内部检查更及时)
                 if (Thread.currentThread().isInterrupted()) {
@@ -106,10 +194,12 @@ public class NovelReaderManager {
                     return; // 立即返回，不触发完成回调
                 }
 
-                List<String> pages = currentTextPager.getPages();
+                PageTable pages = currentTextPager.getPages();
                 if (pages.isEmpty()) {
                     listener.onPaginationFailed("小说内容为空或无法分页！");
                 } else {
+                    getPageIndexCache(context).put(cacheKey, currentTextPager.getPageStartOffsets(), fullText.length());
+                    getBookCache(context).put(uri, currentTextPager);
                     listener.onPaginationComplete(pages);
                 }
             } catch (InterruptedException e) {
@@ -125,6 +215,216 @@ public class NovelReaderManager {
                 listener.onPaginationFailed("分页失败：" + e.getMessage());
             }
         });
+        // 排在分页任务之后写入，不推迟首页出现的时间
+        recordBookOpened(context, uri);
+    }
+
+    /**
+     * 在后台预加载一本书：解码并分页，结果放入书籍缓存，之后打开这本书时可以立即显示。
+     * 同步执行，由 BookPrefetcher 在低优先级线程上调用；正在前台阅读的书和已经按相同设置分页的书会被跳过。
+     *
+     * @param layoutPool 章节排版使用的线程池（预加载使用可暂停的低优先级线程池）
+     * @param sink       页面批次的接收者，预加载用它在暂停时阻塞
+     * @return 是否实际执行了预加载
+     * @throws InterruptedException 如果预加载被取消
+     */
+    public boolean prefetchBook(Context context, Uri uri,
+                                int contentWidthPx, int contentHeightPx,
+                                float textSizeSp, float lineSpacingExtraDp,
+                                Typeface typeface, String fontIdentifier,
+                                ExecutorService layoutPool, TextPager.PageSink sink) throws InterruptedException {
+        if (uri.equals(currentFileUri)) {
+            return false; // 前台正在处理这本书
+        }
+        TextPager cachedPager = getBookCache(context).get(uri);
+        if (isPaginatedWith(cachedPager, contentWidthPx, contentHeightPx, textSizeSp, lineSpacingExtraDp, typeface)) {
+            return false;
+        }
+        long startTime = SystemClock.elapsedRealtime();
+        CharSequence fullText;
+        if (cachedPager != null) {
+            fullText = cachedPager.getFullText();
+        } else {
+            fullText = new TextFileReader().loadTextFromUri(context, uri, resolveCharset(context, uri));
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("Prefetch interrupted.");
+        }
+        if (fullText == null) {
+            Log.e(TAG, "预加载时读取文件失败：" + uri);
+            return false;
+        }
+
+        TextPager pager = createPager(context, fullText, contentWidthPx, contentHeightPx,
+                textSizeSp, lineSpacingExtraDp, typeface);
+        String cacheKey = buildPageCacheKey(context, uri, textSizeSp, lineSpacingExtraDp,
+                fontIdentifier, contentWidthPx, contentHeightPx);
+        int[] cachedOffsets = getPageIndexCache(context).get(cacheKey, fullText.length());
+        if (cachedOffsets == null || !pager.restorePages(cachedOffsets)) {
+            paginate(pager, 0, layoutPool, 1, sink);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Prefetch interrupted.");
+            }
+            if (pager.getPages().isEmpty()) {
+                return false;
+            }
+            getPageIndexCache(context).put(cacheKey, pager.getPageStartOffsets(), fullText.length());
+        }
+        getBookCache(context).put(uri, pager);
+        Log.d(TAG, "预加载完成: " + uri.getLastPathSegment() + "，页数: " + pager.getPages().size()
+                + "，耗时 " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+        return true;
+    }
+
+    // 在数据库中记录书籍的打开时间，书架预加载据此挑选最近阅读的书
+    private void recordBookOpened(Context context, Uri uri) {
+        long openedAt = System.currentTimeMillis();
+        executorService.execute(() -> new BookDao(context).markBookOpened(uri, openedAt));
+    }
+
+    // 缓存中的分页结果是否与给定的排版参数一致
+    private static boolean isPaginatedWith(TextPager pager, int contentWidthPx, int contentHeightPx,
+                                           float textSizeSp, float lineSpacingExtraDp, Typeface typeface) {
+        return pager != null &&
+                pager.getTextSize() == textSizeSp &&
+                pager.getLineSpacingExtra() == lineSpacingExtraDp &&
+                pager.getVisibleAreaWidth() == contentWidthPx &&
+                pager.getVisibleAreaHeight() == contentHeightPx &&
+                pager.getTypeface() == typeface &&
+                !pager.getPages().isEmpty();
+    }
+
+    private static TextPager createPager(Context context, CharSequence fullText,
+                                         int contentWidthPx, int contentHeightPx,
+                                         float textSizeSp, float lineSpacingExtraDp, Typeface typeface) {
+        TextPager pager = new TextPager(context, fullText);
+        pager.setTextSize(textSizeSp);
+        pager.setLineSpacingExtra(lineSpacingExtraDp);
+        pager.setVisibleArea(contentWidthPx, contentHeightPx);
+        pager.setTypeface(typeface); // 设置字体
+        return pager;
+    }
+
+    /**
+     * 执行分页。章节之间强制换页，每个章节可以独立排版；识别出的章节太少时在内部退回到增量分页。
+     * 注意：分页方式只取决于文本内容，所以分页缓存的键不需要包含它；前台和预加载必须走同一个方法。
+     */
+    private void paginate(TextPager pager, int anchorOffset, ExecutorService layoutPool, int threadCount,
+                          TextPager.PageSink sink) throws InterruptedException {
+        long startTime = SystemClock.elapsedRealtime();
+        Log.d(TAG, "TextPager 开始分页，线程数: " + threadCount);
+        pager.paginateByChapters(anchorOffset, layoutPool, sink);
+        Log.d(TAG, "分页耗时: " + (SystemClock.elapsedRealtime() - startTime)
+                + " ms，线程数: " + threadCount + "，文本长度: " + pager.getTextLength());
+    }
+
+    /**
+     * 获取书籍的文本编码：优先使用数据库中按文件哈希缓存的结果，否则探测一次并写回缓存。
+     */
+    private Charset resolveCharset(Context context, Uri uri) {
+        BookDao bookDao = new BookDao(context);
+        Charset charset = CharsetDetector.forName(bookDao.getCachedCharset(uri));
+        if (charset != null) {
+            Log.d(TAG, "使用缓存的编码: " + charset.name());
+            return charset;
+        }
+        charset = CharsetDetector.detect(context, uri);
+        bookDao.saveCharset(uri, charset.name());
+        return charset;
+    }
+
+    /**
+     * 最近打开的书籍缓存。大小按估算的字节数计算（文本每个字符 2 字节 + 每页 4 字节的偏移量），
+     * 上限由 ActivityManager.getMemoryClass() 得到的应用堆上限换算。
+     */
+    private synchronized LruCache<Uri, TextPager> getBookCache(Context context) {
+        if (bookCache == null) {
+            ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            int memoryClassMb = activityManager != null ? activityManager.getMemoryClass() : 64;
+            int maxBytes = memoryClassMb * 1024 * 1024 / BOOK_CACHE_HEAP_FRACTION;
+            Log.d(TAG, "书籍缓存上限: " + (maxBytes / 1024 / 1024) + " MB（应用堆上限 " + memoryClassMb + " MB）");
+            bookCache = new LruCache<Uri, TextPager>(maxBytes) {
+                @Override
+                protected int sizeOf(Uri key, TextPager value) {
+                    // 文本每个字符 2 字节，页面偏移 4 字节，每行的偏移和行高 8 字节
+                    PageTable pages = value.getPages();
+                    return value.getTextLength() * 2 + pages.size() * 4 + pages.getLines().size() * 8;
+                }
+
+                @Override
+                protected void entryRemoved(boolean evicted, Uri key, TextPager oldValue, TextPager newValue) {
+                    if (evicted) {
+                        Log.d(TAG, "书籍缓存淘汰: " + key.getLastPathSegment());
+                    }
+                }
+            };
+        }
+        return bookCache;
+    }
+
+    /**
+     * 系统内存紧张时释放书籍缓存，由 Application.onTrimMemory 调用。
+     * 正在阅读的书籍仍由 currentTextPager 持有，不受影响。
+     */
+    public synchronized void onTrimMemory(int level) {
+        if (bookCache == null) {
+            return;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            Log.d(TAG, "内存紧张（level " + level + "），清空书籍缓存。");
+            bookCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            Log.d(TAG, "内存偏低（level " + level + "），书籍缓存减半。");
+            bookCache.trimToSize(bookCache.maxSize() / 2);
+        }
+    }
+
+    private synchronized BookSearchIndex getSearchIndex(Context context) {
+        if (searchIndex == null) {
+            searchIndex = new BookSearchIndex(context);
+        }
+        return searchIndex;
+    }
+
+    private synchronized PageIndexCache getPageIndexCache(Context context) {
+        if (pageIndexCache == null) {
+            pageIndexCache = new PageIndexCache(context);
+        }
+        return pageIndexCache;
+    }
+
+    /**
+     * 分页缓存的键：书籍文件哈希（没有哈希时退回到 URI）+ 所有影响排版的参数。
+     * 字号和行间距换算成像素，系统字体缩放或屏幕密度变化后不会误用旧结果。
+     */
+    private String buildPageCacheKey(Context context, Uri uri, float textSizeSp, float lineSpacingExtraDp,
+                                     String fontIdentifier, int contentWidthPx, int contentHeightPx) {
+        String bookKey = resolveBookKey(context, uri);
+        float textSizePx = TypedValue.applyDimension(
+                TypedValue.COMPLEX_UNIT_SP, textSizeSp, context.getResources().getDisplayMetrics());
+        float lineSpacingPx = TypedValue.applyDimension(
+                TypedValue.COMPLEX_UNIT_DIP, lineSpacingExtraDp, context.getResources().getDisplayMetrics());
+        return PageIndexCache.buildKey(bookKey, textSizePx, lineSpacingPx, fontIdentifier,
+                contentWidthPx, contentHeightPx);
+    }
+
+    // 书籍的持久化键：文件哈希或快速指纹，都没有时退回到 URI
+    private String resolveBookKey(Context context, Uri uri) {
+        BookInfo bookInfo = new BookDao(context).getBookByUri(uri);
+        return bookInfo != null ? bookKeyOf(bookInfo) : uri.toString();
+    }
+
+    // 完整哈希优先；导入时没有发生指纹冲突的书只有快速指纹，用它作为键
+    private static String bookKeyOf(BookInfo bookInfo) {
+        if (bookInfo.getFileHash() != null && !bookInfo.getFileHash().isEmpty()) {
+            return bookInfo.getFileHash();
+        }
+        if (bookInfo.getQuickHash() != null && !bookInfo.getQuickHash().isEmpty()) {
+            return bookInfo.getQuickHash();
+        }
+        return bookInfo.getUri().toString();
     }
 
     // 获取当前分页器的实例
@@ -137,6 +437,274 @@ public class NovelReaderManager {
         return currentFileUri;
     }
 
+    /**
+     * 确保数据库中有这本书的目录：已经保存过时直接返回章节数，否则扫描 pager 中的全文提取章节并保存。
+     * 没有识别出章节时保存一个指向文首的“开始阅读”条目，避免每次打开都重新扫描。
+     * 在后台线程执行，结果在主线程回调；pager 为 null 时只查询已保存的目录。
+     */
+    public void prepareTableOfContentsAsync(Context context, Uri uri, TextPager pager, TableOfContentsListener listener) {
+        Context appContext = context.getApplicationContext();
+        tocExecutor.submit(() -> {
+            ChapterDao chapterDao = new ChapterDao(appContext);
+            String bookKey = resolveBookKey(appContext, uri);
+            int count = chapterDao.getChapterCount(bookKey);
+            if (count == 0 && pager != null) {
+                long startTime = SystemClock.elapsedRealtime();
+                List<TableOfContents> chapters = TableOfContentsGenerator.extractChapters(pager.getFullText());
+                if (chapters.isEmpty()) {
+                    chapters.add(new TableOfContents("开始阅读", -1, 0, 0));
+                }
+                chapterDao.replaceChapters(bookKey, chapters);
+                count = chapters.size();
+                Log.d(TAG, "目录已生成并保存，条目数: " + count + "，耗时 " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+            }
+            int chapterCount = count;
+            mainThreadHandler.post(() -> listener.onTableOfContentsReady(chapterCount));
+        });
+    }
+
+    /**
+     * 分页读取已保存的目录，结果在主线程回调。条目只带字符偏移量，pageIndex 为 -1。
+     */
+    public void loadChaptersAsync(Context context, Uri uri, int offset, int limit, ChapterPageListener listener) {
+        Context appContext = context.getApplicationContext();
+        tocExecutor.submit(() -> {
+            List<TableOfContents> chapters;
+            try {
+                chapters = new ChapterDao(appContext).getChapters(resolveBookKey(appContext, uri), offset, limit);
+            } catch (Exception e) {
+                Log.e(TAG, "读取目录失败: " + uri, e);
+                chapters = new ArrayList<>();
+            }
+            List<TableOfContents> result = chapters;
+            mainThreadHandler.post(() -> listener.onChaptersLoaded(offset, result));
+        });
+    }
+
+    /**
+     * 书籍第一次打开并分页完成后，在后台为它建立搜索索引；已有可用索引时什么也不做。
+     */
+    public void buildSearchIndexAsync(Context context, Uri uri, TextPager pager) {
+        Context appContext = context.getApplicationContext();
+        CharSequence text = pager.getFullText();
+        searchExecutor.submit(() -> {
+            try {
+                BookSearchIndex index = getSearchIndex(appContext);
+                String indexKey = BookSearchIndex.buildKey(resolveBookKey(appContext, uri));
+                if (!index.hasIndex(indexKey, text.length())) {
+                    index.build(indexKey, text);
+                }
+            } catch (InterruptedException e) {
+                Log.d(TAG, "建立搜索索引被中断: " + uri);
+            } catch (Exception e) {
+                Log.e(TAG, "建立搜索索引失败: " + uri, e);
+            }
+        });
+    }
+
+    /**
+     * 在已打开的书中搜索 query。结果按在书中的先后顺序分批在主线程回调，边找边显示。
+     * 书必须已经解码（在书籍缓存中或正在阅读）；还没有索引时先建立索引。
+     *
+     * @return 搜索任务，可用于取消
+     */
+    public Future<?> searchInBookAsync(Context context, Uri uri, String query, SearchListener listener) {
+        Context appContext = context.getApplicationContext();
+        return searchExecutor.submit(() -> {
+            // 书籍缓存中的分页结果已经完成，不会再变化，可以在这个线程上换算页码
+            TextPager pager = getBookCache(appContext).get(uri);
+            PageTable pages = pager != null ? pager.getPages() : null;
+            TextPager current = currentTextPager;
+            if (pager == null && current != null && uri.equals(currentFileUri)) {
+                pager = current;
+            }
+            if (pager == null) {
+                mainThreadHandler.post(() -> listener.onSearchFailed("请先打开这本书再搜索"));
+                return;
+            }
+            CharSequence text = pager.getFullText();
+            long startTime = SystemClock.elapsedRealtime();
+            int[] found = new int[1];
+            try {
+                BookSearchIndex index = getSearchIndex(appContext);
+                String indexKey = BookSearchIndex.buildKey(resolveBookKey(appContext, uri));
+                BookSearchIndex.HitCallback callback = (offsets, count) -> {
+                    int take = Math.min(count, MAX_SEARCH_RESULTS - found[0]);
+                    List<SearchResult> batch = new ArrayList<>(take);
+                    for (int i = 0; i < take; i++) {
+                        int offset = offsets[i];
+                        int pageIndex = pages != null ? pages.findPageIndex(offset) : -1;
+                        batch.add(new SearchResult(offset, pageIndex, buildSnippet(text, offset, query.length())));
+                    }
+                    found[0] += take;
+                    mainThreadHandler.post(() -> listener.onSearchResults(batch));
+                    return found[0] < MAX_SEARCH_RESULTS;
+                };
+                if (!index.search(indexKey, text, query, callback)) {
+                    index.build(indexKey, text);
+                    index.search(indexKey, text, query, callback);
+                }
+            } catch (InterruptedException e) {
+                Log.d(TAG, "搜索被取消: " + query);
+                return;
+            } catch (Exception e) {
+                Log.e(TAG, "搜索失败: " + query, e);
+                mainThreadHandler.post(() -> listener.onSearchFailed("搜索失败"));
+                return;
+            }
+            int total = found[0];
+            long elapsed = SystemClock.elapsedRealtime() - startTime;
+            Log.d(TAG, "搜索 \"" + query + "\" 完成，结果数: " + total + "，耗时 " + elapsed + " ms");
+            mainThreadHandler.post(() -> listener.onSearchComplete(total, total >= MAX_SEARCH_RESULTS));
+        });
+    }
+
+    // 命中位置前后的一小段文字，换行替换为空格
+    private static String buildSnippet(CharSequence text, int offset, int matchLength) {
+        int start = Math.max(0, offset - SNIPPET_CONTEXT_CHARS);
+        int end = Math.min(text.length(), offset + matchLength + SNIPPET_CONTEXT_CHARS);
+        StringBuilder snippet = new StringBuilder(end - start + 2);
+        if (start > 0) {
+            snippet.append('…');
+        }
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            snippet.append(c == '\n' || c == '\r' ? ' ' : c);
+        }
+        if (end < text.length()) {
+            snippet.append('…');
+        }
+        return snippet.toString();
+    }
+
+    /**
+     * 在后台同步全书库搜索索引：为书架上还没有索引的书建立索引，删除已不在书架上的书（或内容已变化的旧版本）的索引。
+     * 按书籍键（文件哈希）判断，内容没有变化的书不会重建。已有同步在进行时什么也不做。
+     */
+    public synchronized void syncLibrarySearchIndexAsync(Context context) {
+        if (libraryIndexTask != null && !libraryIndexTask.isDone()) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        libraryIndexTask = libraryIndexExecutor.submit(() -> {
+            try {
+                syncLibrarySearchIndex(appContext);
+            } catch (InterruptedException e) {
+                Log.d(TAG, "全书库索引同步被中断");
+            } catch (Exception e) {
+                Log.e(TAG, "全书库索引同步失败", e);
+            }
+        });
+    }
+
+    private void syncLibrarySearchIndex(Context context) throws InterruptedException {
+        long startTime = SystemClock.elapsedRealtime();
+        Map<String, BookInfo> shelf = getShelfByBookKey(context);
+        LibrarySearchDao searchDao = new LibrarySearchDao(context);
+        Set<String> indexed = searchDao.getIndexedBookKeys();
+
+        Set<String> stale = new HashSet<>(indexed);
+        stale.addAll(searchDao.getPartiallyIndexedBookKeys()); // 上次被中断时留下的文本块
+        stale.removeAll(shelf.keySet());
+        searchDao.removeBooks(stale);
+
+        int indexedBooks = 0;
+        for (Map.Entry<String, BookInfo> entry : shelf.entrySet()) {
+            if (indexed.contains(entry.getKey())) {
+                continue;
+            }
+            Uri uri = entry.getValue().getUri();
+            long bookStart = SystemClock.elapsedRealtime();
+            TextPager cachedPager = getBookCache(context).get(uri);
+            CharSequence text = cachedPager != null
+                    ? cachedPager.getFullText()
+                    : new TextFileReader().loadTextFromUri(context, uri, resolveCharset(context, uri));
+            if (text == null) {
+                Log.e(TAG, "建立全书库索引时读取文件失败：" + uri);
+                continue;
+            }
+            int[] position = new int[1];
+            int chunks = searchDao.replaceBook(entry.getKey(), writer -> {
+                int start = position[0];
+                if (start >= text.length()) {
+                    return false;
+                }
+                int end = LibrarySearchText.findChunkEnd(text, start);
+                // 与上一个块重叠一小段，跨过块边界的短语也能搜到
+                int chunkStart = LibrarySearchText.findChunkStart(text, start);
+                writer.write(chunkStart, LibrarySearchText.encode(text, chunkStart, end));
+                position[0] = end;
+                return true;
+            });
+            indexedBooks++;
+            Log.d(TAG, "全书库索引：" + entry.getValue().getTitle() + "，" + chunks + " 块，耗时 "
+                    + (SystemClock.elapsedRealtime() - bookStart) + " ms");
+        }
+        Log.d(TAG, "全书库索引同步完成：新建 " + indexedBooks + " 本，删除 " + stale.size() + " 本，耗时 "
+                + (SystemClock.elapsedRealtime() - startTime) + " ms");
+    }
+
+    // 书架上的书按书籍键分组，内容相同的多个文件共用一份索引，结果指向第一个
+    private Map<String, BookInfo> getShelfByBookKey(Context context) {
+        Map<String, BookInfo> shelf = new LinkedHashMap<>();
+        for (BookInfo book : new BookDao(context).getAllBooks()) {
+            String key = bookKeyOf(book);
+            if (!shelf.containsKey(key)) {
+                shelf.put(key, book);
+            }
+        }
+        return shelf;
+    }
+
+    /**
+     * 在书架上所有已建立索引的书中搜索，每本书一条结果。书名包含搜索词的排在前面，其余按命中次数排序。
+     * 查询只读取数据库，不会等待正在进行的索引同步。
+     *
+     * @return 搜索任务，可用于取消
+     */
+    public Future<?> searchLibraryAsync(Context context, String query, LibrarySearchListener listener) {
+        Context appContext = context.getApplicationContext();
+        return librarySearchExecutor.submit(() -> {
+            long startTime = SystemClock.elapsedRealtime();
+            try {
+                Map<String, BookInfo> shelf = getShelfByBookKey(appContext);
+                LibrarySearchDao searchDao = new LibrarySearchDao(appContext);
+                Set<String> unindexed = new HashSet<>(shelf.keySet());
+                unindexed.removeAll(searchDao.getIndexedBookKeys());
+                int unindexedCount = unindexed.size();
+
+                String matchQuery = LibrarySearchText.toMatchQuery(query);
+                List<LibrarySearchResult> results = new ArrayList<>();
+                if (matchQuery != null) {
+                    for (LibrarySearchResult result : searchDao.search(matchQuery, MAX_LIBRARY_RESULTS, LIBRARY_SNIPPET_WORDS)) {
+                        BookInfo book = shelf.get(result.bookKey);
+                        if (book == null) {
+                            continue; // 书已从书架删除，索引还没来得及清理
+                        }
+                        result.title = book.getTitle();
+                        result.uri = book.getUri();
+                        results.add(result);
+                    }
+                }
+                String lowerQuery = query.trim().toLowerCase(Locale.ROOT);
+                Collections.sort(results, (a, b) -> {
+                    boolean aTitle = a.title.toLowerCase(Locale.ROOT).contains(lowerQuery);
+                    boolean bTitle = b.title.toLowerCase(Locale.ROOT).contains(lowerQuery);
+                    if (aTitle != bTitle) {
+                        return aTitle ? -1 : 1;
+                    }
+                    return Integer.compare(b.hitCount, a.hitCount);
+                });
+                Log.d(TAG, "全书库搜索 \"" + query + "\" 完成，命中 " + results.size() + " 本，耗时 "
+                        + (SystemClock.elapsedRealtime() - startTime) + " ms");
+                mainThreadHandler.post(() -> listener.onLibrarySearchComplete(results, unindexedCount));
+            } catch (Exception e) {
+                Log.e(TAG, "全书库搜索失败: " + query, e);
+                mainThreadHandler.post(() -> listener.onLibrarySearchFailed("搜索失败"));
+            }
+        });
+    }
+
     public void cancelCurrentPaginationTask() {
         if (paginationTask != null && !paginationTask.isDone()) {
             Log.d(TAG, "Cancelling current pagination task.");
@@ -148,11 +716,56 @@ public class NovelReaderManager {
 
     /**
      * 接口用于回调分页结果。
-     * onPaginationComplete 和 onPaginationFailed 都将在主线程回调。
+     * 所有回调都在分页线程上执行，UI 层需要自行切换到主线程。
      */
     public interface PaginationListener {
-        void onPaginationComplete(List<String> pages);
+        void onPaginationComplete(PageTable pages);
         void onPaginationFailed(String errorMessage);
+
+        // 增量分页：一批新页面追加到末尾
+        default void onPagesAppended(PageTable newPages) {
+        }
+
+        // 增量分页：一批新页面插入到开头（按阅读顺序排列）
+        default void onPagesPrepended(PageTable newPages) {
+        }
+    }
+
+    /**
+     * 目录准备完成的回调，在主线程执行。
+     */
+    public interface TableOfContentsListener {
+        void onTableOfContentsReady(int chapterCount);
+    }
+
+    /**
+     * 分页读取目录的回调，在主线程执行。
+     */
+    public interface ChapterPageListener {
+        void onChaptersLoaded(int offset, List<TableOfContents> chapters);
+    }
+
+    /**
+     * 书内搜索的回调，都在主线程执行。
+     */
+    public interface SearchListener {
+        // 一批新的结果，按在书中的先后顺序到达
+        void onSearchResults(List<SearchResult> results);
+
+        // 搜索结束；truncated 为 true 表示结果太多，只返回了前面一部分
+        void onSearchComplete(int totalResults, boolean truncated);
+
+        void onSearchFailed(String errorMessage);
+    }
+
+    /**
+     * 全书库搜索的回调，都在主线程执行。
+     */
+    public interface LibrarySearchListener {
+        // unindexedBooks 为书架上还没有建立索引的书籍数，这些书不在结果中
+        void onLibrarySearchComplete(List<LibrarySearchResult> results, int unindexedBooks);
+
+        void onLibrarySearchFailed(String errorMessage);
     }
 
     /**
@@ -162,6 +775,11 @@ public class NovelReaderManager {
     public void shutdown() {
         if (!executorService.isShutdown()) {
             executorService.shutdownNow(); // 尝试立即关闭所有执行中的任务
+            layoutExecutor.shutdownNow();
+            tocExecutor.shutdownNow();
+            searchExecutor.shutdownNow();
+            libraryIndexExecutor.shutdownNow();
+            librarySearchExecutor.shutdownNow();
             Log.d(TAG, "NovelReaderManager 线程池已关闭。");
         }
     }
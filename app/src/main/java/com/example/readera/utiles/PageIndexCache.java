@@ -0,0 +1,204 @@
+package com.example.readera.utiles;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * 分页结果的磁盘缓存。
+ * 每本书在每组排版参数下的页面起始偏移量保存为一个小文件（差值 + 变长整数编码），
+ * 重新打开同一本书时可以直接恢复页面边界，完全跳过排版。
+ * 缓存总大小超过上限时，按最近使用时间淘汰最旧的文件（LRU）。
+ */
+public class PageIndexCache {
+    private static final String TAG = "PageIndexCache";
+
+    private static final String CACHE_DIR_NAME = "page_index";
+    private static final String FILE_SUFFIX = ".idx";
+    private static final int MAGIC = 0x50494458; // "PIDX"
+    private static final int FORMAT_VERSION = 2; // 2: 章节之间强制换页
+    private static final long MAX_CACHE_BYTES = 4L * 1024 * 1024; // 缓存总大小上限
+
+    private final File cacheDir;
+
+    public PageIndexCache(Context context) {
+        this.cacheDir = new File(context.getApplicationContext().getCacheDir(), CACHE_DIR_NAME);
+    }
+
+    /**
+     * 根据书籍内容和排版参数生成缓存键。任何一个参数变化都会得到不同的键。
+     *
+     * @param bookKey        书籍内容标识（文件哈希）
+     * @param textSizePx     字体大小（像素，已包含系统字体缩放）
+     * @param lineSpacingPx  额外行间距（像素）
+     * @param fontIdentifier 字体标识
+     * @param widthPx        内容区域宽度
+     * @param heightPx       内容区域高度
+     */
+    public static String buildKey(String bookKey, float textSizePx, float lineSpacingPx, String fontIdentifier,
+                                  int widthPx, int heightPx) {
+        String raw = bookKey + "|" + textSizePx + "|" + lineSpacingPx + "|" + fontIdentifier
+                + "|" + widthPx + "x" + heightPx;
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] digest = md.digest(raw.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hexString = new StringBuilder();
+            for (byte b : digest) {
+                String hex = Integer.toHexString(0xff & b);
+                if (hex.length() == 1) {
+                    hexString.append('0');
+                }
+                hexString.append(hex);
+            }
+            return hexString.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 在 Android 上总是可用，这里仅作兜底
+            return Integer.toHexString(raw.hashCode());
+        }
+    }
+
+    /**
+     * 读取缓存的页面起始偏移量。
+     *
+     * @param key        缓存键
+     * @param textLength 当前文本长度，与缓存时的长度不一致说明文件内容已变化
+     * @return 页面起始偏移量；未命中或数据无效时返回 null
+     */
+    @Nullable
+    public synchronized int[] get(String key, int textLength) {
+        File file = new File(cacheDir, key + FILE_SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readInt() != textLength) {
+                Log.w(TAG, "缓存文件格式或文本长度不匹配，丢弃: " + file.getName());
+                file.delete();
+                return null;
+            }
+            int count = in.readInt();
+            if (count <= 0) {
+                file.delete();
+                return null;
+            }
+            int[] offsets = new int[count];
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                previous += readVarInt(in);
+                if (previous > textLength || (i > 0 && previous <= offsets[i - 1])) {
+                    Log.w(TAG, "缓存的页面偏移量无效，丢弃: " + file.getName());
+                    file.delete();
+                    return null;
+                }
+                offsets[i] = previous;
+            }
+            // 更新最近使用时间，供 LRU 淘汰使用
+            file.setLastModified(System.currentTimeMillis());
+            return offsets;
+        } catch (IOException e) {
+            Log.e(TAG, "读取分页缓存失败: " + e.getMessage());
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * 保存页面起始偏移量，写入完成后再重命名，避免留下写了一半的文件。
+     */
+    public synchronized void put(String key, int[] pageStartOffsets, int textLength) {
+        if (pageStartOffsets == null || pageStartOffsets.length == 0) {
+            return;
+        }
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            Log.e(TAG, "无法创建分页缓存目录: " + cacheDir);
+            return;
+        }
+        File target = new File(cacheDir, key + FILE_SUFFIX);
+        File temp = new File(cacheDir, key + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(textLength);
+            out.writeInt(pageStartOffsets.length);
+            int previous = 0;
+            for (int offset : pageStartOffsets) {
+                writeVarInt(out, offset - previous); // 相邻页面的差值通常只需要 1~2 个字节
+                previous = offset;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "写入分页缓存失败: " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(target)) {
+            Log.e(TAG, "重命名分页缓存文件失败: " + target.getName());
+            temp.delete();
+            return;
+        }
+        Log.d(TAG, "已缓存分页结果，页数: " + pageStartOffsets.length + "，文件大小: " + target.length() + " 字节");
+        trimToSize();
+    }
+
+    // 按最近使用时间从旧到新删除，直到总大小不超过上限
+    private void trimToSize() {
+        File[] files = cacheDir.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_CACHE_BYTES) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= MAX_CACHE_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                Log.d(TAG, "淘汰分页缓存: " + file.getName());
+            }
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        while (shift < 32) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+        throw new IOException("变长整数格式错误");
+    }
+}
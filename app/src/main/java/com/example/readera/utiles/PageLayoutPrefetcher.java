@@ -0,0 +1,224 @@
+package com.example.readera.utiles;
+
+import android.content.Context;
+import android.graphics.Paint;
+import android.os.Build;
+import android.os.Process;
+import android.text.Layout;
+import android.text.PrecomputedText;
+import android.text.StaticLayout;
+import android.text.TextDirectionHeuristics;
+import android.text.TextPaint;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
+import android.util.TypedValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 翻页前的预排版。当前页切换后，在后台线程为它前后 LOOK_AHEAD_PAGES 页创建 StaticLayout
+ * （API 29 及以上先生成 PrecomputedText，绘制时也不再重新测量字形），
+ * NovelPageAdapter 绑定页面时直接交给 NovelPageView，主线程上不再做文字测量。
+ * 缓存按阅读设置版本和页面起始偏移量查找；增量分页在开头插入页面时页码会整体后移，偏移量不变。
+ * 设置了 PageRasterCache 时，排完版面后接着把离当前页最近的几页画进位图。
+ */
+public class PageLayoutPrefetcher {
+    // 当前页前后各预排版的页数
+    private static final int LOOK_AHEAD_PAGES = 2;
+    // 缓存的页数：当前页、前后各 LOOK_AHEAD_PAGES 页，再留一些给刚翻过去的页
+    private static final int CACHE_PAGES = 2 * LOOK_AHEAD_PAGES + 3;
+
+    private final DisplayMetrics displayMetrics;
+    private final LruCache<Long, PreparedPage> cache = new LruCache<>(CACHE_PAGES);
+    private final ExecutorService worker;
+    private Future<?> prefetchTask;
+    private PageRasterCache rasterCache; // 可选的页面位图缓存，为 null 时只预排版
+
+    /**
+     * 后台排好的一页。只有全文、页面范围、断行宽度和设置版本都与绑定时一致才会被使用。
+     */
+    public static final class PreparedPage {
+        final CharSequence sourceText; // 分页所用的全文，用于区分不同的书或不同批次的分页
+        public final int pageStart;
+        public final int pageEnd;
+        public final int width;
+        public final int settingsVersion;
+        public final StaticLayout layout;
+
+        PreparedPage(CharSequence sourceText, int pageStart, int pageEnd, int width, int settingsVersion,
+                     StaticLayout layout) {
+            this.sourceText = sourceText;
+            this.pageStart = pageStart;
+            this.pageEnd = pageEnd;
+            this.width = width;
+            this.settingsVersion = settingsVersion;
+            this.layout = layout;
+        }
+    }
+
+    // 需要排版的一页，在主线程上从分页结果中取出，后台线程不直接访问仍在增长的 PageTable
+    private static final class PageJob {
+        final CharSequence sourceText;
+        final CharSequence pageText;
+        final int pageStart;
+        final int pageEnd;
+
+        PageJob(CharSequence sourceText, CharSequence pageText, int pageStart, int pageEnd) {
+            this.sourceText = sourceText;
+            this.pageText = pageText;
+            this.pageStart = pageStart;
+            this.pageEnd = pageEnd;
+        }
+    }
+
+    public PageLayoutPrefetcher(Context context) {
+        displayMetrics = context.getResources().getDisplayMetrics();
+        worker = Executors.newSingleThreadExecutor(r -> new Thread(() -> {
+            // 比界面线程低一档，但不降到后台优先级，翻页前要能排完
+            Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT + Process.THREAD_PRIORITY_LESS_FAVORABLE);
+            r.run();
+        }, "PageLookAhead"));
+    }
+
+    /**
+     * 为 center 前后的页面预排版，离 center 越近越先排；会取消上一次还没完成的预排版。在主线程调用。
+     * @param width 页面文本区域的宽度（像素，不含内边距）
+     */
+    public void prefetchAround(PageTable pages, int center, ReadingSettings settings, int width) {
+        if (pages == null || pages.isEmpty() || settings == null || width <= 0) {
+            return;
+        }
+        int version = settings.getVersion();
+        PageRasterCache raster = rasterCache;
+        int rasterRange = raster != null ? raster.getRange() : -1;
+        List<PageJob> layoutJobs = new ArrayList<>();
+        List<PageJob> rasterJobs = new ArrayList<>();
+        for (int distance = 0; distance <= LOOK_AHEAD_PAGES; distance++) {
+            addJob(layoutJobs, rasterJobs, distance <= rasterRange, pages, center + distance, version, width);
+            if (distance > 0) {
+                addJob(layoutJobs, rasterJobs, distance <= rasterRange, pages, center - distance, version, width);
+            }
+        }
+        if (prefetchTask != null) {
+            prefetchTask.cancel(true);
+        }
+        if (layoutJobs.isEmpty() && rasterJobs.isEmpty()) {
+            return;
+        }
+        prefetchTask = worker.submit(() -> {
+            for (PageJob job : layoutJobs) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                StaticLayout layout = buildLayout(job.pageText, settings, width);
+                cache.put(keyOf(version, job.pageStart),
+                        new PreparedPage(job.sourceText, job.pageStart, job.pageEnd, width, version, layout));
+            }
+            // 版面都排好后再画位图，翻页需要的版面优先
+            for (PageJob job : rasterJobs) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                PreparedPage prepared = cache.get(keyOf(version, job.pageStart));
+                if (prepared != null && prepared.sourceText == job.sourceText && prepared.pageEnd == job.pageEnd
+                        && prepared.width == width && !raster.contains(prepared)) {
+                    // prepared.layout 交给了主线程绘制，位图用另外排的一份，两个线程不共用同一个版面
+                    raster.render(prepared, buildLayout(job.pageText, settings, width), settings);
+                }
+            }
+        });
+    }
+
+    // 把第 index 页加入需要排版和（在位图范围内时）需要画位图的列表，已经完成的跳过
+    private void addJob(List<PageJob> layoutJobs, List<PageJob> rasterJobs, boolean inRasterRange,
+                        PageTable pages, int index, int version, int width) {
+        if (index < 0 || index >= pages.size()) {
+            return;
+        }
+        PreparedPage prepared = get(pages, index, version);
+        boolean needsLayout = prepared == null || prepared.width != width;
+        boolean needsRaster = inRasterRange && (needsLayout || !rasterCache.contains(prepared));
+        if (!needsLayout && !needsRaster) {
+            return;
+        }
+        PageJob job = new PageJob(pages.getText(), pages.getPage(index), pages.getPageStart(index), pages.getPageEnd(index));
+        if (needsLayout) {
+            layoutJobs.add(job);
+        }
+        if (needsRaster) {
+            rasterJobs.add(job);
+        }
+    }
+
+    /**
+     * 启用（或传 null 关闭）页面位图缓存。在主线程调用。
+     */
+    public void setRasterCache(PageRasterCache rasterCache) {
+        this.rasterCache = rasterCache;
+    }
+
+    public PageRasterCache getRasterCache() {
+        return rasterCache;
+    }
+
+    /**
+     * 取出预排好的一页，可以在主线程调用。断行宽度由 NovelPageView 按自己的尺寸检查。
+     * @return 没有排好或已经过期时返回 null
+     */
+    public PreparedPage get(PageTable pages, int index, int settingsVersion) {
+        PreparedPage prepared = cache.get(keyOf(settingsVersion, pages.getPageStart(index)));
+        if (prepared == null || prepared.sourceText != pages.getText()
+                || prepared.pageEnd != pages.getPageEnd(index)) {
+            return null;
+        }
+        return prepared;
+    }
+
+    // 停止预排版并清空缓存，阅读界面销毁时调用
+    public void release() {
+        worker.shutdownNow();
+        cache.evictAll();
+        if (rasterCache != null) {
+            rasterCache.releaseAll();
+        }
+    }
+
+    private static long keyOf(int settingsVersion, int pageStart) {
+        return ((long) settingsVersion << 32) | (pageStart & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 按与 TextPager 相同的参数排版一页。每页使用自己的 TextPaint，排版和主线程绘制互不影响。
+     */
+    private StaticLayout buildLayout(CharSequence pageText, ReadingSettings settings, int width) {
+        TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, settings.getTextSizeSp(), displayMetrics));
+        paint.setTypeface(settings.getTypeface());
+        paint.setColor(settings.getTextColor());
+        float lineSpacingExtraPx = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
+                settings.getLineSpacingExtraDp(), displayMetrics);
+
+        CharSequence text = pageText;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            // 参数与下面的 StaticLayout 一致，排版和绘制都直接使用这里测量好的结果
+            PrecomputedText.Params params = new PrecomputedText.Params.Builder(paint)
+                    .setBreakStrategy(Layout.BREAK_STRATEGY_SIMPLE)
+                    .setHyphenationFrequency(Layout.HYPHENATION_FREQUENCY_NONE)
+                    .setTextDirection(TextDirectionHeuristics.FIRSTSTRONG_LTR)
+                    .build();
+            text = PrecomputedText.create(pageText, params);
+        }
+        return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width)
+                .setAlignment(Layout.Alignment.ALIGN_NORMAL)
+                .setLineSpacing(lineSpacingExtraPx, 1.0f)
+                .setIncludePad(false)
+                .setBreakStrategy(Layout.BREAK_STRATEGY_SIMPLE)
+                .setHyphenationFrequency(Layout.HYPHENATION_FREQUENCY_NONE)
+                .setTextDirection(TextDirectionHeuristics.FIRSTSTRONG_LTR)
+                .build();
+    }
+}
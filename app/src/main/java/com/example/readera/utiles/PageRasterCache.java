@@ -0,0 +1,253 @@
+package com.example.readera.utiles;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.text.StaticLayout;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 页面位图缓存（可选）。PageLayoutPrefetcher 排好当前页前后的版面后，在同一个后台线程上
+ * 把当前页前后 RASTER_RANGE 页画进位图，NovelPageView 绘制时直接贴图，翻页动画不需要再画文字。
+ * <ul>
+ *     <li>位图尺寸都等于页面视图的尺寸，淘汰的位图放回复用池，不会反复分配；</li>
+ *     <li>设置版本（字体、颜色、边距等）或页面尺寸变化时，已画好的位图全部作废；</li>
+ *     <li>位图总大小不超过堆上限的 1/HEAP_FRACTION，放不下至少三页时不启用。</li>
+ * </ul>
+ * 绑定到视图的位图按引用计数管理：{@link #acquire} 取出时加一，视图重新绑定或回收时 {@link #release} 减一。
+ * 被淘汰或作废的位图要等没有视图再引用时才放回复用池，避免后台线程重画一张仍在显示（或仍在渲染线程的
+ * 显示列表里）的位图。方法都是线程安全的。
+ */
+public class PageRasterCache {
+    private static final String TAG = "PageRasterCache";
+
+    // 当前页前后各缓存的页数
+    private static final int RASTER_RANGE = 2;
+    // 位图总大小占应用堆上限的比例（1/8）
+    private static final int HEAP_FRACTION = 8;
+    // 至少能放下当前页和前后各一页才启用
+    private static final int MIN_PAGES = 3;
+
+    private final long maxBytes;
+    private int width, height, statusBarPadding;
+    private int settingsVersion = -1;
+    private int maxPages; // 按当前页面尺寸算出的位图数量上限，0 表示不启用
+    private int allocatedPages; // 已分配的位图数（缓存中的、复用池中的、正在绘制的和已淘汰但仍被视图引用的）
+    private int geometryGeneration; // 页面尺寸变化或销毁时递增，之前分配的位图不再放回复用池
+
+    // 按访问顺序排列，最久未用的在前
+    private final LinkedHashMap<Long, PageRaster> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ArrayDeque<Bitmap> pool = new ArrayDeque<>();
+
+    private long hitCount, missCount;
+
+    /**
+     * 画好的一页。source 是对应的预排版面，视图只在自己使用的也是这个版面时贴图。
+     * 被视图引用期间位图内容不会改变。
+     */
+    public static final class PageRaster {
+        public final PageLayoutPrefetcher.PreparedPage source;
+        public final Bitmap bitmap;
+        private final int geometry; // 分配位图时的 geometryGeneration
+        // 以下字段由缓存的锁保护
+        private int refCount; // 引用这张位图的视图数
+        private boolean retired; // 已从缓存中移除，没有引用后位图放回复用池
+
+        PageRaster(PageLayoutPrefetcher.PreparedPage source, Bitmap bitmap, int geometry) {
+            this.source = source;
+            this.bitmap = bitmap;
+            this.geometry = geometry;
+        }
+    }
+
+    public PageRasterCache() {
+        maxBytes = Runtime.getRuntime().maxMemory() / HEAP_FRACTION;
+    }
+
+    /**
+     * 设置页面视图的尺寸和状态栏内边距。尺寸变化时作废所有位图并释放复用池。在主线程调用。
+     */
+    public synchronized void setPageGeometry(int width, int height, int statusBarPadding) {
+        if (this.width == width && this.height == height && this.statusBarPadding == statusBarPadding) {
+            return;
+        }
+        clearLocked(true);
+        this.width = width;
+        this.height = height;
+        this.statusBarPadding = statusBarPadding;
+        long pageBytes = (long) width * height * 4;
+        int pages = pageBytes > 0 ? (int) Math.min(maxBytes / pageBytes, 2 * RASTER_RANGE + 1) : 0;
+        maxPages = pages >= MIN_PAGES ? pages : 0;
+        Log.d(TAG, "页面尺寸 " + width + "x" + height + "，最多缓存 " + maxPages + " 页"
+                + (maxPages == 0 ? "（内存不足，不启用）" : ""));
+    }
+
+    public synchronized boolean isEnabled() {
+        return maxPages > 0;
+    }
+
+    // 在当前尺寸下，当前页前后各缓存几页
+    synchronized int getRange() {
+        return maxPages > 0 ? (maxPages - 1) / 2 : 0;
+    }
+
+    /**
+     * 取出与预排版面对应的位图并增加引用计数，同时计入命中/未命中次数。绑定页面时在主线程调用。
+     * 视图不再显示这张位图（重新绑定或被回收）后必须调用 {@link #release}。
+     * @return 没有画好或已经过期时返回 null
+     */
+    public synchronized PageRaster acquire(PageLayoutPrefetcher.PreparedPage prepared) {
+        if (maxPages == 0) {
+            return null;
+        }
+        PageRaster raster = prepared != null ? entries.get(keyOf(prepared)) : null;
+        if (raster != null && raster.source != prepared) {
+            raster = null;
+        }
+        if (raster != null) {
+            hitCount++;
+            raster.refCount++;
+        } else {
+            missCount++;
+        }
+        return raster;
+    }
+
+    /**
+     * 视图不再使用 {@link #acquire} 取得的位图时调用。位图已被淘汰且没有其他引用时放回复用池。在主线程调用。
+     */
+    public synchronized void release(PageRaster raster) {
+        if (raster == null || raster.refCount == 0) {
+            return;
+        }
+        raster.refCount--;
+        if (raster.retired && raster.refCount == 0) {
+            poolLocked(raster);
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    // 是否已有这个版面的位图，不计入统计
+    synchronized boolean contains(PageLayoutPrefetcher.PreparedPage prepared) {
+        PageRaster raster = entries.get(keyOf(prepared));
+        return raster != null && raster.source == prepared;
+    }
+
+    /**
+     * 把预排好的版面画进一张位图并放入缓存。在后台线程调用。
+     * layout 必须是与 prepared 参数相同、但专门为绘制位图新建的版面：prepared.layout 可能同时在主线程上绘制，
+     * 而 Layout.draw 会改写版面内部的画笔，不能在两个线程上同时使用同一个 StaticLayout。
+     * 设置版本已经变化或没有可用的位图时什么也不做。
+     */
+    void render(PageLayoutPrefetcher.PreparedPage prepared, StaticLayout layout, ReadingSettings settings) {
+        Bitmap bitmap;
+        int padding;
+        int geometry;
+        synchronized (this) {
+            if (maxPages == 0 || prepared.settingsVersion < settingsVersion) {
+                return;
+            }
+            if (prepared.settingsVersion != settingsVersion) {
+                clearLocked(false); // 新的设置版本，旧位图全部作废，位图本身留在复用池
+                settingsVersion = prepared.settingsVersion;
+            }
+            bitmap = obtainBitmapLocked();
+            padding = statusBarPadding;
+            geometry = geometryGeneration;
+        }
+        if (bitmap == null) {
+            return;
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        Canvas canvas = new Canvas(bitmap);
+        // 与 NovelPageView.onDraw 相同的位置
+        canvas.translate(settings.getPaddingLeft(), settings.getPaddingTop() + padding);
+        layout.draw(canvas);
+        synchronized (this) {
+            if (geometry != geometryGeneration) {
+                return; // 绘制期间页面尺寸变了，这张位图直接丢弃，计数已在尺寸变化时清零
+            }
+            if (prepared.settingsVersion != settingsVersion) {
+                pool.push(bitmap); // 绘制期间设置变了，内容作废，位图留着复用
+                return;
+            }
+            PageRaster old = entries.put(keyOf(prepared), new PageRaster(prepared, bitmap, geometry));
+            if (old != null) {
+                retireLocked(old);
+            }
+        }
+    }
+
+    // 清空缓存和复用池，阅读界面销毁时调用
+    public synchronized void releaseAll() {
+        clearLocked(true);
+    }
+
+    // 从复用池取一张位图；池里没有时在上限内新建，已到上限时淘汰最久未用、且没有视图引用的一页。
+    // 位图都被视图引用着时返回 null，这一页不画
+    private Bitmap obtainBitmapLocked() {
+        Bitmap bitmap = pool.poll();
+        if (bitmap != null) {
+            return bitmap;
+        }
+        if (allocatedPages < maxPages) {
+            allocatedPages++;
+            return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        Iterator<Map.Entry<Long, PageRaster>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            PageRaster evicted = iterator.next().getValue();
+            if (evicted.refCount == 0) {
+                iterator.remove();
+                evicted.retired = true;
+                return evicted.bitmap;
+            }
+        }
+        return null;
+    }
+
+    // 从缓存中移除的位图：没有视图引用时直接放回复用池，否则等最后一个引用释放
+    private void retireLocked(PageRaster raster) {
+        raster.retired = true;
+        if (raster.refCount == 0) {
+            poolLocked(raster);
+        }
+    }
+
+    // 尺寸变化或销毁之前分配的位图不再复用，交给 GC
+    private void poolLocked(PageRaster raster) {
+        if (raster.geometry == geometryGeneration) {
+            pool.push(raster.bitmap);
+        }
+    }
+
+    // 作废所有位图；releaseBitmaps 为 true 时同时丢弃复用池（尺寸变化或销毁时）。
+    // 不调用 Bitmap.recycle()：已经提交给渲染线程的绘制可能还在使用这些位图，交给 GC 回收
+    private void clearLocked(boolean releaseBitmaps) {
+        if (releaseBitmaps) {
+            geometryGeneration++;
+            pool.clear();
+            allocatedPages = 0;
+        }
+        for (PageRaster raster : entries.values()) {
+            retireLocked(raster);
+        }
+        entries.clear();
+    }
+
+    private static long keyOf(PageLayoutPrefetcher.PreparedPage prepared) {
+        return ((long) prepared.settingsVersion << 32) | (prepared.pageStart & 0xFFFFFFFFL);
+    }
+}
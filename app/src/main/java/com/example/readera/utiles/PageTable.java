@@ -0,0 +1,217 @@
+package com.example.readera.utiles;
+
+import java.util.Arrays;
+
+/**
+ * 分页结果：共享同一份完整文本，只记录每一页的起始偏移量。
+ * 页面首尾相接，第 i 页的范围是 [starts[i], starts[i + 1])，最后一页到 end 为止。
+ * getPage 返回的是完整文本上的子序列视图，不会像 List&lt;String&gt; 那样把整本书再拷贝一遍。
+ * 增量分页时还会附带排好的行（LineTable），页面可以直接按行绘制；从磁盘缓存恢复的结果没有行数据。
+ * 非线程安全：由分页线程构建，交给主线程后只在主线程上修改。
+ */
+public final class PageTable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final CharSequence text;
+    private int[] starts;
+    private int size;
+    private int end; // 最后一页的结束偏移量
+    private final LineTable lines;
+
+    public PageTable(CharSequence text) {
+        this(text, new LineTable(0));
+    }
+
+    /**
+     * @param lines 用于接收排好的行的空行表，带有断行时的排版参数
+     */
+    public PageTable(CharSequence text, LineTable lines) {
+        this.text = text;
+        this.starts = new int[INITIAL_CAPACITY];
+        this.lines = lines;
+    }
+
+    /**
+     * 用已知的页面起始偏移量创建分页结果（例如从磁盘缓存恢复）。
+     * @param pageStartOffsets 严格递增的页面起始偏移量
+     * @param end              最后一页的结束偏移量
+     */
+    public PageTable(CharSequence text, int[] pageStartOffsets, int end) {
+        this.text = text;
+        this.starts = Arrays.copyOf(pageStartOffsets, Math.max(pageStartOffsets.length, INITIAL_CAPACITY));
+        this.size = pageStartOffsets.length;
+        this.end = end;
+        this.lines = new LineTable(0);
+    }
+
+    private PageTable(PageTable source) {
+        this.text = source.text;
+        this.starts = source.getPageStartOffsets();
+        this.size = source.size;
+        this.end = source.end;
+        this.lines = source.lines.copy();
+    }
+
+    public CharSequence getText() {
+        return text;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // 第 index 页的内容（完整文本上的视图，不拷贝字符）
+    public CharSequence getPage(int index) {
+        return text.subSequence(getPageStart(index), getPageEnd(index));
+    }
+
+    public int getPageStart(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    public int getPageEnd(int index) {
+        checkIndex(index);
+        return index + 1 < size ? starts[index + 1] : end;
+    }
+
+    /**
+     * 二分查找包含字符偏移量 offset 的页面。
+     * @return 页面索引；offset 在第一页之前时返回 0，在最后一页之后时返回最后一页；没有页面时返回 -1
+     */
+    public int findPageIndex(int offset) {
+        if (size == 0) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(starts, 0, size, offset);
+        if (index >= 0) {
+            return index;
+        }
+        // 插入点的前一页就是包含 offset 的页面
+        return Math.max(0, -index - 2);
+    }
+
+    // 排好的行，可能为空或只覆盖部分页面
+    public LineTable getLines() {
+        return lines;
+    }
+
+    /**
+     * 第 index 页在行表中的第一行。
+     * @return 行索引；没有这一页的行数据时返回 -1
+     */
+    public int getFirstLineOfPage(int index) {
+        return lines.findLineStartingAt(getPageStart(index));
+    }
+
+    /**
+     * 第 index 页在行表中最后一行之后的索引（不包含）。
+     * @return 行索引；没有这一页的行数据时返回 -1
+     */
+    public int getLineEndOfPage(int index) {
+        int pageEnd = getPageEnd(index);
+        if (!lines.isEmpty() && pageEnd == lines.getLineEnd(lines.size() - 1)) {
+            return lines.size();
+        }
+        return lines.findLineStartingAt(pageEnd);
+    }
+
+    // 所有页面的起始偏移量（拷贝）
+    public int[] getPageStartOffsets() {
+        return Arrays.copyOf(starts, size);
+    }
+
+    /**
+     * 在末尾追加一页，起始位置必须紧接上一页的结尾。
+     */
+    public void addPage(int start, int pageEnd) {
+        if (size > 0 && start != end) {
+            throw new IllegalArgumentException("页面不连续: " + start + " != " + end);
+        }
+        ensureCapacity(size + 1);
+        starts[size++] = start;
+        end = pageEnd;
+    }
+
+    /**
+     * 在开头插入一页，结尾必须紧接原来第一页的开头。
+     */
+    public void addPageFirst(int start, int pageEnd) {
+        if (size > 0 && pageEnd != starts[0]) {
+            throw new IllegalArgumentException("页面不连续: " + pageEnd + " != " + starts[0]);
+        }
+        ensureCapacity(size + 1);
+        System.arraycopy(starts, 0, starts, 1, size);
+        starts[0] = start;
+        if (size == 0) {
+            end = pageEnd;
+        }
+        size++;
+    }
+
+    /**
+     * 把另一批页面接到末尾，两者必须共享同一份文本且首尾相接。
+     */
+    public void append(PageTable batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        checkSameText(batch);
+        if (size > 0 && batch.starts[0] != end) {
+            throw new IllegalArgumentException("页面不连续: " + batch.starts[0] + " != " + end);
+        }
+        ensureCapacity(size + batch.size);
+        System.arraycopy(batch.starts, 0, starts, size, batch.size);
+        size += batch.size;
+        end = batch.end;
+        lines.append(batch.lines);
+    }
+
+    /**
+     * 把另一批页面插入到开头，两者必须共享同一份文本且首尾相接。
+     */
+    public void prepend(PageTable batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        checkSameText(batch);
+        if (size > 0 && batch.end != starts[0]) {
+            throw new IllegalArgumentException("页面不连续: " + batch.end + " != " + starts[0]);
+        }
+        ensureCapacity(size + batch.size);
+        System.arraycopy(starts, 0, starts, batch.size, size);
+        System.arraycopy(batch.starts, 0, starts, 0, batch.size);
+        if (size == 0) {
+            end = batch.end;
+        }
+        size += batch.size;
+        lines.prepend(batch.lines);
+    }
+
+    // 创建一份独立的拷贝（共享文本，不共享偏移量数组和行表）
+    public PageTable copy() {
+        return new PageTable(this);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > starts.length) {
+            starts = Arrays.copyOf(starts, Math.max(capacity, starts.length * 2));
+        }
+    }
+
+    private void checkSameText(PageTable other) {
+        if (other.text != text) {
+            throw new IllegalArgumentException("页面批次来自不同的文本");
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+    }
+}
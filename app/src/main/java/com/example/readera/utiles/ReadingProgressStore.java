@@ -0,0 +1,130 @@
+package com.example.readera.utiles;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.readera.Dao.ReadingProgressDao;
+import com.example.readera.database.DatabaseExecutor;
+import com.example.readera.model.ReadingProgress;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 阅读进度的合并写入。翻页时只更新内存中每本书的最新进度，不做任何 I/O；
+ * 第一次更新后等待 FLUSH_DELAY_MS 再把这段时间内的所有更新合并成一个事务写入数据库，
+ * 离开阅读界面（onPause）时立即写入。拖动进度条时的上百次翻页最终只写一行。
+ * 所有方法都在主线程调用。
+ */
+public class ReadingProgressStore {
+    private static final String TAG = "ReadingProgressStore";
+    private static ReadingProgressStore instance;
+
+    // 第一次更新到写入数据库之间的等待时间
+    private static final long FLUSH_DELAY_MS = 3000;
+
+    private final Context appContext;
+    private final ReadingProgressDao progressDao;
+    private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+    // 尚未写入数据库的进度，每本书只保留最新的一条
+    private final Map<Uri, ReadingProgress> pending = new HashMap<>();
+    private boolean flushScheduled = false;
+    private int coalescedUpdates = 0; // 自上次写入以来合并掉的更新次数，用于日志
+    private boolean legacyMigrated = false; // 只在数据库线程上读写
+
+    /**
+     * 读取进度的回调，在主线程执行；没有保存过进度时参数为 null。
+     */
+    public interface ProgressCallback {
+        void onProgressLoaded(ReadingProgress progress);
+    }
+
+    public static synchronized ReadingProgressStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new ReadingProgressStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ReadingProgressStore(Context context) {
+        appContext = context;
+        progressDao = new ReadingProgressDao(context);
+    }
+
+    /**
+     * 更新一本书的阅读进度，只修改内存，稍后统一写入数据库。
+     * @param pageIndex  当前页码（从 0 开始）
+     * @param charOffset 当前页第一个字符的偏移量
+     */
+    public void update(Uri bookUri, int pageIndex, int charOffset) {
+        if (bookUri == null) {
+            return;
+        }
+        if (pending.put(bookUri, new ReadingProgress(bookUri, pageIndex, charOffset, System.currentTimeMillis())) != null) {
+            coalescedUpdates++;
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            mainThreadHandler.postDelayed(flushRunnable, FLUSH_DELAY_MS);
+        }
+    }
+
+    /**
+     * 立即把内存中的进度写入数据库（在数据库线程上执行）。没有待写入的进度时什么也不做。
+     */
+    public void flush() {
+        mainThreadHandler.removeCallbacks(flushRunnable);
+        flushScheduled = false;
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<ReadingProgress> batch = new ArrayList<>(pending.values());
+        int coalesced = coalescedUpdates;
+        pending.clear();
+        coalescedUpdates = 0;
+        DatabaseExecutor.execute(() -> {
+            migrateLegacyProgress();
+            progressDao.saveProgress(batch);
+            Log.d(TAG, "写入 " + batch.size() + " 本书的阅读进度，合并了 " + coalesced + " 次更新");
+        }, null);
+    }
+
+    /**
+     * 读取一本书的阅读进度。内存中有尚未写入的进度时直接使用，否则在数据库线程上查询。
+     * 没有保存过或查询失败时回调的进度为 null，回调总是在主线程执行。
+     */
+    public void loadProgress(Uri bookUri, ProgressCallback callback) {
+        ReadingProgress unsaved = pending.get(bookUri);
+        if (unsaved != null) {
+            mainThreadHandler.post(() -> callback.onProgressLoaded(unsaved));
+            return;
+        }
+        // 写入和查询都在同一个数据库线程上按顺序执行，之前提交的写入一定先完成
+        DatabaseExecutor.submit(() -> {
+            migrateLegacyProgress();
+            return progressDao.getProgress(bookUri);
+        }, callback::onProgressLoaded);
+    }
+
+    /**
+     * 旧版本的进度保存在 SharedPreferences 中，每本书一个键。第一次读写进度时把它们写入数据库；
+     * 只在数据库线程上调用。
+     */
+    private void migrateLegacyProgress() {
+        if (legacyMigrated) {
+            return;
+        }
+        legacyMigrated = true;
+        List<ReadingProgress> legacy = ReadingSettingsManager.getInstance(appContext).takeLegacyReadingProgress();
+        if (!legacy.isEmpty()) {
+            progressDao.saveProgress(legacy);
+            Log.d(TAG, "已把 " + legacy.size() + " 本书的阅读进度迁移到数据库");
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.readera.utiles;
+
+import android.graphics.Typeface;
+
+import java.util.Objects;
+
+/**
+ * 阅读设置的不可变快照。
+ * 由 ReadingSettingsManager 在设置变化时一次性解析（包括字体资源和内边距），
+ * 绑定页面时直接读取字段，不再访问 SharedPreferences 或资源。
+ * 每次设置变化版本号都会增加，版本号相同的两个快照内容相同。
+ */
+public final class ReadingSettings {
+    private final int version;
+    private final float textSizeSp;
+    private final float lineSpacingExtraDp;
+    private final Typeface typeface;
+    private final String fontIdentifier;
+    private final int paddingLeft, paddingTop, paddingRight, paddingBottom; // 页面内边距（像素）
+    private final int textColor;
+    private final int backgroundColor;
+
+    ReadingSettings(int version, float textSizeSp, float lineSpacingExtraDp, Typeface typeface, String fontIdentifier,
+                    int[] pagePaddingPx, int textColor, int backgroundColor) {
+        this.version = version;
+        this.textSizeSp = textSizeSp;
+        this.lineSpacingExtraDp = lineSpacingExtraDp;
+        this.typeface = typeface;
+        this.fontIdentifier = fontIdentifier;
+        this.paddingLeft = pagePaddingPx[0];
+        this.paddingTop = pagePaddingPx[1];
+        this.paddingRight = pagePaddingPx[2];
+        this.paddingBottom = pagePaddingPx[3];
+        this.textColor = textColor;
+        this.backgroundColor = backgroundColor;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public float getTextSizeSp() {
+        return textSizeSp;
+    }
+
+    public float getLineSpacingExtraDp() {
+        return lineSpacingExtraDp;
+    }
+
+    public Typeface getTypeface() {
+        return typeface;
+    }
+
+    public String getFontIdentifier() {
+        return fontIdentifier;
+    }
+
+    public int getPaddingLeft() {
+        return paddingLeft;
+    }
+
+    public int getPaddingTop() {
+        return paddingTop;
+    }
+
+    public int getPaddingRight() {
+        return paddingRight;
+    }
+
+    public int getPaddingBottom() {
+        return paddingBottom;
+    }
+
+    public int getTextColor() {
+        return textColor;
+    }
+
+    public int getBackgroundColor() {
+        return backgroundColor;
+    }
+
+    /**
+     * 两份设置的排版是否相同（字体大小、行间距、字体、内边距）。
+     * 排版不同时需要重新分页，只有颜色不同时重绘即可。
+     */
+    public boolean hasSameLayoutAs(ReadingSettings other) {
+        return other != null
+                && textSizeSp == other.textSizeSp
+                && lineSpacingExtraDp == other.lineSpacingExtraDp
+                && Objects.equals(fontIdentifier, other.fontIdentifier)
+                && paddingLeft == other.paddingLeft
+                && paddingTop == other.paddingTop
+                && paddingRight == other.paddingRight
+                && paddingBottom == other.paddingBottom;
+    }
+
+    // 颜色是否相同
+    public boolean hasSameColorsAs(ReadingSettings other) {
+        return other != null && textColor == other.textColor && backgroundColor == other.backgroundColor;
+    }
+
+    @Override
+    public String toString() {
+        return "ReadingSettings{v" + version + ", " + textSizeSp + "sp, 行距 " + lineSpacingExtraDp + "dp, 字体 " + fontIdentifier
+                + ", 内边距 [" + paddingLeft + ", " + paddingTop + ", " + paddingRight + ", " + paddingBottom + "]"
+                + String.format(", 文字 #%06X, 背景 #%06X}", textColor & 0xFFFFFF, backgroundColor & 0xFFFFFF);
+    }
+}
@@ -10,16 +10,24 @@ import android.util.Log;
 import androidx.core.content.ContextCompat;
 import androidx.core.content.res.ResourcesCompat; // 用于字体
 
+import com.example.readera.Dao.BookmarkDao;
 import com.example.readera.R; // 确保导入您的 R 文件
+import com.example.readera.database.DatabaseExecutor;
 import com.example.readera.model.Bookmark;
+import com.example.readera.model.ReadingProgress;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 
 import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ReadingSettingsManager {
 
@@ -35,14 +43,19 @@ public class ReadingSettingsManager {
     private static final String KEY_FONT_PATH = "font_path"; // 用于存储字体文件路径或资源ID
 
     // --- 修改：书签相关键 ---
-    // KEY_LAST_READ_PAGE_PREFIX 用于存储每个文件的最后阅读页码（自动保存的进度）
+    // 旧版本按文件保存最后阅读页码和字符偏移量的键，现在进度保存在数据库中，只在迁移时读取
     private static final String KEY_LAST_READ_PAGE_PREFIX = "last_read_page_";
-    // KEY_ALL_BOOKMARKS 用于存储用户手动添加的书签列表
+    private static final String KEY_LAST_READ_OFFSET_PREFIX = "last_read_offset_";
+    // KEY_ALL_BOOKMARKS 是旧版本存储书签列表的键，现在书签保存在数据库中，只在迁移时读取
     private static final String KEY_ALL_BOOKMARKS = "all_user_bookmarks";
+    // 最近一次阅读界面的文本区域尺寸，用于预加载时提前分页
+    private static final String KEY_LAST_VIEWPORT_WIDTH = "last_viewport_width_px";
+    private static final String KEY_LAST_VIEWPORT_HEIGHT = "last_viewport_height_px";
 
     private SharedPreferences prefs;
     private Context context;
     private Gson gson;
+    private BookmarkDao bookmarkDao;
 
     // 默认值
     private static final float  DEFAULT_TEXT_SIZE_SP = 18f;
@@ -53,6 +66,18 @@ public class ReadingSettingsManager {
     private static final String DEFAULT_FONT_NAME  = "system_default"; // 默认无特定字体
     // --- 单例模式相关修改 ---
     private static ReadingSettingsManager instance;
+
+    // 阅读设置快照，所有实例共享（它们读写的是同一个 SharedPreferences 文件）
+    private static ReadingSettings snapshot;
+    private static int snapshotVersion = 0;
+    private static final List<OnReadingSettingsChangeListener> settingsListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 阅读设置变化的回调，在保存设置的线程（主线程）上调用。
+     */
+    public interface OnReadingSettingsChangeListener {
+        void onReadingSettingsChanged(ReadingSettings settings);
+    }
     public ReadingSettingsManager(Context context) {
         this.context = context;
         prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
@@ -69,12 +94,51 @@ public class ReadingSettingsManager {
         return instance;
     }
 
+    /**
+     * 当前阅读设置的快照。第一次调用或设置变化后才会读取 SharedPreferences 和字体资源，其余时候直接返回缓存。
+     */
+    public ReadingSettings getSnapshot() {
+        synchronized (ReadingSettingsManager.class) {
+            if (snapshot == null) {
+                snapshot = buildSnapshot(++snapshotVersion);
+            }
+            return snapshot;
+        }
+    }
+
+    public static void addOnReadingSettingsChangeListener(OnReadingSettingsChangeListener listener) {
+        settingsListeners.addIfAbsent(listener);
+    }
+
+    public static void removeOnReadingSettingsChangeListener(OnReadingSettingsChangeListener listener) {
+        settingsListeners.remove(listener);
+    }
+
+    private ReadingSettings buildSnapshot(int version) {
+        return new ReadingSettings(version, getTextSizeSp(), getLineSpacingExtraDp(), getTypeface(), getFontIdentifier(),
+                getPagePaddingPx(), getTextColor(), getBackgroundColor());
+    }
+
+    // 设置保存后重新生成快照并通知监听者
+    private void onSettingsSaved() {
+        ReadingSettings newSnapshot;
+        synchronized (ReadingSettingsManager.class) {
+            newSnapshot = buildSnapshot(++snapshotVersion);
+            snapshot = newSnapshot;
+        }
+        Log.d("ReadingSettingsManager", "阅读设置已更新: " + newSnapshot);
+        for (OnReadingSettingsChangeListener listener : settingsListeners) {
+            listener.onReadingSettingsChanged(newSnapshot);
+        }
+    }
+
     public float getTextSizeSp() {
         return prefs.getFloat(KEY_TEXT_SIZE, DEFAULT_TEXT_SIZE_SP);
     }
 
     public void saveTextSize(float textSizeSp) {
         prefs.edit().putFloat(KEY_TEXT_SIZE, textSizeSp).apply();
+        onSettingsSaved();
     }
 
     //行间距设置
@@ -84,6 +148,7 @@ public class ReadingSettingsManager {
 
     public void saveLineSpacingExtra(int lineSpacingDp) {
         prefs.edit().putFloat(KEY_LINE_SPACING, lineSpacingDp).apply();
+        onSettingsSaved();
     }
 
     /**
@@ -108,6 +173,7 @@ public class ReadingSettingsManager {
                 .putInt(KEY_PADDING_RIGHT, right)
                 .putInt(KEY_PADDING_BOTTOM, bottom)
                 .apply();
+        onSettingsSaved();
     }
 
     //文本颜色设置
@@ -117,6 +183,7 @@ public class ReadingSettingsManager {
 
     public void saveTextColor(int color) {
         prefs.edit().putInt(KEY_TEXT_COLOR, color).apply();
+        onSettingsSaved();
     }
 
     // 新增：获取背景颜色
@@ -128,6 +195,7 @@ public class ReadingSettingsManager {
 
     public void saveBackgroundColor(int newBgColor) {
         prefs.edit().putInt(KEY_BACKGROUND_COLOR, newBgColor).apply();
+        onSettingsSaved();
     }
 
     //字体设置
@@ -147,8 +215,14 @@ public class ReadingSettingsManager {
         }
     }
 
+    // 当前字体的标识（例如 "serif"），用于分页缓存的键
+    public String getFontIdentifier() {
+        return prefs.getString(KEY_FONT_PATH, DEFAULT_FONT_NAME);
+    }
+
     public void saveFont(String fontIdentifier) {
         prefs.edit().putString(KEY_FONT_PATH, fontIdentifier).apply();
+        onSettingsSaved();
     }
 
     /**
@@ -161,98 +235,139 @@ public class ReadingSettingsManager {
     // --- 新增书签方法 ---
 
     /**
-     * 获取用于存储特定文件最后阅读页码的键。
-     * 使用 URI 的字符串表示作为键，因为它是唯一的。
-     * @param fileUri 文件的 URI
-     * @return 对应文件最后阅读页码的 SharedPreferences 键
+     * 保存阅读界面文本区域的尺寸（像素，不含内边距）。
      */
-    private String getLastReadPageKey(Uri fileUri) {
-        if (fileUri == null){
-            return "";
-        }
-        return KEY_LAST_READ_PAGE_PREFIX  + fileUri.toString();
+    public void saveLastViewportSize(int widthPx, int heightPx) {
+        prefs.edit()
+                .putInt(KEY_LAST_VIEWPORT_WIDTH, widthPx)
+                .putInt(KEY_LAST_VIEWPORT_HEIGHT, heightPx)
+                .apply();
     }
 
-    /**
-     * 保存指定文件的**最后阅读页码**（自动保存的进度）。
-     * @param fileUri 文件的 URI
-     * @param pageIndex 当前阅读的页码（从0开始）
-     */
-    public void saveLastReadPage(Uri fileUri, int pageIndex) {
-        if (fileUri != null) {
-            prefs.edit().putInt(getLastReadPageKey(fileUri), pageIndex).apply();
-            Log.d("ReadingSettingsManager", "保存最后阅读页码: " + pageIndex + " for " + fileUri.toString());
-        }
+    // 最近一次的文本区域宽度，没有记录时返回 0
+    public int getLastViewportWidth() {
+        return prefs.getInt(KEY_LAST_VIEWPORT_WIDTH, 0);
+    }
+
+    // 最近一次的文本区域高度，没有记录时返回 0
+    public int getLastViewportHeight() {
+        return prefs.getInt(KEY_LAST_VIEWPORT_HEIGHT, 0);
     }
 
     /**
-     * 获取指定文件的**最后阅读页码**。
-     * @param fileUri 文件的 URI
-     * @return 保存的页码（从0开始），如果没有保存则返回0
+     * 取出旧版本保存在 SharedPreferences 中的阅读进度并删除这些键，由 ReadingProgressStore 写入数据库。
+     * 只在数据库线程上调用。
+     * @return 每本书一条进度，没有旧数据时为空列表
      */
-    public int getLastReadPage(Uri fileUri) {
-        if (fileUri != null) {
-            return prefs.getInt(getLastReadPageKey(fileUri), 0); // 默认返回第一页 (0)
+    public List<ReadingProgress> takeLegacyReadingProgress() {
+        Map<String, Integer> pages = new HashMap<>();
+        Map<String, Integer> offsets = new HashMap<>();
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            String key = entry.getKey();
+            if (!(entry.getValue() instanceof Integer)) {
+                continue;
+            }
+            if (key.startsWith(KEY_LAST_READ_PAGE_PREFIX)) {
+                pages.put(key.substring(KEY_LAST_READ_PAGE_PREFIX.length()), (Integer) entry.getValue());
+            } else if (key.startsWith(KEY_LAST_READ_OFFSET_PREFIX)) {
+                offsets.put(key.substring(KEY_LAST_READ_OFFSET_PREFIX.length()), (Integer) entry.getValue());
+            }
         }
-        return 0;
-    }
-    // --- 新增：管理用户手动添加的书签列表的方法 ---
-    public void addBookmark (Bookmark bookmark){
-        List<Bookmark> bookmarks = getAllBookmarks();
-        // 检查是否已存在完全相同的书签，避免重复添加
-        if (!bookmarks.contains(bookmark)) {
-            bookmarks.add(0, bookmark); // 新书签添加到列表顶部，最新添加的显示在前面
-            saveAllBookmarks(bookmarks);
-            Log.d("ReadingSettingsManager", "书签已添加: " + bookmark.getDisplayTitle() + ", 页码: " + bookmark.getPageNumber());
-        } else {
-            Log.d("ReadingSettingsManager", "书签已存在，未重复添加: " + bookmark.getDisplayTitle() + ", 页码: " + bookmark.getPageNumber());
+        if (pages.isEmpty() && offsets.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Set<String> uris = new HashSet<>(pages.keySet());
+        uris.addAll(offsets.keySet());
+        List<ReadingProgress> progressList = new ArrayList<>(uris.size());
+        SharedPreferences.Editor editor = prefs.edit();
+        long now = System.currentTimeMillis();
+        for (String uri : uris) {
+            Integer page = pages.get(uri);
+            Integer offset = offsets.get(uri);
+            progressList.add(new ReadingProgress(Uri.parse(uri), page != null ? page : 0,
+                    offset != null ? offset : -1, now));
+            editor.remove(KEY_LAST_READ_PAGE_PREFIX + uri).remove(KEY_LAST_READ_OFFSET_PREFIX + uri);
         }
+        editor.apply();
+        return progressList;
     }
 
+    // --- 书签：保存在数据库的书签表中，读写都在数据库线程上进行 ---
+
     /**
-            * 移除一个书签。
-            * @param bookmark 要移除的 Bookmark 对象
+     * 添加书签，同一本书的同一位置已有书签时不重复添加。在数据库线程上写入，可以在主线程调用。
      */
-    public void removeBookmark(Bookmark bookmark) {
-        List<Bookmark> bookmarks = getAllBookmarks();
-        // 使用 Iterator 安全地移除元素，避免ConcurrentModificationException
-        Iterator<Bookmark> iterator = bookmarks.iterator();
-        boolean removed = false;
-        while (iterator.hasNext()) {
-            Bookmark b = iterator.next();
-            if (b.equals(bookmark)) { // 使用 Bookmark 类的 equals 方法进行比较
-                iterator.remove();
-                removed = true;
-                break; // 假设书签是唯一的，找到并移除后即可退出
+    public void addBookmark(Bookmark bookmark) {
+        DatabaseExecutor.execute(() -> {
+            migrateLegacyBookmarks();
+            if (getBookmarkDao().addBookmark(bookmark) > 0) {
+                Log.d("ReadingSettingsManager", "书签已添加: " + bookmark.getDisplayTitle() + ", 页码: " + bookmark.getPageNumber());
+            } else {
+                Log.d("ReadingSettingsManager", "书签已存在，未重复添加: " + bookmark.getDisplayTitle() + ", 页码: " + bookmark.getPageNumber());
             }
-        }
+        }, null);
+    }
 
-        if (removed) {
-            saveAllBookmarks(bookmarks);
-            Log.d("ReadingSettingsManager", "书签已移除: " + bookmark.getDisplayTitle() + ", 页码: " + bookmark.getPageNumber());
-        } else {
-            Log.d("ReadingSettingsManager", "书签未找到，无法移除: " + bookmark.getDisplayTitle() + ", 页码: " + bookmark.getPageNumber());
-        }
+    /**
+     * 移除一个书签。
+     * @param bookmark   要移除的 Bookmark 对象
+     * @param onComplete 删除完成后在主线程执行，可以为 null
+     */
+    public void removeBookmark(Bookmark bookmark, Runnable onComplete) {
+        DatabaseExecutor.execute(() -> {
+            migrateLegacyBookmarks();
+            int rows = getBookmarkDao().removeBookmark(bookmark.getId());
+            Log.d("ReadingSettingsManager", (rows > 0 ? "书签已移除: " : "书签未找到，无法移除: ")
+                    + bookmark.getDisplayTitle() + ", 页码: " + bookmark.getPageNumber());
+        }, onComplete);
     }
+
     /**
-     * 获取所有用户手动添加的书签列表。
-     * @return 书签列表，如果没有则返回空列表
+     * 按从新到旧的顺序分页读取某本书的书签，结果在主线程回调。
+     * @param beforeId 上一页最后一个书签的 id，读取第一页时传 Long.MAX_VALUE
      */
-    public List<Bookmark> getAllBookmarks() {
-        String json = prefs.getString(KEY_ALL_BOOKMARKS, "[]");
-        Type type = new TypeToken<ArrayList<Bookmark>>() {}.getType();
-        List<Bookmark> bookmarks = gson.fromJson(json, type);
-        return bookmarks != null ? bookmarks : new ArrayList<>();
+    public void loadBookmarksAsync(Uri fileUri, long beforeId, int limit,
+                                   DatabaseExecutor.ResultCallback<List<Bookmark>> callback) {
+        DatabaseExecutor.submit(() -> {
+            migrateLegacyBookmarks();
+            return getBookmarkDao().getBookmarks(fileUri, beforeId, limit);
+        }, callback);
+    }
+
+    private BookmarkDao getBookmarkDao() {
+        if (bookmarkDao == null) {
+            bookmarkDao = new BookmarkDao(context);
+        }
+        return bookmarkDao;
     }
 
     /**
-     * 保存整个用户书签列表。
-     * 这是一个私有方法，供 addBookmark 和 removeBookmark 内部调用。
-     * @param bookmarks 要保存的书签列表
+     * 旧版本把所有书签序列化成一个 JSON 字符串存在 SharedPreferences 中。
+     * 第一次读写书签时把它们写入书签表，成功后删除旧数据；只在数据库线程上调用。
      */
-    private void saveAllBookmarks(List<Bookmark> bookmarks) {
-        String json = gson.toJson(bookmarks);
-        prefs.edit().putString(KEY_ALL_BOOKMARKS, json).apply();
+    private void migrateLegacyBookmarks() {
+        if (!prefs.contains(KEY_ALL_BOOKMARKS)) {
+            return;
+        }
+        String json = prefs.getString(KEY_ALL_BOOKMARKS, "[]");
+        List<Bookmark> bookmarks = null;
+        try {
+            Type type = new TypeToken<ArrayList<Bookmark>>() {}.getType();
+            bookmarks = gson.fromJson(json, type);
+        } catch (RuntimeException e) {
+            Log.e("ReadingSettingsManager", "旧书签数据无法解析，放弃迁移", e);
+        }
+        if (bookmarks != null && !bookmarks.isEmpty()) {
+            // 旧数据里没有字符偏移量，Gson 反序列化后该字段是 0，要改回“未知”
+            for (Bookmark bookmark : bookmarks) {
+                if (bookmark != null) {
+                    bookmark.setCharOffset(-1);
+                }
+            }
+            getBookmarkDao().addBookmarks(bookmarks);
+            Log.d("ReadingSettingsManager", "已把 " + bookmarks.size() + " 个书签迁移到数据库");
+        }
+        prefs.edit().remove(KEY_ALL_BOOKMARKS).apply();
     }
 
 }
\ No newline at end of file
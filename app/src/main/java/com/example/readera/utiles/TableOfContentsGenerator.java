@@ -14,91 +14,189 @@ public class TableOfContentsGenerator {
 
     private static final String TAG = "TableOfContentsGenerator";
 
+    // 增强的中文章节标题识别正则表达式
+    // 匹配 "第X章", "第X节", "第X回", "第一章", "第一节", "第一回" 等
+    // 支持数字和中文数字（零一二三四五六七八九十百千万）
+    // 增加对常见的小说标题格式的匹配，例如：
+    // - "卷一", "上篇", "下篇"
+    // - 纯数字或英文数字开头的行，后面跟着短标题
+    // - 可能的标题会以换行符分隔，所以使用 Pattern.MULTILINE
+    static final Pattern CHAPTER_PATTERN = Pattern.compile(
+            "^[\\s　]*(第[零一二三四五六七八九十百千万\\d]+[章节回篇卷集部])|" + // 例如：  第一章, 第十章, 第一节, 第一回, 第五卷
+                    "^[\\s　]*(卷[一二三四五六七八九十百千万\\d]+)|" +               // 例如：  卷一, 卷二
+                    "^[\\s　]*(上篇|中篇|下篇)|" +                                 // 例如：  上篇
+                    "^[\\s　]*(序章|楔子|引子|前言|尾声|结语|后记)|" +              // 明确匹配这些特殊章节
+                    // 原来的这行被移除或注释掉，因为它可能导致误判：
+                    // "^[\\s　]*([\\u4E00-\\u9FA5]{2,8}[章节回卷集])|" +
+                    "^[\\s　]*(Chapter\\s*\\d+)|" +                               // 例如：  Chapter 1, Chapter 01
+                    "^[\\s　]*(Section\\s*\\d+)|" +                               // 例如：  Section 1
+                    "^[\\s　]*((\\d+|[A-Z])\\s*[\\u3001\\u002E\\u002D\\u0020]\\s*([\\u4E00-\\u9FA5a-zA-Z0-9]{2,30}))$", // 例如：  1. 标题, A. 标题, 1 - 标题
+            Pattern.MULTILINE // 允许 ^ 匹配每行的开头
+    );
+
+    // 超过这个长度的行是正文段落，不可能是章节标题
+    private static final int MAX_TITLE_LINE_CHARS = 64;
+    // 两个章节起点之间的最小距离（字符数）
+    private static final int MIN_CHAPTER_CHARS = 512;
+
+    /**
+     * 为已经分页的书生成目录：先扫描全文提取章节（见 extractChapters），再按页面偏移表换算页码。
+     * 会扫描整本书，不要在主线程调用。
+     */
     public static List<TableOfContents> generateSimpleToc(TextPager textPager) {
-        List<TableOfContents> tocEntries = new ArrayList<>();
         if (textPager == null || textPager.getPages().isEmpty()) {
             Log.d(TAG, "TextPager is null or empty, returning empty TOC.");
-            return tocEntries;
+            return new ArrayList<>();
         }
+        long startTime = System.currentTimeMillis();
+        List<TableOfContents> tocEntries = extractChapters(textPager.getFullText());
+        assignPages(tocEntries, textPager.getPages());
 
-        List<String> pages = textPager.getPages();
-        int totalPages = pages.size();
-
-        // 增强的中文章节标题识别正则表达式
-        // 匹配 "第X章", "第X节", "第X回", "第一章", "第一节", "第一回" 等
-        // 支持数字和中文数字（零一二三四五六七八九十百千万）
-        // 增加对常见的小说标题格式的匹配，例如：
-        // - "卷一", "上篇", "下篇"
-        // - 纯数字或英文数字开头的行，后面跟着短标题
-        // - 可能的标题会以换行符分隔，所以使用 Pattern.MULTILINE
-        Pattern chapterPattern = Pattern.compile(
-                "^[\\s　]*(第[零一二三四五六七八九十百千万\\d]+[章节回篇卷集部])|" + // 例如：  第一章, 第十章, 第一节, 第一回, 第五卷
-                        "^[\\s　]*(卷[一二三四五六七八九十百千万\\d]+)|" +               // 例如：  卷一, 卷二
-                        "^[\\s　]*(上篇|中篇|下篇)|" +                                 // 例如：  上篇
-                        "^[\\s　]*(序章|楔子|引子|前言|尾声|结语|后记)|" +              // 明确匹配这些特殊章节
-                        // 原来的这行被移除或注释掉，因为它可能导致误判：
-                        // "^[\\s　]*([\\u4E00-\\u9FA5]{2,8}[章节回卷集])|" +
-                        "^[\\s　]*(Chapter\\s*\\d+)|" +                               // 例如：  Chapter 1, Chapter 01
-                        "^[\\s　]*(Section\\s*\\d+)|" +                               // 例如：  Section 1
-                        "^[\\s　]*((\\d+|[A-Z])\\s*[\\u3001\\u002E\\u002D\\u0020]\\s*([\\u4E00-\\u9FA5a-zA-Z0-9]{2,30}))$", // 例如：  1. 标题, A. 标题, 1 - 标题
-                Pattern.MULTILINE // 允许 ^ 匹配每行的开头
-        );
+        // 后处理：如果目录为空但有内容，添加一个“开始阅读”条目
+        if (tocEntries.isEmpty()) {
+            tocEntries.add(new TableOfContents("开始阅读", 0));
+            Log.d(TAG, "TOC is empty, added '开始阅读' entry.");
+        }
+        Log.d(TAG, "Generated TOC with " + tocEntries.size() + " entries in "
+                + (System.currentTimeMillis() - startTime) + " ms.");
+        return tocEntries;
+    }
 
+    /**
+     * 逐行扫描全文一次，提取章节标题及其字符偏移量。
+     * 只对较短的行运行预编译的正则；同名标题只保留第一次出现的位置。
+     * 卷、部、篇一级的标题层级为 0，其下的章节层级为 1；全书没有分卷时所有章节都是 0。
+     * 返回的条目 pageIndex 为 -1，需要再调用 assignPages 换算页码。
+     */
+    public static List<TableOfContents> extractChapters(CharSequence text) {
+        List<TableOfContents> entries = new ArrayList<>();
         Set<String> identifiedChapterTitles = new HashSet<>();
+        forEachTitleLine(text, (lineStart, lineEnd, matcher) -> {
+            String title = trimLine(text, lineStart, lineEnd);
+            if (identifiedChapterTitles.add(title)) {
+                entries.add(new TableOfContents(title, -1, isVolumeTitle(matcher) ? 0 : 1, lineStart));
+            } else {
+                Log.d(TAG, "Filtered out duplicate title: \"" + title + "\"");
+            }
+        });
+        boolean hasVolumes = false;
+        for (TableOfContents entry : entries) {
+            hasVolumes |= entry.depth == 0;
+        }
+        if (!hasVolumes) {
+            for (TableOfContents entry : entries) {
+                entry.depth = 0;
+            }
+        }
+        return entries;
+    }
 
-        for (int i = 0; i < totalPages; i++) {
-            String pageContent = pages.get(i);
-            //Log.d(TAG, "Processing page " + i + ", content start: \"" + pageContent.substring(0, Math.min(pageContent.length(), 100)).replace("\n", "\\n") + "\"");
-
-            Matcher matcher = chapterPattern.matcher(pageContent);
-            while (matcher.find()) {
-                String potentialTitle = matcher.group(0).trim();
-
-                //Log.d(TAG, "Potential title found on page " + i + ": \"" + potentialTitle + "\"");
-
-                if (potentialTitle.length() > 2 && potentialTitle.length() < 50 && !identifiedChapterTitles.contains(potentialTitle)) {
-                    // 过滤掉过短的纯汉字短语或数字，例如 "第一" (不带章)
-                    if (!potentialTitle.matches("^[\\u4E00-\\u9FA5]{1,2}$") && !potentialTitle.matches("^[\\d一二三四五六七八九十]{1,2}$")) {
-                        tocEntries.add(new TableOfContents(potentialTitle, i));
-                        identifiedChapterTitles.add(potentialTitle);
-                        //Log.d(TAG, "Added TOC entry: \"" + potentialTitle + "\" at page " + i);
-                        break; // 找到一个章节就停止在该页的查找
-                    } else {
-                        Log.d(TAG, "Filtered out potential title (too short/generic): \"" + potentialTitle + "\"");
-                    }
-                } else {
-                    Log.d(TAG, "Filtered out potential title (length/duplicate): \"" + potentialTitle + "\"");
-                }
+    /**
+     * 按页面偏移表把每个条目的字符偏移量换算成页码（二分查找）。
+     */
+    public static void assignPages(List<TableOfContents> entries, PageTable pages) {
+        for (TableOfContents entry : entries) {
+            entry.pageIndex = Math.max(0, pages.findPageIndex(entry.charOffset));
+        }
+    }
+
+    /**
+     * 在完整文本中查找章节标题所在行的起始偏移量，用于按章节并行分页。
+     * 与上一个章节起点相距太近的标题（例如书首的目录列表）会被忽略，
+     * 避免切出大量只有一行的章节。
+     *
+     * @return 严格递增的章节起始偏移量，可能为空
+     */
+    public static int[] findChapterStarts(CharSequence text) {
+        List<Integer> starts = new ArrayList<>();
+        forEachTitleLine(text, (lineStart, lineEnd, matcher) -> {
+            if (starts.isEmpty() || lineStart - starts.get(starts.size() - 1) >= MIN_CHAPTER_CHARS) {
+                starts.add(lineStart);
             }
-            // 移除了 !chapterFoundOnPage 块，这意味着只有显式识别到章节标题才会添加目录项
-            // 不再使用 minPagesPerEntry 逻辑
+        });
+        int[] result = new int[starts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = starts.get(i);
         }
+        return result;
+    }
 
-        // 后处理：如果目录为空但有内容，添加一个“开始阅读”条目
-        if (tocEntries.isEmpty() && totalPages > 0) {
-            tocEntries.add(new TableOfContents("开始阅读", 0));
-            Log.d(TAG, "TOC is empty, added '开始阅读' entry.");
+    /**
+     * 返回 [from, to) 中第一行章节标题的起始偏移量，没有时返回 -1。from 必须是行首。
+     * findChapterStarts 返回的章节起点都是这样的标题行。
+     */
+    public static int findFirstTitleLine(CharSequence text, int from, int to) {
+        int[] first = {-1};
+        forEachTitleLine(text, from, to, (lineStart, lineEnd, matcher) -> {
+            if (first[0] < 0) {
+                first[0] = lineStart;
+            }
+        });
+        return first[0];
+    }
+
+    // 扫描到一行章节标题时的回调，matcher 停留在这一行的匹配结果上
+    private interface TitleLineVisitor {
+        void onTitleLine(int lineStart, int lineEnd, Matcher matcher);
+    }
+
+    /**
+     * 把全文当作行流扫描一遍：只检查不超过 MAX_TITLE_LINE_CHARS 的行，
+     * 用同一个 Matcher 在行的范围内匹配，不为每行创建字符串。
+     */
+    private static void forEachTitleLine(CharSequence text, TitleLineVisitor visitor) {
+        forEachTitleLine(text, 0, text.length(), visitor);
+    }
+
+    // 只扫描从 [from, to) 开始的行，from 必须是行首
+    private static void forEachTitleLine(CharSequence text, int from, int to, TitleLineVisitor visitor) {
+        int length = text.length();
+        Matcher matcher = CHAPTER_PATTERN.matcher(text);
+        int lineStart = from;
+        while (lineStart < to) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && text.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd - lineStart <= MAX_TITLE_LINE_CHARS) {
+                matcher.region(lineStart, lineEnd);
+                if (matcher.lookingAt()) {
+                    String title = matcher.group(0).trim();
+                    if (title.length() > 2 && title.length() < 50 && !isGenericTitle(title)) {
+                        visitor.onTitleLine(lineStart, lineEnd, matcher);
+                    }
+                }
+            }
+            lineStart = lineEnd + 1;
         }
-        Log.d(TAG, "Generated TOC with " + tocEntries.size() + " entries.");
-        return tocEntries;
     }
 
-    // isTitleAlreadyAdded 和 getFirstNonEmptyLine 方法保持不变
-    private static boolean isTitleAlreadyAdded(List<TableOfContents> existingEntries, String newTitle) {
-        return existingEntries.stream().anyMatch(entry -> entry.title.equals(newTitle));
+    // 卷、部、篇一级的标题：第X卷/部/集/篇、卷X、上中下篇
+    private static boolean isVolumeTitle(Matcher matcher) {
+        if (matcher.group(2) != null || matcher.group(3) != null) {
+            return true;
+        }
+        String numbered = matcher.group(1);
+        return numbered != null && "篇卷集部".indexOf(numbered.charAt(numbered.length() - 1)) >= 0;
     }
 
-    private static String getFirstNonEmptyLine(String content) {
-        if (content == null || content.isEmpty()) {
-            return "";
+    // 去掉行首尾的空白（包括全角空格和 \r），得到整行标题，例如 "第一章 风起"
+    private static String trimLine(CharSequence text, int start, int end) {
+        while (start < end && isBlank(text.charAt(start))) {
+            start++;
         }
-        String[] lines = content.split("\n");
-        for (String line : lines) {
-            String trimmedLine = line.trim();
-            if (!trimmedLine.isEmpty()) {
-                return trimmedLine;
-            }
+        while (end > start && isBlank(text.charAt(end - 1))) {
+            end--;
         }
-        return "";
+        return text.subSequence(start, end).toString();
+    }
+
+    private static boolean isBlank(char c) {
+        return Character.isWhitespace(c) || c == '\u3000';
+    }
+
+    // 过短的纯汉字短语或数字，例如 "第一" (不带章)，不作为章节标题
+    private static boolean isGenericTitle(String title) {
+        return title.matches("^[\\u4E00-\\u9FA5]{1,2}$") || title.matches("^[\\d一二三四五六七八九十]{1,2}$");
     }
 }
\ No newline at end of file
@@ -3,61 +3,226 @@ package com.example.readera.utiles;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
-import java.io.BufferedReader;
+import androidx.annotation.Nullable;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets; // 引入 StandardCharsets
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 
 //文本读取
 public class TextFileReader {
     private static final String TAG = "TextFileReader";
 
-    public String readTextFromUri(Context context, Uri uri) {
-        StringBuilder stringBuilder = new StringBuilder();
+    // 每次映射的文件窗口大小，超大文件按窗口依次映射，不一次性映射整个文件
+    private static final int MAP_WINDOW_BYTES = 8 * 1024 * 1024;
+    // 不支持随机访问的 Provider（例如云盘、管道）退回到有界的流式读取
+    private static final int STREAM_BUFFER_BYTES = 64 * 1024;
+    // 解码输出缓冲区大小，解码结果从这里追加到 ChunkedText
+    private static final int DECODE_BUFFER_CHARS = 16 * 1024;
+
+    /**
+     * 读取文本文件，返回分块存储的文本。编码由 CharsetDetector 根据文件前缀探测。
+     * @return 解码后的文本；读取失败或任务被中断时返回 null
+     */
+    public CharSequence loadTextFromUri(Context context, Uri uri) {
+        return loadTextFromUri(context, uri, null);
+    }
 
+    /**
+     * 读取文本文件，返回分块存储的文本。
+     * 优先通过 openFileDescriptor + FileChannel.map 读取，峰值内存只与单个块有关，而不是整本书。
+     * 整个文件只解码一次，不再先按 UTF-8 读取失败后再按 GBK 重读。
+     * @param charset 已知的编码（例如数据库中缓存的探测结果），为 null 时先探测编码
+     * @return 解码后的文本；读取失败或任务被中断时返回 null
+     */
+    public CharSequence loadTextFromUri(Context context, Uri uri, @Nullable Charset charset) {
         try {
-            // 尝试 UTF-8
-            try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-                 BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    stringBuilder.append(line).append("\n");
-                }
-                Log.d(TAG, "Successfully read file with UTF-8 encoding.");
-                return stringBuilder.toString();
+            if (charset == null) {
+                charset = CharsetDetector.detect(context, uri);
             }
+            CharSequence text = decodeFromUri(context, uri, charset);
+            Log.d(TAG, "Successfully read file with " + charset.name() + " encoding.");
+            return text;
+        } catch (InterruptedIOException e) {
+            Log.d(TAG, "读取文件任务被中断: " + uri);
+            return null;
         } catch (IOException e) {
-            // 如果 UTF-8 读取失败，尝试 GBK
-            Log.e(TAG, "Failed to read file with UTF-8, attempting GBK: " + e.getMessage());
-            stringBuilder.setLength(0); // 清空 StringBuilder
-
-            try {
-                try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-                     BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "GBK"))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        stringBuilder.append(line).append("\n");
-                    }
-                    Log.d(TAG, "Successfully read file with GBK encoding.");
-                    return stringBuilder.toString();
-                }
-            } catch (IOException e2) {
-                // GBK 也失败了
-                Log.e(TAG, "Failed to read file with GBK encoding: " + e2.getMessage());
-                return null;
-            }
+            Log.e(TAG, "Failed to read file with " + (charset != null ? charset.name() : "unknown") + " encoding: " + e.getMessage());
+            return null;
         } catch (SecurityException e) {
             // 显式捕获 SecurityException
-            Log.e(TAG, "Permission Denial: Failed to open InputStream for URI: " + uri + " - " + e.getMessage(), e);
-            // 这里应该向用户显示错误信息，或者处理权限不足的情况
+            Log.e(TAG, "Permission Denial: Failed to open file for URI: " + uri + " - " + e.getMessage(), e);
             return null;
         } catch (Exception e) { // 捕获所有其他未知异常
             Log.e(TAG, "An unexpected error occurred while reading file for URI: " + uri + " - " + e.getMessage(), e);
             return null;
         }
-        // 确保所有路径都有返回值
     }
-}
\ No newline at end of file
+
+    /**
+     * 使用指定编码读取文本。
+     * 可寻址的文件使用内存映射分窗口解码；否则退回到有界缓冲的流式读取。
+     */
+    private CharSequence decodeFromUri(Context context, Uri uri, Charset charset) throws IOException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        TextSink sink = new TextSink();
+
+        ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "r");
+        if (pfd != null) {
+            try (ParcelFileDescriptor descriptor = pfd) {
+                // getStatSize() 返回 -1 说明不是普通文件（例如管道），无法映射
+                long size = descriptor.getStatSize();
+                if (size >= 0) {
+                    try (FileInputStream fis = new FileInputStream(descriptor.getFileDescriptor());
+                         FileChannel channel = fis.getChannel()) {
+                        decodeMapped(channel, size, decoder, sink);
+                        return sink.finish();
+                    }
+                }
+            }
+        }
+
+        Log.d(TAG, "文件描述符不可映射，使用流式读取: " + uri);
+        try (InputStream inputStream = context.getContentResolver().openInputStream(uri)) {
+            if (inputStream == null) {
+                throw new FileNotFoundException("无法打开输入流: " + uri);
+            }
+            decodeStream(Channels.newChannel(inputStream), decoder, sink);
+            return sink.finish();
+        }
+    }
+
+    // 按窗口映射文件并解码，每个窗口解码后即可被回收
+    private void decodeMapped(FileChannel channel, long size, CharsetDecoder decoder, TextSink sink) throws IOException {
+        CharBuffer out = CharBuffer.allocate(DECODE_BUFFER_CHARS);
+        long position = 0;
+        while (position < size) {
+            checkInterrupted();
+            long windowSize = Math.min(MAP_WINDOW_BYTES, size - position);
+            boolean lastWindow = position + windowSize >= size;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            decode(decoder, window, out, sink, lastWindow);
+            if (!lastWindow && window.position() == 0) {
+                throw new IOException("解码没有进展，position: " + position);
+            }
+            // 窗口末尾不完整的多字节字符留到下一个窗口重新映射
+            position += window.position();
+        }
+        if (size == 0) {
+            decode(decoder, ByteBuffer.allocate(0), out, sink, true);
+        }
+        flush(decoder, out, sink);
+    }
+
+    // 流式读取，只持有一个固定大小的字节缓冲
+    private void decodeStream(ReadableByteChannel channel, CharsetDecoder decoder, TextSink sink) throws IOException {
+        ByteBuffer in = ByteBuffer.allocate(STREAM_BUFFER_BYTES);
+        CharBuffer out = CharBuffer.allocate(DECODE_BUFFER_CHARS);
+        while (channel.read(in) != -1) {
+            checkInterrupted();
+            in.flip();
+            decode(decoder, in, out, sink, false);
+            in.compact();
+        }
+        in.flip();
+        decode(decoder, in, out, sink, true);
+        flush(decoder, out, sink);
+    }
+
+    private void decode(CharsetDecoder decoder, ByteBuffer in, CharBuffer out, TextSink sink, boolean endOfInput)
+            throws IOException {
+        while (true) {
+            CoderResult result = decoder.decode(in, out, endOfInput);
+            sink.drain(out);
+            if (result.isUnderflow()) {
+                return;
+            }
+            if (!result.isOverflow()) {
+                result.throwException();
+            }
+        }
+    }
+
+    private void flush(CharsetDecoder decoder, CharBuffer out, TextSink sink) throws IOException {
+        while (true) {
+            CoderResult result = decoder.flush(out);
+            sink.drain(out);
+            if (result.isUnderflow()) {
+                return;
+            }
+            if (!result.isOverflow()) {
+                result.throwException();
+            }
+        }
+    }
+
+    private void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Text loading interrupted.");
+        }
+    }
+
+    /**
+     * 解码结果的接收端：去掉 BOM、统一换行符（\r\n 和 \r 转为 \n），并追加到 ChunkedText。
+     */
+    private static class TextSink {
+        private final ChunkedText.Builder builder = new ChunkedText.Builder();
+        private boolean pendingCarriageReturn = false;
+
+        void drain(CharBuffer out) {
+            out.flip();
+            char[] array = out.array();
+            int start = out.arrayOffset() + out.position();
+            int end = out.arrayOffset() + out.limit();
+            // 跳过文件开头的 UTF-8 BOM
+            if (builder.length() == 0 && !pendingCarriageReturn && start < end && array[start] == '\uFEFF') {
+                start++;
+            }
+            int runStart = start;
+            for (int i = start; i < end; i++) {
+                char c = array[i];
+                if (pendingCarriageReturn) {
+                    pendingCarriageReturn = false;
+                    if (c == '\n') {
+                        // \r\n 中的 \r 已经写成了 \n，跳过这个 \n
+                        runStart = i + 1;
+                        continue;
+                    }
+                }
+                if (c == '\r') {
+                    builder.append(array, runStart, i - runStart);
+                    builder.append('\n');
+                    pendingCarriageReturn = true;
+                    runStart = i + 1;
+                }
+            }
+            builder.append(array, runStart, end - runStart);
+            out.clear();
+        }
+
+        ChunkedText finish() {
+            // 与原先逐行读取的行为保持一致：文本以换行结尾
+            if (builder.length() > 0 && builder.lastChar() != '\n') {
+                builder.append('\n');
+            }
+            return builder.build();
+        }
+    }
+}
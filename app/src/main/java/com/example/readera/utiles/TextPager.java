@@ -8,15 +8,19 @@ import android.text.StaticLayout;
 import android.text.TextPaint;
 import android.util.Log;
 import android.util.TypedValue;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class TextPager {
     private static final String TAG = "TextPager";
 
     private Context context;
-    private String fullText; // 完整文本内容
-    private List<String> pages; // 存储分页后的每一页内容
+    private CharSequence fullText; // 完整文本内容（通常是分块存储的 ChunkedText）
+    private PageTable pages; // 分页结果：页面起始偏移量表，页面内容是 fullText 上的视图
 
     private TextPaint textPaint; // 用于文本测量的画笔
     private int visibleWidth; // 文本可用的宽度（像素），不包括 NovelPageView 的内部内边距
@@ -25,14 +29,20 @@ public class TextPager {
     private float lineSpacingExtraDp; // 额外行间距（dp单位）
     private Typeface typeface; // 新增：用于文本测量的字体
 
+    // 增量分页的窗口大小（字符数）。第一个窗口较小，让首页尽快出现
+    private static final int FIRST_WINDOW_CHARS = 4 * 1024;
+    private static final int WINDOW_CHARS = 32 * 1024;
+    // 至少识别出这么多章节时才按章节并行分页；章节太少时每个单元都很长，并行收益有限，还多了强制换页
+    private static final int MIN_CHAPTERS_FOR_PARALLEL = 16;
+
     // 用于整个文本或大块文本的 StaticLayout 实例
     private StaticLayout fullLayout;
     private float lineSpacingExtraPx; // 预先计算的行间距像素值
 
-    public TextPager(Context context, String fullText) {
+    public TextPager(Context context, CharSequence fullText) {
         this.context = context.getApplicationContext(); // 使用 Application Context 避免内存泄漏
         this.fullText = (fullText != null) ? fullText : ""; // **关键：确保 fullText 不为 null**
-        this.pages = new ArrayList<>(); // 初始化 pages 列表
+        this.pages = new PageTable(this.fullText); // 初始化分页结果
         this.textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG); // 启用抗锯齿
         textPaint.setColor(android.graphics.Color.BLACK); // 默认颜色，可根据主题更改
     }
@@ -63,11 +73,48 @@ public class TextPager {
         this.typeface = typeface;
     }
 
-    // 获取分页后的页面列表
-    public List<String> getPages() {
+    // 获取分页结果
+    public PageTable getPages() {
         return pages;
     }
 
+    // 获取完整文本（解码后的整本书）
+    public CharSequence getFullText() {
+        return fullText;
+    }
+
+    // 获取完整文本的长度
+    public int getTextLength() {
+        return fullText.length();
+    }
+
+    // 返回每一页在完整文本中的起始偏移量
+    public int[] getPageStartOffsets() {
+        return pages.getPageStartOffsets();
+    }
+
+    /**
+     * 用缓存的页面起始偏移量直接恢复分页结果，不做任何排版。
+     * @param pageStartOffsets 严格递增、从 0 开始的页面起始偏移量
+     * @return 偏移量与当前文本不匹配时返回 false，此时分页结果保持为空
+     */
+    public boolean restorePages(int[] pageStartOffsets) {
+        pages = new PageTable(fullText);
+        fullLayout = null;
+        int textLength = fullText.length();
+        if (pageStartOffsets == null || pageStartOffsets.length == 0 || pageStartOffsets[0] != 0) {
+            return false;
+        }
+        for (int i = 1; i < pageStartOffsets.length; i++) {
+            if (pageStartOffsets[i] <= pageStartOffsets[i - 1] || pageStartOffsets[i] >= textLength) {
+                return false;
+            }
+        }
+        pages = new PageTable(fullText, pageStartOffsets, textLength);
+        Log.d(TAG, "已从缓存恢复分页结果。总页数: " + pages.size());
+        return true;
+    }
+
     // 获取当前字体大小（sp）
     public float getTextSize() {
         return textSizeSp;
@@ -93,6 +140,15 @@ public class TextPager {
         return typeface;
     }
 
+    // 核心：在分页前一次性设置并计算所有必要的 TextPaint 属性和行间距
+    private void prepareMeasurement() {
+        textPaint.setTextSize(TypedValue.applyDimension(
+                TypedValue.COMPLEX_UNIT_SP, textSizeSp, context.getResources().getDisplayMetrics()));
+        textPaint.setTypeface(typeface);
+        this.lineSpacingExtraPx = TypedValue.applyDimension(
+                TypedValue.COMPLEX_UNIT_DIP, lineSpacingExtraDp, context.getResources().getDisplayMetrics());
+    }
+
     /**
      * 对完整文本进行分页，生成每一页的内容。
      * **关键：在每次调用时都会清除之前的分页结果并重新计算。**
@@ -100,20 +156,15 @@ public class TextPager {
      */
     public void paginate() throws InterruptedException {
         // **关键：在每次分页开始时清空旧的页面数据**
-        pages.clear();
+        pages = new PageTable(fullText);
         fullLayout = null; // 清除旧的 StaticLayout 实例
 
-        if (fullText.isEmpty() || visibleWidth <= 0 || visibleHeight <= 0) {
+        if (fullText.length() == 0 || visibleWidth <= 0 || visibleHeight <= 0) {
             Log.w(TAG, "无法分页：文本为空或可见区域未设置/为零。");
             return;
         }
 
-        // 核心：在分页前一次性设置并计算所有必要的 TextPaint 属性和行间距
-        textPaint.setTextSize(TypedValue.applyDimension(
-                TypedValue.COMPLEX_UNIT_SP, textSizeSp, context.getResources().getDisplayMetrics()));
-        textPaint.setTypeface(typeface);
-        this.lineSpacingExtraPx = TypedValue.applyDimension(
-                TypedValue.COMPLEX_UNIT_DIP, lineSpacingExtraDp, context.getResources().getDisplayMetrics());
+        prepareMeasurement();
 
         // 步骤 1: 为整个文本创建单个 StaticLayout
         // 使用 builder 模式来创建 StaticLayout，更灵活且推荐
@@ -174,7 +225,11 @@ public class TextPager {
             // 安全检查和极端情况处理
             // 确保偏移量有效且不越界
             pageStartOffset = Math.max(0, pageStartOffset);
-            pageEndOffset = Math.min(pageEndOffset, fullText.length());
+            if (!pages.isEmpty()) {
+                // 页面必须首尾相接（上一页可能被强制前进过一个字符）
+                pageStartOffset = Math.max(pageStartOffset, pages.getPageEnd(pages.size() - 1));
+            }
+            pageEndOffset = Math.max(Math.min(pageEndOffset, fullText.length()), pageStartOffset);
 
             // 确保结束偏移量不小于起始偏移量
             // 如果计算出的页面范围为空，但文本仍有内容，强制前进一个字符以避免死循环
@@ -186,14 +241,382 @@ public class TextPager {
                 break;
             }
 
-            // 截取当前页的文本内容并添加到 pages 列表中
-            String pageContent = fullText.substring(pageStartOffset, pageEndOffset);
-            pages.add(pageContent);
-            //Log.d(TAG, "分页页面 " + pages.size() + ", 行范围 [" + startLine + ", " + (pageEndLine - 1) + "], 文本长度: " + pageContent.length());
+            // 只记录当前页的范围，不截取文本
+            pages.addPage(pageStartOffset, pageEndOffset);
+            //Log.d(TAG, "分页页面 " + pages.size() + ", 行范围 [" + startLine + ", " + (pageEndLine - 1) + "], 文本长度: " + (pageEndOffset - pageStartOffset));
 
             // 移动到下一页的起始行
             startLine = pageEndLine;
         }
         Log.d(TAG, "分页完成。总页数: " + pages.size());
     }
-}
\ No newline at end of file
+
+    /**
+     * 增量分页的结果接收者。回调在分页线程上执行，每次传入的都是新的、不会再被修改的批次。
+     */
+    public interface PageSink {
+        // 新页面追加到末尾
+        void onPagesAppended(PageTable newPages);
+
+        // 新页面插入到开头（按阅读顺序排列）
+        void onPagesPrepended(PageTable newPages);
+    }
+
+    /**
+     * 增量分页：以段落为单位分窗口排版，每排好一个窗口就把其中完整的页面交给 sink。
+     * 先从 anchorOffset 所在段落向后排到文末，再从该段落向前排到文首。
+     * 段落之间的换行互不影响，所以按段落边界切分窗口得到的行与整本排版一致；
+     * 首页出现的时间只取决于第一个窗口的大小，与全书长度无关。
+     *
+     * @param anchorOffset 需要最先显示的字符偏移量（例如上次阅读的位置）
+     * @param sink         页面批次的接收者
+     * @throws InterruptedException 如果分页任务被中断
+     */
+    public void paginateIncrementally(int anchorOffset, PageSink sink) throws InterruptedException {
+        pages = new PageTable(fullText);
+        fullLayout = null;
+
+        if (fullText.length() == 0 || visibleWidth <= 0 || visibleHeight <= 0) {
+            Log.w(TAG, "无法分页：文本为空或可见区域未设置/为零。");
+            return;
+        }
+        prepareMeasurement();
+        pages = new PageTable(fullText, newLineTable()); // 汇总各批次的行，内存中的分页结果也能按行绘制
+
+        int anchor = findParagraphStart(Math.max(0, Math.min(anchorOffset, fullText.length() - 1)));
+        ForwardCursor cursor = new ForwardCursor(anchor);
+        paginateForward(cursor, fullText.length(), FIRST_WINDOW_CHARS, sink);
+        finishForward(cursor, fullText.length(), sink);
+        paginateBackward(0, anchor, sink);
+        Log.d(TAG, "增量分页完成。总页数: " + pages.size());
+    }
+
+    // 向后分页的进度，可以跨多次 paginateForward 调用继续
+    private final class ForwardCursor {
+        int position; // 下一个窗口的起始偏移量
+        int pageStart; // 当前未完成页面的起始偏移量
+        int pageHeight; // 当前未完成页面已累计的高度
+        // 一个窗口里可能没有完成任何页面，此时排好的行留在批次里，和后面的页面一起交出去
+        PageTable batch = new PageTable(fullText, newLineTable());
+
+        ForwardCursor(int start) {
+            position = start;
+            pageStart = start;
+        }
+    }
+
+    /**
+     * 从 cursor 的位置向后分页到 end（段落起点或文末），只交出已经完成的页面；
+     * 最后一页留在 cursor 中，可以继续向后排，也可以用 finishForward 在 end 处结束。
+     */
+    private void paginateForward(ForwardCursor cursor, int end, int firstWindowChars, PageSink sink)
+            throws InterruptedException {
+        int windowChars = firstWindowChars;
+        while (cursor.position < end) {
+            checkInterrupted();
+            int windowStart = cursor.position;
+            int windowEnd = Math.min(findParagraphEnd(windowStart + windowChars), end);
+            StaticLayout layout = buildWindowLayout(windowStart, windowEnd);
+            int lineCount = countWindowLines(layout, windowStart, windowEnd);
+            recordLines(cursor.batch.getLines(), layout, windowStart, lineCount);
+
+            for (int i = 0; i < lineCount; i++) {
+                int lineHeight = layout.getLineBottom(i) - layout.getLineTop(i);
+                if (cursor.pageHeight > 0 && cursor.pageHeight + lineHeight > visibleHeight) {
+                    int lineStart = windowStart + layout.getLineStart(i);
+                    cursor.batch.addPage(cursor.pageStart, lineStart);
+                    cursor.pageStart = lineStart;
+                    cursor.pageHeight = 0;
+                }
+                // 单独一行就超过页面高度时，这一行也独占一页
+                cursor.pageHeight += lineHeight;
+            }
+            appendBatch(cursor, sink);
+            cursor.position = windowEnd;
+            windowChars = WINDOW_CHARS;
+        }
+    }
+
+    // 在 end 处结束 cursor 中未完成的页面（章节末尾或文末）
+    private void finishForward(ForwardCursor cursor, int end, PageSink sink) {
+        if (cursor.pageStart < end) {
+            cursor.batch.addPage(cursor.pageStart, end);
+        }
+        appendBatch(cursor, sink);
+        cursor.pageStart = end;
+        cursor.pageHeight = 0;
+    }
+
+    // 交出 cursor 中已完成的页面，换一个新的批次接收之后的行
+    private void appendBatch(ForwardCursor cursor, PageSink sink) {
+        if (!cursor.batch.isEmpty()) {
+            appendBatch(cursor.batch, sink);
+            cursor.batch = new PageTable(fullText, newLineTable());
+        }
+    }
+
+    private void appendBatch(PageTable batch, PageSink sink) {
+        if (!batch.isEmpty()) {
+            pages.append(batch);
+            sink.onPagesAppended(batch);
+        }
+    }
+
+    // 从 from 向前分页到 to（都是段落起点），页面从下往上填充，to 总是一页的开头
+    private void paginateBackward(int to, int from, PageSink sink) throws InterruptedException {
+        int pageEnd = from; // 当前未完成页面的结束偏移量
+        int pageHeight = 0;
+        int windowEnd = from;
+        PageTable batch = new PageTable(fullText, newLineTable());
+
+        while (windowEnd > to) {
+            checkInterrupted();
+            int windowStart = Math.max(to, findParagraphStart(Math.max(0, windowEnd - WINDOW_CHARS)));
+            StaticLayout layout = buildWindowLayout(windowStart, windowEnd);
+            int lineCount = countWindowLines(layout, windowStart, windowEnd);
+            LineTable windowLines = newLineTable();
+            recordLines(windowLines, layout, windowStart, lineCount);
+            batch.getLines().prepend(windowLines);
+
+            for (int i = lineCount - 1; i >= 0; i--) {
+                int lineHeight = layout.getLineBottom(i) - layout.getLineTop(i);
+                if (pageHeight > 0 && pageHeight + lineHeight > visibleHeight) {
+                    int nextLineStart = windowStart + layout.getLineEnd(i);
+                    batch.addPageFirst(nextLineStart, pageEnd);
+                    pageEnd = nextLineStart;
+                    pageHeight = 0;
+                }
+                pageHeight += lineHeight;
+            }
+            if (windowStart == to && pageEnd > to) {
+                batch.addPageFirst(to, pageEnd);
+            }
+            if (!batch.isEmpty()) {
+                pages.prepend(batch);
+                sink.onPagesPrepended(batch);
+                batch = new PageTable(fullText, newLineTable());
+            }
+            windowEnd = windowStart;
+        }
+    }
+
+    /**
+     * 按章节并行分页：每个章节从新的一页开始，是独立的排版单元，可以在多个线程上同时排版。
+     * 识别章节要扫描全文，所以扫描在线程池里进行，调用线程同时排 anchorOffset 之后的第一个窗口；
+     * 窗口只排到其后第一个标题行为止，章节起点都是标题行，这一段里的页面不受分页方式影响，
+     * 首页出现的时间和增量分页一样。
+     * 识别出的章节少于 MIN_CHAPTERS_FOR_PARALLEL 时退回到增量分页。否则其余章节按阅读顺序的优先级
+     * 提交到线程池：先是之后的章节（结果追加到末尾），再是之前的章节（结果倒序插入到开头）；
+     * anchor 所在章节仍由调用线程从 anchor 向后、再向前排，结果按顺序交给 sink。
+     *
+     * @param anchorOffset 需要最先显示的字符偏移量
+     * @param pool         执行章节扫描和排版任务的线程池
+     * @param sink         页面批次的接收者
+     * @throws InterruptedException 如果分页任务被中断
+     */
+    public void paginateByChapters(int anchorOffset, ExecutorService pool, PageSink sink)
+            throws InterruptedException {
+        pages = new PageTable(fullText);
+        fullLayout = null;
+
+        int textLength = fullText.length();
+        if (textLength == 0 || visibleWidth <= 0 || visibleHeight <= 0) {
+            Log.w(TAG, "无法分页：文本为空或可见区域未设置/为零。");
+            return;
+        }
+        prepareMeasurement();
+        pages = new PageTable(fullText, newLineTable());
+
+        CharSequence text = fullText;
+        Future<int[]> chapterScan = pool.submit(() -> TableOfContentsGenerator.findChapterStarts(text));
+        List<Future<PageTable>> forward = new ArrayList<>();
+        List<Future<PageTable>> backward = new ArrayList<>();
+        try {
+            int anchor = findParagraphStart(Math.max(0, Math.min(anchorOffset, textLength - 1)));
+            ForwardCursor cursor = new ForwardCursor(anchor);
+            int firstWindowEnd = findParagraphEnd(anchor + FIRST_WINDOW_CHARS);
+            int firstTitle = TableOfContentsGenerator.findFirstTitleLine(fullText, findParagraphEnd(anchor), firstWindowEnd);
+            paginateForward(cursor, firstTitle >= 0 ? firstTitle : firstWindowEnd, FIRST_WINDOW_CHARS, sink);
+
+            int[] chapterStarts = await(chapterScan);
+            if (chapterStarts.length < MIN_CHAPTERS_FOR_PARALLEL) {
+                paginateForward(cursor, textLength, WINDOW_CHARS, sink);
+                finishForward(cursor, textLength, sink);
+                paginateBackward(0, anchor, sink);
+                Log.d(TAG, "章节数 " + chapterStarts.length + "，按增量分页完成。总页数: " + pages.size());
+                return;
+            }
+
+            // 排版单元的边界：文首、各章节起点、文末
+            int[] bounds = new int[chapterStarts.length + 2];
+            int boundCount = 0;
+            bounds[boundCount++] = 0;
+            for (int start : chapterStarts) {
+                if (start > bounds[boundCount - 1] && start < textLength) {
+                    bounds[boundCount++] = start;
+                }
+            }
+            bounds[boundCount++] = textLength;
+            int unitCount = boundCount - 1;
+
+            int anchorUnit = 0;
+            while (anchorUnit + 1 < unitCount && bounds[anchorUnit + 1] <= anchor) {
+                anchorUnit++;
+            }
+
+            // 提交顺序即优先级：anchor 之后的章节先排版
+            for (int i = anchorUnit + 1; i < unitCount; i++) {
+                forward.add(submitUnit(pool, bounds[i], bounds[i + 1]));
+            }
+            for (int i = anchorUnit - 1; i >= 0; i--) {
+                backward.add(submitUnit(pool, bounds[i], bounds[i + 1]));
+            }
+            paginateForward(cursor, bounds[anchorUnit + 1], WINDOW_CHARS, sink);
+            finishForward(cursor, bounds[anchorUnit + 1], sink);
+            for (Future<PageTable> future : forward) {
+                appendBatch(await(future), sink);
+            }
+            paginateBackward(bounds[anchorUnit], anchor, sink);
+            for (Future<PageTable> future : backward) {
+                PageTable batch = await(future);
+                pages.prepend(batch);
+                sink.onPagesPrepended(batch);
+            }
+            Log.d(TAG, "按章节并行分页完成。章节数: " + unitCount + "，总页数: " + pages.size());
+        } finally {
+            // 被中断或出错时，取消还没完成的扫描和排版任务
+            chapterScan.cancel(true);
+            for (Future<PageTable> future : forward) {
+                future.cancel(true);
+            }
+            for (Future<PageTable> future : backward) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private Future<PageTable> submitUnit(ExecutorService pool, int start, int end) {
+        TextPaint paint = new TextPaint(textPaint);
+        return pool.submit(() -> paginateRange(start, end, paint));
+    }
+
+    private static <T> T await(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("章节排版失败", cause);
+        }
+    }
+
+    /**
+     * 对 [rangeStart, rangeEnd) 独立分页，rangeStart 总是新的一页。
+     * rangeStart 必须是段落起点；按段落窗口排版，峰值内存只与窗口大小有关。
+     */
+    private PageTable paginateRange(int rangeStart, int rangeEnd, TextPaint paint) throws InterruptedException {
+        PageTable result = new PageTable(fullText, newLineTable());
+        int pageStart = rangeStart;
+        int pageHeight = 0;
+        int windowStart = rangeStart;
+        while (windowStart < rangeEnd) {
+            checkInterrupted();
+            int windowEnd = Math.min(findParagraphEnd(windowStart + WINDOW_CHARS), rangeEnd);
+            StaticLayout layout = buildWindowLayout(windowStart, windowEnd, paint);
+            int lineCount = countWindowLines(layout, windowStart, windowEnd);
+            recordLines(result.getLines(), layout, windowStart, lineCount);
+            for (int i = 0; i < lineCount; i++) {
+                int lineHeight = layout.getLineBottom(i) - layout.getLineTop(i);
+                if (pageHeight > 0 && pageHeight + lineHeight > visibleHeight) {
+                    int lineStart = windowStart + layout.getLineStart(i);
+                    result.addPage(pageStart, lineStart);
+                    pageStart = lineStart;
+                    pageHeight = 0;
+                }
+                pageHeight += lineHeight;
+            }
+            windowStart = windowEnd;
+        }
+        if (pageStart < rangeEnd) {
+            result.addPage(pageStart, rangeEnd);
+        }
+        return result;
+    }
+
+    // 把窗口中排好的行（偏移量、行高、基线）追加到行表，供 NovelPageView 直接绘制
+    private void recordLines(LineTable target, StaticLayout layout, int windowStart, int lineCount) {
+        for (int i = 0; i < lineCount; i++) {
+            int top = layout.getLineTop(i);
+            target.addLine(windowStart + layout.getLineStart(i), windowStart + layout.getLineEnd(i),
+                    layout.getLineBottom(i) - top, layout.getLineBaseline(i) - top);
+        }
+    }
+
+    // 空行表，记录本次分页的断行宽度、字号、行间距和字体；在 prepareMeasurement 之后调用
+    private LineTable newLineTable() {
+        return new LineTable(visibleWidth, textPaint.getTextSize(), lineSpacingExtraPx, typeface);
+    }
+
+    // 为 [start, end) 这段文本创建 StaticLayout，子序列不拷贝字符
+    private StaticLayout buildWindowLayout(int start, int end) {
+        return buildWindowLayout(start, end, textPaint);
+    }
+
+    // 并行分页时每个线程使用自己的 TextPaint（TextPaint 不是线程安全的）
+    private StaticLayout buildWindowLayout(int start, int end, TextPaint paint) {
+        CharSequence window = fullText.subSequence(start, end);
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
+            return StaticLayout.Builder.obtain(window, 0, window.length(), paint, visibleWidth)
+                    .setAlignment(Layout.Alignment.ALIGN_NORMAL)
+                    .setLineSpacing(lineSpacingExtraPx, 1.0f)
+                    .setIncludePad(false)
+                    .build();
+        }
+        return new StaticLayout(window, paint, visibleWidth,
+                Layout.Alignment.ALIGN_NORMAL, 1.0f, lineSpacingExtraPx, false);
+    }
+
+    /**
+     * 窗口以换行符结尾时，StaticLayout 会在末尾多出一个空行；
+     * 除非已到文末，这个空行实际属于下一个窗口的第一段，不计入本窗口。
+     */
+    private int countWindowLines(StaticLayout layout, int windowStart, int windowEnd) {
+        int lineCount = layout.getLineCount();
+        if (windowEnd < fullText.length() && lineCount > 1
+                && windowStart + layout.getLineStart(lineCount - 1) >= windowEnd) {
+            lineCount--;
+        }
+        return lineCount;
+    }
+
+    // 返回 offset 所在段落的起始偏移量
+    private int findParagraphStart(int offset) {
+        int i = Math.min(offset, fullText.length());
+        while (i > 0 && fullText.charAt(i - 1) != '\n') {
+            i--;
+        }
+        return i;
+    }
+
+    // 返回 offset 之后第一个段落结束（换行符之后）的偏移量；没有换行时返回文末
+    private int findParagraphEnd(int offset) {
+        int length = fullText.length();
+        int i = Math.min(offset, length);
+        while (i < length && fullText.charAt(i) != '\n') {
+            i++;
+        }
+        return Math.min(i + 1, length);
+    }
+
+    private void checkInterrupted() throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            Log.d(TAG, "TextPager 增量分页任务被中断。");
+            throw new InterruptedException("Pagination task interrupted.");
+        }
+    }
+}
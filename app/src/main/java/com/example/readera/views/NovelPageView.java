@@ -15,6 +15,12 @@ import android.view.View;
 import androidx.annotation.Nullable;
 import androidx.core.content.res.ResourcesCompat;
 
+import com.example.readera.utiles.LineTable;
+import com.example.readera.utiles.PageLayoutPrefetcher;
+import com.example.readera.utiles.PageRasterCache;
+import com.example.readera.utiles.PageTable;
+import com.example.readera.utiles.ReadingSettings;
+
 import java.util.Objects;
 
 //自定义view
@@ -22,7 +28,16 @@ public class NovelPageView extends View {
 
     private TextPaint textPaint;
     private StaticLayout staticLayout;
-    private String pageText = "";
+    private CharSequence pageText = "";
+
+    // 分页时排好的行；有行数据时直接按行绘制，不再为每一页创建 StaticLayout
+    private CharSequence fullText;
+    private LineTable pageLines;
+    private int firstLine = -1, lineEnd = -1; // 本页在行表中的范围 [firstLine, lineEnd)
+    // 后台预排好的本页，可用时直接绘制，字形已在后台测量
+    private PageLayoutPrefetcher.PreparedPage preparedPage;
+    // 后台画好的本页位图，使用预排版面时直接贴图；引用由 NovelPageAdapter 向 PageRasterCache 取得和释放
+    private PageRasterCache.PageRaster pageRaster;
 
     // 阅读设置
     private float  textSizeSp; // 文本大小，单位像素
@@ -30,6 +45,7 @@ public class NovelPageView extends View {
     private float  lineSpacingExtraDp; // 行间距，单位像素
     private Typeface textTypeface; // 字体
     private int pagePaddingLeft, pagePaddingTop, pagePaddingRight, pagePaddingBottom; // 页面内边距
+    private int appliedSettingsVersion = -1; // 最近一次应用的设置快照版本
 
     // 新增：系统栏内边距
     private int statusBarPadding = 0;
@@ -68,6 +84,34 @@ public class NovelPageView extends View {
 
     // --- 公共设置方法，用于阅读设置 ---
 
+    /**
+     * 一次性应用阅读设置快照。版本与上次相同时直接返回，绑定页面时几乎没有开销。
+     * 这里不重新排版，调用方随后调用 setPage，由它按新设置排一次。
+     */
+    public void applySettings(ReadingSettings settings) {
+        if (settings == null || settings.getVersion() == appliedSettingsVersion) {
+            return;
+        }
+        appliedSettingsVersion = settings.getVersion();
+        if (this.textSizeSp != settings.getTextSizeSp()) {
+            this.textSizeSp = settings.getTextSizeSp();
+            textPaint.setTextSize(spToPx(this.textSizeSp));
+        }
+        if (!Objects.equals(this.textTypeface, settings.getTypeface())) {
+            this.textTypeface = settings.getTypeface();
+            textPaint.setTypeface(this.textTypeface);
+        }
+        this.textColor = settings.getTextColor();
+        textPaint.setColor(this.textColor);
+        this.lineSpacingExtraDp = settings.getLineSpacingExtraDp();
+        this.pagePaddingLeft = settings.getPaddingLeft();
+        this.pagePaddingTop = settings.getPaddingTop();
+        this.pagePaddingRight = settings.getPaddingRight();
+        this.pagePaddingBottom = settings.getPaddingBottom();
+        staticLayout = null; // 旧的版面是按旧设置排的，不能再画
+        invalidate();
+    }
+
     public void setTextSize(float  sp) {
         if (this.textSizeSp != sp) {
             this.textSizeSp = sp;
@@ -116,18 +160,98 @@ public class NovelPageView extends View {
 
     /**
      * 设置页面的文本内容。
-     * @param text 要显示在此页面的字符串内容。
+     * @param text 要显示在此页面的文本内容（可以是完整文本上的视图，不必拷贝成 String）。
      */
-    public void setPageText(String text) {
+    public void setPageText(CharSequence text) {
         if (text == null) {
             this.pageText = "";
         } else {
             this.pageText = text;
         }
+        preparedPage = null;
+        pageRaster = null;
+        clearPageLines();
         recreateStaticLayout();
         invalidate();
     }
 
+    /**
+     * 显示分页结果中的第 index 页。
+     * 如果分页时记录了这一页的行且排版参数与当前视图一致，直接按这些行绘制；
+     * 否则退回到 StaticLayout。从磁盘缓存恢复的分页结果不带行数据（缓存只保存页面起点），
+     * 这些页面由 PageLayoutPrefetcher 在后台预排，只有预排完成前绑定的页面会在主线程上排版。
+     */
+    public void setPage(PageTable pages, int index) {
+        setPage(pages, index, null, null);
+    }
+
+    /**
+     * 显示分页结果中的第 index 页，并优先使用后台预排好的版面和画好的位图
+     * （为 null 或与当前尺寸、设置不符时忽略）。
+     */
+    public void setPage(PageTable pages, int index, @Nullable PageLayoutPrefetcher.PreparedPage prepared,
+                        @Nullable PageRasterCache.PageRaster raster) {
+        this.preparedPage = prepared;
+        this.pageRaster = raster;
+        this.pageText = pages.getPage(index);
+        this.fullText = pages.getText();
+        this.pageLines = pages.getLines();
+        this.firstLine = pages.getFirstLineOfPage(index);
+        this.lineEnd = pages.getLineEndOfPage(index);
+        recreateStaticLayout();
+        invalidate();
+    }
+
+    /**
+     * 不再贴绑定时的页面位图，之后按文字绘制。视图被回收、位图引用释放时调用。
+     */
+    public void clearPageRaster() {
+        if (pageRaster != null) {
+            pageRaster = null;
+            invalidate();
+        }
+    }
+
+    private void clearPageLines() {
+        fullText = null;
+        pageLines = null;
+        firstLine = -1;
+        lineEnd = -1;
+    }
+
+    // 是否可以直接使用分页时排好的行：断行宽度、字号、行间距和字体都要与当前一致。
+    // 设置刚改变、新的分页还没完成时，旧的行不能用新的画笔绘制，退回到 StaticLayout
+    private boolean canDrawPageLines(int availableWidth) {
+        return pageLines != null && firstLine >= 0 && lineEnd >= firstLine
+                && pageLines.isLaidOutWith(availableWidth, textPaint.getTextSize(),
+                dpToPx(lineSpacingExtraDp), textTypeface);
+    }
+
+    /**
+     * 预排好的版面是否与当前设置和宽度一致。有分页行数据时还要求每行的起点与分页结果相同，
+     * 保证换用预排版面后页面内容不变。
+     */
+    private boolean canUsePreparedPage(int availableWidth) {
+        if (preparedPage == null || preparedPage.width != availableWidth
+                || preparedPage.settingsVersion != appliedSettingsVersion) {
+            return false;
+        }
+        if (!canDrawPageLines(availableWidth)) {
+            return true;
+        }
+        StaticLayout layout = preparedPage.layout;
+        int lineCount = lineEnd - firstLine;
+        if (layout.getLineCount() < lineCount) {
+            return false;
+        }
+        for (int i = 0; i < lineCount; i++) {
+            if (layout.getLineStart(i) != pageLines.getLineStart(firstLine + i) - preparedPage.pageStart) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * 设置系统栏（状态栏和导航栏）引起的额外内边距。
      * 这个方法应该由外部调用，当获取到 Insets 后设置。
@@ -165,6 +289,16 @@ public class NovelPageView extends View {
             return;
         }
 
+        if (canUsePreparedPage(availableWidth)) {
+            staticLayout = preparedPage.layout; // 后台已经排好，主线程不需要测量
+            return;
+        }
+
+        if (canDrawPageLines(availableWidth)) {
+            staticLayout = null; // 按行绘制，不需要重新断行
+            return;
+        }
+
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
             staticLayout = StaticLayout.Builder.obtain(pageText, 0, pageText.length(), textPaint, availableWidth)
                     .setAlignment(Layout.Alignment.ALIGN_NORMAL)
@@ -211,7 +345,14 @@ public class NovelPageView extends View {
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
-        if (staticLayout != null) {
+        if (canDrawPageRaster()) {
+            canvas.drawBitmap(pageRaster.bitmap, 0, 0, null);
+        } else if (staticLayout == null && getWidth() > 0 && canDrawPageLines(getContentWidth())) {
+            canvas.save();
+            canvas.translate(pagePaddingLeft, pagePaddingTop+statusBarPadding);
+            drawPageLines(canvas);
+            canvas.restore();
+        } else if (staticLayout != null) {
             // 绘制前应用内边距
             canvas.save();
             canvas.translate(pagePaddingLeft, pagePaddingTop+statusBarPadding);
@@ -220,6 +361,29 @@ public class NovelPageView extends View {
         }
     }
 
+    // 位图是用当前正在使用的预排版面画的，而且尺寸一致。绑定期间位图由适配器持有引用，内容不会被改写
+    private boolean canDrawPageRaster() {
+        return pageRaster != null && preparedPage != null
+                && staticLayout == preparedPage.layout && pageRaster.source == preparedPage
+                && pageRaster.bitmap.getWidth() == getWidth() && pageRaster.bitmap.getHeight() == getHeight();
+    }
+
+    // 按分页时记录的行高和基线逐行绘制，行尾的换行符不画
+    private void drawPageLines(Canvas canvas) {
+        int y = 0;
+        for (int i = firstLine; i < lineEnd; i++) {
+            int start = pageLines.getLineStart(i);
+            int end = pageLines.getLineEnd(i);
+            while (end > start && (fullText.charAt(end - 1) == '\n' || fullText.charAt(end - 1) == '\r')) {
+                end--;
+            }
+            if (end > start) {
+                canvas.drawText(fullText, start, end, 0, y + pageLines.getLineBaselineOffset(i), textPaint);
+            }
+            y += pageLines.getLineHeight(i);
+        }
+    }
+
     private float spToPx(float spValue) {
         return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, spValue, getResources().getDisplayMetrics());
     }
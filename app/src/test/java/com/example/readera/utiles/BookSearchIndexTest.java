@@ -0,0 +1,148 @@
+package com.example.readera.utiles;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * BookSearchIndex 的查询结果与逐字符暴力扫描对比。
+ * 文本超过两段，覆盖跨段边界的匹配、重叠匹配、英文大小写折叠、单字符和含空白的查询。
+ */
+public class BookSearchIndexTest {
+    private static final String KEY = "test-book";
+    private static final int SEGMENT = BookSearchIndex.SEGMENT_CHARS;
+
+    @ClassRule
+    public static TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 建索引需要扫描两百多万字符，所有用例共用一份
+    private static BookSearchIndex index;
+    private static String text;
+
+    @BeforeClass
+    public static void buildIndex() throws IOException, InterruptedException {
+        index = new BookSearchIndex(tempFolder.newFolder("search_index"));
+        text = buildText();
+        index.build(KEY, text);
+    }
+
+    @Test
+    public void matchesSpanningSegmentBoundaries() throws InterruptedException {
+        assertMatchesBruteForce("边界匹配");
+        assertMatchesBruteForce("界匹"); // 两个字正好分在段边界两侧
+        assertMatchesBruteForce("匹配");
+    }
+
+    @Test
+    public void overlappingMatchesAreAllReported() throws InterruptedException {
+        assertMatchesBruteForce("aa");
+        assertMatchesBruteForce("aaa");
+        assertMatchesBruteForce("哈哈哈");
+    }
+
+    @Test
+    public void englishLettersAreCaseFolded() throws InterruptedException {
+        assertMatchesBruteForce("Ab");
+        assertMatchesBruteForce("ABC");
+        assertMatchesBruteForce("readEra");
+    }
+
+    @Test
+    public void singleCharacterAndWhitespaceQueriesScanText() throws InterruptedException {
+        assertMatchesBruteForce("a");
+        assertMatchesBruteForce("B");
+        assertMatchesBruteForce("中");
+        assertMatchesBruteForce(" ");
+        assertMatchesBruteForce("a b");
+        assertMatchesBruteForce("　中");
+    }
+
+    @Test
+    public void absentQueriesReturnNothing() throws InterruptedException {
+        assertMatchesBruteForce("不存在的词");
+        assertMatchesBruteForce("zz");
+    }
+
+    @Test
+    public void randomQueriesMatchBruteForce() throws InterruptedException {
+        Random random = new Random(7);
+        for (int i = 0; i < 50; i++) {
+            int length = 1 + random.nextInt(4);
+            int start = random.nextInt(text.length() - length);
+            String query = text.substring(start, start + length);
+            if (random.nextBoolean()) {
+                query = query.toUpperCase();
+            }
+            assertMatchesBruteForce(query);
+        }
+    }
+
+    private void assertMatchesBruteForce(String query) throws InterruptedException {
+        List<Integer> found = new ArrayList<>();
+        boolean indexed = index.search(KEY, text, query, (offsets, count) -> {
+            for (int i = 0; i < count; i++) {
+                found.add(offsets[i]);
+            }
+            return true;
+        });
+        assertTrue("索引不可用: " + query, indexed);
+        assertArrayEquals("查询 \"" + query + "\"", bruteForce(text, query), toArray(found));
+    }
+
+    private static int[] bruteForce(String text, String query) {
+        List<Integer> hits = new ArrayList<>();
+        int m = query.length();
+        for (int p = 0; p + m <= text.length(); p++) {
+            boolean match = true;
+            for (int i = 0; i < m && match; i++) {
+                match = fold(text.charAt(p + i)) == fold(query.charAt(i));
+            }
+            if (match) {
+                hits.add(p);
+            }
+        }
+        return toArray(hits);
+    }
+
+    private static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    // 两段多一点的随机文本，字符集很小以产生大量重叠匹配；在每个段边界两侧放入固定的词
+    private static String buildText() {
+        String alphabet = "aAbBcC 　\n中文哈边界";
+        Random random = new Random(42);
+        int length = 2 * SEGMENT + 4096;
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        for (int boundary = SEGMENT; boundary < length; boundary += SEGMENT) {
+            place(builder, boundary - 2, "边界匹配"); // 前两个字在上一段，后两个字在下一段
+            place(builder, boundary - 12, "ReadEra");
+            place(builder, boundary + 16, "哈哈哈哈");
+        }
+        return builder.toString();
+    }
+
+    private static void place(StringBuilder builder, int start, String word) {
+        builder.replace(start, start + word.length(), word);
+    }
+}
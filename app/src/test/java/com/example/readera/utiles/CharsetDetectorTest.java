@@ -0,0 +1,112 @@
+package com.example.readera.utiles;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CharsetDetector 的 UTF-8 校验：按 RFC 3629 拒绝过长编码、代理项和超出 U+10FFFF 的编码，
+ * 末尾被截断的字符只有在样本是文件前缀时才接受。
+ */
+public class CharsetDetectorTest {
+
+    @Test
+    public void acceptsWellFormedSequences() {
+        assertValid("ASCII", "Hello, world\n".getBytes(StandardCharsets.US_ASCII));
+        assertValid("中文", "第一章 开始".getBytes(StandardCharsets.UTF_8));
+        assertValid("两字节", bytes(0xC3, 0xA9));
+        assertValid("U+0800", bytes(0xE0, 0xA0, 0x80));
+        assertValid("U+D7FF", bytes(0xED, 0x9F, 0xBF));
+        assertValid("U+E000", bytes(0xEE, 0x80, 0x80));
+        assertValid("U+FFFF", bytes(0xEF, 0xBF, 0xBF));
+        assertValid("U+10000", bytes(0xF0, 0x90, 0x80, 0x80));
+        assertValid("U+1F600", bytes(0xF0, 0x9F, 0x98, 0x80));
+        assertValid("U+10FFFF", bytes(0xF4, 0x8F, 0xBF, 0xBF));
+    }
+
+    @Test
+    public void rejectsOverlongEncodings() {
+        assertInvalid("C0 80", bytes(0xC0, 0x80));
+        assertInvalid("C1 BF", bytes(0xC1, 0xBF));
+        assertInvalid("E0 80 80", bytes(0xE0, 0x80, 0x80));
+        assertInvalid("E0 9F BF", bytes(0xE0, 0x9F, 0xBF));
+        assertInvalid("F0 80 80 80", bytes(0xF0, 0x80, 0x80, 0x80));
+        assertInvalid("F0 8F BF BF", bytes(0xF0, 0x8F, 0xBF, 0xBF));
+    }
+
+    @Test
+    public void rejectsSurrogatesAndCodePointsAboveMax() {
+        assertInvalid("ED A0 80", bytes(0xED, 0xA0, 0x80));
+        assertInvalid("ED BF BF", bytes(0xED, 0xBF, 0xBF));
+        assertInvalid("F4 90 80 80", bytes(0xF4, 0x90, 0x80, 0x80));
+        assertInvalid("F5 80 80 80", bytes(0xF5, 0x80, 0x80, 0x80));
+        assertInvalid("FF", bytes(0xFF));
+    }
+
+    @Test
+    public void rejectsMisplacedContinuationBytes() {
+        assertInvalid("单独的 80", bytes(0x80));
+        assertInvalid("ASCII 后的 BF", bytes(0x41, 0xBF));
+        assertInvalid("三字节中第三个不是后续字节", bytes(0xE4, 0xB8, 0x41));
+    }
+
+    @Test
+    public void truncatedSequenceIsOnlyAcceptedInPrefix() {
+        byte[] truncated = bytes(0x41, 0xE4, 0xB8);
+        assertTrue(CharsetDetector.isValidUtf8(truncated, truncated.length, true));
+        assertFalse(CharsetDetector.isValidUtf8(truncated, truncated.length, false));
+
+        byte[] truncatedFourByte = bytes(0xF0, 0x9F, 0x98);
+        assertTrue(CharsetDetector.isValidUtf8(truncatedFourByte, truncatedFourByte.length, true));
+        assertFalse(CharsetDetector.isValidUtf8(truncatedFourByte, truncatedFourByte.length, false));
+    }
+
+    @Test
+    public void truncatedSequenceStillChecksAvailableBytes() {
+        assertInvalid("E4 41", bytes(0xE4, 0x41));
+        assertInvalid("截断的过长编码 E0 80", bytes(0xE0, 0x80));
+        assertInvalid("截断的代理项 ED A0", bytes(0xED, 0xA0));
+        assertInvalid("截断的 F4 90", bytes(0xF4, 0x90));
+    }
+
+    @Test
+    public void lengthLimitsTheCheckedBytes() {
+        byte[] data = bytes(0xE4, 0xB8, 0xAD, 0xFF);
+        assertTrue(CharsetDetector.isValidUtf8(data, 3, false));
+        assertFalse(CharsetDetector.isValidUtf8(data, 4, false));
+    }
+
+    @Test
+    public void detectPrefersBomAndValidUtf8() {
+        byte[] utf8Bom = bytes(0xEF, 0xBB, 0xBF, 0x41);
+        assertEquals(StandardCharsets.UTF_8, CharsetDetector.detect(utf8Bom, utf8Bom.length, false));
+        byte[] utf16Le = bytes(0xFF, 0xFE, 0x41, 0x00);
+        assertEquals(StandardCharsets.UTF_16, CharsetDetector.detect(utf16Le, utf16Le.length, false));
+        byte[] chinese = "第一章 开始".getBytes(StandardCharsets.UTF_8);
+        assertEquals(StandardCharsets.UTF_8, CharsetDetector.detect(chinese, chinese.length, false));
+        assertEquals(StandardCharsets.UTF_8, CharsetDetector.detect(chinese, chinese.length - 1, true));
+    }
+
+    // 完整文件和文件前缀两种情况都应判定为相同结果
+    private static void assertValid(String message, byte[] data) {
+        assertTrue(message, CharsetDetector.isValidUtf8(data, data.length, false));
+        assertTrue(message, CharsetDetector.isValidUtf8(data, data.length, true));
+    }
+
+    private static void assertInvalid(String message, byte[] data) {
+        assertFalse(message, CharsetDetector.isValidUtf8(data, data.length, false));
+        assertFalse(message, CharsetDetector.isValidUtf8(data, data.length, true));
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] data = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            data[i] = (byte) values[i];
+        }
+        return data;
+    }
+}
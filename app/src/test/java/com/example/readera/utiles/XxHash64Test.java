@@ -0,0 +1,79 @@
+package com.example.readera.utiles;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * XxHash64 与官方参考实现的结果对比。
+ * 测试数据用 xxhsum 自检时的生成方式：byteGen 从 PRIME32 开始，每个字节取 byteGen 的最高 8 位，然后乘以 PRIME64_1。
+ * 长度覆盖了空输入、只有尾部字节、4 字节和 8 字节块，以及 32 字节分条的各条路径。
+ */
+public class XxHash64Test {
+    private static final long PRIME32 = 2654435761L;
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+
+    private static final byte[] SANITY_BUFFER = sanityBuffer(256);
+
+    @Test
+    public void emptyInput() {
+        assertEquals(0xEF46DB3751D8E999L, XxHash64.hash(new byte[0], 0, 0, 0));
+        assertEquals(0xAC75FDA2929B17EFL, XxHash64.hash(new byte[0], 0, 0, PRIME32));
+    }
+
+    @Test
+    public void sanityBufferVectors() {
+        assertSanity(1, 0xE934A84ADB052768L, 0x5014607643A9B4C3L);
+        assertSanity(4, 0xE244DDBCF81E29E4L, 0x9C2A66164D52EBC2L);
+        assertSanity(8, 0xCA240B08878D6FF6L, 0x42A2317919726086L);
+        assertSanity(14, 0xB89B3598E0BD0A0AL, 0x9BB5720D90B3D7F1L);
+        assertSanity(32, 0x91382F920A08001CL, 0x134F5CE3D4DA1311L);
+        assertSanity(100, 0x6988DA507BD96A0FL, 0xAEC821CF5A925BE7L);
+        assertSanity(222, 0x06CC5BD930BCEC3AL, 0x0B105469DF89AF66L);
+    }
+
+    @Test
+    public void stringVectors() {
+        assertEquals(0xD24EC4F1A98C6E5BL, hash("a", 0));
+        assertEquals(0x44BC2CF5AD770999L, hash("abc", 0));
+        assertEquals(0x32DD38952C4BC720L, hash("xxhash", 0));
+        assertEquals(0xB559B98D844E0635L, hash("xxhash", 20141025));
+        assertEquals(0xFBCEA83C8A378BF1L, hash("Nobody inspects the spammish repetition", 0));
+        assertEquals(0x0B242D361FDA71BCL, hash("The quick brown fox jumps over the lazy dog", 0));
+    }
+
+    @Test
+    public void offsetHashesOnlyTheGivenRange() {
+        for (int offset : new int[]{1, 3, 7, 13}) {
+            for (int length : new int[]{0, 5, 31, 100}) {
+                byte[] copy = Arrays.copyOfRange(SANITY_BUFFER, offset, offset + length);
+                assertEquals("offset " + offset + ", length " + length,
+                        XxHash64.hash(copy, 0, length, PRIME32),
+                        XxHash64.hash(SANITY_BUFFER, offset, length, PRIME32));
+            }
+        }
+    }
+
+    private static void assertSanity(int length, long expectedSeed0, long expectedSeedPrime) {
+        assertEquals("长度 " + length + "，seed 0", expectedSeed0, XxHash64.hash(SANITY_BUFFER, 0, length, 0));
+        assertEquals("长度 " + length + "，seed PRIME32", expectedSeedPrime, XxHash64.hash(SANITY_BUFFER, 0, length, PRIME32));
+    }
+
+    private static long hash(String text, long seed) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return XxHash64.hash(bytes, 0, bytes.length, seed);
+    }
+
+    private static byte[] sanityBuffer(int length) {
+        byte[] buffer = new byte[length];
+        long byteGen = PRIME32;
+        for (int i = 0; i < length; i++) {
+            buffer[i] = (byte) (byteGen >>> 56);
+            byteGen *= PRIME64_1;
+        }
+        return buffer;
+    }
+}